@@ -0,0 +1,97 @@
+package http.benchmark;
+
+import http.attribute.AttributeArraySetMap;
+import http.attribute.AttributeHashSetMap;
+import http.header.Header;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks filling and reading the {@link AttributeHashSetMap} that used to hold the headers of every message against
+ * the compact {@link AttributeArraySetMap} that replaced it.
+ *
+ * @author Karl Bennett
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class AttributeMapBenchmark {
+
+    private List<Header<String>> headers;
+    private AttributeHashSetMap<Header<String>> filled;
+    private AttributeArraySetMap<Header<String>> filledArray;
+
+
+    @Setup
+    public void setUp() {
+
+        headers = new ArrayList<Header<String>>(Header.parse(ParseBenchmark.HEADERS));
+
+        filled = new AttributeHashSetMap<Header<String>>();
+
+        for (Header<String> header : headers) filled.add(header);
+
+        filledArray = new AttributeArraySetMap<Header<String>>(headers);
+    }
+
+
+    @Benchmark
+    public AttributeHashSetMap<Header<String>> add() {
+
+        AttributeHashSetMap<Header<String>> map = new AttributeHashSetMap<Header<String>>();
+
+        for (Header<String> header : headers) map.add(header);
+
+        return map;
+    }
+
+    @Benchmark
+    public Set<Header<String>> get() {
+
+        return filled.get("Content-Type");
+    }
+
+    @Benchmark
+    public Set<Header<String>> getMissing() {
+
+        return filled.get("Accept");
+    }
+
+    @Benchmark
+    public AttributeArraySetMap<Header<String>> arrayAdd() {
+
+        AttributeArraySetMap<Header<String>> map = new AttributeArraySetMap<Header<String>>();
+
+        for (Header<String> header : headers) map.add(header);
+
+        return map;
+    }
+
+    @Benchmark
+    public Set<Header<String>> arrayGet() {
+
+        return filledArray.get("Content-Type");
+    }
+
+    @Benchmark
+    public Set<Header<String>> arrayGetMissing() {
+
+        return filledArray.get("Accept");
+    }
+}
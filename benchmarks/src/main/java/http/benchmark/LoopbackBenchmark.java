@@ -0,0 +1,100 @@
+package http.benchmark;
+
+import http.Client;
+import http.Request;
+import http.Response;
+import http.transport.NioRequestHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks a complete request and response through the {@link NioRequestHandler} against a server on the loopback
+ * interface, this covers encoding the request, the event loop, parsing the response, and reading the body.
+ *
+ * @author Karl Bennett
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class LoopbackBenchmark {
+
+    @Param({"128", "16384", "1048576"})
+    public int bodySize;
+
+
+    private LoopbackServer server;
+    private NioRequestHandler handler;
+    private Client client;
+    private String url;
+    private byte[] buffer;
+
+
+    @Setup
+    public void setUp() throws IOException {
+
+        server = new LoopbackServer(bodySize);
+        handler = new NioRequestHandler();
+        client = new Client(handler);
+        url = server.url("/benchmark");
+        buffer = new byte[8192];
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+
+        handler.close();
+        server.close();
+    }
+
+
+    @Benchmark
+    public long get() throws IOException {
+
+        return drain(client.get(url));
+    }
+
+    @Benchmark
+    public long post() throws IOException {
+
+        Request<String> request = new Request<String>(url);
+        request.setBody(ParseBenchmark.PARAMETERS);
+
+        return drain(client.post(request));
+    }
+
+
+    private long drain(Response<InputStream> response) throws IOException {
+
+        InputStream body = response.getBody();
+
+        try {
+
+            long total = 0;
+
+            for (int read; -1 != (read = body.read(buffer)); ) total += read;
+
+            return total;
+
+        } finally {
+
+            body.close();
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package http.benchmark;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * A minimal keep-alive {@code HTTP/1.1} server that answers every request with the same body, so that a benchmark
+ * measures the client rather than the server.
+ *
+ * @author Karl Bennett
+ */
+public class LoopbackServer implements Closeable {
+
+    private static final byte[] HEAD_END = {'\r', '\n', '\r', '\n'};
+
+
+    private final ServerSocket serverSocket;
+    private final byte[] response;
+    private final Set<Socket> sockets;
+
+    private volatile boolean closed;
+
+
+    /**
+     * Start a new {@code LoopbackServer} on a free port.
+     *
+     * @param bodySize the size of the body that is sent back for every request.
+     * @throws IOException if the server socket could not be opened.
+     */
+    public LoopbackServer(int bodySize) throws IOException {
+
+        this.serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        this.sockets = Collections.synchronizedSet(new HashSet<Socket>());
+
+        byte[] head = ("HTTP/1.1 200 OK\r\nContent-Type: application/octet-stream\r\nContent-Length: " + bodySize +
+                "\r\n\r\n").getBytes("ISO-8859-1");
+
+        this.response = new byte[head.length + bodySize];
+        System.arraycopy(head, 0, response, 0, head.length);
+
+        for (int i = head.length; i < response.length; i++) response[i] = (byte) i;
+
+        Thread acceptor = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+
+                accept();
+            }
+        }, "loopback-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+
+    public String url(String path) {
+
+        return "http://127.0.0.1:" + serverSocket.getLocalPort() + path;
+    }
+
+    @Override
+    public void close() throws IOException {
+
+        closed = true;
+
+        serverSocket.close();
+
+        synchronized (sockets) {
+
+            for (Socket socket : sockets) socket.close();
+        }
+    }
+
+
+    private void accept() {
+
+        while (!closed) {
+
+            try {
+
+                final Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+
+                sockets.add(socket);
+
+                Thread thread = new Thread(new Runnable() {
+
+                    @Override
+                    public void run() {
+
+                        serve(socket);
+                    }
+                }, "loopback-connection");
+                thread.setDaemon(true);
+                thread.start();
+
+            } catch (IOException e) {
+
+                return;
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+
+        try {
+
+            InputStream input = new BufferedInputStream(socket.getInputStream());
+            OutputStream output = new BufferedOutputStream(socket.getOutputStream(), response.length);
+
+            for (String head; null != (head = readHead(input)); ) {
+
+                skip(input, contentLength(head));
+
+                output.write(response);
+                output.flush();
+            }
+
+        } catch (IOException e) {
+
+            // The client has gone away.
+
+        } finally {
+
+            sockets.remove(socket);
+
+            try {
+
+                socket.close();
+
+            } catch (IOException e) {
+
+                // The connection is finished with either way.
+            }
+        }
+    }
+
+    private static String readHead(InputStream input) throws IOException {
+
+        StringBuilder head = new StringBuilder();
+
+        int matched = 0;
+
+        while (HEAD_END.length > matched) {
+
+            int read = input.read();
+
+            if (-1 == read) return null;
+
+            matched = HEAD_END[matched] == read ? matched + 1 : '\r' == read ? 1 : 0;
+
+            head.append((char) read);
+        }
+
+        return head.toString();
+    }
+
+    private static long contentLength(String head) {
+
+        for (String line : head.split("\r\n")) {
+
+            if (line.toLowerCase(Locale.ENGLISH).startsWith("content-length:")) {
+
+                return Long.parseLong(line.substring(15).trim());
+            }
+        }
+
+        return 0;
+    }
+
+    private static void skip(InputStream input, long length) throws IOException {
+
+        for (long remaining = length; 0 < remaining; ) {
+
+            long skipped = input.skip(remaining);
+
+            if (0 >= skipped) {
+
+                if (-1 == input.read()) throw new IOException("The request body was cut short.");
+
+                skipped = 1;
+            }
+
+            remaining -= skipped;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package http.benchmark;
+
+import http.Cookie;
+import http.header.Header;
+import http.parameter.Parameter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the parsing and formatting of the attributes that are carried by every request and response.
+ *
+ * @author Karl Bennett
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ParseBenchmark {
+
+    /**
+     * The headers of a typical response.
+     */
+    static final String HEADERS = "Content-Type: application/json; charset=UTF-8\n" +
+            "Content-Length: 1024\n" +
+            "Cache-Control: max-age=3600, public\n" +
+            "ETag: \"33a64df551425fcc55e4d42a148795d9f25f89d4\"\n" +
+            "Last-Modified: Wed, 21 Oct 2015 07:28:00 GMT\n" +
+            "Vary: Accept-Encoding\n" +
+            "Server: benchmark\n" +
+            "Date: Wed, 21 Oct 2015 07:28:00 GMT";
+
+    /**
+     * The query string of a typical request with a repeated parameter.
+     */
+    static final String PARAMETERS = "q=http+client&page=2&sort=relevance&filter=java&filter=nio&lang=en";
+
+    /**
+     * A {@code Set-Cookie} header with the common attributes.
+     */
+    static final String COOKIE = "session=38afes7a8; Path=/; Domain=example.com; Max-Age=3600; Secure; HttpOnly";
+
+
+    private Collection<Parameter<String>> parameters;
+
+
+    @Setup
+    public void setUp() {
+
+        parameters = Parameter.parse(PARAMETERS);
+    }
+
+
+    @Benchmark
+    public Collection<Header<String>> headerParse() {
+
+        return Header.parse(HEADERS);
+    }
+
+    @Benchmark
+    public Collection<Parameter<String>> parameterParse() {
+
+        return Parameter.parse(PARAMETERS);
+    }
+
+    @Benchmark
+    public String parameterToString() {
+
+        List<Parameter<String>> copy = new ArrayList<Parameter<String>>(parameters);
+
+        return Parameter.toString(copy);
+    }
+
+    @Benchmark
+    public Collection<Cookie> cookieParse() {
+
+        return Cookie.parse(COOKIE);
+    }
+}
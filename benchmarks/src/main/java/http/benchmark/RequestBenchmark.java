@@ -0,0 +1,56 @@
+package http.benchmark;
+
+import http.Request;
+import http.parameter.Parameter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks building the {@code URL} of a request, which adds its parameters to the query string every time.
+ *
+ * @author Karl Bennett
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class RequestBenchmark {
+
+    private Request<String> plain;
+    private Request<String> withParameters;
+
+
+    @Setup
+    public void setUp() {
+
+        plain = new Request<String>("http://localhost:8080/search");
+        withParameters = new Request<String>("http://localhost:8080/search",
+                Parameter.parse(ParseBenchmark.PARAMETERS));
+    }
+
+
+    @Benchmark
+    public URL getUrl() {
+
+        return plain.getUrl();
+    }
+
+    @Benchmark
+    public URL getUrlWithParameters() {
+
+        return withParameters.getUrl();
+    }
+}
@@ -0,0 +1,5 @@
+/**
+ * JMH benchmarks for the parts of the client that every request passes through, the parsing of headers, parameters,
+ * and cookies, the attribute maps that hold them, and a full request and response over a loopback socket.
+ */
+package http.benchmark;
@@ -0,0 +1,24 @@
+package http;
+
+import java.io.InputStream;
+
+/**
+ * A {@link RequestHandler} that can carry out a request without blocking the calling thread. The {@link Client} async
+ * request methods use this interface when their handler implements it, otherwise the blocking
+ * {@link RequestHandler#handleRequest(String, Request)} is called on the clients callback executor.
+ *
+ * @author Karl Bennett
+ */
+public interface AsyncRequestHandler extends RequestHandler {
+
+    /**
+     * Start the request and return straight away. The handler must complete or fail the supplied future once the
+     * response headers have been received, or the request has failed. If the future is cancelled before it is done the
+     * handler should abandon the request.
+     *
+     * @param method  the HTTP method for the request e.g. "GET", "POST", "PUT", "DELETE"...
+     * @param request the request object that contains the request details.
+     * @param future  the future that the response will be delivered to.
+     */
+    public void handleRequest(String method, Request<InputStream> request, ResponseFuture<Response<InputStream>> future);
+}
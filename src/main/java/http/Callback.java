@@ -0,0 +1,26 @@
+package http;
+
+/**
+ * Implement this interface to be notified when an asynchronous request completes. A callback is run on the
+ * {@link java.util.concurrent.Executor} of the {@link ResponseFuture} it was added to, never on the I/O thread of the
+ * {@link RequestHandler}.
+ *
+ * @author Karl Bennett
+ */
+public interface Callback<T> {
+
+    /**
+     * Called when the request has completed successfully.
+     *
+     * @param result the result of the request.
+     */
+    public void completed(T result);
+
+    /**
+     * Called when the request has failed or has been cancelled.
+     *
+     * @param cause the reason the request failed, this will be a {@link java.util.concurrent.CancellationException} if
+     *              the request was cancelled.
+     */
+    public void failed(Throwable cause);
+}
@@ -1,8 +1,34 @@
 package http;
 
 
+import http.header.Header;
+import http.parameter.Parameter;
+import http.transport.FileBody;
+import http.transport.GzipBody;
+import http.transport.NioRequestHandler;
+import http.transport.RequestTimeoutException;
+import http.transport.TransportException;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.SequenceInputStream;
 import java.net.URL;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static http.util.Asserts.assertNotNull;
+import static http.util.Checks.isNotNull;
+import static http.util.Checks.isNull;
+import static http.util.IO.closeQuietly;
 
 /**
  * A simple {@code HTTP} client API that can be used to make request to any {@code HTTP 1.0/1.1} server.
@@ -21,6 +47,26 @@ import java.net.URL;
  * The simplest way to use the client is through the static methods, these use a singleton instance of the client. This
  * singleton isn't instantiated until one of the static methods are used.
  * <p/>
+ * Requests are carried out by a {@link RequestHandler}, by default this is a shared non-blocking
+ * {@link NioRequestHandler} that can keep many requests in flight on a single I/O thread. A different backend can be
+ * supplied through {@link #Client(RequestHandler)}. Responses can be cached by wrapping the backend in a
+ * {@link http.cache.CachingRequestHandler}. Host names are looked up by the handler, the {@link http.dns.Resolver}
+ * of the default handler caches them and can be replaced through
+ * {@link NioRequestHandler#setResolver(http.dns.Resolver)}. Requests to a logical service name can be balanced across
+ * the servers of the service by wrapping the backend in a {@link http.balance.LoadBalancingRequestHandler}.
+ * <p/>
+ * Large request bodies can be compressed with {@code gzip} as they are sent by setting a threshold through
+ * {@link #setCompressionThreshold(int)}.
+ * <p/>
+ * The connect, {@code TLS} handshake, first byte, idle read, and total {@link Timeouts} of every request can be set
+ * through {@link #setTimeouts(Timeouts)} and overridden by a single request. A request can also be given the deadline
+ * of the work it is being made for, so it is never sent once the deadline has passed.
+ * <p/>
+ * Requests can also be made asynchronously through {@link #executeAsync(String, Request)} and the {@code xxxAsync}
+ * methods, these return a {@link ResponseFuture} straight away and run any {@link Callback}s on the clients callback
+ * executor rather than on the I/O thread. The executor can be supplied through
+ * {@link #Client(RequestHandler, Executor)}.
+ * <p/>
  * Usage:<br/>
  * <code>
  * &nbsp;&nbsp;&nbsp;&nbsp;System.out.println(GET("http://yoursite.com"))}
@@ -34,18 +80,14 @@ import java.net.URL;
  * </code>
  * <p/>
  * Proxy:<br/>
- * <code>
- * &nbsp;&nbsp;&nbsp;&nbsp;http.proxyHost<br/>
- * &nbsp;&nbsp;&nbsp;&nbsp;http.proxyPort<br/>
- * &nbsp;&nbsp;&nbsp;&nbsp;http.nonProxyHosts<br/>
- * &nbsp;&nbsp;&nbsp;&nbsp;https.proxyHost<br/>
- * &nbsp;&nbsp;&nbsp;&nbsp;https.proxyPort<br/>
- * &nbsp;&nbsp;&nbsp;&nbsp;https.nonProxyHosts<br/>
- * &nbsp;&nbsp;&nbsp;&nbsp;socksProxyHost<br/>
- * &nbsp;&nbsp;&nbsp;&nbsp;socksProxyPort<br/>
- * </code>
+ * Proxies are not supported by the {@link NioRequestHandler}, it always connects straight to the server. The
+ * {@link java.net.ProxySelector} and the {@code http.proxyHost}, {@code https.proxyHost}, and {@code socksProxyHost}
+ * system properties are ignored, so a client that has to go through a proxy needs a {@link RequestHandler} of its own.
  * <p/>
  * SSL:<br/>
+ * By default {@code https} connections use the JVMs default {@link javax.net.ssl.SSLContext} which is configured
+ * through the system properties below, a client with its own context, protocols, cipher suites, or {@code ALPN}
+ * protocols can be given a {@link NioRequestHandler} with its own {@link http.transport.TlsConfig}.<br/>
  * <code>
  * &nbsp;&nbsp;&nbsp;&nbsp;javax.net.ssl.trustStore<br/>
  * &nbsp;&nbsp;&nbsp;&nbsp;javax.net.ssl.trustStoreType<br/>
@@ -83,14 +125,33 @@ public class Client {
     public static final String TRACE = "TRACE";
     public static final String CONNECT = "CONNECT";
 
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String CONTENT_LENGTH = "Content-Length";
+    private static final String CONTENT_ENCODING = "Content-Encoding";
+    private static final String GZIP = "gzip";
+
     private static class SingletonHolder {
-        public static final Client INSTANCE = new Client();
+        public static volatile Client INSTANCE = new Client();
     }
 
-    private static Client getInstance() {
+    static Client getInstance() {
         return SingletonHolder.INSTANCE;
     }
 
+    /**
+     * Replace the client that the static request methods use, this is so that the static methods can be tested
+     * without sending any requests over the network.
+     *
+     * @param client the client the static request methods will use.
+     */
+    static void setInstance(Client client) {
+
+        assertNotNull("client", client);
+
+        SingletonHolder.INSTANCE = client;
+    }
+
 
     /**
      * Static method that behaves exactly the same as the {@link #options(String)} method.
@@ -373,10 +434,232 @@ public class Client {
     }
 
 
+    private static class DefaultRequestHandlerHolder {
+        public static final RequestHandler INSTANCE = new NioRequestHandler();
+    }
+
+    private static class DefaultCallbackExecutorHolder {
+        public static final Executor INSTANCE = Executors.newCachedThreadPool(new ThreadFactory() {
+
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+
+                Thread thread = new Thread(runnable, "http-client-callback-" + count.incrementAndGet());
+                thread.setDaemon(true);
+
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Convert the supplied request body into an {@link InputStream} so that it can be sent by a {@link RequestHandler}.
+     *
+     * @param body the body of the request, this can be {@code null}, an {@code InputStream}, a {@link String}, a
+     *             {@code byte[]}, a {@link File}, or a {@link FileChannel}. Files are sent as a {@link FileBody} so the
+     *             transport can send them without copying them through the heap.
+     * @return the body as an {@code InputStream} or {@code null} if there is no body.
+     * @throws IllegalStateException if the body's type can not be converted into an {@code InputStream}.
+     */
+    private static InputStream toInputStream(Object body) {
+
+        if (isNull(body)) return null;
+
+        if (body instanceof InputStream) return (InputStream) body;
+
+        if (body instanceof byte[]) return new ByteArrayInputStream((byte[]) body);
+
+        if (body instanceof String) return new ByteArrayInputStream(((String) body).getBytes(UTF_8));
+
+        try {
+
+            if (body instanceof File) return new FileBody((File) body);
+
+            if (body instanceof FileChannel) return new FileBody((FileChannel) body);
+
+        } catch (IOException e) {
+
+            throw new IllegalStateException("The file request body could not be opened.", e);
+        }
+
+        throw new IllegalStateException("A request body of type (" + body.getClass().getName() +
+                ") can not be converted into an " + InputStream.class.getName() + ".");
+    }
+
+
+    /**
+     * Find the length of the supplied request body without reading it.
+     *
+     * @return the length of the body or -1 if it is unknown.
+     */
+    private static long length(Request<?> request, InputStream body) {
+
+        Set<Header> lengths = request.getHeaders(CONTENT_LENGTH);
+
+        if (isNotNull(lengths)) {
+
+            try {
+
+                return Long.parseLong(String.valueOf(lengths.iterator().next().getValue()).trim());
+
+            } catch (NumberFormatException e) {
+
+                return -1;
+            }
+        }
+
+        if (body instanceof ByteArrayInputStream) return ((ByteArrayInputStream) body).available();
+
+        if (body instanceof FileBody) return ((FileBody) body).getRemaining();
+
+        return -1;
+    }
+
+    /**
+     * Read the start of the supplied body.
+     *
+     * @param body  the body to read.
+     * @param limit the most bytes to read.
+     * @return up to the limit number of bytes, fewer only if the body ended first.
+     * @throws TransportException if the body could not be read.
+     */
+    private static byte[] readStart(InputStream body, int limit) {
+
+        byte[] start = new byte[Math.min(limit, 8 * 1024)];
+        int length = 0;
+
+        try {
+
+            for (int read; length < limit; length += read) {
+
+                if (start.length == length) start = Arrays.copyOf(start, (int) Math.min(limit, 2L * length));
+
+                read = body.read(start, length, start.length - length);
+
+                if (-1 == read) break;
+            }
+
+        } catch (IOException e) {
+
+            closeQuietly(body);
+
+            throw new TransportException("The request body could not be read.", e);
+        }
+
+        return length == start.length ? start : Arrays.copyOf(start, length);
+    }
+
+
+    private final RequestHandler requestHandler;
+    private final Executor callbackExecutor;
+
+    private volatile int compressionThreshold = -1;
+    private volatile Timeouts timeouts;
+
+
+    /**
+     * Create a new {@code Client} that uses the shared default {@link NioRequestHandler}.
+     */
     public Client() {
+
+        this(DefaultRequestHandlerHolder.INSTANCE);
+    }
+
+    /**
+     * Create a new {@code Client} that will carry out its requests with the supplied {@link RequestHandler}. Async
+     * callbacks will be run on a shared pool of daemon threads.
+     *
+     * @param requestHandler the backend for the client.
+     */
+    public Client(RequestHandler requestHandler) {
+
+        this(requestHandler, DefaultCallbackExecutorHolder.INSTANCE);
+    }
+
+    /**
+     * Create a new {@code Client} that will carry out its requests with the supplied {@link RequestHandler} and run its
+     * async callbacks on the supplied {@link Executor}.
+     * <p/>
+     * If the request handler is not an {@link AsyncRequestHandler} the async request methods will also call the
+     * blocking handler on this executor.
+     *
+     * @param requestHandler   the backend for the client.
+     * @param callbackExecutor the executor that async callbacks will be run on.
+     */
+    public Client(RequestHandler requestHandler, Executor callbackExecutor) {
+
+        assertNotNull("requestHandler", requestHandler);
+        assertNotNull("callbackExecutor", callbackExecutor);
+
+        this.requestHandler = requestHandler;
+        this.callbackExecutor = callbackExecutor;
     }
 
 
+    /**
+     * @return the size in bytes that a request body has to be larger than to be compressed, or -1 if request bodies
+     *         are not compressed.
+     */
+    public int getCompressionThreshold() {
+
+        return compressionThreshold;
+    }
+
+    /**
+     * Set the size in bytes that a request body has to be larger than to be compressed with {@code gzip}, the default
+     * is -1 which disables compression. A compressed body is sent with a {@code Content-Encoding} of {@code gzip} and
+     * is compressed as it is sent so it is never held in memory. A body that already has a {@code Content-Encoding} is
+     * left alone.
+     * <p/>
+     * The length of a {@code String}, {@code byte[]}, or file body, or of any body with a {@code Content-Length}, is
+     * already known. Up to the threshold of any other {@link InputStream} body is read before the request is sent to
+     * find out if it is larger, so a large threshold should only be used with bodies of a known length.
+     * <p/>
+     * A single request can be compressed whatever the threshold by setting a {@link GzipBody} as its body.
+     *
+     * @param compressionThreshold the compression threshold or -1 to disable compression.
+     * @throws IllegalArgumentException if the threshold is less than -1 or is {@link Integer#MAX_VALUE}.
+     */
+    public void setCompressionThreshold(int compressionThreshold) {
+
+        if (-1 > compressionThreshold || Integer.MAX_VALUE == compressionThreshold) {
+
+            throw new IllegalArgumentException("The (compressionThreshold) variable must be from -1 to " +
+                    (Integer.MAX_VALUE - 1) + ".");
+        }
+
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    /**
+     * @return a copy of the timeouts that every request uses unless it sets its own.
+     */
+    public Timeouts getTimeouts() {
+
+        return isNull(timeouts) ? new Timeouts() : new Timeouts(timeouts);
+    }
+
+    /**
+     * Set the timeouts that every request uses unless it sets its own, by default none are set so a request can wait
+     * for as long as the server takes. A {@link Request} can override any of them through
+     * {@link Request#setTimeouts(Timeouts)}.
+     * <p/>
+     * A request whose deadline has already passed is never sent, the blocking request methods throw a
+     * {@link RequestTimeoutException} and the async request methods fail their future with one. A request that runs
+     * out of time once it has been sent fails with one too.
+     * <p/>
+     * The timeouts are enforced by the {@link RequestHandler}, the default {@link NioRequestHandler} enforces all of
+     * them.
+     *
+     * @param timeouts the timeouts, these are copied so later changes to them have no effect. Null removes them.
+     */
+    public void setTimeouts(Timeouts timeouts) {
+
+        this.timeouts = isNull(timeouts) ? null : new Timeouts(timeouts);
+    }
+
     /**
      * Sends an {@code OPTIONS} request to the {@code HTTP} server at the provided {@code URL}.
      *
@@ -412,7 +695,7 @@ public class Client {
      */
     public Response<InputStream> options(Request request) {
 
-        return null;
+        return execute(OPTIONS, request);
     }
 
     /**
@@ -450,7 +733,7 @@ public class Client {
      */
     public Response<InputStream> get(Request request) {
 
-        return null;
+        return execute(GET, request);
     }
 
     /**
@@ -488,7 +771,7 @@ public class Client {
      */
     public Response<InputStream> head(Request request) {
 
-        return null;
+        return execute(HEAD, request);
     }
 
     /**
@@ -526,7 +809,7 @@ public class Client {
      */
     public Response<InputStream> post(Request request) {
 
-        return null;
+        return execute(POST, request);
     }
 
     /**
@@ -564,7 +847,7 @@ public class Client {
      */
     public Response<InputStream> put(Request request) {
 
-        return null;
+        return execute(PUT, request);
     }
 
     /**
@@ -602,7 +885,7 @@ public class Client {
      */
     public Response<InputStream> delete(Request request) {
 
-        return null;
+        return execute(DELETE, request);
     }
 
     /**
@@ -640,7 +923,7 @@ public class Client {
      */
     public Response<InputStream> trace(Request request) {
 
-        return null;
+        return execute(TRACE, request);
     }
 
     /**
@@ -678,6 +961,515 @@ public class Client {
      */
     public Response<InputStream> connect(Request request) {
 
-        return null;
+        return execute(CONNECT, request);
+    }
+
+    /**
+     * Download the resource at the provided {@code URL} into the supplied file.
+     *
+     * @param url  a {@code java.lang.String} containing the {@code URL} of the resource.
+     * @param file the file to write the resource to, any existing contents are replaced.
+     * @return the {@link Response} sent back by the {@code HTTP} server with the file as its body.
+     * @see #download(Request, File, boolean)
+     */
+    public Response<File> download(String url, File file) {
+
+        return download(new Request(url), file);
+    }
+
+    /**
+     * Download the resource at the provided {@code URL} into the supplied file.
+     *
+     * @param url  the {@code URL} of the resource.
+     * @param file the file to write the resource to, any existing contents are replaced.
+     * @return the {@link Response} sent back by the {@code HTTP} server with the file as its body.
+     * @see #download(Request, File, boolean)
+     */
+    public Response<File> download(URL url, File file) {
+
+        return download(new Request(url), file);
+    }
+
+    /**
+     * Download the resource defined within the provided {@link Request} into the supplied file.
+     *
+     * @param request the {@code GET} request for the resource.
+     * @param file    the file to write the resource to, any existing contents are replaced.
+     * @return the {@link Response} sent back by the {@code HTTP} server with the file as its body.
+     * @see #download(Request, File, boolean)
+     */
+    public Response<File> download(Request request, File file) {
+
+        return download(request, file, false);
+    }
+
+    /**
+     * Download the resource defined within the provided {@link Request} into the supplied file. The body is written
+     * straight from the buffers it is read into, so it is never held on the heap no matter how large it is.
+     * <p/>
+     * If the connection fails part way through the body the rest of it is requested with a {@code Range} header and
+     * written after what has already arrived, the download is only given up once several attempts in a row have failed
+     * to add anything to the file. Setting {@code resume} carries on from the end of a file that was left behind by an
+     * earlier download that failed.
+     * <p/>
+     * A response that doesn't contain the resource e.g. a {@code 404} is returned without a body and nothing is written
+     * to the file. A {@code 416} response is returned with the file as its body when the file already holds the entire
+     * resource.
+     *
+     * @param request the {@code GET} request for the resource.
+     * @param file    the file to write the resource to.
+     * @param resume  true if the existing contents of the file are the start of the resource, false if they should be
+     *                replaced.
+     * @return the {@link Response} sent back by the {@code HTTP} server with the file as its body.
+     * @throws http.transport.TransportException if the resource could not be downloaded.
+     * @throws IllegalStateException             if the file could not be written or the request body's type can not be
+     *                                           converted into an {@link InputStream}.
+     */
+    public Response<File> download(Request request, File file, boolean resume) {
+
+        assertNotNull("file", file);
+
+        return new Download(requestHandler, prepare(request), file, resume).run();
+    }
+
+
+    /**
+     * Asynchronously sends a {@code GET} request to the {@code HTTP} server at the provided {@code URL}.
+     *
+     * @param url a {@code java.lang.String} containing the {@code URL} for the {@code HTTP} server.
+     * @return a {@link ResponseFuture} that will be completed with the {@link Response} sent back by the {@code HTTP}
+     *         server.
+     */
+    public ResponseFuture<Response<InputStream>> getAsync(String url) {
+
+        return getAsync(new Request(url));
+    }
+
+    /**
+     * Asynchronously sends a {@code GET} request to the {@code HTTP} server at the provided {@code URL}.
+     *
+     * @param url the {@code URL} for the {@code HTTP} server.
+     * @return a {@link ResponseFuture} that will be completed with the {@link Response} sent back by the {@code HTTP}
+     *         server.
+     */
+    public ResponseFuture<Response<InputStream>> getAsync(URL url) {
+
+        return getAsync(new Request(url));
+    }
+
+    /**
+     * Asynchronously sends a {@code GET} request to the {@code HTTP} server defined within the provided
+     * {@link Request}.
+     *
+     * @param request the {@code Request} that will be sent to the {@code HTTP} server.
+     * @return a {@link ResponseFuture} that will be completed with the {@link Response} sent back by the {@code HTTP}
+     *         server.
+     */
+    public ResponseFuture<Response<InputStream>> getAsync(Request request) {
+
+        return executeAsync(GET, request);
+    }
+
+    /**
+     * Asynchronously sends a {@code GET} request to the {@code HTTP} server defined within the provided
+     * {@link Request} and runs the supplied {@link Callback} once it completes.
+     *
+     * @param request  the {@code Request} that will be sent to the {@code HTTP} server.
+     * @param callback the callback that will be run on the callback executor once the request completes.
+     * @return a {@link ResponseFuture} that will be completed with the {@link Response} sent back by the {@code HTTP}
+     *         server.
+     */
+    public ResponseFuture<Response<InputStream>> getAsync(Request request,
+                                                         Callback<? super Response<InputStream>> callback) {
+
+        return executeAsync(GET, request, callback);
+    }
+
+    /**
+     * Asynchronously sends a {@code POST} request to the {@code HTTP} server at the provided {@code URL}.
+     *
+     * @param url a {@code java.lang.String} containing the {@code URL} for the {@code HTTP} server.
+     * @return a {@link ResponseFuture} that will be completed with the {@link Response} sent back by the {@code HTTP}
+     *         server.
+     */
+    public ResponseFuture<Response<InputStream>> postAsync(String url) {
+
+        return postAsync(new Request(url));
+    }
+
+    /**
+     * Asynchronously sends a {@code POST} request to the {@code HTTP} server at the provided {@code URL}.
+     *
+     * @param url the {@code URL} for the {@code HTTP} server.
+     * @return a {@link ResponseFuture} that will be completed with the {@link Response} sent back by the {@code HTTP}
+     *         server.
+     */
+    public ResponseFuture<Response<InputStream>> postAsync(URL url) {
+
+        return postAsync(new Request(url));
+    }
+
+    /**
+     * Asynchronously sends a {@code POST} request to the {@code HTTP} server defined within the provided
+     * {@link Request}.
+     *
+     * @param request the {@code Request} that will be sent to the {@code HTTP} server.
+     * @return a {@link ResponseFuture} that will be completed with the {@link Response} sent back by the {@code HTTP}
+     *         server.
+     */
+    public ResponseFuture<Response<InputStream>> postAsync(Request request) {
+
+        return executeAsync(POST, request);
+    }
+
+    /**
+     * Asynchronously sends a {@code POST} request to the {@code HTTP} server defined within the provided
+     * {@link Request} and runs the supplied {@link Callback} once it completes.
+     *
+     * @param request  the {@code Request} that will be sent to the {@code HTTP} server.
+     * @param callback the callback that will be run on the callback executor once the request completes.
+     * @return a {@link ResponseFuture} that will be completed with the {@link Response} sent back by the {@code HTTP}
+     *         server.
+     */
+    public ResponseFuture<Response<InputStream>> postAsync(Request request,
+                                                         Callback<? super Response<InputStream>> callback) {
+
+        return executeAsync(POST, request, callback);
+    }
+
+    /**
+     * Asynchronously sends a {@code PUT} request to the {@code HTTP} server at the provided {@code URL}.
+     *
+     * @param url a {@code java.lang.String} containing the {@code URL} for the {@code HTTP} server.
+     * @return a {@link ResponseFuture} that will be completed with the {@link Response} sent back by the {@code HTTP}
+     *         server.
+     */
+    public ResponseFuture<Response<InputStream>> putAsync(String url) {
+
+        return putAsync(new Request(url));
+    }
+
+    /**
+     * Asynchronously sends a {@code PUT} request to the {@code HTTP} server at the provided {@code URL}.
+     *
+     * @param url the {@code URL} for the {@code HTTP} server.
+     * @return a {@link ResponseFuture} that will be completed with the {@link Response} sent back by the {@code HTTP}
+     *         server.
+     */
+    public ResponseFuture<Response<InputStream>> putAsync(URL url) {
+
+        return putAsync(new Request(url));
+    }
+
+    /**
+     * Asynchronously sends a {@code PUT} request to the {@code HTTP} server defined within the provided
+     * {@link Request}.
+     *
+     * @param request the {@code Request} that will be sent to the {@code HTTP} server.
+     * @return a {@link ResponseFuture} that will be completed with the {@link Response} sent back by the {@code HTTP}
+     *         server.
+     */
+    public ResponseFuture<Response<InputStream>> putAsync(Request request) {
+
+        return executeAsync(PUT, request);
+    }
+
+    /**
+     * Asynchronously sends a {@code PUT} request to the {@code HTTP} server defined within the provided
+     * {@link Request} and runs the supplied {@link Callback} once it completes.
+     *
+     * @param request  the {@code Request} that will be sent to the {@code HTTP} server.
+     * @param callback the callback that will be run on the callback executor once the request completes.
+     * @return a {@link ResponseFuture} that will be completed with the {@link Response} sent back by the {@code HTTP}
+     *         server.
+     */
+    public ResponseFuture<Response<InputStream>> putAsync(Request request,
+                                                         Callback<? super Response<InputStream>> callback) {
+
+        return executeAsync(PUT, request, callback);
+    }
+
+    /**
+     * Asynchronously sends a {@code DELETE} request to the {@code HTTP} server at the provided {@code URL}.
+     *
+     * @param url a {@code java.lang.String} containing the {@code URL} for the {@code HTTP} server.
+     * @return a {@link ResponseFuture} that will be completed with the {@link Response} sent back by the {@code HTTP}
+     *         server.
+     */
+    public ResponseFuture<Response<InputStream>> deleteAsync(String url) {
+
+        return deleteAsync(new Request(url));
+    }
+
+    /**
+     * Asynchronously sends a {@code DELETE} request to the {@code HTTP} server at the provided {@code URL}.
+     *
+     * @param url the {@code URL} for the {@code HTTP} server.
+     * @return a {@link ResponseFuture} that will be completed with the {@link Response} sent back by the {@code HTTP}
+     *         server.
+     */
+    public ResponseFuture<Response<InputStream>> deleteAsync(URL url) {
+
+        return deleteAsync(new Request(url));
+    }
+
+    /**
+     * Asynchronously sends a {@code DELETE} request to the {@code HTTP} server defined within the provided
+     * {@link Request}.
+     *
+     * @param request the {@code Request} that will be sent to the {@code HTTP} server.
+     * @return a {@link ResponseFuture} that will be completed with the {@link Response} sent back by the {@code HTTP}
+     *         server.
+     */
+    public ResponseFuture<Response<InputStream>> deleteAsync(Request request) {
+
+        return executeAsync(DELETE, request);
+    }
+
+    /**
+     * Asynchronously sends a {@code DELETE} request to the {@code HTTP} server defined within the provided
+     * {@link Request} and runs the supplied {@link Callback} once it completes.
+     *
+     * @param request  the {@code Request} that will be sent to the {@code HTTP} server.
+     * @param callback the callback that will be run on the callback executor once the request completes.
+     * @return a {@link ResponseFuture} that will be completed with the {@link Response} sent back by the {@code HTTP}
+     *         server.
+     */
+    public ResponseFuture<Response<InputStream>> deleteAsync(Request request,
+                                                         Callback<? super Response<InputStream>> callback) {
+
+        return executeAsync(DELETE, request, callback);
+    }
+
+    /**
+     * Asynchronously send the supplied request with the supplied method. The calling thread is never blocked, a stream
+     * body whose start has to be read to find out if it should be compressed is read on the callback executor, and if
+     * the clients {@link RequestHandler} is not an {@link AsyncRequestHandler} the whole request is carried out there.
+     * Any failure, including a request body that can't be converted, fails the future rather than being thrown.
+     *
+     * @param method  the HTTP method for the request e.g. "GET", "POST", "PUT", "DELETE"...
+     * @param request the {@code Request} that will be sent to the {@code HTTP} server.
+     * @return a {@link ResponseFuture} that will be completed with the {@link Response} sent back by the {@code HTTP}
+     *         server.
+     */
+    public ResponseFuture<Response<InputStream>> executeAsync(String method, Request request) {
+
+        assertNotNull("method", method);
+        assertNotNull("request", request);
+
+        final String requestMethod = method;
+        final Request sent = request;
+
+        final ResponseFuture<Response<InputStream>> future = new ResponseFuture<Response<InputStream>>(
+                callbackExecutor);
+
+        try {
+
+            if (requestHandler instanceof AsyncRequestHandler && !readsBody(request)) {
+
+                send(requestMethod, sent, future);
+
+                return future;
+            }
+
+            callbackExecutor.execute(new Runnable() {
+
+                @Override
+                public void run() {
+
+                    if (future.isDone()) return;
+
+                    try {
+
+                        send(requestMethod, sent, future);
+
+                    } catch (RuntimeException e) {
+
+                        future.fail(e);
+                    }
+                }
+            });
+
+        } catch (RuntimeException e) {
+
+            future.fail(e);
+        }
+
+        return future;
+    }
+
+    /**
+     * Asynchronously send the supplied request with the supplied method and run the supplied {@link Callback} once it
+     * completes.
+     *
+     * @param method   the HTTP method for the request e.g. "GET", "POST", "PUT", "DELETE"...
+     * @param request  the {@code Request} that will be sent to the {@code HTTP} server.
+     * @param callback the callback that will be run on the callback executor once the request completes.
+     * @return a {@link ResponseFuture} that will be completed with the {@link Response} sent back by the {@code HTTP}
+     *         server.
+     */
+    public ResponseFuture<Response<InputStream>> executeAsync(String method, Request request,
+                                                              Callback<? super Response<InputStream>> callback) {
+
+        ResponseFuture<Response<InputStream>> future = executeAsync(method, request);
+
+        future.addCallback(callback);
+
+        return future;
+    }
+
+
+    /**
+     * Send the supplied request with the supplied method through this clients {@link RequestHandler}.
+     *
+     * @param method  the HTTP method for the request.
+     * @param request the {@code Request} that will be sent to the {@code HTTP} server.
+     * @return the {@link Response} sent back by the {@code HTTP} server.
+     * @throws IllegalStateException if the request body's type can not be converted into an {@link InputStream}.
+     */
+    private Response<InputStream> execute(String method, Request request) {
+
+        return requestHandler.handleRequest(method, prepare(request));
+    }
+
+    /**
+     * Send the supplied request through this clients {@link RequestHandler} and complete the supplied future with the
+     * response, this blocks if the handler is not an {@link AsyncRequestHandler}.
+     */
+    private void send(String method, Request request, ResponseFuture<Response<InputStream>> future) {
+
+        Request<InputStream> converted = prepare(request);
+
+        if (requestHandler instanceof AsyncRequestHandler) {
+
+            ((AsyncRequestHandler) requestHandler).handleRequest(method, converted, future);
+
+            return;
+        }
+
+        Response<InputStream> response = requestHandler.handleRequest(method, converted);
+
+        if (!future.complete(response)) closeQuietly(response.getBody());
+    }
+
+    /**
+     * @return true if the start of the request body might have to be read to find out if it should be compressed.
+     */
+    private boolean readsBody(Request<?> request) {
+
+        Object body = request.getBody();
+
+        if (!(body instanceof InputStream) || body instanceof GzipBody) return false;
+
+        return -1 != compressionThreshold && isNull(request.getHeaders(CONTENT_ENCODING)) &&
+                -1 == length(request, (InputStream) body);
+    }
+
+    /**
+     * Get the supplied request ready to be sent, converting its body and giving it the timeouts it should use.
+     *
+     * @param request the {@code Request} that will be sent to the {@code HTTP} server.
+     * @return a request with the body converted into an {@code InputStream} and the clients timeouts filled in.
+     * @throws RequestTimeoutException if the deadline of the request has already passed.
+     * @throws IllegalStateException   if the request body's type can not be converted into an {@code InputStream}.
+     */
+    private Request<InputStream> prepare(Request request) {
+
+        assertNotNull("request", request);
+
+        Timeouts defaults = timeouts;
+        Timeouts own = request.getTimeouts();
+
+        Timeouts merged = isNull(own) ? defaults : own.withDefaults(defaults);
+
+        // Nothing is read from the body of a request that has already run out of time.
+        if (isNotNull(merged) && merged.isExpired()) {
+
+            throw new RequestTimeoutException("The deadline of the request to (" + request.getUrl() +
+                    ") has already passed.");
+        }
+
+        Request<InputStream> converted = convert(request);
+
+        // A converted request already carries the requests own timeouts.
+        if (isNull(defaults)) return converted;
+
+        // The callers request is never changed, so it can be sent again by a client with different timeouts.
+        if (converted == request) converted = new Request<InputStream>(converted, converted.getBody());
+
+        converted.setTimeouts(merged);
+
+        return converted;
+    }
+
+    /**
+     * Convert the supplied request into one with an {@link InputStream} body, compressing the body if it is larger
+     * than the compression threshold.
+     *
+     * @param request the {@code Request} that will be sent to the {@code HTTP} server.
+     * @return a request with the body converted into an {@code InputStream}.
+     * @throws IllegalStateException if the request body's type can not be converted into an {@code InputStream}.
+     * @throws TransportException    if the start of a stream body could not be read to find out if it should be
+     *                               compressed.
+     */
+    @SuppressWarnings("unchecked")
+    private Request<InputStream> convert(Request request) {
+
+        assertNotNull("request", request);
+
+        Object body = request.getBody();
+
+        if (isNull(body)) return (Request<InputStream>) request;
+
+        if (body instanceof GzipBody) return compressed(request, (GzipBody) body);
+
+        InputStream stream = toInputStream(body);
+
+        int threshold = compressionThreshold;
+
+        if (-1 != threshold && isNull(request.getHeaders(CONTENT_ENCODING))) {
+
+            long length = length(request, stream);
+
+            // The length of a stream is only found by reading just enough of it to see if it is over the threshold.
+            if (-1 == length) {
+
+                byte[] start = readStart(stream, threshold + 1);
+
+                if (threshold < start.length) {
+
+                    return compressed(request, new GzipBody(new SequenceInputStream(new ByteArrayInputStream(start),
+                            stream)));
+                }
+
+                stream = new ByteArrayInputStream(start);
+
+            } else if (threshold < length) {
+
+                return compressed(request, new GzipBody(stream));
+            }
+        }
+
+        // Only copy the request if its body actually needed converting.
+        if (stream == body) return (Request<InputStream>) request;
+
+        return new Request<InputStream>(request, stream);
+    }
+
+    /**
+     * @return a copy of the supplied request with the compressed body and the headers that describe it.
+     */
+    private static Request<InputStream> compressed(Request<?> request, GzipBody body) {
+
+        Request<InputStream> compressed = new Request<InputStream>(request, body);
+
+        // The compressed length isn't known until the body has been sent so it goes chunked.
+        Set<Header> lengths = compressed.getHeaders(CONTENT_LENGTH);
+
+        if (isNotNull(lengths)) compressed.removeHeaders(new ArrayList<Header>(lengths));
+
+        if (isNull(compressed.getHeaders(CONTENT_ENCODING))) compressed.addHeader(CONTENT_ENCODING, GZIP);
+
+        return compressed;
     }
 }
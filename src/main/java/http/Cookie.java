@@ -11,8 +11,6 @@ import java.util.Collection;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import static http.util.Asserts.assertNotNull;
 import static http.util.Checks.*;
@@ -50,19 +48,9 @@ public class Cookie extends Attribute<String> {
     public static final String PATH = "Path";
     public static final String VERSION = "Version";
     public static final String SECURE = "Secure";
+    public static final String HTTP_ONLY = "HttpOnly";
 
-    private static final Pattern COOKIE_REGEX = Pattern.compile(
-            "(?i)(?:^|\\s)([^\\s\\(\\)\\[\\]\\{\\}=,\"\"\\\\/?@:;]+)=([^\\s\\(\\)\\[\\]\\{\\}=,\"\"\\\\/?@:;]+)" +
-                    "(?:" +
-                    /**/";\\s+(" + COMMENT + "=[^\\(\\)\\[\\]\\{\\}=,\"\"\\\\/?@:;]+)|" +
-                    /**/";\\s+(" + DOMAIN + "=[^\\s\\(\\)\\[\\]\\{\\}=,\"\"\\\\@:;]+)|" +
-                    /**/";\\s+(" + EXPIRES + "=[^\\(\\)\\[\\]\\{\\}=\"\"\\\\/?@;]+)|" +
-                    /**/";\\s+(" + MAX_AGE + "=\\d+)|" +
-                    /**/";\\s+(" + PATH + "=[^\\s\\(\\)\\[\\]\\{\\}=,\"\"\\\\?@:;]+)|" +
-                    /**/";\\s+(" + VERSION + "=[\\d]+)|" +
-                    /**/";\\s+(" + SECURE + ")|" +
-                    /**/"(this is here to force the Secure capture. Don't know why it's needed.)" +
-                    ")*");
+    private static final String[] ATTRIBUTES = {COMMENT, DOMAIN, EXPIRES, MAX_AGE, PATH, VERSION, SECURE, HTTP_ONLY};
 
 
     private static Date parseDate(String date) {
@@ -86,38 +74,88 @@ public class Cookie extends Attribute<String> {
 
     /**
      * Parse the supplied {@code Cookie} or {@code Set-Cookie} header into the cookies contained within its value.
+     * <p/>
+     * The value is scanned once as a list of pairs separated by a {@code ;} or a {@code ,}, apart from the comma in the
+     * date of an {@code Expires}. A pair whose name is one of the cookie attributes e.g. {@code Path} or
+     * {@code Secure} is applied to the cookie before it, any other pair starts a new cookie. Attribute names are
+     * matched case insensitively and attributes that this class doesn't hold e.g. {@code HttpOnly} are ignored.
      *
      * @param value the value of a {@code Cookie} or {@code Set-Cookie} header that will be parsed into one or more
      *              cookies.
      * @return a collection of all the cookies contained within the header.
-     * @throws IllegalArgumentException if the supplied header is not a {@code Cookie} header.
+     * @throws IllegalArgumentException if the supplied header is null.
      */
     public static Collection<Cookie> parse(String value) {
 
-        Matcher matcher = COOKIE_REGEX.matcher(value);
+        assertNotNull("value", value);
 
         Set<Cookie> cookies = new HashSet<Cookie>();
 
-        Cookie cookie;
+        Cookie cookie = null;
+
+        for (int start = 0, length = value.length(); start < length; ) {
+
+            int equals = value.indexOf('=', start);
+            int end = endOfPair(value, start, equals);
 
-        while (matcher.find()) {
+            if (end < equals) equals = -1;
 
-            cookie = new Cookie(matcher.group(1), matcher.group(2));
+            String name = value.substring(start, -1 == equals ? end : equals).trim();
+            String fieldValue = -1 == equals ? null : value.substring(equals + 1, end).trim();
 
-            String group;
-            for (int i = 3; i < matcher.groupCount(); i++) {
+            start = end + 1;
 
-                group = matcher.group(i);
+            if (0 == name.length() || (isNotNull(cookie) && cookie.setField(name, fieldValue)) || isAttribute(name)) {
 
-                if (null != group) cookie.setFieldByFragment(group);
+                continue;
             }
 
-            cookies.add(cookie);
+            // A name without a value that isn't an attribute can't be a cookie.
+            if (isNull(fieldValue)) continue;
+
+            // The cookie is only added once all its attributes are set because they change its hash code.
+            if (isNotNull(cookie)) cookies.add(cookie);
+
+            cookie = new Cookie(name, fieldValue);
         }
 
+        if (isNotNull(cookie)) cookies.add(cookie);
+
         return cookies;
     }
 
+    /**
+     * @return the index of the separator at the end of the pair that starts at the supplied index, or the length of the
+     *         value if it is the last pair.
+     */
+    private static int endOfPair(String value, int start, int equals) {
+
+        int semicolon = value.indexOf(';', start);
+
+        if (-1 == semicolon) semicolon = value.length();
+
+        int comma = value.indexOf(',', start);
+
+        if (-1 == comma || semicolon < comma) return semicolon;
+
+        // The date of an Expires has a comma after the day of the week, e.g. Expires=Wed, 09 Jun 2021 10:18:14 GMT.
+        if (-1 != equals && equals < comma && EXPIRES.equalsIgnoreCase(value.substring(start, equals).trim())) {
+
+            comma = value.indexOf(',', comma + 1);
+
+            if (-1 == comma || semicolon < comma) return semicolon;
+        }
+
+        return comma;
+    }
+
+    private static boolean isAttribute(String name) {
+
+        for (String attribute : ATTRIBUTES) if (attribute.equalsIgnoreCase(name)) return true;
+
+        return false;
+    }
+
 
     private String comment;
     private String domain;
@@ -361,49 +399,60 @@ public class Cookie extends Attribute<String> {
     }
 
     /**
-     * A private helper method for setting the field of this cookie from the fragment of a cookie string.
+     * Set the field of this cookie that matches the supplied attribute from a cookie string.
      * <p/>
      * Example:
      * <code>
      * Cookie cookie = new Cookie("name", "value");
-     * cookie.setFieldByFragment("Comment=This is a comment;");
+     * cookie.setField("Comment", "This is a comment");
      * "This is a comment".equals(cookie.getComment()); // true
      * </code>
      *
-     * @param fragment the fragment of the cookie string that is going to be used to set a field.
+     * @param name  the name of the attribute.
+     * @param value the value of the attribute, this is null for an attribute without one e.g. {@code Secure}.
+     * @return true if the name is one of the cookie attributes, otherwise false.
      */
-    private void setFieldByFragment(String fragment) {
-
-        assertNotNull("fragment", fragment);
+    private boolean setField(String name, String value) {
 
         // Special case for the "Secure" cookie attribute.
-        if (SECURE.equals(fragment)) {
+        if (SECURE.equalsIgnoreCase(name)) {
 
             setSecure(true);
 
-            return;
+            return true;
         }
 
-        String[] parts = fragment.split("=");
-
-        if (2 > parts.length) {
+        if (!isAttribute(name)) return false;
 
-            throw new IllegalArgumentException(
-                    "The (fragment) variable must have a structure of (\\w+=\\w+) or equal \"Secure\".");
-        }
+        // An attribute without a value is ignored.
+        if (isEmpty(value)) return true;
 
         // Set the appropriate field.
         // Yes this could be done with reflection, but that would be error prone, slow, and over kill.
-        if (parts[0].startsWith(COMMENT)) setComment(parts[1]);
+        if (COMMENT.equalsIgnoreCase(name)) setComment(value);
+
+        if (DOMAIN.equalsIgnoreCase(name)) setDomain(value);
 
-        if (parts[0].startsWith(DOMAIN)) setDomain(parts[1]);
+        if (EXPIRES.equalsIgnoreCase(name)) setExpires(value);
 
-        if (parts[0].startsWith(EXPIRES)) setExpires(parts[1]);
+        if (MAX_AGE.equalsIgnoreCase(name)) setMaxAge(parseNumber(value, maxAge));
 
-        if (parts[0].startsWith(MAX_AGE)) setMaxAge(Integer.parseInt(parts[1]));
+        if (PATH.equalsIgnoreCase(name)) setPath(value);
 
-        if (parts[0].startsWith(PATH)) setPath(parts[1]);
+        if (VERSION.equalsIgnoreCase(name)) setVersion(parseNumber(value, version));
 
-        if (parts[0].startsWith(VERSION)) setVersion(Integer.parseInt(parts[1]));
+        return true;
+    }
+
+    private static int parseNumber(String value, int defaultValue) {
+
+        try {
+
+            return Integer.parseInt(value);
+
+        } catch (NumberFormatException e) {
+
+            return defaultValue;
+        }
     }
 }
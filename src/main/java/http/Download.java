@@ -0,0 +1,347 @@
+package http;
+
+import http.header.Header;
+import http.transport.BodyChunk;
+import http.transport.ChunkedBody;
+import http.transport.RequestTimeoutException;
+import http.transport.TransportException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import static http.util.Checks.isNotNull;
+import static http.util.Checks.isNull;
+import static http.util.IO.closeQuietly;
+
+/**
+ * Downloads the body of a {@code GET} response straight into a file. The body is written to the file as the chunks the
+ * transport read it into, so even a very large body is never held on the heap.
+ * <p/>
+ * If the connection fails part way through the body the download is carried on from the last byte that was written
+ * with a {@code Range} request. The resumed request carries an {@code If-Range} validator from the first response so
+ * that the server sends the whole body again, instead of the rest of a different one, if the resource has changed.
+ * Attempts that don't write anything count towards {@link #MAX_ATTEMPTS}, attempts that make progress don't.
+ *
+ * @author Karl Bennett
+ */
+final class Download {
+
+    /**
+     * The number of consecutive attempts that can fail without writing anything before the download is given up.
+     */
+    static final int MAX_ATTEMPTS = 3;
+
+    private static final int PARTIAL_CONTENT = 206;
+    private static final int RANGE_NOT_SATISFIABLE = 416;
+    private static final int COPY_BUFFER_SIZE = 8192;
+
+
+    private static String header(Response<?> response, String name) {
+
+        for (Header header : response.getHeaders()) {
+
+            if (name.equalsIgnoreCase(header.getName())) return String.valueOf(header.getValue());
+        }
+
+        return null;
+    }
+
+    /**
+     * Parse the start of a {@code Content-Range} e.g. "bytes 100-199/200".
+     */
+    private static long rangeStart(String contentRange) {
+
+        if (isNull(contentRange) || !contentRange.startsWith("bytes ")) return -1;
+
+        int dash = contentRange.indexOf('-');
+
+        try {
+
+            return -1 == dash ? -1 : Long.parseLong(contentRange.substring(6, dash).trim());
+
+        } catch (NumberFormatException e) {
+
+            return -1;
+        }
+    }
+
+    /**
+     * Parse the complete length from a {@code Content-Range} e.g. "bytes *&#47;200".
+     */
+    private static long completeLength(String contentRange) {
+
+        int slash = isNull(contentRange) ? -1 : contentRange.indexOf('/');
+
+        try {
+
+            return -1 == slash ? -1 : Long.parseLong(contentRange.substring(slash + 1).trim());
+
+        } catch (NumberFormatException e) {
+
+            return -1;
+        }
+    }
+
+
+    private final RequestHandler requestHandler;
+    private final Request<InputStream> request;
+    private final File file;
+
+    private long position;
+    private String validator;
+
+
+    /**
+     * Create a new {@code Download}.
+     *
+     * @param requestHandler the handler that will send the requests.
+     * @param request        the request for the resource that is being downloaded.
+     * @param file           the file the body will be written to.
+     * @param resume         true if the existing contents of the file are the start of the body.
+     */
+    Download(RequestHandler requestHandler, Request<InputStream> request, File file, boolean resume) {
+
+        this.requestHandler = requestHandler;
+        this.request = request;
+        this.file = file;
+        this.position = resume ? file.length() : 0;
+    }
+
+
+    /**
+     * Carry out the download.
+     *
+     * @return the last response from the server with the file as its body, or with no body if the server didn't
+     *         send the resource.
+     * @throws TransportException      if the body could not be read within {@link #MAX_ATTEMPTS} attempts.
+     * @throws RequestTimeoutException if an attempt ran out of time, it isn't tried again.
+     * @throws IllegalStateException   if the file could not be written.
+     */
+    Response<File> run() {
+
+        FileChannel channel = open();
+
+        try {
+
+            for (int attempts = 1; ; attempts++) {
+
+                long start = position;
+
+                try {
+
+                    return attempt(channel);
+
+                } catch (RequestTimeoutException e) {
+
+                    // Another attempt would get a fresh total timeout, so running out of time is never retried.
+                    throw e;
+
+                } catch (TransportException e) {
+
+                    // Only attempts that didn't get anywhere count towards giving up.
+                    if (start < position) attempts = 0;
+
+                    if (MAX_ATTEMPTS <= attempts) throw e;
+                }
+            }
+
+        } finally {
+
+            closeQuietly(channel);
+        }
+    }
+
+
+    /**
+     * Send one request for the rest of the body and write whatever arrives to the file.
+     *
+     * @return the response once the download is complete or the server has refused it.
+     * @throws TransportException if the request failed or the body was cut short, another attempt can be made.
+     */
+    private Response<File> attempt(FileChannel channel) {
+
+        Response<InputStream> response = requestHandler.handleRequest(Client.GET, rangeRequest());
+
+        InputStream body = response.getBody();
+
+        try {
+
+            int status = response.getStatus();
+
+            if (PARTIAL_CONTENT == status && position != rangeStart(header(response, "Content-Range"))) {
+
+                throw restart("The server sent a different range of (" + request.getUrl() + ") than was asked for.");
+            }
+
+            if (RANGE_NOT_SATISFIABLE == status && 0 < position) {
+
+                // The file already holds the entire body.
+                if (position == completeLength(header(response, "Content-Range"))) return toFile(response);
+
+                throw restart("The file (" + file + ") is longer than (" + request.getUrl() + ").");
+            }
+
+            if (PARTIAL_CONTENT != status && 200 != status) return new Response<File>(status, response.getHeaders(),
+                    null);
+
+            // A full response means the server either doesn't support ranges or the resource has changed.
+            if (200 == status) position = 0;
+
+            truncate(channel);
+
+            if (200 == status || isNull(validator)) validator = validator(response);
+
+            if (isNotNull(body)) write(body, channel);
+
+            return toFile(response);
+
+        } finally {
+
+            closeQuietly(body);
+        }
+    }
+
+    /**
+     * Forget what has been written so that the next attempt starts again from the beginning of the body.
+     */
+    private TransportException restart(String message) {
+
+        position = 0;
+        validator = null;
+
+        return new TransportException(message);
+    }
+
+    private Request<InputStream> rangeRequest() {
+
+        boolean identity = isNull(request.getHeaders("Accept-Encoding"));
+
+        if (0 == position && !identity) return request;
+
+        Request<InputStream> ranged = new Request<InputStream>(request, request.getBody());
+
+        // A decoded body can't be resumed because the range would be of the encoded body.
+        if (identity) ranged.addHeader("Accept-Encoding", "identity");
+
+        if (0 == position) return ranged;
+
+        ranged.addHeader("Range", "bytes=" + position + "-");
+
+        if (isNotNull(validator)) ranged.addHeader("If-Range", validator);
+
+        return ranged;
+    }
+
+    /**
+     * @return the strong entity tag or last modified date that a resumed request can be made conditional on, or null
+     *         if the response didn't have either.
+     */
+    private static String validator(Response<?> response) {
+
+        String etag = header(response, "ETag");
+
+        if (isNotNull(etag) && !etag.startsWith("W/")) return etag;
+
+        return header(response, "Last-Modified");
+    }
+
+    /**
+     * Write the rest of the body to the file at the current position.
+     *
+     * @throws TransportException      if the body was cut short.
+     * @throws RequestTimeoutException if the body ran out of time.
+     */
+    private void write(InputStream body, FileChannel channel) {
+
+        try {
+
+            if (body instanceof ChunkedBody) {
+
+                writeChunks((ChunkedBody) body, channel);
+
+                return;
+            }
+
+            byte[] bytes = new byte[COPY_BUFFER_SIZE];
+
+            for (int read; -1 != (read = body.read(bytes)); ) write(ByteBuffer.wrap(bytes, 0, read), channel);
+
+        } catch (InterruptedIOException e) {
+
+            // Being interrupted is not a failure that should be retried.
+            Thread.currentThread().interrupt();
+
+            throw new IllegalStateException("Interrupted while downloading to (" + file + ").", e);
+
+        } catch (IOException e) {
+
+            if (e.getCause() instanceof RequestTimeoutException) {
+
+                throw new RequestTimeoutException(e.getCause().getMessage(), e.getCause());
+            }
+
+            throw new TransportException("The response body could not be read.", e);
+        }
+    }
+
+    private void writeChunks(ChunkedBody body, FileChannel channel) throws IOException {
+
+        for (BodyChunk chunk; isNotNull(chunk = body.nextChunk()); ) {
+
+            try {
+
+                write(chunk.getContent(), channel);
+
+            } finally {
+
+                chunk.release();
+            }
+        }
+    }
+
+    private void write(ByteBuffer content, FileChannel channel) {
+
+        try {
+
+            while (content.hasRemaining()) position += channel.write(content, position);
+
+        } catch (IOException e) {
+
+            throw new IllegalStateException("The response body could not be written to (" + file + ").", e);
+        }
+    }
+
+    private void truncate(FileChannel channel) {
+
+        try {
+
+            channel.truncate(position);
+
+        } catch (IOException e) {
+
+            throw new IllegalStateException("The file (" + file + ") could not be truncated.", e);
+        }
+    }
+
+    private FileChannel open() {
+
+        try {
+
+            return new RandomAccessFile(file, "rw").getChannel();
+
+        } catch (IOException e) {
+
+            throw new IllegalStateException("The file (" + file + ") could not be opened.", e);
+        }
+    }
+
+    private Response<File> toFile(Response<?> response) {
+
+        return new Response<File>(response.getStatus(), response.getHeaders(), file);
+    }
+}
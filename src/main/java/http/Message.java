@@ -2,15 +2,19 @@ package http;
 
 import http.attribute.Attribute;
 import http.attribute.AttributeCollectionMap;
-import http.attribute.AttributeHashSetMap;
 import http.attribute.AttributeSetMap;
 import http.header.Header;
+import http.header.HeaderName;
+import http.header.HeaderSetMap;
+import http.header.HeaderTypes;
+import http.header.RawHeaders;
 import http.header.SetCookie;
 
 import java.util.*;
 
 import static http.util.Asserts.assertNotNull;
 import static http.util.Checks.isNotNull;
+import static http.util.Checks.isNull;
 
 /**
  * Represents a generic HTTP message and supplies accessor methods for retrieving and populating the common HTTP message
@@ -77,6 +81,20 @@ public class Message<T> {
 
 
     private final AttributeSetMap<Header> headers;
+
+    /**
+     * The headers that have been asked for by their type, converted once and then kept up to date as headers are added
+     * and removed.
+     */
+    private final Map<Class<? extends Header>, Set<Header>> typedHeaders;
+
+    /**
+     * The headers that were received but haven't been decoded yet, this is null once every header has been decoded.
+     */
+    private RawHeaders rawHeaders;
+    private boolean[] decoded;
+    private int undecoded;
+
     private T body;
 
 
@@ -88,8 +106,11 @@ public class Message<T> {
      */
     public Message(Collection<Header> headers, T body) {
 
-        this.headers = new AttributeHashSetMap<Header>(headers);
+        this.headers = new HeaderSetMap();
+        this.typedHeaders = new HashMap<Class<? extends Header>, Set<Header>>();
         this.body = body;
+
+        addHeaders(headers);
     }
 
     /**
@@ -110,6 +131,24 @@ public class Message<T> {
         this(Collections.<Header>emptySet(), null);
     }
 
+    /**
+     * Replace the headers of this message with headers that are only decoded as they are asked for. Nothing in the
+     * header block is turned into a {@link Header} until either its name is asked for through
+     * {@link #getHeaders(String)} or {@link #getHeaders(Class)}, or all the headers are asked for or changed.
+     *
+     * @param headers the undecoded headers that will be contained in this message.
+     */
+    protected void setRawHeaders(RawHeaders headers) {
+
+        assertNotNull("headers", headers);
+
+        this.headers.clear();
+        this.typedHeaders.clear();
+        this.rawHeaders = 0 == headers.size() ? null : headers;
+        this.decoded = new boolean[headers.size()];
+        this.undecoded = headers.size();
+    }
+
     /**
      * Get all the headers set for the current {@code Message}.
      *
@@ -117,18 +156,22 @@ public class Message<T> {
      */
     public Set<Header> getHeaders() {
 
+        decodeAll();
+
         return getAllValues(headers);
     }
 
     /**
      * Get all instances of the {@link Header} with the supplied name. If no instances exist this method will return
-     * {@code null}.
+     * {@code null}. Header names are matched in any case.
      *
      * @param name the name of the header to retrieve.
      * @return the instances of the requested header if any exists otherwise {@code null}.
      */
     public Set<Header> getHeaders(String name) {
 
+        decode(name);
+
         return headers.get(name);
     }
 
@@ -136,14 +179,51 @@ public class Message<T> {
      * Get all the instances of the {@link Header} of the supplied type. This will return any headers that can be
      * converted into any of the {@link http.header} types. e.g. any "Set-Cookie" headers could be retrieved as
      * {@link SetCookie} instances.
+     * <p/>
+     * The headers of a type are converted the first time they are asked for and are then kept up to date as headers
+     * are added, so asking again doesn't convert or scan anything. Asking for a sub class e.g.
+     * {@link http.header.JsonContentType} returns only the headers of the registered type that are of that class.
      *
      * @param headerType the type of header to retrieve.
      * @param <T>        the type fo the retrieved header.
      * @return the instances of the requested header types if any exists otherwise {@code null}.
      */
+    @SuppressWarnings("unchecked")
     public <T extends Header> Set<T> getHeaders(Class<T> headerType) {
 
-        return null;
+        assertNotNull("headerType", headerType);
+
+        Class<? extends Header> type = HeaderTypes.registeredType(headerType);
+
+        if (isNull(type)) return null;
+
+        Set<Header> typed = typedHeaders.get(type);
+
+        if (isNull(typed)) {
+
+            typed = new HashSet<Header>();
+
+            String name = HeaderTypes.nameOf(type);
+
+            decode(name);
+
+            Set<Header> named = headers.get(name);
+
+            if (isNotNull(named)) for (Header header : named) typed.addAll(HeaderTypes.convert(type, header));
+
+            typedHeaders.put(type, typed);
+        }
+
+        if (type != headerType) {
+
+            Set<T> subTyped = new HashSet<T>();
+
+            for (Header header : typed) if (headerType.isInstance(header)) subTyped.add((T) header);
+
+            return subTyped.isEmpty() ? null : subTyped;
+        }
+
+        return typed.isEmpty() ? null : Collections.unmodifiableSet((Set<T>) (Set) typed);
     }
 
     /**
@@ -154,6 +234,9 @@ public class Message<T> {
     public <H extends Header> void setHeaders(Collection<H> headers) {
 
         this.headers.clear();
+        this.typedHeaders.clear();
+        this.rawHeaders = null;
+        this.decoded = null;
 
         addHeaders(headers);
     }
@@ -178,7 +261,13 @@ public class Message<T> {
      */
     public void addHeader(Header header) {
 
-        if (isNotNull(header)) headers.add(header);
+        if (isNull(header) || !headers.add(header)) return;
+
+        Class<? extends Header> type = HeaderTypes.typeOf(header.getName());
+
+        Set<Header> typed = isNull(type) ? null : typedHeaders.get(type);
+
+        if (isNotNull(typed)) typed.addAll(HeaderTypes.convert(type, header));
     }
 
     /**
@@ -214,7 +303,17 @@ public class Message<T> {
      */
     public Header removeHeader(Header header) {
 
-        return remove(headers, header);
+        if (isNull(header)) return null;
+
+        decode(header.getName());
+
+        Header removed = remove(headers, header);
+
+        // Another header could still convert to the same typed header so the type is converted again when it's next
+        // asked for.
+        if (isNotNull(removed)) typedHeaders.remove(HeaderTypes.typeOf(removed.getName()));
+
+        return removed;
     }
 
     /**
@@ -225,7 +324,15 @@ public class Message<T> {
      */
     public Collection<Header> removeHeaders(Collection<Header> headers) {
 
-        return removeAll(this.headers, headers);
+        assertNotNull("headers", headers);
+
+        for (Header header : headers) decode(header.getName());
+
+        Collection<Header> removed = removeAll(this.headers, headers);
+
+        for (Header header : removed) typedHeaders.remove(HeaderTypes.typeOf(header.getName()));
+
+        return removed;
     }
 
     /**
@@ -247,4 +354,46 @@ public class Message<T> {
 
         this.body = body;
     }
+
+
+    /**
+     * Decode every raw header with the supplied name so that it can be found in the header map.
+     */
+    private void decode(String name) {
+
+        if (isNull(rawHeaders) || isNull(name) || 0 == name.length()) return;
+
+        HeaderName headerName = HeaderName.of(name);
+
+        for (int i = 0; isNotNull(rawHeaders) && i < decoded.length; i++) {
+
+            if (!decoded[i] && rawHeaders.hasName(i, headerName)) decode(i);
+        }
+    }
+
+    private void decodeAll() {
+
+        if (isNull(rawHeaders)) return;
+
+        for (int i = 0; isNotNull(rawHeaders) && i < decoded.length; i++) {
+
+            if (!decoded[i]) decode(i);
+        }
+    }
+
+    private void decode(int position) {
+
+        RawHeaders raw = rawHeaders;
+
+        decoded[position] = true;
+
+        // Drop the raw headers as soon as they have all been decoded.
+        if (0 == --undecoded) {
+
+            rawHeaders = null;
+            decoded = null;
+        }
+
+        headers.add(raw.getHeader(position));
+    }
 }
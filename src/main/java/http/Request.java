@@ -38,6 +38,7 @@ public class Request<T> extends Message<T> {
 
     private final URL url;
     private AbstractAttributeCollectionMap<Parameter<String>, Set<Parameter<String>>> parameters;
+    private Timeouts timeouts;
 
     /**
      * Create a new {@code Request} that will be sent to the {@code HTTP} server at the supplied {@link URL}.
@@ -146,6 +147,35 @@ public class Request<T> extends Message<T> {
         this.parameters.addAll(Parameter.parse(url.getQuery()));
     }
 
+    /**
+     * Create a copy of the supplied {@code Request} with a new body. The copy has the same {@link URL}, headers,
+     * parameters, and timeouts as the original, changing its headers or parameters doesn't change the original.
+     *
+     * @param request the request to copy.
+     * @param body    the body of the copy.
+     */
+    public Request(Request<?> request, T body) {
+
+        this(request.getUrl(), request, body);
+    }
+
+    /**
+     * Create a copy of the supplied {@code Request} that will be sent to a different {@link URL} with a new body. The
+     * copy has the same headers and timeouts as the original, and the parameters of the supplied {@code URL}.
+     *
+     * @param url     a {@code java.net.URL} representing the URL for the {@code HTTP} server.
+     * @param request the request to copy.
+     * @param body    the body of the copy.
+     */
+    public Request(URL url, Request<?> request, T body) {
+
+        this(url, request.getHeaders(), Collections.<Parameter<String>>emptySet());
+
+        setBody(body);
+
+        this.timeouts = request.getTimeouts();
+    }
+
 
     /**
      * @return the url for this request.
@@ -161,6 +191,24 @@ public class Request<T> extends Message<T> {
         return url;
     }
 
+    /**
+     * @return the timeouts for this request, or null if it uses the timeouts of the client.
+     */
+    public Timeouts getTimeouts() {
+
+        return timeouts;
+    }
+
+    /**
+     * Set the timeouts for this request, any timeout that is left unset is taken from the client that sends it.
+     *
+     * @param timeouts the timeouts for the request, or null to use the timeouts of the client.
+     */
+    public void setTimeouts(Timeouts timeouts) {
+
+        this.timeouts = timeouts;
+    }
+
     /**
      * Get all the parameters set for the current {@code Message}.
      *
@@ -3,11 +3,13 @@ package http;
 import java.io.InputStream;
 
 /**
- * The handler interface that must be implemented to provide a working {@link Client} backend.
+ * The handler interface that must be implemented to provide a working {@link Client} backend. The default backend is
+ * the non-blocking {@link http.transport.NioRequestHandler}, an alternative can be supplied through
+ * {@link Client#Client(RequestHandler)}.
  *
  * @author Karl Bennett
  */
-interface RequestHandler {
+public interface RequestHandler {
 
     /**
      * This is called by every {@link Client} request method and must be implemented to provide that actual backend
@@ -1,6 +1,7 @@
 package http;
 
 import http.header.Header;
+import http.header.RawHeaders;
 
 import java.util.Collection;
 import java.util.Collections;
@@ -62,6 +63,21 @@ public class Response<T> extends Message<T> {
         this.status = status;
     }
 
+    /**
+     * Create a {@code Response} with the supplied HTTP status code, undecoded headers, and body. The headers are only
+     * decoded as they are asked for.
+     *
+     * @param status  the status code for the response.
+     * @param headers the undecoded headers for the response.
+     * @param body    the body of te response.
+     */
+    public Response(int status, RawHeaders headers, T body) {
+
+        this(status, body);
+
+        setRawHeaders(headers);
+    }
+
     /**
      * @return the status code for the response.
      */
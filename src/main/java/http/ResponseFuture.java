@@ -0,0 +1,255 @@
+package http;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static http.util.Asserts.assertNotNull;
+import static http.util.Checks.isNotNull;
+
+/**
+ * The result of an asynchronous request. The future is completed by the {@link RequestHandler} that carries out the
+ * request, any {@link Callback}s that have been added are then run on the futures {@link Executor}.
+ * <p/>
+ * Cancelling the future before it is done tells the {@code RequestHandler} to abandon the request. Once the future is
+ * done cancelling it has no effect, the response body must then be closed instead.
+ *
+ * @author Karl Bennett
+ */
+public class ResponseFuture<T> implements Future<T> {
+
+    private static final Executor DIRECT_EXECUTOR = new Executor() {
+
+        @Override
+        public void execute(Runnable command) {
+
+            command.run();
+        }
+    };
+
+
+    private final Executor executor;
+    private final List<Callback<? super T>> callbacks;
+
+    private boolean done;
+    private boolean cancelled;
+    private T result;
+    private Throwable failure;
+
+
+    /**
+     * Create a new {@code ResponseFuture} that runs its callbacks on the thread that completes it.
+     */
+    public ResponseFuture() {
+
+        this(DIRECT_EXECUTOR);
+    }
+
+    /**
+     * Create a new {@code ResponseFuture} that runs its callbacks on the supplied {@link Executor}.
+     *
+     * @param executor the executor for the callbacks.
+     */
+    public ResponseFuture(Executor executor) {
+
+        assertNotNull("executor", executor);
+
+        this.executor = executor;
+        this.callbacks = new ArrayList<Callback<? super T>>();
+    }
+
+
+    /**
+     * Add a callback that will be run once the future is done. If the future is already done the callback is
+     * scheduled straight away.
+     *
+     * @param callback the callback to run.
+     */
+    public void addCallback(Callback<? super T> callback) {
+
+        assertNotNull("callback", callback);
+
+        synchronized (this) {
+
+            if (!done) {
+
+                callbacks.add(callback);
+
+                return;
+            }
+        }
+
+        notify(callback);
+    }
+
+    /**
+     * Complete the future with a successful result.
+     *
+     * @param result the result of the request.
+     * @return true if the future was completed, false if it was already done.
+     */
+    public boolean complete(T result) {
+
+        synchronized (this) {
+
+            if (done) return false;
+
+            this.result = result;
+
+            done();
+        }
+
+        notifyCallbacks();
+
+        return true;
+    }
+
+    /**
+     * Complete the future with a failure.
+     *
+     * @param cause the reason the request failed.
+     * @return true if the future was completed, false if it was already done.
+     */
+    public boolean fail(Throwable cause) {
+
+        assertNotNull("cause", cause);
+
+        synchronized (this) {
+
+            if (done) return false;
+
+            this.failure = cause;
+
+            done();
+        }
+
+        notifyCallbacks();
+
+        return true;
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+
+        synchronized (this) {
+
+            if (done) return false;
+
+            this.cancelled = true;
+            this.failure = new CancellationException("The request was cancelled.");
+
+            done();
+        }
+
+        notifyCallbacks();
+
+        return true;
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+
+        return cancelled;
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+
+        return done;
+    }
+
+    @Override
+    public synchronized T get() throws InterruptedException, ExecutionException {
+
+        while (!done) wait();
+
+        return result();
+    }
+
+    @Override
+    public synchronized T get(long timeout, TimeUnit unit)
+            throws InterruptedException, ExecutionException, TimeoutException {
+
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+
+        while (!done) {
+
+            long remaining = deadline - System.nanoTime();
+
+            if (0 >= remaining) throw new TimeoutException("The request did not complete in time.");
+
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+
+        return result();
+    }
+
+
+    private void done() {
+
+        done = true;
+
+        notifyAll();
+    }
+
+    private T result() throws ExecutionException {
+
+        if (cancelled) throw (CancellationException) failure;
+
+        if (isNotNull(failure)) throw new ExecutionException(failure);
+
+        return result;
+    }
+
+    private void notifyCallbacks() {
+
+        List<Callback<? super T>> notified;
+
+        synchronized (this) {
+
+            notified = new ArrayList<Callback<? super T>>(callbacks);
+
+            callbacks.clear();
+        }
+
+        for (Callback<? super T> callback : notified) notify(callback);
+    }
+
+    private void notify(final Callback<? super T> callback) {
+
+        final T notifiedResult;
+        final Throwable notifiedFailure;
+
+        synchronized (this) {
+
+            notifiedResult = result;
+            notifiedFailure = failure;
+        }
+
+        Runnable notification = new Runnable() {
+
+            @Override
+            public void run() {
+
+                if (isNotNull(notifiedFailure)) callback.failed(notifiedFailure);
+                else callback.completed(notifiedResult);
+            }
+        };
+
+        try {
+
+            executor.execute(notification);
+
+        } catch (RejectedExecutionException e) {
+
+            // The executor has been shut down so there's nowhere else for the callback to go.
+            notification.run();
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package http;
+
+import static http.util.Checks.isNull;
+
+/**
+ * The time limits for a request, in milliseconds. A {@link Client} has a set of timeouts that every request uses and a
+ * {@link Request} can have its own that override them one by one, any timeout that a request leaves unset is taken
+ * from the client.
+ * <p/>
+ * Each phase of a request can be limited on its own. The connect timeout limits opening the socket to the server and
+ * the {@code TLS} handshake timeout the handshake of a new {@code https} connection. The first byte timeout runs from
+ * when the request starts being sent until the start of the response arrives, and the idle read timeout is the longest
+ * the response can then go without any more of it arriving, time spent waiting for the caller to read the body doesn't
+ * count. The total timeout runs from when the request is sent until the whole response has arrived.
+ * <p/>
+ * A request can also be given an absolute deadline, e.g. the deadline of the inbound request it is being made for. A
+ * request whose deadline has already passed is never sent, and one that is still in flight when its deadline passes
+ * fails just as if its total timeout had passed.
+ * <p/>
+ * A timeout or deadline of {@link #NONE} means there is no limit, even if the client has one, and {@link #UNSET} means
+ * it should be taken from the client.
+ *
+ * @author Karl Bennett
+ */
+public class Timeouts {
+
+    /**
+     * The value of a timeout that should be taken from the client.
+     */
+    public static final long UNSET = -1;
+
+    /**
+     * The value of a timeout that has no limit.
+     */
+    public static final long NONE = 0;
+
+
+    private static long inherit(long timeout, long defaultTimeout) {
+
+        return UNSET == timeout ? defaultTimeout : timeout;
+    }
+
+    private static long check(String name, long timeout) {
+
+        if (UNSET > timeout) {
+
+            throw new IllegalArgumentException("The (" + name + ") variable must not be less than -1.");
+        }
+
+        return timeout;
+    }
+
+
+    private long connectTimeout;
+    private long tlsHandshakeTimeout;
+    private long firstByteTimeout;
+    private long idleReadTimeout;
+    private long totalTimeout;
+    private long deadline;
+
+
+    /**
+     * Create a new {@code Timeouts} with every timeout unset.
+     */
+    public Timeouts() {
+
+        this.connectTimeout = UNSET;
+        this.tlsHandshakeTimeout = UNSET;
+        this.firstByteTimeout = UNSET;
+        this.idleReadTimeout = UNSET;
+        this.totalTimeout = UNSET;
+        this.deadline = UNSET;
+    }
+
+    /**
+     * Create a copy of the supplied {@code Timeouts}.
+     *
+     * @param timeouts the timeouts to copy.
+     */
+    public Timeouts(Timeouts timeouts) {
+
+        this.connectTimeout = timeouts.connectTimeout;
+        this.tlsHandshakeTimeout = timeouts.tlsHandshakeTimeout;
+        this.firstByteTimeout = timeouts.firstByteTimeout;
+        this.idleReadTimeout = timeouts.idleReadTimeout;
+        this.totalTimeout = timeouts.totalTimeout;
+        this.deadline = timeouts.deadline;
+    }
+
+
+    /**
+     * @return the number of milliseconds opening the socket to the server can take, {@link #NONE} if there is no
+     *         limit, or {@link #UNSET} if it should be taken from the client.
+     */
+    public long getConnectTimeout() {
+
+        return connectTimeout;
+    }
+
+    /**
+     * Set the number of milliseconds opening the socket to the server can take, across every address of the server
+     * that is tried.
+     *
+     * @param connectTimeout the timeout in milliseconds, {@link #NONE} for no limit, or {@link #UNSET} to take it from
+     *                       the client.
+     * @throws IllegalArgumentException if the timeout is less than {@link #UNSET}.
+     */
+    public void setConnectTimeout(long connectTimeout) {
+
+        this.connectTimeout = check("connectTimeout", connectTimeout);
+    }
+
+    /**
+     * @return the number of milliseconds the {@code TLS} handshake of a new {@code https} connection can take,
+     *         {@link #NONE} if there is no limit, or {@link #UNSET} if it should be taken from the client.
+     */
+    public long getTlsHandshakeTimeout() {
+
+        return tlsHandshakeTimeout;
+    }
+
+    /**
+     * Set the number of milliseconds the {@code TLS} handshake of a new {@code https} connection can take.
+     *
+     * @param tlsHandshakeTimeout the timeout in milliseconds, {@link #NONE} for no limit, or {@link #UNSET} to take it
+     *                            from the client.
+     * @throws IllegalArgumentException if the timeout is less than {@link #UNSET}.
+     */
+    public void setTlsHandshakeTimeout(long tlsHandshakeTimeout) {
+
+        this.tlsHandshakeTimeout = check("tlsHandshakeTimeout", tlsHandshakeTimeout);
+    }
+
+    /**
+     * @return the number of milliseconds from when the request starts being sent until the start of the response has
+     *         to arrive, {@link #NONE} if there is no limit, or {@link #UNSET} if it should be taken from the client.
+     */
+    public long getFirstByteTimeout() {
+
+        return firstByteTimeout;
+    }
+
+    /**
+     * Set the number of milliseconds from when the request starts being sent until the start of the response has to
+     * arrive.
+     *
+     * @param firstByteTimeout the timeout in milliseconds, {@link #NONE} for no limit, or {@link #UNSET} to take it
+     *                         from the client.
+     * @throws IllegalArgumentException if the timeout is less than {@link #UNSET}.
+     */
+    public void setFirstByteTimeout(long firstByteTimeout) {
+
+        this.firstByteTimeout = check("firstByteTimeout", firstByteTimeout);
+    }
+
+    /**
+     * @return the most milliseconds the response can go without any more of it arriving, {@link #NONE} if there is no
+     *         limit, or {@link #UNSET} if it should be taken from the client.
+     */
+    public long getIdleReadTimeout() {
+
+        return idleReadTimeout;
+    }
+
+    /**
+     * Set the most milliseconds the response can go without any more of it arriving, time spent waiting for the
+     * caller to read the body doesn't count.
+     *
+     * @param idleReadTimeout the timeout in milliseconds, {@link #NONE} for no limit, or {@link #UNSET} to take it
+     *                        from the client.
+     * @throws IllegalArgumentException if the timeout is less than {@link #UNSET}.
+     */
+    public void setIdleReadTimeout(long idleReadTimeout) {
+
+        this.idleReadTimeout = check("idleReadTimeout", idleReadTimeout);
+    }
+
+    /**
+     * @return the number of milliseconds from when the request is sent until the whole response has to have arrived,
+     *         {@link #NONE} if there is no limit, or {@link #UNSET} if it should be taken from the client.
+     */
+    public long getTotalTimeout() {
+
+        return totalTimeout;
+    }
+
+    /**
+     * Set the number of milliseconds from when the request is sent until the whole response has to have arrived.
+     *
+     * @param totalTimeout the timeout in milliseconds, {@link #NONE} for no limit, or {@link #UNSET} to take it from
+     *                     the client.
+     * @throws IllegalArgumentException if the timeout is less than {@link #UNSET}.
+     */
+    public void setTotalTimeout(long totalTimeout) {
+
+        this.totalTimeout = check("totalTimeout", totalTimeout);
+    }
+
+    /**
+     * @return the time the request has to have completed by in milliseconds since the epoch, {@link #NONE} if it has
+     *         no deadline, or {@link #UNSET} if the deadline should be taken from the client.
+     */
+    public long getDeadline() {
+
+        return deadline;
+    }
+
+    /**
+     * Set the time the request has to have completed by.
+     *
+     * @param deadline the deadline in milliseconds since the epoch, {@link #NONE} for no deadline even if the client
+     *                 has one, or {@link #UNSET} to take the deadline from the client.
+     * @throws IllegalArgumentException if the deadline is less than {@link #UNSET}.
+     */
+    public void setDeadline(long deadline) {
+
+        this.deadline = check("deadline", deadline);
+    }
+
+    /**
+     * @return true if there is a deadline.
+     */
+    public boolean hasDeadline() {
+
+        return NONE < deadline;
+    }
+
+    /**
+     * @return true if there is a deadline and it has passed.
+     */
+    public boolean isExpired() {
+
+        return hasDeadline() && deadline <= System.currentTimeMillis();
+    }
+
+    /**
+     * Create the timeouts that a request should actually use, any timeout that is unset in these timeouts is taken
+     * from the supplied defaults.
+     *
+     * @param defaults the timeouts of the client, or null if it has none.
+     * @return new timeouts with the unset timeouts filled in.
+     */
+    public Timeouts withDefaults(Timeouts defaults) {
+
+        Timeouts merged = new Timeouts(this);
+
+        if (isNull(defaults)) return merged;
+
+        merged.connectTimeout = inherit(connectTimeout, defaults.connectTimeout);
+        merged.tlsHandshakeTimeout = inherit(tlsHandshakeTimeout, defaults.tlsHandshakeTimeout);
+        merged.firstByteTimeout = inherit(firstByteTimeout, defaults.firstByteTimeout);
+        merged.idleReadTimeout = inherit(idleReadTimeout, defaults.idleReadTimeout);
+        merged.totalTimeout = inherit(totalTimeout, defaults.totalTimeout);
+        merged.deadline = inherit(deadline, defaults.deadline);
+
+        return merged;
+    }
+}
@@ -34,11 +34,12 @@ public class Attribute<T> {
         @Override
         protected void next(String part) {
 
-            String[] pair = part.split(operator);
+            // Only the first operator separates the name from the value, the value can contain the operator too.
+            int index = part.indexOf(operator);
 
-            if (2 == pair.length) {
+            if (0 <= index && part.length() > index + operator.length()) {
 
-                attributes.add(nextPair(pair[0], pair[1]));
+                attributes.add(nextPair(part.substring(0, index), part.substring(index + operator.length())));
 
                 return;
             }
@@ -0,0 +1,717 @@
+package http.attribute;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import static http.util.Asserts.assertNotNull;
+import static http.util.Checks.isNotNull;
+import static http.util.Checks.isNull;
+
+/**
+ * A compact {@link AttributeSetMap} that holds its attributes in two flat parallel arrays, one of name keys and one of
+ * attributes, in the order they were added. Unlike the {@link AttributeHashSetMap} there is no hash map entry or
+ * {@link java.util.HashSet} for each name, so a message with a handful of attributes costs a couple of small arrays.
+ * <p/>
+ * Small maps are searched with a linear scan of the keys. Once the map holds more than {@link #INDEX_THRESHOLD}
+ * attributes an open addressed hash index of the first slot of each name, with a chain to the next slot of the same
+ * name, is built so that lookups stay constant time. A sub class can also give the keys of well known names an ordinal
+ * through {@link #ordinal(Object)}, the first slot of each of those is kept in an array indexed by the ordinal so
+ * finding one is a single array access.
+ * <p/>
+ * The sets returned by {@link #get(Object)} are live views of the slots for a name, like the sets of the
+ * {@code AttributeHashSetMap} they can be added to and removed from.
+ *
+ * @author Karl Bennett
+ */
+public class AttributeArraySetMap<A extends Attribute> extends AbstractMap<String, Set<A>> implements
+        AttributeSetMap<A> {
+
+    /**
+     * The number of attributes above which the map builds a hash index instead of scanning its keys.
+     */
+    public static final int INDEX_THRESHOLD = 8;
+
+    private static final int INITIAL_CAPACITY = 8;
+
+
+    private static int hash(Object key) {
+
+        int hash = key.hashCode();
+
+        return hash ^ (hash >>> 16);
+    }
+
+
+    private Object[] keys;
+    private Object[] attributes;
+    private int count;
+    private int names;
+
+    /**
+     * For each ordinal one more than the first slot of its name, or zero if the name isn't in the map.
+     */
+    private final int[] known;
+
+    /**
+     * The hash index, each entry is one more than the first slot of a name so that zero can mean empty.
+     */
+    private int[] index;
+
+    /**
+     * For each slot one more than the next slot with the same name, or zero if it is the last one.
+     */
+    private int[] next;
+
+
+    /**
+     * Create a new empty {@code AttributeArraySetMap}.
+     */
+    public AttributeArraySetMap() {
+
+        this(0);
+    }
+
+    /**
+     * Create a new empty {@code AttributeArraySetMap} whose keys can have an {@link #ordinal(Object)} below the
+     * supplied count.
+     *
+     * @param ordinals the number of ordinals the keys of well known names can have.
+     */
+    protected AttributeArraySetMap(int ordinals) {
+
+        this.keys = new Object[INITIAL_CAPACITY];
+        this.attributes = new Object[INITIAL_CAPACITY];
+        this.known = new int[ordinals];
+    }
+
+    /**
+     * Create a new {@code AttributeArraySetMap} that is populated with the attributes in the supplied
+     * {@link Collection}.
+     *
+     * @param attributes the attributes that will be contained in the new map.
+     */
+    public AttributeArraySetMap(Collection<A> attributes) {
+
+        this();
+
+        addAll(attributes);
+    }
+
+
+    /**
+     * Override this method to change how attribute names are matched. The returned keys are compared with
+     * {@link Object#equals(Object)} and their {@link Object#toString()} is used as the name in the maps entries. By
+     * default the name itself is the key so names are case sensitive.
+     *
+     * @param name the name of an attribute.
+     * @return the key that the name is stored under.
+     */
+    protected Object key(String name) {
+
+        return name;
+    }
+
+    /**
+     * Override this method along with {@link #key(String)} so that names can be looked up without creating a key for
+     * them.
+     *
+     * @param key  a key that is in the map.
+     * @param name the name that is being looked up.
+     * @return true if the key is the one {@link #key(String)} returns for the name.
+     */
+    protected boolean matches(Object key, String name) {
+
+        return key.equals(name);
+    }
+
+    /**
+     * Override this method along with {@link #key(String)} so that names can be looked up without creating a key for
+     * them.
+     *
+     * @param name the name that is being looked up.
+     * @return the hash code of the key that {@link #key(String)} returns for the name.
+     */
+    protected int hashCode(String name) {
+
+        return name.hashCode();
+    }
+
+    /**
+     * Override this method to give the keys of well known names a slot of their own, by default no key has one.
+     *
+     * @param key a key returned by {@link #key(String)}.
+     * @return the ordinal of the key below the number given to {@link #AttributeArraySetMap(int)}, or -1 if it doesn't
+     *         have one.
+     */
+    protected int ordinal(Object key) {
+
+        return -1;
+    }
+
+    /**
+     * Override this method along with {@link #ordinal(Object)} so that well known names can be looked up without
+     * creating a key for them.
+     *
+     * @param name the name that is being looked up.
+     * @return the ordinal of the key that {@link #key(String)} returns for the name, or -1 if it doesn't have one.
+     */
+    protected int ordinal(String name) {
+
+        return -1;
+    }
+
+
+    @Override
+    public int size() {
+
+        return names;
+    }
+
+    @Override
+    public boolean isEmpty() {
+
+        return 0 == names;
+    }
+
+    @Override
+    public boolean containsKey(Object name) {
+
+        return name instanceof String && -1 != first((String) name);
+    }
+
+    /**
+     * Get all the attributes with the supplied name.
+     *
+     * @param name the name of the attributes.
+     * @return a live view of the attributes with the name, or null if there aren't any.
+     */
+    @Override
+    public Set<A> get(Object name) {
+
+        if (!(name instanceof String)) return null;
+
+        int first = first((String) name);
+
+        return -1 == first ? null : new NamedSet(keys[first]);
+    }
+
+    /**
+     * Replace all the attributes mapped to the supplied name with the supplied attributes.
+     *
+     * @param name       the name to map the attributes to.
+     * @param attributes the new attributes.
+     * @return a copy of the attributes that were replaced, or null if there weren't any.
+     */
+    @Override
+    public Set<A> put(String name, Set<A> attributes) {
+
+        assertNotNull("attributes", attributes);
+
+        Object key = key(name);
+
+        // Copy the new attributes first in case they are the view of the very slots that are about to be removed.
+        Object[] added = attributes.toArray();
+
+        Set<A> previous = removeKey(key);
+
+        for (Object attribute : added) add(key, attribute);
+
+        return previous;
+    }
+
+    /**
+     * Remove all the attributes with the supplied name.
+     *
+     * @param name the name of the attributes.
+     * @return the attributes that were removed, or null if there weren't any.
+     */
+    @Override
+    public Set<A> remove(Object name) {
+
+        int first = name instanceof String ? first((String) name) : -1;
+
+        return -1 == first ? null : removeKey(keys[first]);
+    }
+
+    @Override
+    public void clear() {
+
+        for (int i = 0; i < count; i++) {
+
+            keys[i] = null;
+            attributes[i] = null;
+        }
+
+        count = 0;
+        names = 0;
+        index = null;
+        next = null;
+
+        Arrays.fill(known, 0);
+    }
+
+    @Override
+    public Set<Entry<String, Set<A>>> entrySet() {
+
+        return new AbstractSet<Entry<String, Set<A>>>() {
+
+            @Override
+            public Iterator<Entry<String, Set<A>>> iterator() {
+
+                return new EntryIterator();
+            }
+
+            @Override
+            public int size() {
+
+                return names;
+            }
+        };
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean add(A attribute) {
+
+        assertNotNull("attribute", attribute);
+
+        return add(key(attribute.getName()), attribute);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean addAll(Collection<A> attributes) {
+
+        assertNotNull("attributes", attributes);
+
+        boolean mutated = false;
+
+        for (A attribute : attributes) {
+
+            if (add(attribute)) mutated = true;
+        }
+
+        return mutated;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean remove(A attribute) {
+
+        if (isNull(attribute)) return false;
+
+        Object key = key(attribute.getName());
+
+        for (int slot = first(key); -1 != slot; slot = following(slot)) {
+
+            if (attribute.equals(attributes[slot])) {
+
+                removeSlot(slot);
+
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean removeAll(Collection<A> attributes) {
+
+        assertNotNull("attributes", attributes);
+
+        boolean mutated = false;
+
+        for (A attribute : attributes) {
+
+            if (remove(attribute)) mutated = true;
+        }
+
+        return mutated;
+    }
+
+
+    /**
+     * @return the first slot with the supplied key, or -1 if there isn't one.
+     */
+    private int first(Object key) {
+
+        int ordinal = ordinal(key);
+
+        if (0 <= ordinal) return known[ordinal] - 1;
+
+        if (isNull(index)) {
+
+            for (int i = 0; i < count; i++) {
+
+                if (key.equals(keys[i])) return i;
+            }
+
+            return -1;
+        }
+
+        int mask = index.length - 1;
+
+        for (int i = hash(key) & mask; 0 != index[i]; i = (i + 1) & mask) {
+
+            if (key.equals(keys[index[i] - 1])) return index[i] - 1;
+        }
+
+        return -1;
+    }
+
+    /**
+     * @return the first slot with the key of the supplied name, or -1 if there isn't one.
+     */
+    private int first(String name) {
+
+        int ordinal = ordinal(name);
+
+        if (0 <= ordinal) return known[ordinal] - 1;
+
+        if (isNull(index)) {
+
+            for (int i = 0; i < count; i++) {
+
+                if (matches(keys[i], name)) return i;
+            }
+
+            return -1;
+        }
+
+        int hash = hashCode(name);
+        int mask = index.length - 1;
+
+        for (int i = (hash ^ (hash >>> 16)) & mask; 0 != index[i]; i = (i + 1) & mask) {
+
+            if (matches(keys[index[i] - 1], name)) return index[i] - 1;
+        }
+
+        return -1;
+    }
+
+    /**
+     * @return the next slot with the same key as the supplied slot, or -1 if there isn't one.
+     */
+    private int following(int slot) {
+
+        if (isNotNull(index)) return next[slot] - 1;
+
+        Object key = keys[slot];
+
+        for (int i = slot + 1; i < count; i++) {
+
+            if (key.equals(keys[i])) return i;
+        }
+
+        return -1;
+    }
+
+    private boolean add(Object key, Object attribute) {
+
+        int first = first(key);
+        int last = -1;
+
+        for (int slot = first; -1 != slot; slot = following(slot)) {
+
+            if (attribute.equals(attributes[slot])) return false;
+
+            last = slot;
+        }
+
+        if (count == keys.length) grow();
+
+        // Share the key of the first slot so that the scans can mostly compare by identity.
+        keys[count] = -1 == first ? key : keys[first];
+        attributes[count] = attribute;
+
+        if (-1 == first) {
+
+            names++;
+
+            int ordinal = ordinal(key);
+
+            if (0 <= ordinal) known[ordinal] = count + 1;
+        }
+
+        count++;
+
+        if (isNotNull(index)) {
+
+            if (next.length < count || index.length < count * 2) {
+
+                buildIndex();
+
+            } else if (-1 == last) {
+
+                // A name with an ordinal is never looked up through the index.
+                if (0 > ordinal(key)) insert(count - 1);
+
+            } else {
+
+                next[last] = count;
+            }
+
+        } else if (INDEX_THRESHOLD < count) {
+
+            buildIndex();
+        }
+
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Set<A> removeKey(Object key) {
+
+        int first = first(key);
+
+        if (-1 == first) return null;
+
+        Set<A> removed = new LinkedHashSet<A>();
+
+        // Slots are shifted down as they are removed so collect and remove from the last one backwards.
+        int[] slots = new int[count];
+        int found = 0;
+
+        for (int slot = first; -1 != slot; slot = following(slot)) slots[found++] = slot;
+
+        for (int i = 0; i < found; i++) removed.add((A) attributes[slots[i]]);
+
+        for (int i = found - 1; 0 <= i; i--) removeSlot(slots[i]);
+
+        return removed;
+    }
+
+    private void removeSlot(int slot) {
+
+        Object key = keys[slot];
+
+        System.arraycopy(keys, slot + 1, keys, slot, count - slot - 1);
+        System.arraycopy(attributes, slot + 1, attributes, slot, count - slot - 1);
+
+        count--;
+        keys[count] = null;
+        attributes[count] = null;
+
+        if (0 < known.length) buildKnown();
+
+        // Removing is rare so the index is simply rebuilt, or dropped once the map is small again.
+        if (INDEX_THRESHOLD < count) {
+
+            buildIndex();
+
+        } else {
+
+            index = null;
+            next = null;
+        }
+
+        if (-1 == first(key)) names--;
+    }
+
+    private void grow() {
+
+        Object[] grownKeys = new Object[keys.length * 2];
+        Object[] grownAttributes = new Object[keys.length * 2];
+
+        System.arraycopy(keys, 0, grownKeys, 0, count);
+        System.arraycopy(attributes, 0, grownAttributes, 0, count);
+
+        keys = grownKeys;
+        attributes = grownAttributes;
+    }
+
+    private void buildKnown() {
+
+        Arrays.fill(known, 0);
+
+        for (int slot = count - 1; 0 <= slot; slot--) {
+
+            int ordinal = ordinal(keys[slot]);
+
+            if (0 <= ordinal) known[ordinal] = slot + 1;
+        }
+    }
+
+    private void buildIndex() {
+
+        index = new int[Integer.highestOneBit(keys.length) * 4];
+        next = new int[keys.length];
+
+        int[] last = new int[count];
+
+        for (int slot = 0; slot < count; slot++) {
+
+            int first = first(keys[slot]);
+
+            if (slot == first) {
+
+                // The first slot of a name with an ordinal is already known.
+                last[slot] = slot;
+
+            } else if (-1 == first) {
+
+                insert(slot);
+                last[slot] = slot;
+
+            } else {
+
+                next[last[first]] = slot + 1;
+                last[first] = slot;
+            }
+        }
+    }
+
+    private void insert(int slot) {
+
+        int mask = index.length - 1;
+        int i = hash(keys[slot]) & mask;
+
+        while (0 != index[i]) i = (i + 1) & mask;
+
+        index[i] = slot + 1;
+    }
+
+
+    /**
+     * Iterates over the names in the order they were first added.
+     */
+    private class EntryIterator implements Iterator<Entry<String, Set<A>>> {
+
+        private int slot = advance(0);
+        private Object current;
+
+
+        @Override
+        public boolean hasNext() {
+
+            return slot < count;
+        }
+
+        @Override
+        public Entry<String, Set<A>> next() {
+
+            if (count <= slot) throw new NoSuchElementException();
+
+            current = keys[slot];
+            slot = advance(slot + 1);
+
+            return new SimpleEntry<String, Set<A>>(current.toString(), new NamedSet(current));
+        }
+
+        @Override
+        public void remove() {
+
+            if (isNull(current)) throw new IllegalStateException();
+
+            // Only the removed slots that come before the next name shift it down.
+            int shift = 0;
+
+            for (int i = first(current); -1 != i && i < slot; i = following(i)) shift++;
+
+            removeKey(current);
+
+            slot -= shift;
+            current = null;
+        }
+
+        /**
+         * @return the first slot from the supplied one that holds the first attribute of a name.
+         */
+        private int advance(int from) {
+
+            while (from < count && from != first(keys[from])) from++;
+
+            return from;
+        }
+    }
+
+    /**
+     * A live view of the attributes with the same name.
+     */
+    private class NamedSet extends AbstractSet<A> {
+
+        private final Object key;
+
+
+        private NamedSet(Object key) {
+
+            this.key = key;
+        }
+
+
+        @Override
+        public Iterator<A> iterator() {
+
+            return new Iterator<A>() {
+
+                private int slot = first(key);
+                private int last = -1;
+
+
+                @Override
+                public boolean hasNext() {
+
+                    return -1 != slot;
+                }
+
+                @Override
+                @SuppressWarnings("unchecked")
+                public A next() {
+
+                    if (-1 == slot) throw new NoSuchElementException();
+
+                    last = slot;
+                    slot = following(slot);
+
+                    return (A) attributes[last];
+                }
+
+                @Override
+                public void remove() {
+
+                    if (-1 == last) throw new IllegalStateException();
+
+                    removeSlot(last);
+
+                    if (-1 != slot) slot--;
+
+                    last = -1;
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+
+            int size = 0;
+
+            for (int slot = first(key); -1 != slot; slot = following(slot)) size++;
+
+            return size;
+        }
+
+        @Override
+        public boolean add(A attribute) {
+
+            assertNotNull("attribute", attribute);
+
+            return AttributeArraySetMap.this.add(key, attribute);
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package http.balance;
+
+import java.util.List;
+
+/**
+ * Chooses the {@link Endpoint} of a service that a request is sent to. A policy will be called by many threads at the
+ * same time so it must be thread safe.
+ *
+ * @author Karl Bennett
+ */
+public interface BalancingPolicy {
+
+    /**
+     * Choose the endpoint for the next request.
+     *
+     * @param endpoints the endpoints that can be chosen from, this is never empty.
+     * @return one of the supplied endpoints.
+     */
+    Endpoint choose(List<Endpoint> endpoints);
+}
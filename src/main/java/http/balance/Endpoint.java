@@ -0,0 +1,173 @@
+package http.balance;
+
+import java.net.URL;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static http.util.Asserts.assertNotNull;
+
+/**
+ * One of the servers of a service along with the load and latency that the {@link BalancingPolicy} chooses by.
+ * <p/>
+ * The latency is a moving average of the time it took to receive the response headers, samples decay over ten seconds.
+ * A sample that is slower than the average replaces it straight away so a slow endpoint is noticed at once and only
+ * forgiven gradually.
+ *
+ * @author Karl Bennett
+ */
+public class Endpoint {
+
+    // The number of milliseconds over which a latency sample decays.
+    private static final double DECAY = 10000;
+
+
+    static long now() {
+
+        return System.nanoTime() / 1000000;
+    }
+
+
+    private final URL url;
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final AtomicInteger failures = new AtomicInteger();
+
+    private double latency;
+    private long sampled;
+    private int ejections;
+
+    private volatile long ejectedUntil;
+
+
+    /**
+     * Create a new {@code Endpoint}.
+     *
+     * @param url the base URL of the server, the path of a request is appended to it.
+     */
+    public Endpoint(URL url) {
+
+        assertNotNull("url", url);
+
+        this.url = url;
+    }
+
+
+    /**
+     * @return the base URL of the server.
+     */
+    public URL getUrl() {
+
+        return url;
+    }
+
+    /**
+     * @return the number of requests that have been sent to the endpoint and haven't received their response headers.
+     */
+    public int getOutstanding() {
+
+        return outstanding.get();
+    }
+
+    /**
+     * @return the moving average of the latency in milliseconds, or zero if no response has been received.
+     */
+    public synchronized double getLatency() {
+
+        return latency;
+    }
+
+    /**
+     * @return the number of requests in a row that have failed.
+     */
+    public int getFailures() {
+
+        return failures.get();
+    }
+
+    /**
+     * @return true if the endpoint has been ejected for failing and won't be chosen until the ejection ends.
+     */
+    public boolean isEjected() {
+
+        return now() < ejectedUntil;
+    }
+
+    @Override
+    public String toString() {
+
+        return url.toString();
+    }
+
+    /**
+     * Record that a request has been sent to the endpoint.
+     */
+    void started() {
+
+        outstanding.incrementAndGet();
+    }
+
+    /**
+     * Record that a request has received its response headers, or failed, after the supplied time.
+     *
+     * @param elapsed the number of milliseconds since the request was sent.
+     * @param failed  true if the request failed.
+     * @return the number of requests in a row that have failed.
+     */
+    int completed(long elapsed, boolean failed) {
+
+        outstanding.decrementAndGet();
+
+        sample(elapsed, failed);
+
+        if (!failed) {
+
+            failures.set(0);
+
+            return 0;
+        }
+
+        return failures.incrementAndGet();
+    }
+
+    /**
+     * Eject the endpoint, each time it is ejected in a row it is ejected for longer.
+     *
+     * @param ejectionTime    the time to eject the endpoint for the first time.
+     * @param maxEjectionTime the longest time to eject the endpoint for.
+     */
+    synchronized void eject(long ejectionTime, long maxEjectionTime) {
+
+        ejections++;
+
+        ejectedUntil = now() + Math.min(maxEjectionTime, ejectionTime * ejections);
+
+        failures.set(0);
+    }
+
+    /**
+     * Forget the ejections of an endpoint that has answered a request since it was last ejected.
+     */
+    synchronized void recovered() {
+
+        ejections = 0;
+    }
+
+    private synchronized void sample(long elapsed, boolean failed) {
+
+        // A quick failure, e.g. a refused connection, mustn't make the endpoint look fast.
+        if (failed && elapsed <= latency) return;
+
+        long now = now();
+
+        if (0 == sampled || elapsed > latency) {
+
+            latency = elapsed;
+
+        } else {
+
+            double weight = Math.exp(-(now - sampled) / DECAY);
+
+            latency = latency * weight + elapsed * (1 - weight);
+        }
+
+        sampled = now;
+    }
+}
@@ -0,0 +1,41 @@
+package http.balance;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A {@link BalancingPolicy} that picks two endpoints at random and chooses the one with the lower cost, where the cost
+ * is the moving average of its latency multiplied by the number of requests in flight to it plus one. An endpoint that
+ * slows down is quickly given fewer requests, and one that hasn't answered a request yet costs nothing so it is tried
+ * straight away.
+ *
+ * @author Karl Bennett
+ */
+public class EwmaLatencyPolicy implements BalancingPolicy {
+
+    private final Random random = new Random();
+
+
+    private static double cost(Endpoint endpoint) {
+
+        return endpoint.getLatency() * (endpoint.getOutstanding() + 1);
+    }
+
+
+    @Override
+    public Endpoint choose(List<Endpoint> endpoints) {
+
+        if (1 == endpoints.size()) return endpoints.get(0);
+
+        int first = random.nextInt(endpoints.size());
+        int second = random.nextInt(endpoints.size() - 1);
+
+        // Skip over the first so that two different endpoints are compared.
+        if (second >= first) second++;
+
+        Endpoint a = endpoints.get(first);
+        Endpoint b = endpoints.get(second);
+
+        return cost(a) <= cost(b) ? a : b;
+    }
+}
@@ -0,0 +1,34 @@
+package http.balance;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A {@link BalancingPolicy} that picks two endpoints at random and chooses the one with the fewest requests in flight,
+ * the "power of two choices". This sends most requests to the least loaded endpoints without every client herding
+ * onto the single least loaded one.
+ *
+ * @author Karl Bennett
+ */
+public class LeastOutstandingPolicy implements BalancingPolicy {
+
+    private final Random random = new Random();
+
+
+    @Override
+    public Endpoint choose(List<Endpoint> endpoints) {
+
+        if (1 == endpoints.size()) return endpoints.get(0);
+
+        int first = random.nextInt(endpoints.size());
+        int second = random.nextInt(endpoints.size() - 1);
+
+        // Skip over the first so that two different endpoints are compared.
+        if (second >= first) second++;
+
+        Endpoint a = endpoints.get(first);
+        Endpoint b = endpoints.get(second);
+
+        return a.getOutstanding() <= b.getOutstanding() ? a : b;
+    }
+}
@@ -0,0 +1,425 @@
+package http.balance;
+
+import http.Request;
+import http.RequestHandler;
+import http.Response;
+import http.transport.TransportException;
+
+import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static http.Client.DELETE;
+import static http.Client.GET;
+import static http.Client.HEAD;
+import static http.Client.OPTIONS;
+import static http.Client.PUT;
+import static http.Client.TRACE;
+import static http.util.Asserts.assertNotNull;
+import static http.util.Checks.isNull;
+import static http.util.URIs.quietUrl;
+
+/**
+ * A {@link RequestHandler} that balances the requests for a logical service across the servers of that service. A
+ * service is added with a name and the base URLs of its servers, then any request whose host is the name of the
+ * service is sent to one of those servers with the path and query of the request appended to the servers base URL,
+ * e.g. with a service named {@code orders} a request to {@code http://orders/items?id=1} could be sent to
+ * {@code http://10.0.0.1:8080/items?id=1}. Requests to any other host are passed straight through.
+ * <p/>
+ * Each request goes to the {@link Endpoint} that the {@link BalancingPolicy} of the service chooses. A request without
+ * a body and with an idempotent method that fails to reach its endpoint is tried again on a different endpoint, up to
+ * the maximum number of attempts.
+ * <p/>
+ * An endpoint that fails a number of requests in a row, because they couldn't be sent or were answered with a server
+ * error, is ejected and won't be chosen until the ejection time has passed. Each time it is ejected again without
+ * having answered a request in between it is ejected for longer. No more than the maximum ejection percentage of the
+ * endpoints of a service are ejected at once, and if every endpoint that could be chosen is ejected they are all
+ * chosen from anyway.
+ *
+ * @author Karl Bennett
+ */
+public class LoadBalancingRequestHandler implements RequestHandler {
+
+    /**
+     * The default number of endpoints a request can be tried on.
+     */
+    public static final int DEFAULT_MAX_ATTEMPTS = 2;
+
+    /**
+     * The default number of requests in a row an endpoint has to fail to be ejected.
+     */
+    public static final int DEFAULT_EJECTION_THRESHOLD = 5;
+
+    /**
+     * The default number of milliseconds an endpoint is ejected for the first time.
+     */
+    public static final long DEFAULT_EJECTION_TIME = 30000;
+
+    /**
+     * The default longest number of milliseconds an endpoint is ejected for.
+     */
+    public static final long DEFAULT_MAX_EJECTION_TIME = 300000;
+
+    /**
+     * The default percentage of the endpoints of a service that can be ejected at once.
+     */
+    public static final int DEFAULT_MAX_EJECTION_PERCENT = 50;
+
+    private static final int SERVER_ERROR = 500;
+
+    private static final Set<String> IDEMPOTENT_METHODS = Collections.unmodifiableSet(
+            new HashSet<String>(Arrays.asList(GET, HEAD, OPTIONS, TRACE, PUT, DELETE)));
+
+
+    private static String key(String name) {
+
+        return name.toLowerCase(Locale.ENGLISH);
+    }
+
+    /**
+     * @return a copy of the supplied request with the path and query of its URL appended to the endpoint's URL.
+     */
+    private static Request<InputStream> rewrite(Request<InputStream> request, Endpoint endpoint) {
+
+        String base = endpoint.getUrl().toString();
+
+        if (base.endsWith("/")) base = base.substring(0, base.length() - 1);
+
+        String file = request.getUrl().getFile();
+
+        if (!file.startsWith("/")) file = '/' + file;
+
+        return new Request<InputStream>(quietUrl(base + file), request, request.getBody());
+    }
+
+
+    private final RequestHandler requestHandler;
+    private final ConcurrentMap<String, Service> services = new ConcurrentHashMap<String, Service>();
+
+    private volatile int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+    private volatile int ejectionThreshold = DEFAULT_EJECTION_THRESHOLD;
+    private volatile long ejectionTime = DEFAULT_EJECTION_TIME;
+    private volatile long maxEjectionTime = DEFAULT_MAX_EJECTION_TIME;
+    private volatile int maxEjectionPercent = DEFAULT_MAX_EJECTION_PERCENT;
+
+
+    /**
+     * Create a new {@code LoadBalancingRequestHandler}.
+     *
+     * @param requestHandler the request handler that carries out the requests.
+     */
+    public LoadBalancingRequestHandler(RequestHandler requestHandler) {
+
+        assertNotNull("requestHandler", requestHandler);
+
+        this.requestHandler = requestHandler;
+    }
+
+
+    /**
+     * Add a service, replacing any service that already has the same name.
+     *
+     * @param name   the name of the service, requests to this host name are balanced across the endpoints.
+     * @param policy the policy that chooses the endpoint for each request.
+     * @param urls   the base URLs of the servers of the service.
+     * @throws IllegalArgumentException if no URLs are supplied.
+     * @throws http.util.URIException   if a URL is invalid.
+     */
+    public void addService(String name, BalancingPolicy policy, String... urls) {
+
+        assertNotNull("urls", urls);
+
+        List<URL> parsed = new ArrayList<URL>(urls.length);
+
+        for (String url : urls) parsed.add(quietUrl(url));
+
+        addService(name, policy, parsed);
+    }
+
+    /**
+     * Add a service, replacing any service that already has the same name.
+     *
+     * @param name   the name of the service, requests to this host name are balanced across the endpoints.
+     * @param policy the policy that chooses the endpoint for each request.
+     * @param urls   the base URLs of the servers of the service.
+     * @throws IllegalArgumentException if no URLs are supplied.
+     */
+    public void addService(String name, BalancingPolicy policy, Collection<URL> urls) {
+
+        assertNotNull("name", name);
+        assertNotNull("policy", policy);
+        assertNotNull("urls", urls);
+
+        if (urls.isEmpty()) throw new IllegalArgumentException("The (urls) variable must not be empty.");
+
+        List<Endpoint> endpoints = new ArrayList<Endpoint>(urls.size());
+
+        for (URL url : urls) endpoints.add(new Endpoint(url));
+
+        services.put(key(name), new Service(Collections.unmodifiableList(endpoints), policy));
+    }
+
+    /**
+     * Remove a service, requests to its name are then passed straight through.
+     *
+     * @param name the name of the service.
+     */
+    public void removeService(String name) {
+
+        assertNotNull("name", name);
+
+        services.remove(key(name));
+    }
+
+    /**
+     * @param name the name of the service.
+     * @return the endpoints of the service, or null if there is no service with the name.
+     */
+    public List<Endpoint> getEndpoints(String name) {
+
+        assertNotNull("name", name);
+
+        Service service = services.get(key(name));
+
+        return isNull(service) ? null : service.endpoints;
+    }
+
+    /**
+     * @return the number of endpoints a request can be tried on.
+     */
+    public int getMaxAttempts() {
+
+        return maxAttempts;
+    }
+
+    /**
+     * Set the number of endpoints a request can be tried on, the default is 2. Only requests without a body and with
+     * an idempotent method are tried more than once.
+     *
+     * @param maxAttempts the maximum number of attempts.
+     * @throws IllegalArgumentException if the maximum is less than one.
+     */
+    public void setMaxAttempts(int maxAttempts) {
+
+        if (1 > maxAttempts) {
+
+            throw new IllegalArgumentException("The (maxAttempts) variable must be greater than zero.");
+        }
+
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * @return the number of requests in a row an endpoint has to fail to be ejected.
+     */
+    public int getEjectionThreshold() {
+
+        return ejectionThreshold;
+    }
+
+    /**
+     * Set the number of requests in a row an endpoint has to fail to be ejected, the default is 5.
+     *
+     * @param ejectionThreshold the number of failures.
+     * @throws IllegalArgumentException if the threshold is less than one.
+     */
+    public void setEjectionThreshold(int ejectionThreshold) {
+
+        if (1 > ejectionThreshold) {
+
+            throw new IllegalArgumentException("The (ejectionThreshold) variable must be greater than zero.");
+        }
+
+        this.ejectionThreshold = ejectionThreshold;
+    }
+
+    /**
+     * @return the number of milliseconds an endpoint is ejected for the first time.
+     */
+    public long getEjectionTime() {
+
+        return ejectionTime;
+    }
+
+    /**
+     * Set the number of milliseconds an endpoint is ejected for the first time, the default is 30 seconds. An
+     * endpoint that is ejected again straight after it returns is ejected for a multiple of this.
+     *
+     * @param ejectionTime the ejection time in milliseconds.
+     * @throws IllegalArgumentException if the time is negative.
+     */
+    public void setEjectionTime(long ejectionTime) {
+
+        if (0 > ejectionTime) throw new IllegalArgumentException("The (ejectionTime) variable must not be negative.");
+
+        this.ejectionTime = ejectionTime;
+    }
+
+    /**
+     * @return the longest number of milliseconds an endpoint is ejected for.
+     */
+    public long getMaxEjectionTime() {
+
+        return maxEjectionTime;
+    }
+
+    /**
+     * Set the longest number of milliseconds an endpoint is ejected for, the default is 5 minutes.
+     *
+     * @param maxEjectionTime the maximum ejection time in milliseconds.
+     * @throws IllegalArgumentException if the time is negative.
+     */
+    public void setMaxEjectionTime(long maxEjectionTime) {
+
+        if (0 > maxEjectionTime) {
+
+            throw new IllegalArgumentException("The (maxEjectionTime) variable must not be negative.");
+        }
+
+        this.maxEjectionTime = maxEjectionTime;
+    }
+
+    /**
+     * @return the percentage of the endpoints of a service that can be ejected at once.
+     */
+    public int getMaxEjectionPercent() {
+
+        return maxEjectionPercent;
+    }
+
+    /**
+     * Set the percentage of the endpoints of a service that can be ejected at once, the default is 50. At least one
+     * endpoint can always be ejected unless this is zero, which disables ejection.
+     *
+     * @param maxEjectionPercent the maximum percentage of ejected endpoints.
+     * @throws IllegalArgumentException if the percentage is not between 0 and 100.
+     */
+    public void setMaxEjectionPercent(int maxEjectionPercent) {
+
+        if (0 > maxEjectionPercent || 100 < maxEjectionPercent) {
+
+            throw new IllegalArgumentException("The (maxEjectionPercent) variable must be between 0 and 100.");
+        }
+
+        this.maxEjectionPercent = maxEjectionPercent;
+    }
+
+    @Override
+    public Response<InputStream> handleRequest(String method, Request<InputStream> request) {
+
+        Service service = services.get(key(request.getUrl().getHost()));
+
+        if (isNull(service)) return requestHandler.handleRequest(method, request);
+
+        boolean retryable = isNull(request.getBody()) && IDEMPOTENT_METHODS.contains(method);
+
+        List<Endpoint> tried = new ArrayList<Endpoint>(maxAttempts);
+
+        for (int attempt = 1; ; attempt++) {
+
+            Endpoint endpoint = service.choose(tried);
+
+            tried.add(endpoint);
+
+            endpoint.started();
+
+            long start = Endpoint.now();
+
+            Response<InputStream> response;
+
+            try {
+
+                response = requestHandler.handleRequest(method, rewrite(request, endpoint));
+
+            } catch (RuntimeException e) {
+
+                completed(service, endpoint, start, true);
+
+                if (!(e instanceof TransportException) || !retryable || attempt >= maxAttempts) throw e;
+
+                continue;
+            }
+
+            completed(service, endpoint, start, SERVER_ERROR <= response.getStatus());
+
+            return response;
+        }
+    }
+
+    private void completed(Service service, Endpoint endpoint, long start, boolean failed) {
+
+        int failures = endpoint.completed(Endpoint.now() - start, failed);
+
+        if (!failed) {
+
+            endpoint.recovered();
+
+            return;
+        }
+
+        if (ejectionThreshold <= failures) service.eject(endpoint, maxEjectionPercent, ejectionTime, maxEjectionTime);
+    }
+
+
+    /**
+     * The endpoints of a service and the policy that chooses between them.
+     */
+    private static class Service {
+
+        private final List<Endpoint> endpoints;
+        private final BalancingPolicy policy;
+
+        private Service(List<Endpoint> endpoints, BalancingPolicy policy) {
+
+            this.endpoints = endpoints;
+            this.policy = policy;
+        }
+
+        /**
+         * Choose an endpoint that hasn't been tried and isn't ejected, falling back to the ejected endpoints and then
+         * to the ones that have been tried if there are none.
+         */
+        private Endpoint choose(List<Endpoint> tried) {
+
+            List<Endpoint> untried = new ArrayList<Endpoint>(endpoints.size());
+            List<Endpoint> available = new ArrayList<Endpoint>(endpoints.size());
+
+            for (Endpoint endpoint : endpoints) {
+
+                if (tried.contains(endpoint)) continue;
+
+                untried.add(endpoint);
+
+                if (!endpoint.isEjected()) available.add(endpoint);
+            }
+
+            if (!available.isEmpty()) return policy.choose(available);
+
+            return policy.choose(untried.isEmpty() ? endpoints : untried);
+        }
+
+        private synchronized void eject(Endpoint endpoint, int maxEjectionPercent, long ejectionTime,
+                                        long maxEjectionTime) {
+
+            if (0 == maxEjectionPercent || endpoint.isEjected()) return;
+
+            int ejected = 0;
+
+            for (Endpoint other : endpoints) if (other.isEjected()) ejected++;
+
+            if (Math.max(1, endpoints.size() * maxEjectionPercent / 100) > ejected) {
+
+                endpoint.eject(ejectionTime, maxEjectionTime);
+            }
+        }
+    }
+}
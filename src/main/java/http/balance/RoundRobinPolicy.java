@@ -0,0 +1,21 @@
+package http.balance;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link BalancingPolicy} that takes the endpoints in turn.
+ *
+ * @author Karl Bennett
+ */
+public class RoundRobinPolicy implements BalancingPolicy {
+
+    private final AtomicInteger next = new AtomicInteger();
+
+
+    @Override
+    public Endpoint choose(List<Endpoint> endpoints) {
+
+        return endpoints.get((next.getAndIncrement() & Integer.MAX_VALUE) % endpoints.size());
+    }
+}
@@ -0,0 +1,7 @@
+/**
+ * This package contains a client side load balancer that can be put in front of any {@link http.RequestHandler} with a
+ * {@link http.balance.LoadBalancingRequestHandler}. Requests to a logical service name are sent to one of the
+ * {@link http.balance.Endpoint}s of the service, chosen by a {@link http.balance.BalancingPolicy}, and endpoints that
+ * keep failing are ejected for a while.
+ */
+package http.balance;
@@ -0,0 +1,135 @@
+package http.cache;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static http.util.Checks.isNull;
+
+/**
+ * The directives of a {@code Cache-Control} header. Directive names are matched in any case and a quoted value e.g.
+ * {@code no-cache="Set-Cookie"} has its quotes removed.
+ *
+ * @author Karl Bennett
+ * @see <a href="https://tools.ietf.org/html/rfc7234#section-5.2">RFC 7234 section 5.2</a>
+ */
+final class CacheControl {
+
+    static final String MAX_AGE = "max-age";
+    static final String S_MAXAGE = "s-maxage";
+    static final String MAX_STALE = "max-stale";
+    static final String MIN_FRESH = "min-fresh";
+    static final String NO_CACHE = "no-cache";
+    static final String NO_STORE = "no-store";
+    static final String ONLY_IF_CACHED = "only-if-cached";
+    static final String MUST_REVALIDATE = "must-revalidate";
+    static final String PROXY_REVALIDATE = "proxy-revalidate";
+    static final String PUBLIC = "public";
+    static final String PRIVATE = "private";
+
+    static final CacheControl EMPTY = new CacheControl(new HashMap<String, String>());
+
+
+    /**
+     * Parse the supplied {@code Cache-Control} header value.
+     *
+     * @param value the header value, this can be null.
+     * @return the directives in the value.
+     */
+    static CacheControl parse(String value) {
+
+        if (isNull(value)) return EMPTY;
+
+        Map<String, String> directives = new HashMap<String, String>();
+
+        for (int start = 0, length = value.length(); start < length; ) {
+
+            int end = start;
+            boolean quoted = false;
+
+            // Commas inside a quoted value don't separate directives.
+            while (end < length && (quoted || ',' != value.charAt(end))) {
+
+                if ('"' == value.charAt(end)) quoted = !quoted;
+
+                end++;
+            }
+
+            int equals = value.indexOf('=', start);
+
+            if (-1 == equals || end < equals) equals = end;
+
+            String name = value.substring(start, equals).trim().toLowerCase();
+            String directive = equals < end ? unquote(value.substring(equals + 1, end).trim()) : "";
+
+            if (0 != name.length() && !directives.containsKey(name)) directives.put(name, directive);
+
+            start = end + 1;
+        }
+
+        return new CacheControl(directives);
+    }
+
+    private static boolean isDigits(String value) {
+
+        for (int i = 0; i < value.length(); i++) {
+
+            if ('0' > value.charAt(i) || '9' < value.charAt(i)) return false;
+        }
+
+        return true;
+    }
+
+    private static String unquote(String value) {
+
+        if (2 <= value.length() && '"' == value.charAt(0) && '"' == value.charAt(value.length() - 1)) {
+
+            return value.substring(1, value.length() - 1);
+        }
+
+        return value;
+    }
+
+
+    private final Map<String, String> directives;
+
+
+    private CacheControl(Map<String, String> directives) {
+
+        this.directives = directives;
+    }
+
+
+    /**
+     * @param name the name of the directive.
+     * @return true if the directive is present.
+     */
+    boolean has(String name) {
+
+        return directives.containsKey(name);
+    }
+
+    /**
+     * Get the number of seconds given by a directive e.g. {@code max-age=60}.
+     *
+     * @param name the name of the directive.
+     * @return the seconds, or -1 if the directive isn't present or its value isn't a number.
+     */
+    long seconds(String name) {
+
+        String value = directives.get(name);
+
+        if (isNull(value) || 0 == value.length()) return -1;
+
+        try {
+
+            long seconds = Long.parseLong(value);
+
+            return 0 > seconds ? -1 : seconds;
+
+        } catch (NumberFormatException e) {
+
+            // A delta that is too large to hold is as good as forever.
+            return isDigits(value) ? Long.MAX_VALUE / 1000 : -1;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package http.cache;
+
+/**
+ * The storage behind a {@link CachingRequestHandler}. A store holds a single {@link CachedResponse} for each key and is
+ * free to evict responses whenever it needs the space. Stores must be safe to use from many threads.
+ *
+ * @author Karl Bennett
+ */
+public interface CacheStore {
+
+    /**
+     * Get the response stored for the supplied key.
+     *
+     * @param key the key of the response.
+     * @return the response, or null if there isn't one.
+     */
+    CachedResponse get(String key);
+
+    /**
+     * Store the supplied response, replacing any response already stored for the key. A store may decline to keep a
+     * response e.g. if it is larger than the store.
+     *
+     * @param key      the key of the response.
+     * @param response the response to store.
+     */
+    void put(String key, CachedResponse response);
+
+    /**
+     * Remove the response stored for the supplied key, if there is one.
+     *
+     * @param key the key of the response.
+     */
+    void remove(String key);
+
+    /**
+     * Remove every stored response.
+     */
+    void clear();
+}
@@ -0,0 +1,319 @@
+package http.cache;
+
+import http.Response;
+import http.header.Header;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static http.util.Asserts.assertNotNull;
+import static http.util.Checks.isNull;
+
+/**
+ * A response that has been stored in a {@link CacheStore}. The entire body is held along with the times that the
+ * request was sent and the response was received, which are needed to work out the age of the response, and the values
+ * of the request headers that the response {@code Vary}s on.
+ * <p/>
+ * A {@code CachedResponse} is immutable and can be written to and read from a compact binary form so that stores can
+ * keep it outside of the heap.
+ *
+ * @author Karl Bennett
+ */
+public final class CachedResponse {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * The rough number of bytes that each header costs on top of its name and value.
+     */
+    private static final int HEADER_OVERHEAD = 48;
+    private static final int FIXED_OVERHEAD = 128;
+
+
+    /**
+     * Read a {@code CachedResponse} from the binary form written by {@link #toBytes()}.
+     *
+     * @param buffer the buffer that holds the response from its position to its limit.
+     * @return the response.
+     * @throws IllegalArgumentException if the buffer doesn't hold a complete response.
+     */
+    public static CachedResponse fromBytes(ByteBuffer buffer) {
+
+        assertNotNull("buffer", buffer);
+
+        try {
+
+            int status = buffer.getInt();
+            long requestTime = buffer.getLong();
+            long responseTime = buffer.getLong();
+
+            List<Header<String>> headers = new ArrayList<Header<String>>();
+
+            for (int i = buffer.getInt(); 0 < i; i--) headers.add(new Header<String>(read(buffer), read(buffer)));
+
+            Map<String, String> vary = new LinkedHashMap<String, String>();
+
+            for (int i = buffer.getInt(); 0 < i; i--) vary.put(read(buffer), read(buffer));
+
+            byte[] body = new byte[buffer.getInt()];
+            buffer.get(body);
+
+            return new CachedResponse(status, headers, body, requestTime, responseTime, vary);
+
+        } catch (BufferUnderflowException e) {
+
+            throw new IllegalArgumentException("The buffer does not hold a complete cached response.", e);
+
+        } catch (NegativeArraySizeException e) {
+
+            throw new IllegalArgumentException("The buffer does not hold a cached response.", e);
+        }
+    }
+
+    private static String read(ByteBuffer buffer) {
+
+        int length = buffer.getInt();
+
+        // A null is written as a negative length.
+        if (0 > length) return null;
+
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+
+        return new String(bytes, UTF_8);
+    }
+
+    private static byte[] bytes(String string) {
+
+        return isNull(string) ? null : string.getBytes(UTF_8);
+    }
+
+    private static boolean contains(Collection<Header<String>> headers, String name) {
+
+        for (Header<String> header : headers) if (name.equalsIgnoreCase(header.getName())) return true;
+
+        return false;
+    }
+
+    private static void write(ByteBuffer buffer, byte[] bytes) {
+
+        if (isNull(bytes)) {
+
+            buffer.putInt(-1);
+
+            return;
+        }
+
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+    }
+
+
+    private final int status;
+    private final List<Header<String>> headers;
+    private final byte[] body;
+    private final long requestTime;
+    private final long responseTime;
+    private final Map<String, String> vary;
+
+
+    /**
+     * Create a new {@code CachedResponse}.
+     *
+     * @param status       the status code of the response.
+     * @param headers      the headers of the response.
+     * @param body         the entire body of the response.
+     * @param requestTime  the time in milliseconds that the request was sent.
+     * @param responseTime the time in milliseconds that the response was received.
+     * @param vary         the lower case names of the request headers that the response varies on mapped to the values
+     *                     they had in the request, a header that wasn't in the request maps to null.
+     */
+    public CachedResponse(int status, Collection<Header<String>> headers, byte[] body, long requestTime,
+                          long responseTime, Map<String, String> vary) {
+
+        assertNotNull("headers", headers);
+        assertNotNull("body", body);
+        assertNotNull("vary", vary);
+
+        this.status = status;
+        this.headers = Collections.unmodifiableList(new ArrayList<Header<String>>(headers));
+        this.body = body;
+        this.requestTime = requestTime;
+        this.responseTime = responseTime;
+        this.vary = Collections.unmodifiableMap(new LinkedHashMap<String, String>(vary));
+    }
+
+
+    /**
+     * @return the status code of the response.
+     */
+    public int getStatus() {
+
+        return status;
+    }
+
+    /**
+     * @return the headers of the response in the order they were received.
+     */
+    public List<Header<String>> getHeaders() {
+
+        return headers;
+    }
+
+    /**
+     * Get the value of the headers with the supplied name, the values of multiple headers are joined with commas.
+     *
+     * @param name the name of the header in any case.
+     * @return the value, or null if there is no header with the name.
+     */
+    public String getHeader(String name) {
+
+        StringBuilder value = null;
+
+        for (Header<String> header : headers) {
+
+            if (!name.equalsIgnoreCase(header.getName())) continue;
+
+            if (isNull(value)) value = new StringBuilder(header.getValue());
+            else value.append(", ").append(header.getValue());
+        }
+
+        return isNull(value) ? null : value.toString();
+    }
+
+    /**
+     * @return the entire body of the response, this must not be modified.
+     */
+    public byte[] getBody() {
+
+        return body;
+    }
+
+    /**
+     * @return the time in milliseconds that the request was sent.
+     */
+    public long getRequestTime() {
+
+        return requestTime;
+    }
+
+    /**
+     * @return the time in milliseconds that the response was received.
+     */
+    public long getResponseTime() {
+
+        return responseTime;
+    }
+
+    /**
+     * @return the lower case names of the request headers that the response varies on mapped to the values they had
+     *         in the request.
+     */
+    public Map<String, String> getVary() {
+
+        return vary;
+    }
+
+    /**
+     * @return the rough number of bytes that the response takes up, this is what stores are bounded by.
+     */
+    public long getSize() {
+
+        long size = FIXED_OVERHEAD + body.length;
+
+        for (Header<String> header : headers) {
+
+            size += HEADER_OVERHEAD + header.getName().length() + String.valueOf(header.getValue()).length();
+        }
+
+        return size;
+    }
+
+    /**
+     * Create a copy of this response with the headers of a {@code 304 Not Modified} response that revalidated it. The
+     * new headers replace any stored headers with the same name.
+     *
+     * @param updates      the headers of the {@code 304} response.
+     * @param requestTime  the time the revalidation request was sent.
+     * @param responseTime the time the {@code 304} response was received.
+     * @return the updated response.
+     */
+    public CachedResponse update(Collection<Header<String>> updates, long requestTime, long responseTime) {
+
+        List<Header<String>> updated = new ArrayList<Header<String>>();
+
+        for (Header<String> header : headers) {
+
+            if (!contains(updates, header.getName())) updated.add(header);
+        }
+
+        updated.addAll(updates);
+
+        return new CachedResponse(status, updated, body, requestTime, responseTime, vary);
+    }
+
+    /**
+     * Create a new {@link Response} from this cached response.
+     *
+     * @return the response with a new stream over the body.
+     */
+    public Response<InputStream> toResponse() {
+
+        return new Response<InputStream>(status, new ArrayList<Header>(headers), new ByteArrayInputStream(body));
+    }
+
+    /**
+     * Write this response in a compact binary form that can be read with {@link #fromBytes(ByteBuffer)}.
+     *
+     * @return the bytes of the response.
+     */
+    public byte[] toBytes() {
+
+        List<byte[]> strings = new ArrayList<byte[]>();
+        int length = 4 + 8 + 8 + 4 + 4 + 4 + body.length;
+
+        for (Header<String> header : headers) {
+
+            strings.add(bytes(header.getName()));
+            strings.add(bytes(header.getValue()));
+        }
+
+        for (Map.Entry<String, String> entry : vary.entrySet()) {
+
+            strings.add(bytes(entry.getKey()));
+            strings.add(bytes(entry.getValue()));
+        }
+
+        for (byte[] string : strings) length += 4 + (isNull(string) ? 0 : string.length);
+
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+
+        buffer.putInt(status);
+        buffer.putLong(requestTime);
+        buffer.putLong(responseTime);
+
+        int string = 0;
+
+        buffer.putInt(headers.size());
+
+        for (int i = 0; i < headers.size() * 2; i++) write(buffer, strings.get(string++));
+
+        buffer.putInt(vary.size());
+
+        for (int i = 0; i < vary.size() * 2; i++) write(buffer, strings.get(string++));
+
+        buffer.putInt(body.length);
+        buffer.put(body);
+
+        return buffer.array();
+    }
+}
@@ -0,0 +1,549 @@
+package http.cache;
+
+import http.Request;
+import http.RequestHandler;
+import http.Response;
+import http.date.HttpDates;
+import http.header.Header;
+import http.transport.TransportException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static http.Client.GET;
+import static http.Client.HEAD;
+import static http.Client.OPTIONS;
+import static http.Client.TRACE;
+import static http.cache.CacheControl.MAX_AGE;
+import static http.cache.CacheControl.MAX_STALE;
+import static http.cache.CacheControl.MIN_FRESH;
+import static http.cache.CacheControl.MUST_REVALIDATE;
+import static http.cache.CacheControl.NO_CACHE;
+import static http.cache.CacheControl.NO_STORE;
+import static http.cache.CacheControl.ONLY_IF_CACHED;
+import static http.cache.CacheControl.PRIVATE;
+import static http.cache.CacheControl.PROXY_REVALIDATE;
+import static http.cache.CacheControl.PUBLIC;
+import static http.cache.CacheControl.S_MAXAGE;
+import static http.util.Asserts.assertNotNull;
+import static http.util.Checks.isNotNull;
+import static http.util.Checks.isNull;
+import static http.util.IO.closeQuietly;
+
+/**
+ * A {@link RequestHandler} that puts a shared HTTP cache in front of another request handler. {@code GET} responses are
+ * kept in a {@link CacheStore} and served from it for as long as they are fresh, a {@code HEAD} request is answered
+ * from a stored {@code GET} response. A stale response that has an {@code ETag} or {@code Last-Modified} validator is
+ * revalidated with a conditional {@code GET} so that a {@code 304 Not Modified} can refresh it without sending the body
+ * again. Any other method is passed straight through and, unless it is safe, removes the stored response for its URL.
+ * <p/>
+ * Freshness follows RFC 7234: the lifetime comes from {@code s-maxage}, {@code max-age}, {@code Expires}, or 10% of
+ * the time since {@code Last-Modified}, and the request directives {@code no-cache}, {@code max-age},
+ * {@code min-fresh}, {@code max-stale}, and {@code only-if-cached} are honoured. As the cache is shared, responses
+ * marked {@code private} are never stored.
+ * <p/>
+ * A single response is stored for each URL. If the response {@code Vary}s, the request header values it was selected
+ * with are stored alongside it and a request with different values goes to the server, whose response then replaces
+ * the stored one.
+ *
+ * @author Karl Bennett
+ * @see <a href="https://tools.ietf.org/html/rfc7234">RFC 7234</a>
+ */
+public class CachingRequestHandler implements RequestHandler {
+
+    /**
+     * The default size in bytes of the largest body that will be stored.
+     */
+    public static final int DEFAULT_MAX_BODY_SIZE = 1024 * 1024;
+
+    private static final int NOT_MODIFIED = 304;
+    private static final int GATEWAY_TIMEOUT = 504;
+
+    /**
+     * The statuses that can be stored without explicit freshness information.
+     *
+     * @see <a href="https://tools.ietf.org/html/rfc7231#section-6.1">RFC 7231 section 6.1</a>
+     */
+    private static final Set<Integer> HEURISTIC_STATUSES = Collections.unmodifiableSet(new HashSet<Integer>(
+            Arrays.asList(200, 203, 204, 300, 301, 404, 405, 410, 414, 501)));
+
+    /**
+     * The statuses that can be stored if they carry explicit freshness information.
+     */
+    private static final Set<Integer> EXPLICIT_STATUSES = Collections.unmodifiableSet(new HashSet<Integer>(
+            Arrays.asList(302, 307, 308)));
+
+    private static final Set<String> SAFE_METHODS = Collections.unmodifiableSet(new HashSet<String>(
+            Arrays.asList(GET, HEAD, OPTIONS, TRACE)));
+
+    /**
+     * The headers that only apply to a single connection and so must not be stored.
+     */
+    private static final Set<String> HOP_BY_HOP_HEADERS = Collections.unmodifiableSet(new HashSet<String>(
+            Arrays.asList("connection", "keep-alive", "proxy-connection", "te", "trailer", "transfer-encoding",
+                    "upgrade")));
+
+
+    private static String header(Iterable<Header> headers, String name) {
+
+        StringBuilder value = null;
+
+        for (Header header : headers) {
+
+            if (!name.equalsIgnoreCase(header.getName())) continue;
+
+            if (isNull(value)) value = new StringBuilder(String.valueOf(header.getValue()));
+            else value.append(", ").append(header.getValue());
+        }
+
+        return isNull(value) ? null : value.toString();
+    }
+
+    private static boolean equal(String one, String two) {
+
+        return isNull(one) ? isNull(two) : one.equals(two);
+    }
+
+    /**
+     * @return the number in a header like {@code Age} or {@code Content-Length}, or 0 if there isn't a valid one.
+     */
+    private static long number(String value) {
+
+        if (isNull(value)) return 0;
+
+        try {
+
+            return Math.max(0, Long.parseLong(value.trim()));
+
+        } catch (NumberFormatException e) {
+
+            return 0;
+        }
+    }
+
+    private static String key(Request<InputStream> request) {
+
+        return request.getUrl().toString();
+    }
+
+    private static InputStream emptyBody() {
+
+        return new ByteArrayInputStream(new byte[0]);
+    }
+
+    /**
+     * @return the supplied response, with its body closed and replaced with an empty one if it is the answer to a
+     *         {@code HEAD} that was revalidated with a {@code GET}.
+     */
+    private static Response<InputStream> forMethod(String method, Response<InputStream> response) {
+
+        if (!HEAD.equals(method)) return response;
+
+        closeQuietly(response.getBody());
+
+        response.setBody(emptyBody());
+
+        return response;
+    }
+
+    private static List<String> varyNames(String vary) {
+
+        List<String> names = new ArrayList<String>();
+
+        if (isNull(vary)) return names;
+
+        for (int start = 0, comma; start <= vary.length(); start = comma + 1) {
+
+            comma = vary.indexOf(',', start);
+
+            if (-1 == comma) comma = vary.length();
+
+            String name = vary.substring(start, comma).trim().toLowerCase();
+
+            if (0 != name.length()) names.add(name);
+        }
+
+        return names;
+    }
+
+    /**
+     * Work out how long the supplied response is fresh for after it was generated.
+     *
+     * @param response the stored response.
+     * @return the freshness lifetime in milliseconds.
+     */
+    static long freshnessLifetime(CachedResponse response) {
+
+        CacheControl control = CacheControl.parse(response.getHeader("Cache-Control"));
+
+        if (0 <= control.seconds(S_MAXAGE)) return control.seconds(S_MAXAGE) * 1000;
+
+        if (0 <= control.seconds(MAX_AGE)) return control.seconds(MAX_AGE) * 1000;
+
+        long date = HttpDates.parse(response.getHeader("Date"));
+
+        if (-1 == date) date = response.getResponseTime();
+
+        String expires = response.getHeader("Expires");
+
+        // An Expires that can't be parsed e.g. "0" means the response has already expired.
+        if (isNotNull(expires)) return Math.max(0, HttpDates.parse(expires) - date);
+
+        long lastModified = HttpDates.parse(response.getHeader("Last-Modified"));
+
+        if (-1 != lastModified && HEURISTIC_STATUSES.contains(response.getStatus())) {
+
+            return Math.max(0, (date - lastModified) / 10);
+        }
+
+        return 0;
+    }
+
+    /**
+     * Work out how old the supplied response is.
+     *
+     * @param response the stored response.
+     * @param now      the current time in milliseconds.
+     * @return the current age in milliseconds.
+     * @see <a href="https://tools.ietf.org/html/rfc7234#section-4.2.3">RFC 7234 section 4.2.3</a>
+     */
+    static long currentAge(CachedResponse response, long now) {
+
+        long date = HttpDates.parse(response.getHeader("Date"));
+
+        if (-1 == date) date = response.getResponseTime();
+
+        long apparentAge = Math.max(0, response.getResponseTime() - date);
+        long responseDelay = response.getResponseTime() - response.getRequestTime();
+        long correctedAge = number(response.getHeader("Age")) * 1000 + responseDelay;
+
+        return Math.max(apparentAge, correctedAge) + Math.max(0, now - response.getResponseTime());
+    }
+
+
+    private final RequestHandler requestHandler;
+    private final CacheStore store;
+    private final int maxBodySize;
+
+
+    /**
+     * Create a new {@code CachingRequestHandler} that stores bodies up to {@link #DEFAULT_MAX_BODY_SIZE}.
+     *
+     * @param requestHandler the request handler that carries out the requests that can't be served from the cache.
+     * @param store          the store for the cached responses.
+     */
+    public CachingRequestHandler(RequestHandler requestHandler, CacheStore store) {
+
+        this(requestHandler, store, DEFAULT_MAX_BODY_SIZE);
+    }
+
+    /**
+     * Create a new {@code CachingRequestHandler}.
+     *
+     * @param requestHandler the request handler that carries out the requests that can't be served from the cache.
+     * @param store          the store for the cached responses.
+     * @param maxBodySize    the size in bytes of the largest body that will be stored, a larger body is streamed
+     *                       straight through without being stored.
+     */
+    public CachingRequestHandler(RequestHandler requestHandler, CacheStore store, int maxBodySize) {
+
+        assertNotNull("requestHandler", requestHandler);
+        assertNotNull("store", store);
+
+        if (0 > maxBodySize) throw new IllegalArgumentException("The (maxBodySize) variable must not be negative.");
+
+        this.requestHandler = requestHandler;
+        this.store = store;
+        this.maxBodySize = maxBodySize;
+    }
+
+
+    /**
+     * @return the store for the cached responses.
+     */
+    public CacheStore getStore() {
+
+        return store;
+    }
+
+    @Override
+    public Response<InputStream> handleRequest(String method, Request<InputStream> request) {
+
+        if (GET.equals(method) || HEAD.equals(method)) return cached(method, request);
+
+        Response<InputStream> response = requestHandler.handleRequest(method, request);
+
+        // A successful unsafe request may have changed the resource so its stored response can't be trusted.
+        if (!SAFE_METHODS.contains(method) && 200 <= response.getStatus() && 400 > response.getStatus()) {
+
+            store.remove(key(request));
+        }
+
+        return response;
+    }
+
+    private Response<InputStream> cached(String method, Request<InputStream> request) {
+
+        // Ranges and the callers own conditional requests are left to the server.
+        if (isNotNull(header(request.getHeaders(), "Range")) || isConditional(request)) {
+
+            return requestHandler.handleRequest(method, request);
+        }
+
+        String key = key(request);
+        CacheControl control = requestControl(request);
+
+        CachedResponse stored = store.get(key);
+
+        if (isNotNull(stored) && !varyMatches(stored, request)) stored = null;
+
+        long now = System.currentTimeMillis();
+
+        if (isNotNull(stored) && isUsable(stored, control, now)) return toResponse(method, stored, now);
+
+        if (control.has(ONLY_IF_CACHED)) return new Response<InputStream>(GATEWAY_TIMEOUT, emptyBody());
+
+        // Without a stored response to revalidate a HEAD can't fill the cache.
+        if (HEAD.equals(method) && isNull(stored)) return requestHandler.handleRequest(method, request);
+
+        long requestTime = System.currentTimeMillis();
+        Response<InputStream> response = requestHandler.handleRequest(GET, conditionalRequest(request, stored));
+        long responseTime = System.currentTimeMillis();
+
+        if (NOT_MODIFIED == response.getStatus() && isNotNull(stored)) {
+
+            closeQuietly(response.getBody());
+
+            CachedResponse updated = stored.update(storableHeaders(response), requestTime, responseTime);
+
+            if (isStorable(request, control, updated)) store.put(key, updated);
+            else store.remove(key);
+
+            return toResponse(method, updated, responseTime);
+        }
+
+        return store(method, request, control, response, requestTime, responseTime);
+    }
+
+    /**
+     * Store the supplied response if it can be and return a response that can still be read by the caller.
+     */
+    private Response<InputStream> store(String method, Request<InputStream> request, CacheControl control,
+                                        Response<InputStream> response, long requestTime, long responseTime) {
+
+        CachedResponse headersOnly = new CachedResponse(response.getStatus(), storableHeaders(response), new byte[0],
+                requestTime, responseTime, vary(request, response));
+
+        if (!isStorable(request, control, headersOnly)) {
+
+            if (500 > response.getStatus()) store.remove(key(request));
+
+            return forMethod(method, response);
+        }
+
+        String contentLength = header(response.getHeaders(), "Content-Length");
+
+        if (isNotNull(contentLength) && maxBodySize < number(contentLength)) return forMethod(method, response);
+
+        InputStream body = response.getBody();
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+        try {
+
+            if (isNotNull(body) && !read(body, buffer)) {
+
+                // The body is too large to store so the caller gets what has been read followed by the rest.
+                response.setBody(new SequenceInputStream(new ByteArrayInputStream(buffer.toByteArray()), body));
+
+                return forMethod(method, response);
+            }
+
+        } catch (IOException e) {
+
+            closeQuietly(body);
+
+            throw new TransportException("Could not read the body of (" + request.getUrl() + ").", e);
+        }
+
+        closeQuietly(body);
+
+        CachedResponse cached = new CachedResponse(headersOnly.getStatus(), headersOnly.getHeaders(),
+                buffer.toByteArray(), requestTime, responseTime, headersOnly.getVary());
+
+        store.put(key(request), cached);
+
+        response.setBody(HEAD.equals(method) ? emptyBody() : new ByteArrayInputStream(cached.getBody()));
+
+        return response;
+    }
+
+    /**
+     * Read the supplied body into the buffer until it ends or there is more than can be stored.
+     *
+     * @return true if the entire body was read.
+     */
+    private boolean read(InputStream body, ByteArrayOutputStream buffer) throws IOException {
+
+        byte[] bytes = new byte[8192];
+
+        for (int read; -1 != (read = body.read(bytes)); ) {
+
+            buffer.write(bytes, 0, read);
+
+            if (maxBodySize < buffer.size()) return false;
+        }
+
+        return true;
+    }
+
+    private boolean isUsable(CachedResponse stored, CacheControl request, long now) {
+
+        CacheControl response = CacheControl.parse(stored.getHeader("Cache-Control"));
+
+        if (request.has(NO_CACHE) || response.has(NO_CACHE)) return false;
+
+        long lifetime = freshnessLifetime(stored);
+        long age = currentAge(stored, now);
+
+        if (0 <= request.seconds(MAX_AGE) && request.seconds(MAX_AGE) * 1000 < age) return false;
+
+        if (0 <= request.seconds(MIN_FRESH) && lifetime - age < request.seconds(MIN_FRESH) * 1000) return false;
+
+        if (lifetime > age) return true;
+
+        if (!request.has(MAX_STALE) || response.has(MUST_REVALIDATE) || response.has(PROXY_REVALIDATE)
+                || response.has(S_MAXAGE)) return false;
+
+        // A max-stale without a value accepts a response however stale it is.
+        return -1 == request.seconds(MAX_STALE) || age - lifetime <= request.seconds(MAX_STALE) * 1000;
+    }
+
+    private boolean isStorable(Request<InputStream> request, CacheControl control, CachedResponse response) {
+
+        CacheControl responseControl = CacheControl.parse(response.getHeader("Cache-Control"));
+
+        if (control.has(NO_STORE) || responseControl.has(NO_STORE) || responseControl.has(PRIVATE)) return false;
+
+        if (varyNames(response.getHeader("Vary")).contains("*")) return false;
+
+        // A shared cache can only store an authorised response that has been explicitly allowed.
+        if (isNotNull(header(request.getHeaders(), "Authorization")) && !responseControl.has(PUBLIC)
+                && !responseControl.has(S_MAXAGE) && !responseControl.has(MUST_REVALIDATE)) return false;
+
+        boolean explicit = responseControl.has(MAX_AGE) || responseControl.has(S_MAXAGE)
+                || isNotNull(response.getHeader("Expires")) || responseControl.has(PUBLIC);
+
+        if (!HEURISTIC_STATUSES.contains(response.getStatus())
+                && !(explicit && EXPLICIT_STATUSES.contains(response.getStatus()))) return false;
+
+        // There's no point storing a response that can neither be fresh nor revalidated.
+        return 0 < freshnessLifetime(response) || isNotNull(response.getHeader("ETag"))
+                || isNotNull(response.getHeader("Last-Modified"));
+    }
+
+    private boolean varyMatches(CachedResponse stored, Request<InputStream> request) {
+
+        for (Map.Entry<String, String> entry : stored.getVary().entrySet()) {
+
+            if (!equal(entry.getValue(), header(request.getHeaders(), entry.getKey()))) return false;
+        }
+
+        return true;
+    }
+
+    private boolean isConditional(Request<InputStream> request) {
+
+        for (Header header : request.getHeaders()) {
+
+            if (header.getName().toLowerCase().startsWith("if-")) return true;
+        }
+
+        return false;
+    }
+
+    private CacheControl requestControl(Request<InputStream> request) {
+
+        String cacheControl = header(request.getHeaders(), "Cache-Control");
+
+        if (isNotNull(cacheControl)) return CacheControl.parse(cacheControl);
+
+        // Pragma: no-cache is only used by HTTP/1.0 clients that don't send a Cache-Control.
+        String pragma = header(request.getHeaders(), "Pragma");
+
+        return isNotNull(pragma) && pragma.toLowerCase().contains(NO_CACHE) ? CacheControl.parse(NO_CACHE) :
+                CacheControl.EMPTY;
+    }
+
+    private Map<String, String> vary(Request<InputStream> request, Response<InputStream> response) {
+
+        Map<String, String> vary = new LinkedHashMap<String, String>();
+
+        for (String name : varyNames(header(response.getHeaders(), "Vary"))) {
+
+            vary.put(name, header(request.getHeaders(), name));
+        }
+
+        return vary;
+    }
+
+    private List<Header<String>> storableHeaders(Response<InputStream> response) {
+
+        List<Header<String>> headers = new ArrayList<Header<String>>();
+
+        for (Header header : response.getHeaders()) {
+
+            if (HOP_BY_HOP_HEADERS.contains(header.getName().toLowerCase())) continue;
+
+            headers.add(new Header<String>(header.getName(), String.valueOf(header.getValue())));
+        }
+
+        return headers;
+    }
+
+    /**
+     * Copy the supplied request as a {@code GET} that carries the validators of the stored response, if there is one.
+     */
+    private Request<InputStream> conditionalRequest(Request<InputStream> request, CachedResponse stored) {
+
+        if (isNull(stored)) return request;
+
+        String etag = stored.getHeader("ETag");
+        String lastModified = stored.getHeader("Last-Modified");
+
+        if (isNull(etag) && isNull(lastModified)) return request;
+
+        Request<InputStream> conditional = new Request<InputStream>(request, request.getBody());
+
+        if (isNotNull(etag)) conditional.addHeader("If-None-Match", etag);
+        if (isNotNull(lastModified)) conditional.addHeader("If-Modified-Since", lastModified);
+
+        return conditional;
+    }
+
+    private Response<InputStream> toResponse(String method, CachedResponse stored, long now) {
+
+        Response<InputStream> response = stored.toResponse();
+
+        for (Header header : new ArrayList<Header>(response.getHeaders())) {
+
+            if ("Age".equalsIgnoreCase(header.getName())) response.removeHeader(header);
+        }
+
+        response.addHeader("Age", String.valueOf(currentAge(stored, now) / 1000));
+
+        if (HEAD.equals(method)) response.setBody(emptyBody());
+
+        return response;
+    }
+}
@@ -0,0 +1,287 @@
+package http.cache;
+
+import http.Request;
+import http.RequestHandler;
+import http.Response;
+import http.Timeouts;
+import http.header.Header;
+import http.transport.RequestTimeoutException;
+import http.transport.TransportException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static http.Client.GET;
+import static http.util.Asserts.assertNotNull;
+import static http.util.Checks.isNotNull;
+import static http.util.Checks.isNull;
+import static http.util.IO.closeQuietly;
+
+/**
+ * A {@link RequestHandler} that coalesces identical concurrent {@code GET} requests into a single request. The first
+ * request for a URL and set of headers is sent, any identical request that arrives while it is in flight waits for it
+ * and is given its own copy of the same response. This stops a burst of requests for a popular resource, e.g. when its
+ * cached response expires, from all reaching the server.
+ * <p/>
+ * Requests are only identical if they have the same URL and exactly the same headers, so requests that would be
+ * answered differently because of a {@code Vary} are never coalesced. To be shared, the body of the response is read
+ * into memory. If it is larger than the maximum body size the first request streams it as normal and the waiting
+ * requests are sent on their own.
+ * <p/>
+ * A waiting request never waits for longer than its own total timeout or deadline allows, it fails with a
+ * {@link RequestTimeoutException} instead.
+ * <p/>
+ * Put the {@link CachingRequestHandler} in front of this handler so that only the requests that miss the cache are
+ * coalesced.
+ *
+ * @author Karl Bennett
+ */
+public class CoalescingRequestHandler implements RequestHandler {
+
+    /**
+     * The default size in bytes of the largest body that will be shared.
+     */
+    public static final int DEFAULT_MAX_BODY_SIZE = 1024 * 1024;
+
+
+    /**
+     * @return a key that is the same for requests with the same URL and headers in any order.
+     */
+    private static String key(Request<InputStream> request) {
+
+        List<String> headers = new ArrayList<String>();
+
+        for (Header header : request.getHeaders()) {
+
+            headers.add(header.getName().toLowerCase() + ':' + header.getValue());
+        }
+
+        Collections.sort(headers);
+
+        StringBuilder key = new StringBuilder(request.getUrl().toString());
+
+        for (String header : headers) key.append('\n').append(header);
+
+        return key.toString();
+    }
+
+    /**
+     * @return the most milliseconds the supplied request can wait, the shorter of its total timeout and the time left
+     *         until its deadline, or {@link Timeouts#NONE} if it can wait for as long as it takes.
+     */
+    private static long timeLeft(Request<InputStream> request) {
+
+        Timeouts timeouts = request.getTimeouts();
+
+        if (isNull(timeouts)) return Timeouts.NONE;
+
+        long timeLeft = Math.max(Timeouts.NONE, timeouts.getTotalTimeout());
+
+        if (timeouts.hasDeadline()) {
+
+            long untilDeadline = Math.max(1, timeouts.getDeadline() - System.currentTimeMillis());
+
+            if (Timeouts.NONE == timeLeft || untilDeadline < timeLeft) timeLeft = untilDeadline;
+        }
+
+        return timeLeft;
+    }
+
+
+    private final RequestHandler requestHandler;
+    private final int maxBodySize;
+
+    private final ConcurrentMap<String, Flight> flights = new ConcurrentHashMap<String, Flight>();
+    private final AtomicLong coalesced = new AtomicLong();
+
+
+    /**
+     * Create a new {@code CoalescingRequestHandler} that shares bodies up to {@link #DEFAULT_MAX_BODY_SIZE}.
+     *
+     * @param requestHandler the request handler that carries out the requests.
+     */
+    public CoalescingRequestHandler(RequestHandler requestHandler) {
+
+        this(requestHandler, DEFAULT_MAX_BODY_SIZE);
+    }
+
+    /**
+     * Create a new {@code CoalescingRequestHandler}.
+     *
+     * @param requestHandler the request handler that carries out the requests.
+     * @param maxBodySize    the size in bytes of the largest body that will be shared.
+     */
+    public CoalescingRequestHandler(RequestHandler requestHandler, int maxBodySize) {
+
+        assertNotNull("requestHandler", requestHandler);
+
+        if (0 > maxBodySize) throw new IllegalArgumentException("The (maxBodySize) variable must not be negative.");
+
+        this.requestHandler = requestHandler;
+        this.maxBodySize = maxBodySize;
+    }
+
+
+    /**
+     * @return the number of requests that have waited for an identical request instead of being sent.
+     */
+    public long getCoalescedCount() {
+
+        return coalesced.get();
+    }
+
+    @Override
+    public Response<InputStream> handleRequest(String method, Request<InputStream> request) {
+
+        if (!GET.equals(method) || isNotNull(request.getBody())) return requestHandler.handleRequest(method, request);
+
+        String key = key(request);
+        Flight flight = new Flight();
+        Flight leader = flights.putIfAbsent(key, flight);
+
+        if (isNull(leader)) return lead(key, flight, request);
+
+        coalesced.incrementAndGet();
+
+        Response<InputStream> response = leader.await(request);
+
+        // The response couldn't be shared so this request has to be sent on its own.
+        return isNull(response) ? requestHandler.handleRequest(method, request) : response;
+    }
+
+    private Response<InputStream> lead(String key, Flight flight, Request<InputStream> request) {
+
+        InputStream body = null;
+
+        try {
+
+            Response<InputStream> response = requestHandler.handleRequest(GET, request);
+
+            body = response.getBody();
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+            if (isNotNull(body) && !read(body, buffer)) {
+
+                response.setBody(new SequenceInputStream(new ByteArrayInputStream(buffer.toByteArray()), body));
+
+                return response;
+            }
+
+            closeQuietly(body);
+
+            flight.status = response.getStatus();
+            flight.headers = new ArrayList<Header>(response.getHeaders());
+            flight.body = buffer.toByteArray();
+
+            return flight.response();
+
+        } catch (IOException e) {
+
+            closeQuietly(body);
+
+            flight.failure = new TransportException("Could not read the body of (" + request.getUrl() + ").", e);
+
+            throw flight.failure;
+
+        } catch (RuntimeException e) {
+
+            flight.failure = e;
+
+            throw e;
+
+        } finally {
+
+            flights.remove(key, flight);
+            flight.latch.countDown();
+        }
+    }
+
+    /**
+     * Read the supplied body into the buffer until it ends or there is more than can be shared.
+     *
+     * @return true if the entire body was read.
+     */
+    private boolean read(InputStream body, ByteArrayOutputStream buffer) throws IOException {
+
+        byte[] bytes = new byte[8192];
+
+        for (int read; -1 != (read = body.read(bytes)); ) {
+
+            buffer.write(bytes, 0, read);
+
+            if (maxBodySize < buffer.size()) return false;
+        }
+
+        return true;
+    }
+
+
+    /**
+     * A request that is in flight. Its result is published to the waiting requests by the latch.
+     */
+    private static class Flight {
+
+        private final CountDownLatch latch = new CountDownLatch(1);
+
+        private int status;
+        private Collection<Header> headers;
+        private byte[] body;
+        private RuntimeException failure;
+
+        /**
+         * Wait for the request to complete, for no longer than the waiting request itself has left.
+         *
+         * @return a copy of the response, or null if the response couldn't be shared.
+         * @throws RequestTimeoutException if the waiting request ran out of time before the request completed.
+         * @throws TransportException      if the request failed or the thread was interrupted.
+         */
+        private Response<InputStream> await(Request<InputStream> request) {
+
+            long timeLeft = timeLeft(request);
+
+            try {
+
+                if (Timeouts.NONE == timeLeft) {
+
+                    latch.await();
+
+                } else if (!latch.await(timeLeft, TimeUnit.MILLISECONDS)) {
+
+                    throw new RequestTimeoutException("The request to (" + request.getUrl() +
+                            ") ran out of time while waiting for an identical request.");
+                }
+
+            } catch (InterruptedException e) {
+
+                Thread.currentThread().interrupt();
+
+                throw new TransportException("Interrupted while waiting for a request to (" + request.getUrl() + ").",
+                        e);
+            }
+
+            if (isNotNull(failure)) {
+
+                throw new TransportException("The request to (" + request.getUrl() + ") failed.", failure);
+            }
+
+            return isNull(body) ? null : response();
+        }
+
+        private Response<InputStream> response() {
+
+            return new Response<InputStream>(status, headers, new ByteArrayInputStream(body));
+        }
+    }
+}
@@ -0,0 +1,391 @@
+package http.cache;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import static http.util.Asserts.assertNotNull;
+import static http.util.Checks.isNull;
+import static http.util.IO.closeQuietly;
+
+/**
+ * A {@link CacheStore} that keeps responses in memory mapped segment files on disk, so that the cache survives a
+ * restart and its size isn't limited by the heap.
+ * <p/>
+ * Responses are appended to the newest segment as records of the form
+ * {@code [magic][key length][value length][key][value][crc32]}, a removal is appended as a record with a value length
+ * of -1. Only an index from key to record location is kept on the heap, it is rebuilt when the store is opened by
+ * scanning the segments in order. A record that was only partly written, or that fails its checksum, ends the scan of
+ * its segment.
+ * <p/>
+ * Once the segments take up more than the maximum size the oldest segment is deleted along with every response in it.
+ * Java can't unmap a buffer on demand so the disk space of a deleted segment is only given back once its buffer has
+ * been garbage collected.
+ *
+ * @author Karl Bennett
+ */
+public class DiskCacheStore implements CacheStore, Closeable {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int MAGIC = 0x48434331;
+    private static final int TOMBSTONE = -1;
+    private static final int RECORD_OVERHEAD = 4 + 4 + 4 + 4;
+
+    private static final String PREFIX = "segment-";
+    private static final String SUFFIX = ".dat";
+
+
+    private static long number(File segment) {
+
+        String name = segment.getName();
+
+        try {
+
+            return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+
+        } catch (NumberFormatException e) {
+
+            return -1;
+        }
+    }
+
+    private static long crc(ByteBuffer buffer, int start, int length) {
+
+        CRC32 crc = new CRC32();
+
+        for (int i = start; i < start + length; i++) crc.update(buffer.get(i));
+
+        return crc.getValue();
+    }
+
+
+    private final File directory;
+    private final long maxSize;
+    private final int segmentSize;
+
+    private final LinkedList<Segment> segments = new LinkedList<Segment>();
+    private final Map<String, Location> index = new HashMap<String, Location>();
+
+
+    /**
+     * Create a new {@code DiskCacheStore} that keeps its segments in the supplied directory. Any responses already
+     * stored in the directory are made available again.
+     *
+     * @param directory   the directory for the segment files, this is created if it doesn't exist.
+     * @param maxSize     the maximum total size in bytes of the segment files.
+     * @param segmentSize the size in bytes of each segment file, this limits the size of a single response.
+     * @throws IllegalArgumentException if the sizes aren't positive or the maximum size is smaller than a segment.
+     * @throws IllegalStateException    if the directory can't be created or a segment can't be opened.
+     */
+    public DiskCacheStore(File directory, long maxSize, int segmentSize) {
+
+        assertNotNull("directory", directory);
+
+        if (0 >= segmentSize) {
+
+            throw new IllegalArgumentException("The (segmentSize) variable must be greater than zero.");
+        }
+
+        if (segmentSize > maxSize) {
+
+            throw new IllegalArgumentException("The (maxSize) variable must not be less than the (segmentSize).");
+        }
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+
+            throw new IllegalStateException("Could not create the cache directory (" + directory + ").");
+        }
+
+        this.directory = directory;
+        this.maxSize = maxSize;
+        this.segmentSize = segmentSize;
+
+        load();
+    }
+
+
+    /**
+     * @return the number of stored responses.
+     */
+    public synchronized int getCount() {
+
+        return index.size();
+    }
+
+    @Override
+    public synchronized CachedResponse get(String key) {
+
+        Location location = index.get(key);
+
+        if (isNull(location)) return null;
+
+        ByteBuffer buffer = location.segment.buffer.duplicate();
+        buffer.limit(location.offset + location.length);
+        buffer.position(location.offset);
+
+        return CachedResponse.fromBytes(buffer.slice());
+    }
+
+    @Override
+    public synchronized void put(String key, CachedResponse response) {
+
+        assertNotNull("key", key);
+        assertNotNull("response", response);
+
+        byte[] value = response.toBytes();
+
+        if (segmentSize < RECORD_OVERHEAD + key.getBytes(UTF_8).length + value.length) {
+
+            remove(key);
+
+            return;
+        }
+
+        Segment segment = append(key, value);
+
+        index.put(key, new Location(segment, segment.position - 4 - value.length, value.length));
+    }
+
+    @Override
+    public synchronized void remove(String key) {
+
+        if (isNull(index.remove(key))) return;
+
+        append(key, null);
+    }
+
+    @Override
+    public synchronized void clear() {
+
+        index.clear();
+
+        for (Segment segment : segments) segment.delete();
+
+        segments.clear();
+    }
+
+    /**
+     * Flush the segments to disk and close them. The store must not be used once it has been closed.
+     */
+    @Override
+    public synchronized void close() {
+
+        for (Segment segment : segments) segment.close();
+
+        segments.clear();
+        index.clear();
+    }
+
+    /**
+     * Rebuild the index from the segments that are already in the directory.
+     */
+    private void load() {
+
+        File[] files = directory.listFiles();
+
+        if (isNull(files)) return;
+
+        List<File> segmentFiles = new ArrayList<File>();
+
+        for (File file : files) {
+
+            if (file.getName().startsWith(PREFIX) && file.getName().endsWith(SUFFIX) && 0 <= number(file)) {
+
+                segmentFiles.add(file);
+            }
+        }
+
+        File[] sorted = segmentFiles.toArray(new File[segmentFiles.size()]);
+        Arrays.sort(sorted, new Comparator<File>() {
+
+            @Override
+            public int compare(File one, File two) {
+
+                long difference = number(one) - number(two);
+
+                return 0 > difference ? -1 : 0 < difference ? 1 : 0;
+            }
+        });
+
+        for (File file : sorted) {
+
+            Segment segment = new Segment(file, number(file), segmentSize);
+
+            segments.add(segment);
+
+            scan(segment);
+        }
+
+        evict();
+    }
+
+    private void scan(Segment segment) {
+
+        ByteBuffer buffer = segment.buffer;
+        int position = 0;
+
+        while (position + RECORD_OVERHEAD <= segmentSize && MAGIC == buffer.getInt(position)) {
+
+            int keyLength = buffer.getInt(position + 4);
+            int valueLength = buffer.getInt(position + 8);
+
+            if (0 > keyLength || TOMBSTONE > valueLength) break;
+
+            if (segmentSize - position - RECORD_OVERHEAD < (long) keyLength + Math.max(0, valueLength)) break;
+
+            int dataLength = keyLength + Math.max(0, valueLength);
+            int data = position + 12;
+
+            // A record that fails its checksum was being written when the process stopped.
+            if ((int) crc(buffer, data, dataLength) != buffer.getInt(data + dataLength)) break;
+
+            byte[] key = new byte[keyLength];
+
+            for (int i = 0; i < keyLength; i++) key[i] = buffer.get(data + i);
+
+            String name = new String(key, UTF_8);
+
+            if (TOMBSTONE == valueLength) index.remove(name);
+            else index.put(name, new Location(segment, data + keyLength, valueLength));
+
+            position = data + dataLength + 4;
+        }
+
+        segment.position = position;
+    }
+
+    /**
+     * Append a record to the newest segment, starting a new segment if the record doesn't fit.
+     *
+     * @param key   the key of the record.
+     * @param value the value of the record, or null for a removal.
+     * @return the segment the record was written to.
+     */
+    private Segment append(String key, byte[] value) {
+
+        byte[] keyBytes = key.getBytes(UTF_8);
+        int valueLength = isNull(value) ? 0 : value.length;
+        int length = RECORD_OVERHEAD + keyBytes.length + valueLength;
+
+        Segment segment = segments.isEmpty() ? null : segments.getLast();
+
+        if (isNull(segment) || segmentSize < segment.position + length) {
+
+            long number = isNull(segment) ? 0 : segment.number + 1;
+
+            segment = new Segment(new File(directory, PREFIX + number + SUFFIX), number, segmentSize);
+            segments.add(segment);
+
+            evict();
+        }
+
+        ByteBuffer buffer = segment.buffer;
+        int position = segment.position;
+
+        buffer.putInt(position + 4, keyBytes.length);
+        buffer.putInt(position + 8, isNull(value) ? TOMBSTONE : valueLength);
+
+        int data = position + 12;
+
+        for (int i = 0; i < keyBytes.length; i++) buffer.put(data + i, keyBytes[i]);
+        for (int i = 0; i < valueLength; i++) buffer.put(data + keyBytes.length + i, value[i]);
+
+        buffer.putInt(data + keyBytes.length + valueLength, (int) crc(buffer, data, keyBytes.length + valueLength));
+
+        // The magic is written last so that a record is never seen before the rest of it has been written.
+        buffer.putInt(position, MAGIC);
+
+        segment.position = position + length;
+
+        return segment;
+    }
+
+    /**
+     * Delete the oldest segments until the segments fit in the maximum size.
+     */
+    private void evict() {
+
+        while ((long) segments.size() * segmentSize > maxSize) {
+
+            Segment oldest = segments.removeFirst();
+
+            for (Iterator<Location> locations = index.values().iterator(); locations.hasNext(); ) {
+
+                if (oldest == locations.next().segment) locations.remove();
+            }
+
+            oldest.delete();
+        }
+    }
+
+
+    private static class Segment {
+
+        private final File file;
+        private final long number;
+        private final RandomAccessFile randomAccessFile;
+        private final MappedByteBuffer buffer;
+
+        private int position;
+
+        private Segment(File file, long number, int size) {
+
+            this.file = file;
+            this.number = number;
+
+            try {
+
+                this.randomAccessFile = new RandomAccessFile(file, "rw");
+                this.buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+
+            } catch (IOException e) {
+
+                throw new IllegalStateException("Could not open the cache segment (" + file + ").", e);
+            }
+        }
+
+        private void close() {
+
+            buffer.force();
+            closeQuietly(randomAccessFile);
+        }
+
+        private void delete() {
+
+            closeQuietly(randomAccessFile);
+
+            // On some platforms the file can't be deleted while it is still mapped, if it is left behind it is the
+            // oldest segment so it is evicted again the next time the store is opened.
+            file.delete();
+        }
+    }
+
+    private static class Location {
+
+        private final Segment segment;
+        private final int offset;
+        private final int length;
+
+        private Location(Segment segment, int offset, int length) {
+
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package http.cache;
+
+/**
+ * A count-min sketch of how often keys have been asked for, used for TinyLFU admission. Each key has a 4 bit counter
+ * in each of four rows and its frequency is the smallest of them. Once a sample of increments has been taken every
+ * counter is halved so that the sketch follows changes in popularity.
+ *
+ * @author Karl Bennett
+ * @see <a href="https://arxiv.org/abs/1512.00727">TinyLFU: A Highly Efficient Cache Admission Policy</a>
+ */
+final class FrequencySketch {
+
+    private static final int DEPTH = 4;
+    private static final int MAX_COUNT = 15;
+    private static final int MAX_WIDTH = 1 << 24;
+
+    private static final long[] SEEDS = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+    };
+
+
+    private final byte[] counters;
+    private final int width;
+    private final int mask;
+    private final int sampleSize;
+
+    private int additions;
+
+
+    /**
+     * Create a new {@code FrequencySketch}.
+     *
+     * @param expected the number of keys that are expected to be held in the cache.
+     */
+    FrequencySketch(int expected) {
+
+        int width = 16;
+
+        while (width < expected && width < MAX_WIDTH) width <<= 1;
+
+        this.counters = new byte[DEPTH * width];
+        this.width = width;
+        this.mask = width - 1;
+        this.sampleSize = 10 * width;
+    }
+
+
+    /**
+     * Count another request for the key with the supplied hash.
+     *
+     * @param hash the hash of the key.
+     */
+    void increment(long hash) {
+
+        boolean added = false;
+
+        for (int row = 0; row < DEPTH; row++) {
+
+            int index = index(hash, row);
+
+            if (MAX_COUNT > counters[index]) {
+
+                counters[index]++;
+                added = true;
+            }
+        }
+
+        if (added && sampleSize <= ++additions) reset();
+    }
+
+    /**
+     * @param hash the hash of the key.
+     * @return the estimated number of recent requests for the key.
+     */
+    int frequency(long hash) {
+
+        int frequency = MAX_COUNT;
+
+        for (int row = 0; row < DEPTH; row++) frequency = Math.min(frequency, counters[index(hash, row)]);
+
+        return frequency;
+    }
+
+    private int index(long hash, int row) {
+
+        long h = (hash + SEEDS[row]) * SEEDS[row];
+
+        return row * width + ((int) (h ^ (h >>> 32)) & mask);
+    }
+
+    private void reset() {
+
+        for (int i = 0; i < counters.length; i++) counters[i] = (byte) (counters[i] >>> 1);
+
+        additions /= 2;
+    }
+}
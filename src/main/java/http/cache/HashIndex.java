@@ -0,0 +1,184 @@
+package http.cache;
+
+/**
+ * A compact open addressing map from a 64 bit key hash to a non-negative {@code long} value. The hashes and values are
+ * held in two parallel arrays that are probed linearly, so an entry costs 16 bytes and no objects however many entries
+ * there are. Removal shifts the following entries back rather than leaving tombstones.
+ * <p/>
+ * The map holds no keys, callers have to check that the entry they find is for their key.
+ *
+ * @author Karl Bennett
+ */
+final class HashIndex {
+
+    private static final long EMPTY = 0;
+    private static final int MIN_CAPACITY = 16;
+
+
+    /**
+     * Hash the supplied key with 64 bit FNV-1a followed by a finalising mix, a zero hash is never returned.
+     *
+     * @param key the bytes of the key.
+     * @return the hash of the key.
+     */
+    static long hash(byte[] key) {
+
+        long hash = 0xcbf29ce484222325L;
+
+        for (byte b : key) hash = (hash ^ (b & 0xFF)) * 0x100000001b3L;
+
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+
+        return EMPTY == hash ? 1 : hash;
+    }
+
+    private static int capacity(int expected) {
+
+        int capacity = MIN_CAPACITY;
+
+        while (capacity * 3 / 4 < expected && 0 < capacity << 1) capacity <<= 1;
+
+        return capacity;
+    }
+
+
+    private long[] hashes;
+    private long[] values;
+    private int mask;
+    private int size;
+
+
+    /**
+     * Create a new {@code HashIndex}.
+     *
+     * @param expected the number of entries the index is expected to hold, it grows past this if it needs to.
+     */
+    HashIndex(int expected) {
+
+        allocate(capacity(expected));
+    }
+
+
+    /**
+     * @return the number of entries.
+     */
+    int size() {
+
+        return size;
+    }
+
+    /**
+     * @param hash the hash of the key.
+     * @return the value for the hash, or -1 if there isn't one.
+     */
+    long get(long hash) {
+
+        int slot = find(hash);
+
+        return -1 == slot ? -1 : values[slot];
+    }
+
+    /**
+     * Map the supplied hash to the supplied value, replacing any value it is already mapped to.
+     *
+     * @param hash  the hash of the key, this must not be zero.
+     * @param value the value, this must not be negative.
+     */
+    void put(long hash, long value) {
+
+        if (EMPTY == hash) throw new IllegalArgumentException("The (hash) variable must not be zero.");
+        if (0 > value) throw new IllegalArgumentException("The (value) variable must not be negative.");
+
+        int slot = (int) hash & mask;
+
+        for (; EMPTY != hashes[slot]; slot = (slot + 1) & mask) {
+
+            if (hash == hashes[slot]) {
+
+                values[slot] = value;
+
+                return;
+            }
+        }
+
+        hashes[slot] = hash;
+        values[slot] = value;
+
+        if (++size > hashes.length * 3 / 4) resize();
+    }
+
+    /**
+     * Remove the value for the supplied hash.
+     *
+     * @param hash the hash of the key.
+     * @return the value that was removed, or -1 if there wasn't one.
+     */
+    long remove(long hash) {
+
+        int slot = find(hash);
+
+        if (-1 == slot) return -1;
+
+        long removed = values[slot];
+        int gap = slot;
+
+        // Move back any following entry that can't be found once the gap is empty.
+        for (int i = (slot + 1) & mask; EMPTY != hashes[i]; i = (i + 1) & mask) {
+
+            int home = (int) hashes[i] & mask;
+
+            if (((i - home) & mask) >= ((i - gap) & mask)) {
+
+                hashes[gap] = hashes[i];
+                values[gap] = values[i];
+                gap = i;
+            }
+        }
+
+        hashes[gap] = EMPTY;
+        values[gap] = 0;
+        size--;
+
+        return removed;
+    }
+
+    /**
+     * Remove every entry.
+     */
+    void clear() {
+
+        allocate(MIN_CAPACITY);
+    }
+
+    private int find(long hash) {
+
+        for (int slot = (int) hash & mask; EMPTY != hashes[slot]; slot = (slot + 1) & mask) {
+
+            if (hash == hashes[slot]) return slot;
+        }
+
+        return -1;
+    }
+
+    private void allocate(int capacity) {
+
+        hashes = new long[capacity];
+        values = new long[capacity];
+        mask = capacity - 1;
+        size = 0;
+    }
+
+    private void resize() {
+
+        long[] oldHashes = hashes;
+        long[] oldValues = values;
+
+        allocate(hashes.length << 1);
+
+        for (int i = 0; i < oldHashes.length; i++) if (EMPTY != oldHashes[i]) put(oldHashes[i], oldValues[i]);
+    }
+}
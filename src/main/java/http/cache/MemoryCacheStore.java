@@ -0,0 +1,108 @@
+package http.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import static http.util.Asserts.assertNotNull;
+import static http.util.Checks.isNotNull;
+
+/**
+ * A {@link CacheStore} that keeps responses on the heap. The store is bounded by the total
+ * {@link CachedResponse#getSize()} of its responses, once a new response takes it over that size the least recently
+ * used responses are evicted.
+ *
+ * @author Karl Bennett
+ */
+public class MemoryCacheStore implements CacheStore {
+
+    private final long maxSize;
+    private final LinkedHashMap<String, CachedResponse> responses;
+
+    private long size;
+
+
+    /**
+     * Create a new {@code MemoryCacheStore}.
+     *
+     * @param maxSize the maximum total size in bytes of the stored responses.
+     * @throws IllegalArgumentException if the maximum size is not positive.
+     */
+    public MemoryCacheStore(long maxSize) {
+
+        if (0 >= maxSize) throw new IllegalArgumentException("The (maxSize) variable must be greater than zero.");
+
+        this.maxSize = maxSize;
+        this.responses = new LinkedHashMap<String, CachedResponse>(16, 0.75f, true);
+    }
+
+
+    /**
+     * @return the maximum total size in bytes of the stored responses.
+     */
+    public long getMaxSize() {
+
+        return maxSize;
+    }
+
+    /**
+     * @return the total size in bytes of the stored responses.
+     */
+    public synchronized long getSize() {
+
+        return size;
+    }
+
+    /**
+     * @return the number of stored responses.
+     */
+    public synchronized int getCount() {
+
+        return responses.size();
+    }
+
+    @Override
+    public synchronized CachedResponse get(String key) {
+
+        return responses.get(key);
+    }
+
+    @Override
+    public synchronized void put(String key, CachedResponse response) {
+
+        assertNotNull("key", key);
+        assertNotNull("response", response);
+
+        remove(key);
+
+        long responseSize = response.getSize();
+
+        if (maxSize < responseSize) return;
+
+        responses.put(key, response);
+        size += responseSize;
+
+        // The iteration order is least recently used first.
+        Iterator<CachedResponse> iterator = responses.values().iterator();
+
+        while (maxSize < size) {
+
+            size -= iterator.next().getSize();
+            iterator.remove();
+        }
+    }
+
+    @Override
+    public synchronized void remove(String key) {
+
+        CachedResponse removed = responses.remove(key);
+
+        if (isNotNull(removed)) size -= removed.getSize();
+    }
+
+    @Override
+    public synchronized void clear() {
+
+        responses.clear();
+        size = 0;
+    }
+}
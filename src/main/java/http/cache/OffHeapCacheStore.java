@@ -0,0 +1,600 @@
+package http.cache;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import static http.util.Asserts.assertNotNull;
+import static http.util.Checks.isNotNull;
+import static http.util.Checks.isNull;
+import static http.util.IO.closeQuietly;
+
+/**
+ * A {@link CacheStore} that keeps responses outside of the heap, either in direct buffers or in memory mapped files, so
+ * that gigabytes of responses can be cached without adding to the heap or to garbage collection pauses. Only a
+ * {@link HashIndex} of 16 bytes per response and a small {@link FrequencySketch} are kept on the heap.
+ * <p/>
+ * The memory is split into equal slabs that are written as a log. A response is appended to the newest slab, replacing
+ * a response just points the index at the new record. When the slabs run out the oldest slab is reclaimed: responses in
+ * it that have been read since they were written are copied forward into the newest slab, up to three quarters of it,
+ * and the rest are evicted. Together this gives a segmented LRU with new responses on probation until they are read.
+ * One slab is always kept empty to copy into.
+ * <p/>
+ * Once the store is full a new response is only admitted if the sketch has seen it asked for more often than the oldest
+ * response on probation, which is the one it would evict, so that one-off requests can't push out popular responses.
+ * <p/>
+ * A store backed by a directory reloads its responses when it is opened. Every slab starts with a generation number and
+ * every record carries the generation of its slab and a checksum, so the slabs can be replayed oldest first and a
+ * record that was being written when the process stopped, or that was left over from before the slab was reused, ends
+ * the replay of its slab. The mapped files are flushed to disk by {@link #close()}, until then they are written back by
+ * the operating system which survives the process stopping but not the machine.
+ *
+ * @author Karl Bennett
+ */
+public class OffHeapCacheStore implements CacheStore, Closeable {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int SLAB_MAGIC = 0x48434f53;
+    private static final int RECORD_MAGIC = 0x48434f52;
+    private static final int TOMBSTONE = -1;
+
+    /**
+     * A slab starts with its magic and generation.
+     */
+    private static final int SLAB_HEADER = 4 + 8;
+
+    /**
+     * A record is its magic, the generation of its slab, the length of its key and value, and a trailing checksum.
+     */
+    private static final int RECORD_HEADER = 4 + 8 + 4 + 4;
+    private static final int RECORD_OVERHEAD = RECORD_HEADER + 4;
+
+    private static final long ACCESSED = 1L << 62;
+    private static final int AVERAGE_RESPONSE_SIZE = 4096;
+
+    private static final String PREFIX = "slab-";
+    private static final String SUFFIX = ".dat";
+
+
+    private static long location(Slab slab, int offset) {
+
+        return ((long) slab.number << 32) | offset;
+    }
+
+    private static int slabNumber(long location) {
+
+        return (int) ((location & ~ACCESSED) >>> 32);
+    }
+
+    private static int offset(long location) {
+
+        return (int) location;
+    }
+
+    private static int expectedCount(long capacity) {
+
+        return (int) Math.min(1 << 24, Math.max(64, capacity / AVERAGE_RESPONSE_SIZE));
+    }
+
+
+    private final int maxRecordSize;
+    private final int protectedSize;
+    private final boolean persistent;
+
+    private final Slab[] slabs;
+    private final LinkedList<Slab> order = new LinkedList<Slab>();
+    private final LinkedList<Slab> free = new LinkedList<Slab>();
+    private final HashIndex index;
+    private final FrequencySketch sketch;
+
+    private Slab head;
+    private long generation;
+
+
+    /**
+     * Create a new {@code OffHeapCacheStore} that keeps its responses in direct buffers, they are lost when the store
+     * is garbage collected.
+     *
+     * @param capacity    the total size in bytes of the slabs.
+     * @param segmentSize the size in bytes of each slab, a response can take up to a quarter of a slab.
+     * @throws IllegalArgumentException if there wouldn't be at least two slabs.
+     */
+    public OffHeapCacheStore(long capacity, int segmentSize) {
+
+        this(null, capacity, segmentSize);
+    }
+
+    /**
+     * Create a new {@code OffHeapCacheStore} that keeps its responses in memory mapped files in the supplied directory.
+     * Any responses already stored in the directory are made available again.
+     *
+     * @param directory   the directory for the slab files, this is created if it doesn't exist. If this is null the
+     *                    responses are kept in direct buffers instead.
+     * @param capacity    the total size in bytes of the slabs.
+     * @param segmentSize the size in bytes of each slab, a response can take up to a quarter of a slab.
+     * @throws IllegalArgumentException if there wouldn't be at least two slabs.
+     * @throws IllegalStateException    if the directory can't be created or a slab can't be opened.
+     */
+    public OffHeapCacheStore(File directory, long capacity, int segmentSize) {
+
+        if (SLAB_HEADER + RECORD_OVERHEAD > segmentSize / 4) {
+
+            throw new IllegalArgumentException("The (segmentSize) variable is too small to hold a response.");
+        }
+
+        long count = capacity / segmentSize;
+
+        if (2 > count || Integer.MAX_VALUE < count) {
+
+            throw new IllegalArgumentException("The (capacity) variable must hold at least two segments.");
+        }
+
+        if (isNotNull(directory) && !directory.isDirectory() && !directory.mkdirs()) {
+
+            throw new IllegalStateException("Could not create the cache directory (" + directory + ").");
+        }
+
+        this.maxRecordSize = segmentSize / 4;
+        this.protectedSize = segmentSize / 4 * 3;
+        this.persistent = isNotNull(directory);
+
+        this.slabs = new Slab[(int) count];
+        this.index = new HashIndex(expectedCount(capacity));
+        this.sketch = new FrequencySketch(expectedCount(capacity));
+
+        for (int i = 0; i < slabs.length; i++) {
+
+            slabs[i] = persistent ? new Slab(i, new File(directory, PREFIX + i + SUFFIX), segmentSize) :
+                    new Slab(i, segmentSize);
+        }
+
+        load();
+    }
+
+
+    /**
+     * @return the number of stored responses.
+     */
+    public synchronized int getCount() {
+
+        return index.size();
+    }
+
+    @Override
+    public synchronized CachedResponse get(String key) {
+
+        byte[] keyBytes = key.getBytes(UTF_8);
+        long hash = HashIndex.hash(keyBytes);
+
+        sketch.increment(hash);
+
+        long location = index.get(hash);
+
+        if (-1 == location) return null;
+
+        Slab slab = slabs[slabNumber(location)];
+        int offset = offset(location);
+
+        // Different keys can share a hash so the key in the record has to be checked.
+        if (!slab.hasKey(offset, keyBytes)) return null;
+
+        index.put(hash, location | ACCESSED);
+
+        return CachedResponse.fromBytes(slab.value(offset));
+    }
+
+    @Override
+    public synchronized void put(String key, CachedResponse response) {
+
+        assertNotNull("key", key);
+        assertNotNull("response", response);
+
+        byte[] keyBytes = key.getBytes(UTF_8);
+        long hash = HashIndex.hash(keyBytes);
+        byte[] value = response.toBytes();
+        int length = RECORD_OVERHEAD + keyBytes.length + value.length;
+
+        if (maxRecordSize < length) {
+
+            remove(key);
+
+            return;
+        }
+
+        if (-1 == index.get(hash) && wouldEvict(length) && !admit(hash)) return;
+
+        Slab slab = reserve(length);
+        int offset = slab.append(keyBytes, value);
+
+        // An updated response keeps its place in the protected segment.
+        long current = index.get(hash);
+
+        index.put(hash, location(slab, offset) | (-1 == current ? 0 : current & ACCESSED));
+    }
+
+    @Override
+    public synchronized void remove(String key) {
+
+        byte[] keyBytes = key.getBytes(UTF_8);
+        long hash = HashIndex.hash(keyBytes);
+        long location = index.get(hash);
+
+        if (-1 == location || !slabs[slabNumber(location)].hasKey(offset(location), keyBytes)) return;
+
+        index.remove(hash);
+
+        // The removal only has to be recorded if the slabs are going to be replayed.
+        if (persistent) reserve(RECORD_OVERHEAD + keyBytes.length).append(keyBytes, null);
+    }
+
+    @Override
+    public synchronized void clear() {
+
+        index.clear();
+        order.clear();
+        free.clear();
+
+        for (Slab slab : slabs) {
+
+            slab.clear();
+            free.add(slab);
+        }
+
+        head = null;
+    }
+
+    /**
+     * Flush the slabs to disk if they are mapped and close them. The store must not be used once it has been closed.
+     */
+    @Override
+    public synchronized void close() {
+
+        for (Slab slab : slabs) slab.close();
+
+        index.clear();
+        order.clear();
+        free.clear();
+        head = null;
+    }
+
+    /**
+     * Replay the slabs oldest first to rebuild the index.
+     */
+    private void load() {
+
+        List<Slab> used = new ArrayList<Slab>();
+
+        for (Slab slab : slabs) {
+
+            if (slab.isUsed()) used.add(slab);
+            else free.add(slab);
+        }
+
+        Collections.sort(used, new Comparator<Slab>() {
+
+            @Override
+            public int compare(Slab one, Slab two) {
+
+                return one.generation < two.generation ? -1 : one.generation > two.generation ? 1 : 0;
+            }
+        });
+
+        for (Slab slab : used) {
+
+            replay(slab);
+            order.add(slab);
+            generation = Math.max(generation, slab.generation);
+        }
+
+        if (!order.isEmpty()) head = order.getLast();
+
+        if (free.isEmpty()) reclaim(order.removeFirst());
+    }
+
+    private void replay(Slab slab) {
+
+        int offset = SLAB_HEADER;
+
+        for (; slab.isRecord(offset); offset += slab.recordLength(offset)) {
+
+            byte[] key = slab.key(offset);
+            long hash = HashIndex.hash(key);
+
+            if (slab.isTombstone(offset)) index.remove(hash);
+            else index.put(hash, location(slab, offset));
+        }
+
+        slab.position = offset;
+    }
+
+    private boolean wouldEvict(int length) {
+
+        return (isNull(head) || !head.fits(length)) && 1 == free.size();
+    }
+
+    /**
+     * TinyLFU admission, compare the new response with the oldest response on probation which is the next one to be
+     * evicted.
+     */
+    private boolean admit(long hash) {
+
+        Slab oldest = order.getFirst();
+
+        for (int offset = SLAB_HEADER; offset < oldest.position; offset += oldest.recordLength(offset)) {
+
+            if (oldest.isTombstone(offset)) continue;
+
+            long victim = HashIndex.hash(oldest.key(offset));
+
+            if (isLive(victim, oldest, offset) && 0 == (index.get(victim) & ACCESSED)) {
+
+                return sketch.frequency(hash) > sketch.frequency(victim);
+            }
+        }
+
+        return true;
+    }
+
+    private boolean isLive(long hash, Slab slab, int offset) {
+
+        long location = index.get(hash);
+
+        return -1 != location && location(slab, offset) == (location & ~ACCESSED);
+    }
+
+    private Slab reserve(int length) {
+
+        while (isNull(head) || !head.fits(length)) advance();
+
+        return head;
+    }
+
+    private void advance() {
+
+        head = free.removeFirst();
+        head.reset(++generation);
+        order.addLast(head);
+
+        if (free.isEmpty()) reclaim(order.removeFirst());
+    }
+
+    /**
+     * Empty the supplied slab, copying the responses that have been read since they were written into the head and
+     * evicting the rest.
+     */
+    private void reclaim(Slab slab) {
+
+        for (int offset = SLAB_HEADER; offset < slab.position; offset += slab.recordLength(offset)) {
+
+            if (slab.isTombstone(offset)) continue;
+
+            long hash = HashIndex.hash(slab.key(offset));
+            long location = index.get(hash);
+
+            if (!isLive(hash, slab, offset)) continue;
+
+            int length = slab.recordLength(offset);
+
+            // A copied response goes back on probation, it has to be read again to survive the next reclaim.
+            if (0 != (location & ACCESSED) && protectedSize >= head.position + length) {
+
+                index.put(hash, location(head, head.copy(slab, offset, length)));
+
+            } else {
+
+                index.remove(hash);
+            }
+        }
+
+        slab.clear();
+        free.add(slab);
+    }
+
+
+    private static class Slab {
+
+        private final int number;
+        private final ByteBuffer buffer;
+        private final RandomAccessFile file;
+
+        private long generation;
+        private int position = SLAB_HEADER;
+
+        private Slab(int number, int size) {
+
+            this.number = number;
+            this.buffer = ByteBuffer.allocateDirect(size);
+            this.file = null;
+        }
+
+        private Slab(int number, File file, int size) {
+
+            this.number = number;
+
+            try {
+
+                this.file = new RandomAccessFile(file, "rw");
+                this.buffer = this.file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+
+            } catch (IOException e) {
+
+                throw new IllegalStateException("Could not open the cache slab (" + file + ").", e);
+            }
+
+            if (isUsed()) generation = buffer.getLong(4);
+        }
+
+        private boolean isUsed() {
+
+            return SLAB_MAGIC == buffer.getInt(0) && 0 < buffer.getLong(4);
+        }
+
+        private void reset(long generation) {
+
+            this.generation = generation;
+            this.position = SLAB_HEADER;
+
+            buffer.putInt(0, 0);
+            buffer.putLong(4, generation);
+            buffer.putInt(0, SLAB_MAGIC);
+        }
+
+        private void clear() {
+
+            generation = 0;
+            position = SLAB_HEADER;
+
+            buffer.putInt(0, 0);
+        }
+
+        private boolean fits(int length) {
+
+            return buffer.capacity() >= position + length;
+        }
+
+        /**
+         * @return true if there is a complete record of this slabs generation at the supplied offset.
+         */
+        private boolean isRecord(int offset) {
+
+            if (buffer.capacity() < offset + RECORD_OVERHEAD) return false;
+
+            if (RECORD_MAGIC != buffer.getInt(offset) || generation != buffer.getLong(offset + 4)) return false;
+
+            int keyLength = buffer.getInt(offset + 12);
+            int valueLength = buffer.getInt(offset + 16);
+
+            if (0 > keyLength || TOMBSTONE > valueLength) return false;
+
+            long dataLength = (long) keyLength + Math.max(0, valueLength);
+
+            if (buffer.capacity() - offset - RECORD_OVERHEAD < dataLength) return false;
+
+            return crc(offset + RECORD_HEADER, (int) dataLength) == buffer.getInt(offset + RECORD_HEADER +
+                    (int) dataLength);
+        }
+
+        private boolean isTombstone(int offset) {
+
+            return TOMBSTONE == buffer.getInt(offset + 16);
+        }
+
+        private int recordLength(int offset) {
+
+            return RECORD_OVERHEAD + buffer.getInt(offset + 12) + Math.max(0, buffer.getInt(offset + 16));
+        }
+
+        private byte[] key(int offset) {
+
+            byte[] key = new byte[buffer.getInt(offset + 12)];
+
+            for (int i = 0; i < key.length; i++) key[i] = buffer.get(offset + RECORD_HEADER + i);
+
+            return key;
+        }
+
+        private boolean hasKey(int offset, byte[] key) {
+
+            if (key.length != buffer.getInt(offset + 12)) return false;
+
+            for (int i = 0; i < key.length; i++) if (key[i] != buffer.get(offset + RECORD_HEADER + i)) return false;
+
+            return true;
+        }
+
+        private ByteBuffer value(int offset) {
+
+            int start = offset + RECORD_HEADER + buffer.getInt(offset + 12);
+
+            ByteBuffer value = buffer.duplicate();
+            value.limit(start + buffer.getInt(offset + 16));
+            value.position(start);
+
+            return value.slice();
+        }
+
+        /**
+         * Append a record to the slab.
+         *
+         * @param key   the key of the record.
+         * @param value the value of the record, or null for a removal.
+         * @return the offset of the record.
+         */
+        private int append(byte[] key, byte[] value) {
+
+            int offset = position;
+            int valueLength = isNull(value) ? 0 : value.length;
+
+            ByteBuffer data = buffer.duplicate();
+            data.position(offset + RECORD_HEADER);
+            data.put(key);
+
+            if (isNotNull(value)) data.put(value);
+
+            buffer.putLong(offset + 4, generation);
+            buffer.putInt(offset + 12, key.length);
+            buffer.putInt(offset + 16, isNull(value) ? TOMBSTONE : valueLength);
+            buffer.putInt(offset + RECORD_HEADER + key.length + valueLength, crc(offset + RECORD_HEADER,
+                    key.length + valueLength));
+
+            // The magic is written last so that a record is never seen before the rest of it has been written.
+            buffer.putInt(offset, RECORD_MAGIC);
+
+            position += RECORD_OVERHEAD + key.length + valueLength;
+
+            return offset;
+        }
+
+        /**
+         * Copy a record from another slab into this one.
+         *
+         * @return the offset of the copy.
+         */
+        private int copy(Slab from, int offset, int length) {
+
+            int copy = position;
+
+            ByteBuffer source = from.buffer.duplicate();
+            source.limit(offset + length);
+            source.position(offset);
+
+            ByteBuffer target = buffer.duplicate();
+            target.position(copy);
+            target.put(source);
+
+            buffer.putLong(copy + 4, generation);
+
+            position += length;
+
+            return copy;
+        }
+
+        private int crc(int start, int length) {
+
+            CRC32 crc = new CRC32();
+
+            for (int i = start; i < start + length; i++) crc.update(buffer.get(i));
+
+            return (int) crc.getValue();
+        }
+
+        private void close() {
+
+            if (buffer instanceof MappedByteBuffer) ((MappedByteBuffer) buffer).force();
+
+            closeQuietly(file);
+        }
+    }
+}
@@ -0,0 +1,8 @@
+/**
+ * This package contains an HTTP cache that can be put in front of any {@link http.RequestHandler} with a
+ * {@link http.cache.CachingRequestHandler}. Cached responses are kept in a {@link http.cache.CacheStore}, either on the
+ * heap in a {@link http.cache.MemoryCacheStore}, on disk in a {@link http.cache.DiskCacheStore}, or off the heap in
+ * direct or mapped memory in an {@link http.cache.OffHeapCacheStore}. A {@link http.cache.CoalescingRequestHandler} can
+ * be put behind the cache so that identical requests that miss it at the same time are only sent once.
+ */
+package http.cache;
@@ -0,0 +1,86 @@
+package http.date;
+
+import java.text.DateFormat;
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import static http.util.Checks.isNotNull;
+import static http.util.Checks.isNull;
+
+/**
+ * Parses and formats the dates in HTTP headers e.g. {@code Date}, {@code Expires}, and {@code Last-Modified}. Dates
+ * are always formatted in the preferred {@code IMF-fixdate} format, the obsolete {@code RFC 850} and {@code asctime}
+ * formats are accepted when parsing.
+ *
+ * @author Karl Bennett
+ * @see <a href="https://tools.ietf.org/html/rfc7231#section-7.1.1.1">RFC 7231 section 7.1.1.1</a>
+ */
+public final class HttpDates {
+
+    private static final String[] PATTERNS = {
+            "EEE, dd MMM yyyy HH:mm:ss zzz",
+            "EEEE, dd-MMM-yy HH:mm:ss zzz",
+            "EEE MMM d HH:mm:ss yyyy"
+    };
+
+    private static final ThreadLocal<DateFormat[]> FORMATS = new ThreadLocal<DateFormat[]>() {
+
+        @Override
+        protected DateFormat[] initialValue() {
+
+            DateFormat[] formats = new DateFormat[PATTERNS.length];
+
+            for (int i = 0; i < formats.length; i++) {
+
+                formats[i] = new SimpleDateFormat(PATTERNS[i], Locale.US);
+                formats[i].setTimeZone(TimeZone.getTimeZone("GMT"));
+                formats[i].setLenient(false);
+            }
+
+            return formats;
+        }
+    };
+
+
+    private HttpDates() {
+    }
+
+
+    /**
+     * Parse an HTTP date.
+     *
+     * @param date the date to parse.
+     * @return the date in milliseconds since the epoch, or -1 if the date is null or can't be parsed.
+     */
+    public static long parse(String date) {
+
+        if (isNull(date)) return -1;
+
+        String trimmed = date.trim();
+
+        for (DateFormat format : FORMATS.get()) {
+
+            ParsePosition position = new ParsePosition(0);
+
+            Date parsed = format.parse(trimmed, position);
+
+            if (isNotNull(parsed) && trimmed.length() == position.getIndex()) return parsed.getTime();
+        }
+
+        return -1;
+    }
+
+    /**
+     * Format a date as an HTTP {@code IMF-fixdate} e.g. "Sun, 06 Nov 1994 08:49:37 GMT".
+     *
+     * @param millis the date in milliseconds since the epoch.
+     * @return the formatted date.
+     */
+    public static String format(long millis) {
+
+        return FORMATS.get()[0].format(new Date(millis));
+    }
+}
@@ -0,0 +1,74 @@
+package http.dns;
+
+import java.net.InetAddress;
+
+import static http.util.Asserts.assertNotNull;
+
+/**
+ * An address that a host name resolved to along with how long it can be cached for.
+ *
+ * @author Karl Bennett
+ */
+public final class AddressRecord {
+
+    private final InetAddress address;
+    private final long ttl;
+
+
+    /**
+     * Create a new {@code AddressRecord}.
+     *
+     * @param address the address of the host.
+     * @param ttl     the number of milliseconds the address can be cached for, zero means it can't be cached.
+     * @throws IllegalArgumentException if the time to live is negative.
+     */
+    public AddressRecord(InetAddress address, long ttl) {
+
+        assertNotNull("address", address);
+
+        if (0 > ttl) throw new IllegalArgumentException("The (ttl) variable must not be negative.");
+
+        this.address = address;
+        this.ttl = ttl;
+    }
+
+
+    /**
+     * @return the address of the host.
+     */
+    public InetAddress getAddress() {
+
+        return address;
+    }
+
+    /**
+     * @return the number of milliseconds the address can be cached for.
+     */
+    public long getTtl() {
+
+        return ttl;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+
+        if (this == o) return true;
+        if (!(o instanceof AddressRecord)) return false;
+
+        AddressRecord that = (AddressRecord) o;
+
+        return ttl == that.ttl && address.equals(that.address);
+    }
+
+    @Override
+    public int hashCode() {
+
+        return 31 * address.hashCode() + (int) (ttl ^ (ttl >>> 32));
+    }
+
+    @Override
+    public String toString() {
+
+        return address.getHostAddress() + " ttl=" + ttl;
+    }
+}
@@ -0,0 +1,414 @@
+package http.dns;
+
+import java.net.UnknownHostException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static http.util.Asserts.assertNotNull;
+import static http.util.Checks.isNotNull;
+import static http.util.Checks.isNull;
+
+/**
+ * A {@link Resolver} that caches the addresses of another resolver.
+ * <p/>
+ * The addresses of a host are kept for the shortest time to live of its records. A host that could not be resolved is
+ * remembered for the negative time to live, so a missing host doesn't cost a look up on every request. Threads that
+ * look up the same host at the same time share a single look up.
+ * <p/>
+ * A host that has been used more than once since it was looked up is looked up again in the background once three
+ * quarters of its time to live has passed, so the callers of a busy host keep getting the cached addresses and never
+ * wait for it to be looked up again. If the background look up fails the cached addresses are kept until they expire.
+ *
+ * @author Karl Bennett
+ */
+public class CachingResolver implements Resolver {
+
+    /**
+     * The default number of milliseconds that a host that could not be resolved is remembered for.
+     */
+    public static final long DEFAULT_NEGATIVE_TTL = 5000;
+
+    /**
+     * The default number of hosts that can be cached.
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 1024;
+
+    // The number of times a host has to be used since it was looked up before it is refreshed in the background.
+    private static final int POPULAR = 2;
+    // Records are never kept for longer than a day, as most DNS caches do.
+    private static final long MAX_TTL = 24L * 60 * 60 * 1000;
+
+
+    private static long now() {
+
+        return System.nanoTime() / 1000000;
+    }
+
+    private static String key(String host) {
+
+        return host.toLowerCase(Locale.ENGLISH);
+    }
+
+
+    private final Resolver resolver;
+    private final long negativeTtl;
+    private final int maxEntries;
+    private final Executor executor;
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+    private final ConcurrentMap<String, FutureTask<Entry>> lookups = new ConcurrentHashMap<String, FutureTask<Entry>>();
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong lookupCount = new AtomicLong();
+    private final AtomicLong refreshCount = new AtomicLong();
+
+
+    /**
+     * Create a new {@code CachingResolver} with the default negative time to live and size that refreshes hosts on
+     * a shared daemon thread pool.
+     *
+     * @param resolver the resolver that hosts are looked up with.
+     */
+    public CachingResolver(Resolver resolver) {
+
+        this(resolver, DEFAULT_NEGATIVE_TTL, DEFAULT_MAX_ENTRIES, DefaultRefreshExecutorHolder.INSTANCE);
+    }
+
+    /**
+     * Create a new {@code CachingResolver}.
+     *
+     * @param resolver    the resolver that hosts are looked up with.
+     * @param negativeTtl the number of milliseconds a host that could not be resolved is remembered for.
+     * @param maxEntries  the number of hosts that can be cached.
+     * @param executor    the executor that hosts are refreshed on in the background.
+     * @throws IllegalArgumentException if the negative time to live is negative or the maximum is less than one.
+     */
+    public CachingResolver(Resolver resolver, long negativeTtl, int maxEntries, Executor executor) {
+
+        assertNotNull("resolver", resolver);
+        assertNotNull("executor", executor);
+
+        if (0 > negativeTtl) throw new IllegalArgumentException("The (negativeTtl) variable must not be negative.");
+
+        if (1 > maxEntries) throw new IllegalArgumentException("The (maxEntries) variable must be greater than zero.");
+
+        this.resolver = resolver;
+        this.negativeTtl = negativeTtl;
+        this.maxEntries = maxEntries;
+        this.executor = executor;
+    }
+
+
+    @Override
+    public List<AddressRecord> resolve(String host) throws UnknownHostException {
+
+        List<AddressRecord> records = resolveCached(host);
+
+        if (isNotNull(records)) return records;
+
+        return lookup(key(host), host).getRecords(host);
+    }
+
+    /**
+     * Get the cached addresses of the supplied host without ever waiting for it to be looked up, so a caller that
+     * mustn't block can tell whether it has to hand the look up over to another thread.
+     *
+     * @param host the host name, or a literal {@code IP} address.
+     * @return the address records for the host, or null if the host isn't cached and would have to be looked up.
+     * @throws UnknownHostException if the host is cached as having no addresses.
+     */
+    public List<AddressRecord> resolveCached(String host) throws UnknownHostException {
+
+        assertNotNull("host", host);
+
+        String key = key(host);
+
+        Entry entry = entries.get(key);
+
+        long now = now();
+
+        if (isNull(entry) || now >= entry.expires) return null;
+
+        hitCount.incrementAndGet();
+
+        if (entry.isPositive() && POPULAR <= entry.uses.incrementAndGet() && now >= entry.refreshAt) {
+
+            refresh(key, host, entry);
+        }
+
+        return entry.getRecords(host);
+    }
+
+    /**
+     * Forget the cached addresses of the supplied host, e.g. because the addresses have stopped answering.
+     *
+     * @param host the host to forget.
+     */
+    public void invalidate(String host) {
+
+        assertNotNull("host", host);
+
+        entries.remove(key(host));
+    }
+
+    /**
+     * Forget every cached host.
+     */
+    public void clear() {
+
+        entries.clear();
+    }
+
+    /**
+     * @return the number of hosts that are cached.
+     */
+    public int getSize() {
+
+        return entries.size();
+    }
+
+    /**
+     * @return the number of times a host was found in the cache.
+     */
+    public long getHitCount() {
+
+        return hitCount.get();
+    }
+
+    /**
+     * @return the number of times a caller had to wait for a host to be looked up.
+     */
+    public long getLookupCount() {
+
+        return lookupCount.get();
+    }
+
+    /**
+     * @return the number of times a host has been looked up again in the background.
+     */
+    public long getRefreshCount() {
+
+        return refreshCount.get();
+    }
+
+    /**
+     * Look the host up, joining a look up of the same host that is already in progress.
+     */
+    private Entry lookup(final String key, final String host) throws UnknownHostException {
+
+        FutureTask<Entry> task = new FutureTask<Entry>(new Callable<Entry>() {
+
+            @Override
+            public Entry call() {
+
+                return load(key, host);
+            }
+        });
+
+        FutureTask<Entry> running = lookups.putIfAbsent(key, task);
+
+        if (isNull(running)) {
+
+            lookupCount.incrementAndGet();
+
+            try {
+
+                task.run();
+
+            } finally {
+
+                lookups.remove(key, task);
+            }
+
+            running = task;
+        }
+
+        try {
+
+            return running.get();
+
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+
+            throw new UnknownHostException("Interrupted while resolving the host (" + host + ").");
+
+        } catch (ExecutionException e) {
+
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            if (e.getCause() instanceof Error) throw (Error) e.getCause();
+
+            throw new IllegalStateException("Could not resolve the host (" + host + ").", e.getCause());
+        }
+    }
+
+    /**
+     * Look the host up and cache the result, a failure is cached as a negative entry.
+     */
+    private Entry load(String key, String host) {
+
+        Entry entry;
+
+        try {
+
+            entry = Entry.positive(resolve(resolver, host), now());
+
+        } catch (UnknownHostException e) {
+
+            entry = Entry.negative(e.getMessage(), now(), negativeTtl);
+        }
+
+        put(key, entry);
+
+        return entry;
+    }
+
+    private void refresh(final String key, final String host, final Entry entry) {
+
+        if (!entry.refreshing.compareAndSet(false, true)) return;
+
+        try {
+
+            executor.execute(new Runnable() {
+
+                @Override
+                public void run() {
+
+                    try {
+
+                        Entry fresh = Entry.positive(resolve(resolver, host), now());
+
+                        if (entries.replace(key, entry, fresh)) refreshCount.incrementAndGet();
+
+                    } catch (UnknownHostException e) {
+
+                        // Keep the addresses that are cached until they expire.
+
+                    } catch (RuntimeException e) {
+
+                        // Keep the addresses that are cached until they expire.
+                    }
+                }
+            });
+
+        } catch (RejectedExecutionException e) {
+
+            entry.refreshing.set(false);
+        }
+    }
+
+    private void put(String key, Entry entry) {
+
+        entries.put(key, entry);
+
+        if (maxEntries >= entries.size()) return;
+
+        long now = now();
+
+        // Drop the expired hosts first, then any host until there is room.
+        for (Iterator<Entry> iterator = entries.values().iterator(); iterator.hasNext(); ) {
+
+            if (now >= iterator.next().expires) iterator.remove();
+        }
+
+        for (Iterator<String> iterator = entries.keySet().iterator();
+             maxEntries < entries.size() && iterator.hasNext(); ) {
+
+            if (!key.equals(iterator.next())) iterator.remove();
+        }
+    }
+
+    private static List<AddressRecord> resolve(Resolver resolver, String host) throws UnknownHostException {
+
+        List<AddressRecord> records = resolver.resolve(host);
+
+        if (isNull(records) || records.isEmpty()) {
+
+            throw new UnknownHostException("No addresses were found for the host (" + host + ").");
+        }
+
+        return Collections.unmodifiableList(records);
+    }
+
+
+    private static class DefaultRefreshExecutorHolder {
+        public static final Executor INSTANCE = Executors.newCachedThreadPool(new ThreadFactory() {
+
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+
+                Thread thread = new Thread(runnable, "http-client-dns-" + count.incrementAndGet());
+                thread.setDaemon(true);
+
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * The cached addresses of a host, or the reason it could not be resolved.
+     */
+    private static class Entry {
+
+        private static Entry positive(List<AddressRecord> records, long now) {
+
+            long ttl = MAX_TTL;
+
+            for (AddressRecord record : records) ttl = Math.min(ttl, record.getTtl());
+
+            return new Entry(records, null, now + ttl, now + ttl * 3 / 4);
+        }
+
+        private static Entry negative(String failure, long now, long negativeTtl) {
+
+            return new Entry(null, failure, now + negativeTtl, Long.MAX_VALUE);
+        }
+
+
+        private final List<AddressRecord> records;
+        private final String failure;
+        private final long expires;
+        private final long refreshAt;
+
+        private final AtomicInteger uses = new AtomicInteger();
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+
+        private Entry(List<AddressRecord> records, String failure, long expires, long refreshAt) {
+
+            this.records = records;
+            this.failure = failure;
+            this.expires = expires;
+            this.refreshAt = refreshAt;
+        }
+
+
+        private boolean isPositive() {
+
+            return isNotNull(records);
+        }
+
+        private List<AddressRecord> getRecords(String host) throws UnknownHostException {
+
+            if (isPositive()) return records;
+
+            throw new UnknownHostException(isNull(failure) ? host : failure);
+        }
+    }
+}
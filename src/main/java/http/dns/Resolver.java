@@ -0,0 +1,25 @@
+package http.dns;
+
+import java.net.UnknownHostException;
+import java.util.List;
+
+/**
+ * Looks up the addresses of a host. Implementations can be supplied to the
+ * {@link http.transport.NioRequestHandler} to use a different source of addresses than the {@code DNS} resolution of
+ * the JVM, e.g. a {@code DNS} library that exposes the time to live of each record, or a fixed table of hosts.
+ * <p/>
+ * A resolver will be called by many threads at the same time so it must be thread safe.
+ *
+ * @author Karl Bennett
+ */
+public interface Resolver {
+
+    /**
+     * Look up the addresses of the supplied host.
+     *
+     * @param host the host name, or a literal {@code IP} address.
+     * @return the address records for the host in the order they should be tried, this must not be empty.
+     * @throws UnknownHostException if the host has no addresses.
+     */
+    List<AddressRecord> resolve(String host) throws UnknownHostException;
+}
@@ -0,0 +1,69 @@
+package http.dns;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@link Resolver} that uses the {@code DNS} resolution of the JVM through {@link InetAddress#getAllByName(String)}.
+ * <p/>
+ * The JVM doesn't expose the time to live of the records it receives so every address is given the same configured
+ * time to live. The JVM also caches addresses itself for the time set by the {@code networkaddress.cache.ttl}
+ * security property, so a lower time to live here will not see changes any sooner.
+ *
+ * @author Karl Bennett
+ */
+public class SystemResolver implements Resolver {
+
+    /**
+     * The default time to live of an address, this matches the default cache time of the JVM.
+     */
+    public static final long DEFAULT_TTL = 30000;
+
+
+    private final long ttl;
+
+
+    /**
+     * Create a new {@code SystemResolver} that gives every address the {@link #DEFAULT_TTL}.
+     */
+    public SystemResolver() {
+
+        this(DEFAULT_TTL);
+    }
+
+    /**
+     * Create a new {@code SystemResolver}.
+     *
+     * @param ttl the number of milliseconds every address can be cached for.
+     * @throws IllegalArgumentException if the time to live is negative.
+     */
+    public SystemResolver(long ttl) {
+
+        if (0 > ttl) throw new IllegalArgumentException("The (ttl) variable must not be negative.");
+
+        this.ttl = ttl;
+    }
+
+
+    /**
+     * @return the number of milliseconds every address can be cached for.
+     */
+    public long getTtl() {
+
+        return ttl;
+    }
+
+    @Override
+    public List<AddressRecord> resolve(String host) throws UnknownHostException {
+
+        InetAddress[] addresses = InetAddress.getAllByName(host);
+
+        List<AddressRecord> records = new ArrayList<AddressRecord>(addresses.length);
+
+        for (InetAddress address : addresses) records.add(new AddressRecord(address, ttl));
+
+        return records;
+    }
+}
@@ -0,0 +1,7 @@
+/**
+ * This package contains the {@link http.dns.Resolver} that the {@link http.transport.NioRequestHandler} looks host
+ * names up with. The default {@link http.dns.CachingResolver} keeps the addresses of each host for the time to live
+ * of its records, keeps failed look ups for a short time, and looks popular hosts up again in the background before
+ * they expire so that requests don't wait on {@code DNS}.
+ */
+package http.dns;
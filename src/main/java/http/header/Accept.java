@@ -2,7 +2,7 @@ package http.header;
 
 import javax.activation.MimeType;
 
-import static http.util.MimeTypes.quietMimeType;
+import static http.util.MimeTypes.*;
 
 /**
  * An HTTP {@code Accept} header.
@@ -13,6 +13,32 @@ public class Accept extends Header<MimeType> {
 
     public static final String ACCEPT = "Accept";
 
+
+    /**
+     * Create the {@code Accept} header for the supplied {@code MIME} type. One of the well known sub classes
+     * e.g. {@link JsonAccept} is returned if the type matches it exactly, so that the header equals one created
+     * directly.
+     *
+     * @param mimeType the {@code MIME} type of the header.
+     * @return the new header.
+     */
+    public static Accept valueOf(MimeType mimeType) {
+
+        // The well known types have no parameters, a type with a charset or quality is a different header.
+        if (!mimeType.getParameters().isEmpty()) return new Accept(mimeType);
+
+        if (APPLICATION_JSON.equals(mimeType)) return new JsonAccept();
+
+        if (APPLICATION_XML.equals(mimeType)) return new XmlAccept();
+
+        if (APPLICATION_X_WWW_FORM_URL_ENCODED.equals(mimeType)) return new FormUrlEncodedAccept();
+
+        if (MULTIPART_FORM_DATA.equals(mimeType)) return new MultipartFormDataAccept();
+
+        return new Accept(mimeType);
+    }
+
+
     /**
      * Create a new {@code Accept} header with the supplied {@code MIME} type.
      *
@@ -2,7 +2,7 @@ package http.header;
 
 import javax.activation.MimeType;
 
-import static http.util.MimeTypes.quietMimeType;
+import static http.util.MimeTypes.*;
 
 /**
  * An HTTP {@code Content-Type} header.
@@ -13,6 +13,32 @@ public class ContentType extends Header<MimeType> {
 
     public static final String CONTENT_TYPE = "Content-Type";
 
+
+    /**
+     * Create the {@code ContentType} header for the supplied {@code MIME} type. One of the well known sub classes
+     * e.g. {@link JsonContentType} is returned if the type matches it exactly, so that the header equals one created
+     * directly.
+     *
+     * @param mimeType the {@code MIME} type of the header.
+     * @return the new header.
+     */
+    public static ContentType valueOf(MimeType mimeType) {
+
+        // The well known types have no parameters, a type with a charset or quality is a different header.
+        if (!mimeType.getParameters().isEmpty()) return new ContentType(mimeType);
+
+        if (APPLICATION_JSON.equals(mimeType)) return new JsonContentType();
+
+        if (APPLICATION_XML.equals(mimeType)) return new XmlContentType();
+
+        if (APPLICATION_X_WWW_FORM_URL_ENCODED.equals(mimeType)) return new FormUrlEncodedContentType();
+
+        if (MULTIPART_FORM_DATA.equals(mimeType)) return new MultipartFormDataContentType();
+
+        return new ContentType(mimeType);
+    }
+
+
     /**
      * Create a new {@code ContentType} header with the supplied {@code MIME} type.
      *
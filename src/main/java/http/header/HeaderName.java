@@ -0,0 +1,279 @@
+package http.header;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static http.util.Asserts.assertNotEmpty;
+import static http.util.Checks.isNotNull;
+
+/**
+ * A case insensitive header name. The well known header names are interned as constants, each with an
+ * {@link #ordinal()} and a case insensitive hash that is worked out once, so looking one up and comparing it is cheap.
+ * <p/>
+ * {@link #of(String)} returns the shared instance for a well known name in any case, and {@link #lookup(byte[], int,
+ * int)} finds one straight from the bytes of a response without creating a {@link String}. Any other name gets a new
+ * instance with an ordinal of -1 that still compares and hashes case insensitively.
+ *
+ * @author Karl Bennett
+ */
+public final class HeaderName {
+
+    private static final String[] KNOWN_NAMES = {
+            "Accept", "Accept-Charset", "Accept-Encoding", "Accept-Language", "Accept-Ranges",
+            "Access-Control-Allow-Origin", "Age", "Allow", "Alt-Svc", "Authorization", "Cache-Control", "Connection",
+            "Content-Disposition", "Content-Encoding", "Content-Language", "Content-Length", "Content-Location",
+            "Content-Range", "Content-Type", "Cookie", "Date", "ETag", "Expect", "Expires", "Host", "If-Match",
+            "If-Modified-Since", "If-None-Match", "If-Range", "If-Unmodified-Since", "Keep-Alive", "Last-Modified",
+            "Link", "Location", "Pragma", "Proxy-Authenticate", "Proxy-Authorization", "Range", "Referer",
+            "Retry-After", "Server", "Set-Cookie", "Strict-Transport-Security", "TE", "Trailer", "Transfer-Encoding",
+            "Upgrade", "User-Agent", "Vary", "Via", "Warning", "WWW-Authenticate", "X-Forwarded-For",
+            "X-Requested-With"
+    };
+
+    /**
+     * The number of well known header names, their ordinals run from zero up to one less than this.
+     */
+    public static final int KNOWN_COUNT = KNOWN_NAMES.length;
+
+    private static final HeaderName[] KNOWN = new HeaderName[KNOWN_COUNT];
+
+    /**
+     * An open addressed table of the well known names indexed by their case insensitive hash.
+     */
+    private static final HeaderName[] TABLE = new HeaderName[Integer.highestOneBit(KNOWN_COUNT) * 4];
+    private static final int MASK = TABLE.length - 1;
+
+    /**
+     * The well known names by their exact spelling, this uses the hash that the {@code String} has already cached.
+     */
+    private static final Map<String, HeaderName> EXACT = new HashMap<String, HeaderName>();
+
+    static {
+
+        for (int i = 0; i < KNOWN_COUNT; i++) {
+
+            HeaderName name = new HeaderName(KNOWN_NAMES[i], i);
+
+            KNOWN[i] = name;
+            EXACT.put(name.name, name);
+
+            int index = name.hash & MASK;
+
+            while (isNotNull(TABLE[index])) index = (index + 1) & MASK;
+
+            TABLE[index] = name;
+        }
+    }
+
+    public static final HeaderName ACCEPT = known("Accept");
+    public static final HeaderName ACCEPT_ENCODING = known("Accept-Encoding");
+    public static final HeaderName AUTHORIZATION = known("Authorization");
+    public static final HeaderName CACHE_CONTROL = known("Cache-Control");
+    public static final HeaderName CONNECTION = known("Connection");
+    public static final HeaderName CONTENT_ENCODING = known("Content-Encoding");
+    public static final HeaderName CONTENT_LENGTH = known("Content-Length");
+    public static final HeaderName CONTENT_RANGE = known("Content-Range");
+    public static final HeaderName CONTENT_TYPE = known("Content-Type");
+    public static final HeaderName COOKIE = known("Cookie");
+    public static final HeaderName DATE = known("Date");
+    public static final HeaderName ETAG = known("ETag");
+    public static final HeaderName EXPIRES = known("Expires");
+    public static final HeaderName HOST = known("Host");
+    public static final HeaderName LAST_MODIFIED = known("Last-Modified");
+    public static final HeaderName LOCATION = known("Location");
+    public static final HeaderName RANGE = known("Range");
+    public static final HeaderName SET_COOKIE = known("Set-Cookie");
+    public static final HeaderName TRANSFER_ENCODING = known("Transfer-Encoding");
+    public static final HeaderName USER_AGENT = known("User-Agent");
+    public static final HeaderName VARY = known("Vary");
+
+
+    private static HeaderName known(String name) {
+
+        return EXACT.get(name);
+    }
+
+    private static int lowerCase(int c) {
+
+        return 'A' <= c && 'Z' >= c ? c + ('a' - 'A') : c;
+    }
+
+    /**
+     * @return the case insensitive hash of the supplied name, the same as the hash code of its {@code HeaderName}.
+     */
+    static int hash(String name) {
+
+        int hash = 0;
+
+        for (int i = 0, length = name.length(); i < length; i++) hash = 31 * hash + lowerCase(name.charAt(i));
+
+        return spread(hash);
+    }
+
+    private static int spread(int hash) {
+
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Get the well known header name with the ordinal supplied.
+     *
+     * @param ordinal the ordinal of the name.
+     * @return the well known name.
+     * @throws ArrayIndexOutOfBoundsException if there isn't a well known name with the ordinal.
+     */
+    public static HeaderName valueOf(int ordinal) {
+
+        return KNOWN[ordinal];
+    }
+
+    /**
+     * Get the {@code HeaderName} for the supplied name. The shared instance is returned for a well known name no matter
+     * what case it is in.
+     *
+     * @param name the header name.
+     * @return the header name.
+     * @throws IllegalArgumentException if the name is empty.
+     */
+    public static HeaderName of(String name) {
+
+        HeaderName known = find(name);
+
+        return isNotNull(known) ? known : new HeaderName(name, -1);
+    }
+
+    /**
+     * Find the well known header name that matches the supplied name in any case.
+     *
+     * @param name the header name.
+     * @return the well known name, or null if the name isn't well known.
+     */
+    public static HeaderName find(String name) {
+
+        assertNotEmpty("name", name);
+
+        HeaderName known = EXACT.get(name);
+
+        if (isNotNull(known)) return known;
+
+        int hash = hash(name);
+
+        for (int index = hash & MASK; isNotNull(known = TABLE[index]); index = (index + 1) & MASK) {
+
+            if (hash == known.hash && known.name.equalsIgnoreCase(name)) return known;
+        }
+
+        return null;
+    }
+
+    /**
+     * Find the well known header name that matches the supplied {@code ISO-8859-1} bytes in any case, without
+     * creating a {@code String}.
+     *
+     * @param bytes the bytes that contain the name.
+     * @param start the index of the first byte of the name.
+     * @param end   the index after the last byte of the name.
+     * @return the well known name, or null if the name isn't well known.
+     */
+    public static HeaderName lookup(byte[] bytes, int start, int end) {
+
+        int hash = 0;
+
+        for (int i = start; i < end; i++) hash = 31 * hash + lowerCase(bytes[i] & 0xFF);
+
+        hash = spread(hash);
+
+        HeaderName known;
+
+        for (int index = hash & MASK; isNotNull(known = TABLE[index]); index = (index + 1) & MASK) {
+
+            if (hash == known.hash && known.matches(bytes, start, end)) return known;
+        }
+
+        return null;
+    }
+
+
+    private final String name;
+    private final int hash;
+    private final int ordinal;
+
+
+    private HeaderName(String name, int ordinal) {
+
+        assertNotEmpty("name", name);
+
+        this.name = name;
+        this.hash = hash(name);
+        this.ordinal = ordinal;
+    }
+
+
+    /**
+     * @return the position of the name in the list of well known names, or -1 if the name isn't well known.
+     */
+    public int ordinal() {
+
+        return ordinal;
+    }
+
+    /**
+     * @return true if this is one of the well known names.
+     */
+    public boolean isKnown() {
+
+        return 0 <= ordinal;
+    }
+
+    /**
+     * Check if the supplied name is the same as this one in any case.
+     *
+     * @param name the name to check.
+     * @return true if the names match.
+     */
+    public boolean is(String name) {
+
+        return this.name == name || this.name.equalsIgnoreCase(name);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+
+        if (this == o) return true;
+
+        if (!(o instanceof HeaderName)) return false;
+
+        HeaderName that = (HeaderName) o;
+
+        // Two different well known names can never be equal.
+        return !(isKnown() && that.isKnown()) && hash == that.hash && name.equalsIgnoreCase(that.name);
+    }
+
+    @Override
+    public int hashCode() {
+
+        return hash;
+    }
+
+    /**
+     * @return the name, a well known name is always in its usual case e.g. "Content-Type".
+     */
+    @Override
+    public String toString() {
+
+        return name;
+    }
+
+
+    private boolean matches(byte[] bytes, int start, int end) {
+
+        if (name.length() != end - start) return false;
+
+        for (int i = 0; i < name.length(); i++) {
+
+            if (lowerCase(name.charAt(i)) != lowerCase(bytes[start + i] & 0xFF)) return false;
+        }
+
+        return true;
+    }
+}
@@ -0,0 +1,74 @@
+package http.header;
+
+import http.attribute.AttributeArraySetMap;
+
+import java.util.Collection;
+
+import static http.util.Checks.isNull;
+
+/**
+ * A compact map of {@link Header}s that matches header names in any case. The names are keyed by their
+ * {@link HeaderName} so a well known name is compared by identity and always has its usual spelling in the entries.
+ * <p/>
+ * The first slot of each well known name is held at its {@link HeaderName#ordinal()}, so looking one up is an array
+ * access. Any other name is found with the scan or hash index of the {@link AttributeArraySetMap}, it is matched
+ * against the keys in any case without creating a {@code HeaderName} for it.
+ *
+ * @author Karl Bennett
+ */
+public class HeaderSetMap extends AttributeArraySetMap<Header> {
+
+    /**
+     * Create a new empty {@code HeaderSetMap}.
+     */
+    public HeaderSetMap() {
+        super(HeaderName.KNOWN_COUNT);
+    }
+
+    /**
+     * Create a new {@code HeaderSetMap} that is populated with the supplied headers.
+     *
+     * @param headers the headers that will be contained in the new map.
+     */
+    public HeaderSetMap(Collection<Header> headers) {
+        this();
+
+        addAll(headers);
+    }
+
+
+    /**
+     * @return the {@link HeaderName} of the supplied name.
+     */
+    @Override
+    protected Object key(String name) {
+
+        return HeaderName.of(name);
+    }
+
+    @Override
+    protected boolean matches(Object key, String name) {
+
+        return ((HeaderName) key).is(name);
+    }
+
+    @Override
+    protected int hashCode(String name) {
+
+        return HeaderName.hash(name);
+    }
+
+    @Override
+    protected int ordinal(Object key) {
+
+        return ((HeaderName) key).ordinal();
+    }
+
+    @Override
+    protected int ordinal(String name) {
+
+        HeaderName known = HeaderName.find(name);
+
+        return isNull(known) ? -1 : known.ordinal();
+    }
+}
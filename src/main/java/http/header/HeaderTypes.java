@@ -0,0 +1,226 @@
+package http.header;
+
+import http.util.Converter;
+
+import javax.activation.MimeType;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static http.util.Checks.isNotNull;
+import static http.util.Checks.isNull;
+import static http.util.Converter.Conversion;
+import static http.util.MimeTypes.quietMimeType;
+
+/**
+ * The typed {@link Header}s that a plain header can be converted into e.g. a "Content-Type: application/json" header
+ * into a {@link JsonContentType}. Each type is registered against the name of the header it is converted from.
+ *
+ * @author Karl Bennett
+ */
+public final class HeaderTypes {
+
+    private static final Map<HeaderName, Class<? extends Header>> TYPES =
+            new HashMap<HeaderName, Class<? extends Header>>();
+
+    private static final Map<Class<? extends Header>, HeaderName> NAMES =
+            new HashMap<Class<? extends Header>, HeaderName>();
+
+    private static final Converter CONVERTER;
+
+    static {
+
+        Map<Class, Conversion> conversions = new HashMap<Class, Conversion>();
+
+        register(conversions, Accept.class, HeaderName.ACCEPT, new Conversion<Collection<Header>, Header>() {
+
+            @Override
+            public Collection<Header> convert(Header header) {
+
+                if (header instanceof Accept) return Collections.singleton(header);
+
+                if (header.getValue() instanceof MimeType) {
+
+                    return Collections.<Header>singleton(Accept.valueOf((MimeType) header.getValue()));
+                }
+
+                // An accept header can list any number of types, any that can't be parsed are left out.
+                List<Header> accepts = new ArrayList<Header>();
+
+                for (String type : String.valueOf(header.getValue()).split(",")) {
+
+                    if (0 == type.trim().length()) continue;
+
+                    try {
+
+                        accepts.add(Accept.valueOf(quietMimeType(type.trim())));
+
+                    } catch (IllegalStateException e) {
+
+                        // Skip the malformed type.
+                    }
+                }
+
+                return accepts;
+            }
+        });
+
+        register(conversions, ContentType.class, HeaderName.CONTENT_TYPE,
+                new Conversion<Collection<Header>, Header>() {
+
+                    @Override
+                    public Collection<Header> convert(Header header) {
+
+                        if (header instanceof ContentType) return Collections.singleton(header);
+
+                        Object value = header.getValue();
+
+                        return Collections.<Header>singleton(ContentType.valueOf(value instanceof MimeType ?
+                                (MimeType) value : quietMimeType(String.valueOf(value).trim())));
+                    }
+                });
+
+        register(conversions, Cookie.class, HeaderName.COOKIE, new Conversion<Collection<Header>, Header>() {
+
+            @Override
+            public Collection<Header> convert(Header header) {
+
+                if (header instanceof Cookie) return Collections.singleton(header);
+
+                if (header.getValue() instanceof http.Cookie) {
+
+                    return Collections.<Header>singleton(new Cookie((http.Cookie) header.getValue()));
+                }
+
+                // A cookie header can hold any number of cookies.
+                List<Header> cookies = new ArrayList<Header>();
+
+                for (http.Cookie cookie : http.Cookie.parse(String.valueOf(header.getValue()))) {
+
+                    cookies.add(new Cookie(cookie));
+                }
+
+                return cookies;
+            }
+        });
+
+        register(conversions, SetCookie.class, HeaderName.SET_COOKIE, new Conversion<Collection<Header>, Header>() {
+
+            @Override
+            public Collection<Header> convert(Header header) {
+
+                if (header instanceof SetCookie) return Collections.singleton(header);
+
+                if (header.getValue() instanceof http.Cookie) {
+
+                    return Collections.<Header>singleton(new SetCookie((http.Cookie) header.getValue()));
+                }
+
+                List<Header> setCookies = new ArrayList<Header>();
+
+                for (http.Cookie cookie : http.Cookie.parse(String.valueOf(header.getValue()))) {
+
+                    setCookies.add(new SetCookie(cookie));
+                }
+
+                return setCookies;
+            }
+        });
+
+        CONVERTER = new Converter(conversions);
+    }
+
+
+    private static void register(Map<Class, Conversion> conversions, Class<? extends Header> type, HeaderName name,
+                                 Conversion<Collection<Header>, Header> conversion) {
+
+        TYPES.put(name, type);
+        NAMES.put(type, name);
+        conversions.put(type, conversion);
+    }
+
+
+    private HeaderTypes() {
+    }
+
+
+    /**
+     * Find the registered type that the supplied type is or extends e.g. {@link ContentType} for
+     * {@link JsonContentType}.
+     *
+     * @param type the header type.
+     * @return the registered type, or null if the type isn't a registered type or a sub class of one.
+     */
+    @SuppressWarnings("unchecked")
+    public static Class<? extends Header> registeredType(Class<? extends Header> type) {
+
+        for (Class c = type; isNotNull(c) && Header.class != c; c = c.getSuperclass()) {
+
+            if (NAMES.containsKey(c)) return (Class<? extends Header>) c;
+        }
+
+        return null;
+    }
+
+    /**
+     * Get the type that headers with the supplied name can be converted into.
+     *
+     * @param name the name of a header.
+     * @return the registered type for the name, or null if there isn't one.
+     */
+    public static Class<? extends Header> typeOf(String name) {
+
+        HeaderName known = HeaderName.find(name);
+
+        return isNull(known) ? null : TYPES.get(known);
+    }
+
+    /**
+     * Get the name of the headers that can be converted into the supplied registered type.
+     *
+     * @param type a registered header type.
+     * @return the name of the headers, or null if the type isn't registered.
+     */
+    public static String nameOf(Class<? extends Header> type) {
+
+        HeaderName name = NAMES.get(type);
+
+        return isNull(name) ? null : name.toString();
+    }
+
+    /**
+     * Convert the supplied header into instances of the supplied registered type. A header that is already of the
+     * type is returned as it is, a header that holds a list e.g. "Accept: application/json, application/xml" is
+     * converted into one instance for each item.
+     *
+     * @param type   a registered header type.
+     * @param header a header with the name that the type is registered for.
+     * @return the converted headers, this is empty if the value of the header could not be parsed.
+     * @throws IllegalArgumentException if the type isn't registered.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T extends Header> Collection<T> convert(Class<T> type, Header header) {
+
+        if (!NAMES.containsKey(type)) {
+
+            throw new IllegalArgumentException("The (" + type.getName() + ") header type is not registered.");
+        }
+
+        // A value that can't be parsed e.g. a malformed MIME type or cookie just isn't a header of the type.
+        try {
+
+            return CONVERTER.convert(type, header);
+
+        } catch (IllegalStateException e) {
+
+            return Collections.emptyList();
+
+        } catch (IllegalArgumentException e) {
+
+            return Collections.emptyList();
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package http.header;
+
+import static http.util.Checks.isNull;
+
+/**
+ * The undecoded header block of a response. The {@code ISO-8859-1} bytes of every header name and value are kept in a
+ * single array with an index of where each one starts and ends, so a {@link Header} only has to be created for the
+ * headers that are actually asked for.
+ * <p/>
+ * The well known {@link HeaderName} of each header is recorded as it is added, so finding the headers with a well
+ * known name compares ordinals instead of bytes.
+ *
+ * @author Karl Bennett
+ */
+public final class RawHeaders {
+
+    private static final int INITIAL_BLOCK_SIZE = 512;
+    private static final int INITIAL_HEADER_COUNT = 16;
+
+    /**
+     * The index holds the ordinal, name start, value start, and value end of each header, the name ends where the value
+     * starts.
+     */
+    private static final int STRIDE = 4;
+
+
+    private static int lowerCase(int c) {
+
+        return 'A' <= c && 'Z' >= c ? c + ('a' - 'A') : c;
+    }
+
+
+    private byte[] block;
+    private int length;
+    private int[] index;
+    private int count;
+
+
+    /**
+     * Create a new empty {@code RawHeaders}.
+     */
+    public RawHeaders() {
+
+        this.block = new byte[INITIAL_BLOCK_SIZE];
+        this.index = new int[INITIAL_HEADER_COUNT * STRIDE];
+    }
+
+
+    /**
+     * Add a header that is held in the supplied bytes, the bytes are copied.
+     *
+     * @param bytes      the bytes of the header line.
+     * @param nameStart  the index of the first byte of the name.
+     * @param nameEnd    the index after the last byte of the name.
+     * @param valueStart the index of the first byte of the value.
+     * @param valueEnd   the index after the last byte of the value.
+     * @param name       the well known name of the header, or null if it isn't well known.
+     */
+    public void add(byte[] bytes, int nameStart, int nameEnd, int valueStart, int valueEnd, HeaderName name) {
+
+        int nameLength = nameEnd - nameStart;
+        int valueLength = valueEnd - valueStart;
+
+        ensureCapacity(nameLength + valueLength);
+
+        int i = count * STRIDE;
+
+        index[i] = isNull(name) ? -1 : name.ordinal();
+        index[i + 1] = length;
+        index[i + 2] = length + nameLength;
+        index[i + 3] = length + nameLength + valueLength;
+
+        System.arraycopy(bytes, nameStart, block, length, nameLength);
+        System.arraycopy(bytes, valueStart, block, length + nameLength, valueLength);
+
+        length += nameLength + valueLength;
+        count++;
+    }
+
+    /**
+     * @return the number of headers.
+     */
+    public int size() {
+
+        return count;
+    }
+
+    /**
+     * Check if the header at the supplied position has the supplied name in any case.
+     *
+     * @param position the position of the header.
+     * @param name     the name to check.
+     * @return true if the header has the name.
+     */
+    public boolean hasName(int position, HeaderName name) {
+
+        int i = position * STRIDE;
+
+        if (name.isKnown() || 0 <= index[i]) return name.ordinal() == index[i];
+
+        String string = name.toString();
+        int start = index[i + 1];
+
+        if (string.length() != index[i + 2] - start) return false;
+
+        for (int c = 0; c < string.length(); c++) {
+
+            if (lowerCase(string.charAt(c)) != lowerCase(block[start + c] & 0xFF)) return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Decode the name of the header at the supplied position. A well known name is its shared usual spelling.
+     *
+     * @param position the position of the header.
+     * @return the name of the header.
+     */
+    public String getName(int position) {
+
+        int i = position * STRIDE;
+
+        return 0 <= index[i] ? HeaderName.valueOf(index[i]).toString() : decode(index[i + 1], index[i + 2]);
+    }
+
+    /**
+     * Decode the value of the header at the supplied position.
+     *
+     * @param position the position of the header.
+     * @return the value of the header.
+     */
+    public String getValue(int position) {
+
+        int i = position * STRIDE;
+
+        return decode(index[i + 2], index[i + 3]);
+    }
+
+    /**
+     * Decode the header at the supplied position.
+     *
+     * @param position the position of the header.
+     * @return the header.
+     */
+    public Header<String> getHeader(int position) {
+
+        return new Header<String>(getName(position), getValue(position));
+    }
+
+
+    private String decode(int start, int end) {
+
+        char[] chars = new char[end - start];
+
+        for (int i = 0; i < chars.length; i++) chars[i] = (char) (block[start + i] & 0xFF);
+
+        return new String(chars);
+    }
+
+    private void ensureCapacity(int bytes) {
+
+        if (block.length < length + bytes) {
+
+            byte[] grown = new byte[Math.max(length + bytes, block.length * 2)];
+            System.arraycopy(block, 0, grown, 0, length);
+
+            block = grown;
+        }
+
+        if (index.length < (count + 1) * STRIDE) {
+
+            int[] grown = new int[index.length * 2];
+            System.arraycopy(index, 0, grown, 0, count * STRIDE);
+
+            index = grown;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package http.transport;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A section of a response body that is still held in the pooled buffer that it was read into from the connection. See
+ * {@link ChunkedBody}.
+ *
+ * @author Karl Bennett
+ */
+public final class BodyChunk {
+
+    private final ResponseInputStream body;
+    private final ByteBuffer content;
+    private final PooledBuffer source;
+    private final AtomicBoolean released;
+
+    private int counted;
+
+
+    BodyChunk(ResponseInputStream body, ByteBuffer content, PooledBuffer source) {
+
+        this.body = body;
+        this.content = content;
+        this.source = source;
+        this.released = new AtomicBoolean();
+    }
+
+
+    /**
+     * @return a read only direct buffer that holds the content of the chunk, it must not be used once the chunk has
+     *         been released.
+     */
+    public ByteBuffer getContent() {
+
+        return content;
+    }
+
+    /**
+     * Hand the buffer that holds the chunk back to the connection. Releasing a chunk more than once has no effect.
+     */
+    public void release() {
+
+        if (!released.compareAndSet(false, true)) return;
+
+        source.release();
+
+        body.released(counted);
+    }
+
+    /**
+     * Record how much of the content the body is still counting against itself when the chunk is handed out.
+     */
+    void handOut() {
+
+        counted = content.remaining();
+    }
+
+    /**
+     * Release the buffer without telling the body, for a chunk that the body has finished with itself.
+     */
+    void discard() {
+
+        if (released.compareAndSet(false, true)) source.release();
+    }
+}
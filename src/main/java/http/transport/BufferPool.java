@@ -0,0 +1,346 @@
+package http.transport;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static http.util.Checks.isNotNull;
+import static http.util.Checks.isNull;
+
+/**
+ * A pool of direct {@link ByteBuffer}s that connections read into and write from. The buffers are handed out as
+ * reference counted {@link PooledBuffer}s so that a response body can keep hold of the section of a buffer that holds
+ * its content and the buffer is only recycled once the body has let go of it.
+ * <p/>
+ * Buffers come in power of two size classes from {@link #MIN_SIZE} to {@link #MAX_SIZE}, a request for a buffer is
+ * rounded up to the nearest class and anything larger than the largest class is allocated outside of the pool. The free
+ * buffers are split across a number of arenas, each thread that acquires buffers is assigned an arena and also keeps a
+ * small cache of its own, so the event loops rarely contend with each other or with the callers that release buffers.
+ * Buffers that are released while their arena is full are left to the garbage collector.
+ * <p/>
+ * Leak detection can be turned on with {@link #setLeakSampling(int)}. A sample of the buffers that are acquired then
+ * remember where they were acquired, and if one of them is garbage collected without having been released the place it
+ * was acquired is logged.
+ *
+ * @author Karl Bennett
+ */
+class BufferPool {
+
+    public static final int MIN_SIZE = 4 * 1024;
+    public static final int MAX_SIZE = 128 * 1024;
+
+    /**
+     * The size of the buffers that connections read into, this is large enough to hold an entire {@code HTTP/2} frame
+     * of the default maximum size.
+     */
+    public static final int BUFFER_SIZE = 32 * 1024;
+
+    public static final int DEFAULT_ARENA_COUNT = Math.min(8, Runtime.getRuntime().availableProcessors());
+    public static final int DEFAULT_MAX_POOLED = 64;
+    public static final int DEFAULT_CACHE_SIZE = 8;
+
+    private static final int SIZE_CLASSES = Integer.numberOfTrailingZeros(MAX_SIZE / MIN_SIZE) + 1;
+
+    private static final Logger LOGGER = Logger.getLogger(BufferPool.class.getName());
+
+
+    /**
+     * The free buffers that are shared by the threads that have been assigned the arena.
+     */
+    static class Arena {
+
+        private final Queue<ByteBuffer>[] free;
+        private final AtomicInteger[] counts;
+
+        @SuppressWarnings("unchecked")
+        private Arena() {
+
+            this.free = new Queue[SIZE_CLASSES];
+            this.counts = new AtomicInteger[SIZE_CLASSES];
+
+            for (int i = 0; i < SIZE_CLASSES; i++) {
+
+                free[i] = new ConcurrentLinkedQueue<ByteBuffer>();
+                counts[i] = new AtomicInteger();
+            }
+        }
+    }
+
+    /**
+     * The free buffers that only a single thread can use, and the arena that thread has been assigned.
+     */
+    private static class Cache {
+
+        private final Arena arena;
+        private final Deque<ByteBuffer>[] free;
+
+        @SuppressWarnings("unchecked")
+        private Cache(Arena arena) {
+
+            this.arena = arena;
+            this.free = new Deque[SIZE_CLASSES];
+
+            for (int i = 0; i < SIZE_CLASSES; i++) free[i] = new ArrayDeque<ByteBuffer>();
+        }
+    }
+
+    /**
+     * Remembers where a sampled buffer was acquired, it is cleared when the buffer is released.
+     */
+    static class Leak extends WeakReference<PooledBuffer> {
+
+        private final Throwable acquired;
+
+        Leak(PooledBuffer buffer, ReferenceQueue<PooledBuffer> queue) {
+            super(buffer, queue);
+
+            this.acquired = new Throwable("The buffer was acquired here.");
+        }
+    }
+
+
+    /**
+     * Get the index of the smallest size class that can hold the supplied capacity.
+     *
+     * @param capacity the capacity that is required.
+     * @return the size class index, or -1 if the capacity is too large to be pooled.
+     */
+    static int sizeClass(int capacity) {
+
+        if (MAX_SIZE < capacity) return -1;
+
+        if (MIN_SIZE >= capacity) return 0;
+
+        return 32 - Integer.numberOfLeadingZeros((capacity - 1) / MIN_SIZE);
+    }
+
+
+    private final Arena[] arenas;
+    private final int maxPooled;
+    private final int cacheSize;
+    private final AtomicInteger nextArena;
+    private final ThreadLocal<Cache> caches;
+    private final ReferenceQueue<PooledBuffer> collected;
+    private final Set<Leak> sampled;
+    private final AtomicLong acquisitions;
+    private final AtomicLong leaks;
+
+    private volatile int leakSampling;
+
+
+    /**
+     * Create a new {@code BufferPool} with the default number of arenas, free buffers, and cache size.
+     */
+    public BufferPool() {
+
+        this(DEFAULT_ARENA_COUNT, DEFAULT_MAX_POOLED, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * Create a new {@code BufferPool}.
+     *
+     * @param arenaCount the number of arenas the free buffers are split across.
+     * @param maxPooled  the maximum number of free buffers of each size class that each arena will keep.
+     * @param cacheSize  the maximum number of free buffers of each size class that each thread will keep.
+     * @throws IllegalArgumentException if there isn't at least one arena or either maximum is negative.
+     */
+    public BufferPool(int arenaCount, int maxPooled, int cacheSize) {
+
+        if (1 > arenaCount) throw new IllegalArgumentException("The (arenaCount) variable must be greater than zero.");
+
+        if (0 > maxPooled) throw new IllegalArgumentException("The (maxPooled) variable must not be negative.");
+
+        if (0 > cacheSize) throw new IllegalArgumentException("The (cacheSize) variable must not be negative.");
+
+        this.arenas = new Arena[arenaCount];
+
+        for (int i = 0; i < arenaCount; i++) arenas[i] = new Arena();
+
+        this.maxPooled = maxPooled;
+        this.cacheSize = cacheSize;
+        this.nextArena = new AtomicInteger();
+        this.caches = new ThreadLocal<Cache>();
+        this.collected = new ReferenceQueue<PooledBuffer>();
+        this.sampled = Collections.newSetFromMap(new ConcurrentHashMap<Leak, Boolean>());
+        this.acquisitions = new AtomicLong();
+        this.leaks = new AtomicLong();
+    }
+
+
+    /**
+     * @return one in how many acquired buffers are checked for leaks, zero if leak detection is off.
+     */
+    public int getLeakSampling() {
+
+        return leakSampling;
+    }
+
+    /**
+     * Set one in how many acquired buffers are checked for leaks, the default is zero which turns leak detection off.
+     * Checking every buffer, with a sampling of one, is only advisable while testing.
+     *
+     * @param leakSampling one in how many buffers to check.
+     * @throws IllegalArgumentException if the sampling is negative.
+     */
+    public void setLeakSampling(int leakSampling) {
+
+        if (0 > leakSampling) throw new IllegalArgumentException("The (leakSampling) variable must not be negative.");
+
+        this.leakSampling = leakSampling;
+    }
+
+    /**
+     * @return the number of leaked buffers that have been found.
+     */
+    public long getLeakCount() {
+
+        return leaks.get();
+    }
+
+    /**
+     * Take a buffer of {@link #BUFFER_SIZE} from the pool.
+     *
+     * @return a pooled buffer.
+     */
+    public PooledBuffer acquire() {
+
+        return acquire(BUFFER_SIZE);
+    }
+
+    /**
+     * Take a buffer that can hold at least the supplied number of bytes from the pool, a new buffer is allocated if
+     * there isn't a free one. The buffer is cleared and has a single reference that belongs to the caller.
+     *
+     * @param capacity the minimum capacity of the buffer.
+     * @return a pooled buffer.
+     */
+    public PooledBuffer acquire(int capacity) {
+
+        int sizeClass = sizeClass(capacity);
+
+        Cache cache = cache();
+
+        ByteBuffer buffer = null;
+
+        if (-1 != sizeClass) {
+
+            buffer = cache.free[sizeClass].poll();
+
+            if (isNull(buffer)) {
+
+                buffer = cache.arena.free[sizeClass].poll();
+
+                if (isNotNull(buffer)) cache.arena.counts[sizeClass].decrementAndGet();
+            }
+        }
+
+        if (isNull(buffer)) buffer = ByteBuffer.allocateDirect(-1 == sizeClass ? capacity : MIN_SIZE << sizeClass);
+        else buffer.clear();
+
+        PooledBuffer pooled = new PooledBuffer(this, buffer, -1 == sizeClass ? null : cache.arena);
+
+        int sampling = leakSampling;
+
+        if (0 < sampling) {
+
+            reportLeaks();
+
+            if (0 == acquisitions.incrementAndGet() % sampling) sampled.add(pooled.track(collected));
+        }
+
+        return pooled;
+    }
+
+    /**
+     * @return the number of free buffers that are shared by all the threads.
+     */
+    public int getPooled() {
+
+        int pooled = 0;
+
+        for (Arena arena : arenas) for (AtomicInteger count : arena.counts) pooled += count.get();
+
+        return pooled;
+    }
+
+    /**
+     * Put a buffer that nothing refers to any more back into the pool. The buffer goes into the releasing threads cache
+     * if it has room, otherwise back into the arena it came from.
+     *
+     * @param buffer the buffer to recycle.
+     * @param arena  the arena the buffer came from, or null if it was too large to be pooled.
+     * @param leak   the leak tracking for the buffer, or null if it wasn't sampled.
+     */
+    void recycle(ByteBuffer buffer, Arena arena, Leak leak) {
+
+        if (isNotNull(leak)) {
+
+            leak.clear();
+
+            sampled.remove(leak);
+        }
+
+        if (isNull(arena)) return;
+
+        int sizeClass = sizeClass(buffer.capacity());
+
+        Cache cache = caches.get();
+
+        if (isNotNull(cache) && cacheSize > cache.free[sizeClass].size()) {
+
+            cache.free[sizeClass].push(buffer);
+
+            return;
+        }
+
+        if (maxPooled < arena.counts[sizeClass].incrementAndGet()) {
+
+            arena.counts[sizeClass].decrementAndGet();
+
+            return;
+        }
+
+        arena.free[sizeClass].add(buffer);
+    }
+
+    /**
+     * Log every sampled buffer that has been garbage collected without having been released.
+     */
+    void reportLeaks() {
+
+        for (Leak leak; isNotNull(leak = (Leak) collected.poll()); ) {
+
+            // A buffer that was released has already been removed.
+            if (!sampled.remove(leak)) continue;
+
+            leaks.incrementAndGet();
+
+            LOGGER.log(Level.WARNING, "A pooled buffer was garbage collected without being released.", leak.acquired);
+        }
+    }
+
+    private Cache cache() {
+
+        Cache cache = caches.get();
+
+        if (isNull(cache)) {
+
+            cache = new Cache(arenas[(nextArena.getAndIncrement() & Integer.MAX_VALUE) % arenas.length]);
+
+            caches.set(cache);
+        }
+
+        return cache;
+    }
+}
@@ -0,0 +1,41 @@
+package http.transport;
+
+/**
+ * Something that carries an {@link Exchange} to and from the server, either an {@code HTTP/1.1} {@link Connection} or a
+ * stream on an {@code HTTP/2} {@link Http2Connection}. The exchange uses this to pass the flow control from its
+ * response body back to whatever is reading the response.
+ *
+ * @author Karl Bennett
+ */
+interface Carrier {
+
+    /**
+     * Stop delivering the response for the supplied exchange until {@link #resume(Exchange)} is called. This is called
+     * on the event loop thread.
+     *
+     * @param exchange the exchange whose body can't accept any more data.
+     */
+    void suspend(Exchange exchange);
+
+    /**
+     * Start delivering the response for the supplied exchange again, this can be called from any thread.
+     *
+     * @param exchange the exchange whose body can accept more data.
+     */
+    void resume(Exchange exchange);
+
+    /**
+     * Abandon the supplied exchange, this can be called from any thread.
+     *
+     * @param exchange the exchange that has been cancelled.
+     */
+    void cancel(Exchange exchange);
+
+    /**
+     * Get the pooled buffer that holds the content that is currently being passed to an exchange, so the response body
+     * can keep the content without copying it. This is called on the event loop thread.
+     *
+     * @return the buffer that the connection is reading into.
+     */
+    PooledBuffer getReadBuffer();
+}
@@ -0,0 +1,35 @@
+package http.transport;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A response body that can be read as the direct buffers its content was read into from the socket, instead of having
+ * every byte copied out through {@link java.io.InputStream#read(byte[])}. The body of every response from the
+ * {@link NioRequestHandler} is also a {@code ChunkedBody}, so it can be read like this:
+ * <pre>
+ * ChunkedBody body = (ChunkedBody) response.getBody();
+ *
+ * for (BodyChunk chunk; null != (chunk = body.nextChunk()); ) {
+ *
+ *     channel.write(chunk.getContent());
+ *
+ *     chunk.release();
+ * }
+ * </pre>
+ * Every chunk must be released once its content has been used, the connection counts the content of chunks that have
+ * not been released against the body when deciding whether to stop reading from the server.
+ *
+ * @author Karl Bennett
+ */
+public interface ChunkedBody extends Closeable {
+
+    /**
+     * Get the next section of the body, waiting for it to be read from the connection if necessary. The chunk starts
+     * wherever reading through the {@link java.io.InputStream} stopped, so the two can be mixed.
+     *
+     * @return the next chunk of the body, or null if the entire body has been read.
+     * @throws IOException if the body has been closed or could not be read.
+     */
+    BodyChunk nextChunk() throws IOException;
+}
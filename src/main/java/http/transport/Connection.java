@@ -0,0 +1,822 @@
+package http.transport;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import static http.util.Asserts.assertNotNull;
+import static http.util.Checks.isNotNull;
+import static http.util.Checks.isNull;
+
+/**
+ * A non-blocking persistent {@code HTTP/1.1} connection to a single server. All of the methods that touch the channel
+ * are only ever called on the connections {@link EventLoop} thread, the methods that can be called from other threads
+ * hand their work over to the loop. The socket is opened by a {@link Connector} that races the addresses of the
+ * server.
+ * <p/>
+ * A connection normally carries one {@link Exchange} at a time, but when pipelining is enabled the pool can hand it more
+ * exchanges before the earlier ones have been answered. The requests are then written back to back and the responses
+ * are matched to them in the order they were sent. If the connection is closed with requests still unanswered they are
+ * handed back to the pool to be sent again.
+ * <p/>
+ * Once the last exchange completes the connection is handed back to its {@link ConnectionPool} if it can be reused,
+ * otherwise it is closed and removed from the pool.
+ * <p/>
+ * An {@code https} connection does its {@code TLS} handshake through a {@link TlsChannel} before the first request is
+ * written. A {@link FileBody} is then read through the encoder rather than transferred from the file, because it has
+ * to be encrypted.
+ * <p/>
+ * The connect and {@code TLS} handshake timeouts of the first exchange limit how long the connection can take to open,
+ * the exchange fails with a {@link RequestTimeoutException} if either passes.
+ *
+ * @author Karl Bennett
+ */
+class Connection implements EventHandler, Carrier {
+
+    /**
+     * A read buffer that is still referred to by a response body is only read into again if it has at least this much
+     * space left after the content the body refers to.
+     */
+    static final int MIN_READ_SPACE = 2 * 1024;
+
+
+    private final EventLoop eventLoop;
+    private final ConnectionPool pool;
+    private final Route route;
+    private final List<InetSocketAddress> addresses;
+
+    // The exchanges that have been given to this connection and not yet answered, oldest first.
+    private final Deque<Exchange> exchanges;
+    // The exchanges whose requests haven't started being written yet.
+    private final Deque<Exchange> unwritten;
+
+    private Connector connector;
+    private long tlsHandshakeTimeout;
+    private HashedWheelTimer.Timeout handshakeTimeout;
+    private SocketChannel channel;
+    // The channel requests and responses go through, the socket itself or the TLS channel over it.
+    private ByteChannel io;
+    private TlsChannel tls;
+    private SelectionKey key;
+    private PooledBuffer readBuffer;
+
+    // The exchange whose request is being written, until every byte of it has been written to the socket.
+    private Exchange writing;
+    private RequestEncoder encoder;
+    private PooledBuffer writeBuffer;
+
+    private boolean received;
+    private boolean reused;
+    private boolean suspended;
+    private boolean closed;
+
+    // Only accessed while holding the pool lock.
+    private boolean allocated;
+    private long idleSince;
+    private int outstanding;
+    private boolean persistent;
+    private boolean pipelinable;
+
+
+    /**
+     * Create a new {@code Connection} to the server at one of the supplied addresses.
+     *
+     * @param eventLoop the loop that will drive the connection.
+     * @param pool      the pool the connection belongs to.
+     * @param route     the route the connection is for.
+     * @param addresses the addresses of the server.
+     */
+    public Connection(EventLoop eventLoop, ConnectionPool pool, Route route, List<InetSocketAddress> addresses) {
+
+        assertNotNull("eventLoop", eventLoop);
+        assertNotNull("pool", pool);
+        assertNotNull("route", route);
+        assertNotNull("addresses", addresses);
+
+        this.eventLoop = eventLoop;
+        this.pool = pool;
+        this.route = route;
+        this.addresses = addresses;
+        this.exchanges = new ArrayDeque<Exchange>();
+        this.unwritten = new ArrayDeque<Exchange>();
+        this.allocated = true;
+        this.outstanding = 1;
+    }
+
+
+    /**
+     * @return the route the connection is for.
+     */
+    public Route getRoute() {
+
+        return route;
+    }
+
+    boolean isAllocated() {
+
+        return allocated;
+    }
+
+    void setAllocated(boolean allocated) {
+
+        this.allocated = allocated;
+    }
+
+    long getIdleSince() {
+
+        return idleSince;
+    }
+
+    void setIdleSince(long idleSince) {
+
+        this.idleSince = idleSince;
+    }
+
+    /**
+     * @return the number of exchanges the pool has given this connection that haven't completed.
+     */
+    int getOutstanding() {
+
+        return outstanding;
+    }
+
+    void setOutstanding(int outstanding) {
+
+        this.outstanding = outstanding;
+    }
+
+    /**
+     * @return true if the server has kept this connection open after a response.
+     */
+    boolean isPersistent() {
+
+        return persistent;
+    }
+
+    void setPersistent(boolean persistent) {
+
+        this.persistent = persistent;
+    }
+
+    /**
+     * @return true if every exchange outstanding on this connection can have another pipelined behind it.
+     */
+    boolean isPipelinable() {
+
+        return pipelinable;
+    }
+
+    void setPipelinable(boolean pipelinable) {
+
+        this.pipelinable = pipelinable;
+    }
+
+    /**
+     * Open the connection and send the supplied exchange once connected. This must be called on the event loop
+     * thread.
+     *
+     * @param first the first exchange to send.
+     */
+    public void connect(Exchange first) {
+
+        readBuffer = pool.getBufferPool().acquire();
+
+        exchanges.add(first);
+
+        tlsHandshakeTimeout = first.getTlsHandshakeTimeout();
+
+        connector = new Connector(eventLoop, addresses, pool.getFailedAddresses(), pool.getConnectAttemptDelay(),
+                pool.getTimer(), first.getConnectTimeout(), new Connector.Listener() {
+
+                    @Override
+                    public void connected(SocketChannel channel) {
+
+                        Connection.this.connected(channel);
+                    }
+
+                    @Override
+                    public void failed(Throwable cause) {
+
+                        fail(cause);
+                    }
+                });
+
+        connector.connect();
+    }
+
+    /**
+     * Carry on over the socket of an {@link Http2Connection} whose server didn't agree to {@code h2}, the {@code TLS}
+     * handshake has already completed so the supplied exchange is sent straight away. This must be called on the event
+     * loop thread.
+     *
+     * @param channel the socket to take over.
+     * @param tls     the {@code TLS} channel over the socket.
+     * @param first   the first exchange to send.
+     */
+    void takeOver(SocketChannel channel, TlsChannel tls, Exchange first) {
+
+        readBuffer = pool.getBufferPool().acquire();
+
+        exchanges.add(first);
+
+        this.channel = channel;
+        this.tls = tls;
+        this.io = tls;
+
+        try {
+
+            // Registering the socket again hands its selection key over to this connection.
+            key = eventLoop.register(channel, 0, this);
+
+            send(exchanges.poll());
+
+        } catch (IOException e) {
+
+            fail(e);
+        }
+    }
+
+    /**
+     * Send the supplied exchange on this connection, this can be called from any thread. If the connection has been
+     * closed in the meantime the exchange is handed back to the pool.
+     *
+     * @param next the exchange to send.
+     */
+    public void dispatch(final Exchange next) {
+
+        eventLoop.execute(new Runnable() {
+
+            @Override
+            public void run() {
+
+                if (closed) {
+
+                    execute(next);
+
+                    return;
+                }
+
+                send(next);
+            }
+        });
+    }
+
+    @Override
+    public void handle(SelectionKey key) throws IOException {
+
+        if (isNotNull(tls) && !tls.isHandshaken()) {
+
+            handshake();
+
+            return;
+        }
+
+        // Nothing should be sent to an idle connection, so either the server has closed it or it is misbehaving.
+        if (exchanges.isEmpty()) {
+
+            close();
+
+            return;
+        }
+
+        if (key.isWritable()) write();
+
+        if (key.isValid() && key.isReadable()) read();
+    }
+
+    @Override
+    public void fail(Throwable cause) {
+
+        fail(cause, false);
+    }
+
+    /**
+     * Stop reading from the connection until {@link #resume(Exchange)} is called, an {@code HTTP/1.1} connection can
+     * only ever be delivering one response so this stops the connection as a whole. This must be called on the event
+     * loop thread.
+     *
+     * @param exchange the exchange whose body can't accept any more data.
+     */
+    @Override
+    public void suspend(Exchange exchange) {
+
+        suspended = true;
+
+        if (isNotNull(key) && key.isValid()) key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+    }
+
+    /**
+     * Resume reading the response for the supplied exchange, this can be called from any thread.
+     *
+     * @param resumed the exchange whose body can accept more data.
+     */
+    @Override
+    public void resume(final Exchange resumed) {
+
+        eventLoop.execute(new Runnable() {
+
+            @Override
+            public void run() {
+
+                if (closed || resumed != exchanges.peek() || !suspended) return;
+
+                suspended = false;
+
+                key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+
+                // The socket won't become readable for what the TLS channel has already read from it.
+                if (isNotNull(tls) && tls.hasBuffered()) readBuffered();
+            }
+        });
+    }
+
+    /**
+     * Abandon the supplied exchange, this closes the connection because the rest of its response can't be skipped
+     * cheaply. An exchange that is pipelined behind others is abandoned once its response starts to arrive. This can
+     * be called from any thread.
+     *
+     * @param cancelled the exchange that has been cancelled.
+     */
+    @Override
+    public void cancel(final Exchange cancelled) {
+
+        eventLoop.execute(new Runnable() {
+
+            @Override
+            public void run() {
+
+                if (cancelled == exchanges.peek()) fail(new TransportException("The exchange was cancelled."), true);
+            }
+        });
+    }
+
+    @Override
+    public PooledBuffer getReadBuffer() {
+
+        return readBuffer;
+    }
+
+    /**
+     * Close the connection if it is idle. This is used by the pool to evict connections, this can be called from any
+     * thread.
+     */
+    public void closeIdle() {
+
+        eventLoop.execute(new Runnable() {
+
+            @Override
+            public void run() {
+
+                if (exchanges.isEmpty()) close();
+            }
+        });
+    }
+
+
+    /**
+     * Carry on with the TLS handshake and send the first exchange once it completes.
+     */
+    private void handshake() throws IOException {
+
+        int ops = tls.handshake();
+
+        if (0 != ops) {
+
+            key.interestOps(ops);
+
+            return;
+        }
+
+        if (isNotNull(handshakeTimeout)) handshakeTimeout.cancel();
+
+        send(exchanges.poll());
+    }
+
+    /**
+     * Fail the connection if the {@code TLS} handshake hasn't completed once the handshake timeout has passed.
+     */
+    private void scheduleHandshakeTimeout() {
+
+        if (0 == tlsHandshakeTimeout) return;
+
+        handshakeTimeout = pool.getTimer().schedule(eventLoop, new Runnable() {
+
+            @Override
+            public void run() {
+
+                if (closed || tls.isHandshaken()) return;
+
+                fail(new RequestTimeoutException("The TLS handshake with (" + route + ") did not complete within (" +
+                        tlsHandshakeTimeout + ") milliseconds."));
+            }
+        }, tlsHandshakeTimeout);
+    }
+
+    private void readBuffered() {
+
+        try {
+
+            read();
+
+        } catch (IOException e) {
+
+            fail(e);
+
+        } catch (RuntimeException e) {
+
+            fail(e);
+        }
+    }
+
+    private void send(Exchange next) {
+
+        // The caller gave up while the exchange was waiting for a connection.
+        if (next.isCancelled()) {
+
+            release();
+
+            return;
+        }
+
+        next.bind(this);
+
+        if (exchanges.isEmpty()) {
+
+            received = false;
+            suspended = false;
+        }
+
+        exchanges.add(next);
+        unwritten.add(next);
+
+        key.interestOps(SelectionKey.OP_WRITE | (suspended ? 0 : SelectionKey.OP_READ));
+    }
+
+    private void write() throws IOException {
+
+        while (true) {
+
+            if (isNull(writeBuffer)) writeBuffer = pool.getBufferPool().acquire();
+
+            ByteBuffer buffer = writeBuffer.getBuffer();
+
+            fill(buffer);
+
+            FileBody transfer = 0 == buffer.position() && isNotNull(encoder) ? encoder.getTransfer() : null;
+
+            if (isNotNull(transfer)) {
+
+                transfer.transferTo(channel);
+
+                // The socket buffer is full so wait until it is writable again.
+                if (0 < transfer.getRemaining()) return;
+
+                continue;
+            }
+
+            if (0 == buffer.position()) {
+
+                // Anything the TLS channel has encrypted has to be written before the socket can be forgotten about.
+                if (isNotNull(tls) && !tls.flush()) return;
+
+                // Every request has been sent so only wait for the responses from now on.
+                writeBuffer.release();
+                writeBuffer = null;
+                writing = null;
+
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+
+                return;
+            }
+
+            buffer.flip();
+            io.write(buffer);
+            buffer.compact();
+
+            // The socket buffer is full so wait until it is writable again.
+            if (0 < buffer.position()) return;
+
+            if (isNull(encoder)) writing = null;
+        }
+    }
+
+    /**
+     * Encode as many of the unwritten requests as will fit into the write buffer, so that small pipelined requests go
+     * out together.
+     *
+     * @param buffer the write buffer.
+     * @throws IOException if a request body could not be read.
+     */
+    private void fill(ByteBuffer buffer) throws IOException {
+
+        while (buffer.hasRemaining()) {
+
+            if (isNull(encoder)) {
+
+                Exchange next = unwritten.poll();
+
+                if (isNull(next)) return;
+
+                writing = next;
+                encoder = new RequestEncoder(next.getMethod(), next.getRequest(), false, isNull(tls));
+            }
+
+            if (!encoder.encode(buffer)) return;
+
+            encoder = null;
+        }
+    }
+
+    private void read() throws IOException {
+
+        while (!suspended && !closed && !exchanges.isEmpty()) {
+
+            ByteBuffer buffer = prepareRead();
+
+            int start = buffer.position();
+            int read = io.read(buffer);
+
+            buffer.limit(buffer.position());
+            buffer.position(start);
+
+            if (0 == read) return;
+
+            if (-1 == read) {
+
+                if (!received) throw new TransportException("The connection was closed before a response was received.");
+
+                Exchange head = exchanges.peek();
+
+                head.getParser().close();
+
+                exchanges.poll();
+
+                closeAndRequeue(false);
+
+                head.complete();
+
+                return;
+            }
+
+            // A single read can hold the end of one pipelined response and the start of the next.
+            while (buffer.hasRemaining() && !closed) {
+
+                if (exchanges.isEmpty()) {
+
+                    // Bytes that don't belong to any request mean the connection can't be trusted.
+                    close();
+
+                    return;
+                }
+
+                Exchange head = exchanges.peek();
+
+                received = true;
+
+                head.getParser().parse(buffer);
+
+                if (head.getParser().isComplete()) complete();
+            }
+        }
+    }
+
+    /**
+     * Every byte in the read buffer is parsed before the next read, so the whole buffer can be read into again unless a
+     * response body is still holding some of its content. In that case the next read goes into the space after the
+     * content, or into a new buffer if there isn't enough space left.
+     *
+     * @return the buffer ready to be read into from its position.
+     */
+    private ByteBuffer prepareRead() {
+
+        ByteBuffer buffer = readBuffer.getBuffer();
+
+        if (!readBuffer.isShared()) {
+
+            buffer.clear();
+
+        } else if (MIN_READ_SPACE > buffer.capacity() - buffer.limit()) {
+
+            readBuffer.release();
+            readBuffer = pool.getBufferPool().acquire();
+
+            buffer = readBuffer.getBuffer();
+
+        } else {
+
+            buffer.position(buffer.limit());
+            buffer.limit(buffer.capacity());
+        }
+
+        return buffer;
+    }
+
+    private void complete() {
+
+        Exchange completed = exchanges.poll();
+
+        received = false;
+
+        // A response that arrives before its request has been sent can't be followed by another.
+        boolean written = completed != writing && !unwritten.contains(completed);
+
+        if (written && !completed.getParser().isClose() && !completed.isCancelled()) {
+
+            reused = true;
+
+            release();
+
+        } else {
+
+            closeAndRequeue(completed.isCancelled());
+        }
+
+        completed.complete();
+    }
+
+    private void release() {
+
+        if (exchanges.isEmpty()) {
+
+            suspended = false;
+
+            key.interestOps(SelectionKey.OP_READ);
+
+        } else if (suspended) {
+
+            // The suspended body belonged to the exchange that has just completed.
+            suspended = false;
+
+            key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+        }
+
+        pool.release(this);
+    }
+
+    /**
+     * Start using the socket the connector opened, the first exchange is sent once the {@code TLS} handshake of an
+     * {@code https} connection has completed.
+     */
+    private void connected(SocketChannel connected) {
+
+        channel = connected;
+
+        try {
+
+            if (NioRequestHandler.HTTPS.equals(route.getScheme())) {
+
+                TlsConfig config = pool.getTlsConfig();
+
+                tls = new TlsChannel(channel, config.createEngine(route, null), route.getHost(),
+                        config.getHostnameVerifier());
+            }
+
+            io = isNull(tls) ? channel : tls;
+
+            key = eventLoop.register(channel, 0, this);
+
+            if (isNull(tls)) {
+
+                send(exchanges.poll());
+
+            } else {
+
+                scheduleHandshakeTimeout();
+
+                handshake();
+            }
+
+        } catch (IOException e) {
+
+            fail(e);
+        }
+    }
+
+    /**
+     * Fail the exchange whose response is being read and hand any exchanges pipelined behind it back to the pool.
+     *
+     * @param cause     the reason the connection failed.
+     * @param abandoned true if the connection is being closed because an exchange was cancelled rather than because
+     *                  the server misbehaved.
+     */
+    private void fail(Throwable cause, boolean abandoned) {
+
+        if (closed) return;
+
+        Exchange failed = exchanges.poll();
+
+        // A reused connection may have been closed by the server while it was idle, if nothing has been received the
+        // request can safely be sent again on a new connection.
+        boolean retry = reused && !received && isNotNull(failed) && failed.isRetryable();
+
+        List<Exchange> unanswered = drain();
+
+        close();
+
+        if (!unanswered.isEmpty() && !abandoned) pool.disablePipelining(route);
+
+        if (isNotNull(failed)) {
+
+            if (retry) {
+
+                failed.retry();
+
+                execute(failed);
+
+            } else {
+
+                failed.fail(cause);
+            }
+        }
+
+        requeue(unanswered);
+    }
+
+    private void closeAndRequeue(boolean abandoned) {
+
+        List<Exchange> unanswered = drain();
+
+        close();
+
+        // The server closed the connection with requests still in the pipeline, so stop pipelining to it.
+        if (!unanswered.isEmpty() && !abandoned) pool.disablePipelining(route);
+
+        requeue(unanswered);
+    }
+
+    private List<Exchange> drain() {
+
+        List<Exchange> drained = new ArrayList<Exchange>(exchanges);
+
+        exchanges.clear();
+        unwritten.clear();
+        writing = null;
+        encoder = null;
+
+        return drained;
+    }
+
+    private void requeue(List<Exchange> unanswered) {
+
+        for (Exchange exchange : unanswered) {
+
+            exchange.requeue();
+
+            execute(exchange);
+        }
+    }
+
+    private void execute(Exchange next) {
+
+        try {
+
+            pool.execute(next);
+
+        } catch (TransportException e) {
+
+            next.fail(e);
+        }
+    }
+
+    private void close() {
+
+        if (closed) return;
+
+        closed = true;
+
+        if (isNotNull(connector)) connector.cancel();
+
+        if (isNotNull(handshakeTimeout)) handshakeTimeout.cancel();
+
+        // Any body that still refers to the read buffer keeps its own reference.
+        if (isNotNull(readBuffer)) readBuffer.release();
+
+        if (isNotNull(writeBuffer)) writeBuffer.release();
+
+        writeBuffer = null;
+
+        if (isNotNull(key)) key.cancel();
+
+        if (isNotNull(channel)) {
+
+            try {
+
+                if (isNotNull(tls)) tls.close();
+                else channel.close();
+
+            } catch (IOException e) {
+
+                // The connection is being thrown away so there's nothing else to do.
+            }
+        }
+
+        pool.remove(this);
+    }
+}
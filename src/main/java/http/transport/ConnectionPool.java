@@ -0,0 +1,902 @@
+package http.transport;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static http.util.Asserts.assertNotNull;
+import static http.util.Checks.isNotNull;
+import static http.util.Checks.isNull;
+
+/**
+ * A pool of persistent connections that are keyed by {@link Route}. The pool limits the number of connections that can
+ * be open to a single route and the number that can be open in total. If an exchange can't be given a connection
+ * straight away it is queued until one is released, so no thread is ever blocked waiting for a connection.
+ * <p/>
+ * Idle connections are closed once they have been idle for longer than the idle timeout, by a task that the pools
+ * timer hands to one of its event loops rather than by a thread of its own. They also stay registered with their event
+ * loop while idle so that a connection closed by the server is noticed and removed straight away.
+ * <p/>
+ * If pipelining is enabled an exchange that has no idle connection can be pipelined behind the exchanges on a busy
+ * connection, as long as every exchange on it is pipelinable and the connection has already been kept open by the
+ * server once. A route whose server closes a connection with pipelined requests unanswered is never pipelined to
+ * again.
+ * <p/>
+ * If {@code HTTP/2} is enabled every exchange for a route is multiplexed onto a single {@link Http2Connection}, which
+ * counts as one connection towards the limits. A replacement is opened once the server tells the connection to go
+ * away, while the old connection finishes the streams it already has. A route whose {@code https} server doesn't agree
+ * to {@code h2} through {@code ALPN} falls back to {@code HTTP/1.1} connections and is never multiplexed again.
+ * <p/>
+ * The pool also owns the {@link HashedWheelTimer} that enforces the timeouts of the exchanges and connections, so a
+ * single thread keeps time for every request.
+ *
+ * @author Karl Bennett
+ */
+class ConnectionPool implements Closeable {
+
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 20;
+    public static final int DEFAULT_MAX_CONNECTIONS = 200;
+    public static final long DEFAULT_IDLE_TIMEOUT = TimeUnit.SECONDS.toMillis(60);
+    public static final int DEFAULT_MAX_PIPELINE_DEPTH = 8;
+    public static final int DEFAULT_MAX_CONCURRENT_STREAMS = Http2Connection.DEFAULT_MAX_CONCURRENT_STREAMS;
+
+    private static final long MIN_EVICTION_INTERVAL = 10;
+    private static final long MAX_EVICTION_INTERVAL = 1000;
+
+
+    /**
+     * The pool state for a single route.
+     */
+    private static class RoutePool {
+
+        private final Deque<Connection> idle = new ArrayDeque<Connection>();
+        private final List<Connection> busy = new ArrayList<Connection>();
+        private final Deque<Exchange> waiting = new ArrayDeque<Exchange>();
+        private int allocated;
+
+        private boolean isUnused() {
+
+            return 0 == allocated && idle.isEmpty() && busy.isEmpty() && waiting.isEmpty();
+        }
+    }
+
+
+    private final EventLoop[] eventLoops;
+    private final AtomicInteger nextEventLoop;
+    private final Map<Route, RoutePool> routes;
+    private final Map<Route, Http2Connection> multiplexed;
+    private final Set<Route> unpipelinable;
+    private final Set<Route> unmultiplexable;
+    private final BufferPool buffers;
+    private final FailedAddresses failedAddresses;
+    private final HashedWheelTimer timer;
+
+    private volatile int maxConnectionsPerRoute;
+    private volatile int maxConnections;
+    private volatile long idleTimeout;
+    private volatile boolean pipelining;
+    private volatile int maxPipelineDepth;
+    private volatile HttpVersion httpVersion;
+    private volatile int maxConcurrentStreams;
+    private volatile TlsConfig tlsConfig;
+    private volatile long connectAttemptDelay;
+
+    private int allocated;
+    private boolean closed;
+
+
+    /**
+     * Create a new {@code ConnectionPool} that opens its connections on the supplied event loops.
+     *
+     * @param eventLoops the event loops that new connections will be spread across.
+     */
+    public ConnectionPool(EventLoop[] eventLoops) {
+
+        assertNotNull("eventLoops", eventLoops);
+
+        this.eventLoops = eventLoops;
+        this.nextEventLoop = new AtomicInteger();
+        this.routes = new HashMap<Route, RoutePool>();
+        this.multiplexed = new HashMap<Route, Http2Connection>();
+        this.unpipelinable = new HashSet<Route>();
+        this.unmultiplexable = new HashSet<Route>();
+        this.buffers = new BufferPool();
+        this.failedAddresses = new FailedAddresses();
+        this.timer = new HashedWheelTimer();
+
+        this.maxConnectionsPerRoute = DEFAULT_MAX_CONNECTIONS_PER_ROUTE;
+        this.maxConnections = DEFAULT_MAX_CONNECTIONS;
+        this.idleTimeout = DEFAULT_IDLE_TIMEOUT;
+        this.pipelining = false;
+        this.maxPipelineDepth = DEFAULT_MAX_PIPELINE_DEPTH;
+        this.httpVersion = HttpVersion.HTTP_1_1;
+        this.maxConcurrentStreams = DEFAULT_MAX_CONCURRENT_STREAMS;
+        this.connectAttemptDelay = Connector.DEFAULT_ATTEMPT_DELAY;
+
+        scheduleEviction();
+    }
+
+
+    /**
+     * @return the pool of buffers that the connections read into.
+     */
+    public BufferPool getBufferPool() {
+
+        return buffers;
+    }
+
+    public int getMaxConnectionsPerRoute() {
+
+        return maxConnectionsPerRoute;
+    }
+
+    public void setMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
+
+        if (1 > maxConnectionsPerRoute) {
+
+            throw new IllegalArgumentException("The (maxConnectionsPerRoute) variable must be greater than zero.");
+        }
+
+        this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+    }
+
+    public int getMaxConnections() {
+
+        return maxConnections;
+    }
+
+    public void setMaxConnections(int maxConnections) {
+
+        if (1 > maxConnections) {
+
+            throw new IllegalArgumentException("The (maxConnections) variable must be greater than zero.");
+        }
+
+        this.maxConnections = maxConnections;
+    }
+
+    public long getIdleTimeout() {
+
+        return idleTimeout;
+    }
+
+    public void setIdleTimeout(long idleTimeout) {
+
+        if (0 > idleTimeout) throw new IllegalArgumentException("The (idleTimeout) variable must not be negative.");
+
+        this.idleTimeout = idleTimeout;
+    }
+
+    public boolean isPipelining() {
+
+        return pipelining;
+    }
+
+    public void setPipelining(boolean pipelining) {
+
+        this.pipelining = pipelining;
+    }
+
+    public int getMaxPipelineDepth() {
+
+        return maxPipelineDepth;
+    }
+
+    public void setMaxPipelineDepth(int maxPipelineDepth) {
+
+        if (1 > maxPipelineDepth) {
+
+            throw new IllegalArgumentException("The (maxPipelineDepth) variable must be greater than zero.");
+        }
+
+        this.maxPipelineDepth = maxPipelineDepth;
+    }
+
+    public HttpVersion getHttpVersion() {
+
+        return httpVersion;
+    }
+
+    public void setHttpVersion(HttpVersion httpVersion) {
+
+        assertNotNull("httpVersion", httpVersion);
+
+        this.httpVersion = httpVersion;
+    }
+
+    /**
+     * @return the configuration of {@code https} connections, the default configuration is only created when it is
+     *         first needed.
+     */
+    public TlsConfig getTlsConfig() {
+
+        if (isNull(tlsConfig)) {
+
+            synchronized (this) {
+
+                if (isNull(tlsConfig)) tlsConfig = new TlsConfig();
+            }
+        }
+
+        return tlsConfig;
+    }
+
+    public void setTlsConfig(TlsConfig tlsConfig) {
+
+        assertNotNull("tlsConfig", tlsConfig);
+
+        this.tlsConfig = tlsConfig;
+    }
+
+    public long getConnectAttemptDelay() {
+
+        return connectAttemptDelay;
+    }
+
+    public void setConnectAttemptDelay(long connectAttemptDelay) {
+
+        if (0 > connectAttemptDelay) {
+
+            throw new IllegalArgumentException("The (connectAttemptDelay) variable must not be negative.");
+        }
+
+        this.connectAttemptDelay = connectAttemptDelay;
+    }
+
+    /**
+     * @return the addresses that connections have failed to open to recently.
+     */
+    public FailedAddresses getFailedAddresses() {
+
+        return failedAddresses;
+    }
+
+    /**
+     * @return the timer that enforces the timeouts of the exchanges and connections.
+     */
+    public HashedWheelTimer getTimer() {
+
+        return timer;
+    }
+
+    public int getMaxConcurrentStreams() {
+
+        return maxConcurrentStreams;
+    }
+
+    public void setMaxConcurrentStreams(int maxConcurrentStreams) {
+
+        if (1 > maxConcurrentStreams) {
+
+            throw new IllegalArgumentException("The (maxConcurrentStreams) variable must be greater than zero.");
+        }
+
+        this.maxConcurrentStreams = maxConcurrentStreams;
+    }
+
+    /**
+     * @return the number of connections that are open or being opened.
+     */
+    public synchronized int getConnectionCount() {
+
+        return allocated;
+    }
+
+    /**
+     * @return the number of connections that are open and waiting to be reused.
+     */
+    public synchronized int getIdleConnectionCount() {
+
+        int idle = 0;
+
+        for (RoutePool routePool : routes.values()) idle += routePool.idle.size();
+
+        return idle;
+    }
+
+    /**
+     * Send the supplied exchange on a pooled connection. An idle connection for the exchanges route will be reused if
+     * there is one, otherwise the exchange will be pipelined on a busy connection if that is allowed, otherwise a new
+     * connection will be opened if the limits allow it. If none of these are possible the exchange is queued until a
+     * connection becomes available. An exchange for a multiplexed route is always given to the routes
+     * {@link Http2Connection}, which is opened if there isn't one yet. This can be called from any thread.
+     *
+     * @param exchange the exchange to send.
+     * @throws TransportException if the pool has been closed.
+     */
+    public void execute(Exchange exchange) {
+
+        Connection connection;
+        List<Connection> evicted = new ArrayList<Connection>();
+        boolean open = false;
+
+        synchronized (this) {
+
+            if (closed) throw new TransportException("The connection pool has been closed.");
+
+            RoutePool routePool = routePool(exchange.getRoute());
+
+            if (isMultiplexed(exchange.getRoute())) {
+
+                executeMultiplexed(routePool, exchange, evicted);
+
+                connection = null;
+
+            } else {
+
+                connection = routePool.idle.pollFirst();
+
+                if (isNotNull(connection)) {
+
+                    assign(routePool, connection, exchange);
+
+                } else {
+
+                    connection = pipeline(routePool, exchange);
+
+                    if (isNull(connection)) {
+
+                        if (allocate(routePool, evicted)) open = true;
+                        else routePool.waiting.add(exchange);
+                    }
+                }
+            }
+        }
+
+        close(evicted);
+
+        if (isNotNull(connection)) connection.dispatch(exchange);
+
+        if (open) open(exchange);
+    }
+
+    /**
+     * Tell the pool that one of a connections exchanges has completed and the connection can be reused. Once it has no
+     * exchanges left it is given to the next exchange waiting for its route, or kept idle if there isn't one. This is
+     * called on the connections event loop thread.
+     *
+     * @param connection the reusable connection.
+     */
+    public void release(Connection connection) {
+
+        List<Exchange> dispatched = new ArrayList<Exchange>();
+        List<Exchange> opened = new ArrayList<Exchange>();
+        List<Connection> evicted = new ArrayList<Connection>();
+
+        synchronized (this) {
+
+            RoutePool routePool = routePool(connection.getRoute());
+
+            connection.setPersistent(true);
+            connection.setOutstanding(connection.getOutstanding() - 1);
+
+            if (0 < connection.getOutstanding()) {
+
+                // The connection is still busy but there may be room in its pipeline.
+                while (!closed && isNotNull(routePool.waiting.peek()) &&
+                        canPipeline(connection, routePool.waiting.peek())) {
+
+                    Exchange waiting = routePool.waiting.poll();
+
+                    connection.setOutstanding(connection.getOutstanding() + 1);
+
+                    dispatched.add(waiting);
+                }
+
+            } else {
+
+                routePool.busy.remove(connection);
+
+                Exchange waiting = closed ? null : routePool.waiting.poll();
+
+                if (closed) {
+
+                    evicted.add(deallocate(routePool, connection));
+
+                } else if (isNotNull(waiting)) {
+
+                    assign(routePool, connection, waiting);
+
+                    dispatched.add(waiting);
+
+                } else {
+
+                    connection.setIdleSince(System.currentTimeMillis());
+
+                    routePool.idle.addFirst(connection);
+
+                    serviceWaiting(opened, evicted);
+                }
+            }
+        }
+
+        for (Exchange exchange : dispatched) connection.dispatch(exchange);
+
+        close(evicted);
+
+        open(opened);
+    }
+
+    /**
+     * Stop pipelining requests to the supplied route because its server has closed a connection without answering
+     * all of the requests pipelined on it.
+     *
+     * @param route the route that can't be pipelined to.
+     */
+    public synchronized void disablePipelining(Route route) {
+
+        unpipelinable.add(route);
+    }
+
+    /**
+     * Stop giving new exchanges to the supplied {@code HTTP/2} connection because the server has told it to go away.
+     * The connection keeps its slot until it is closed. This is called on the connections event loop thread.
+     *
+     * @param connection the connection that is going away.
+     */
+    public synchronized void retire(Http2Connection connection) {
+
+        if (connection == multiplexed.get(connection.getRoute())) multiplexed.remove(connection.getRoute());
+    }
+
+    /**
+     * Stop multiplexing the route of the supplied {@code HTTP/2} connection because its server didn't agree to
+     * {@code h2}, and give the connections slot to an {@code HTTP/1.1} connection that takes over its socket to send
+     * the supplied exchange. This is called on the connections event loop thread.
+     *
+     * @param connection the connection whose server only speaks {@code HTTP/1.1}.
+     * @param first      the exchange to send on the socket, or null if there isn't one.
+     * @return the connection that takes over the socket, or null if the socket should be closed instead.
+     */
+    public Connection fallBack(Http2Connection connection, Exchange first) {
+
+        Connection fallback;
+        List<Exchange> opened = new ArrayList<Exchange>();
+        List<Connection> evicted = new ArrayList<Connection>();
+
+        synchronized (this) {
+
+            unmultiplexable.add(connection.getRoute());
+
+            retire(connection);
+
+            if (closed || isNull(first) || !connection.isAllocated()) return null;
+
+            // The slot moves to the new connection along with the socket.
+            connection.setAllocated(false);
+
+            fallback = new Connection(connection.getEventLoop(), this, connection.getRoute(), first.getAddresses());
+
+            RoutePool routePool = routePool(connection.getRoute());
+
+            assign(routePool, fallback, first);
+
+            // Any exchanges that were waiting for the HTTP/2 connection can now have connections of their own.
+            serviceWaiting(opened, evicted);
+        }
+
+        close(evicted);
+
+        open(opened);
+
+        return fallback;
+    }
+
+    /**
+     * Remove an {@code HTTP/2} connection that has been closed from the pool. This frees its slot for any exchanges
+     * that are waiting. This is called on the connections event loop thread.
+     *
+     * @param connection the closed connection.
+     */
+    public void remove(Http2Connection connection) {
+
+        List<Exchange> opened = new ArrayList<Exchange>();
+        List<Connection> evicted = new ArrayList<Connection>();
+
+        synchronized (this) {
+
+            retire(connection);
+
+            if (!connection.isAllocated()) return;
+
+            deallocate(routes.get(connection.getRoute()), connection);
+
+            if (!closed) serviceWaiting(opened, evicted);
+        }
+
+        close(evicted);
+
+        open(opened);
+    }
+
+    /**
+     * Remove a connection that has been closed from the pool. This frees its slot for any exchanges that are waiting.
+     * This is called on the connections event loop thread.
+     *
+     * @param connection the closed connection.
+     */
+    public void remove(Connection connection) {
+
+        List<Exchange> opened = new ArrayList<Exchange>();
+        List<Connection> evicted = new ArrayList<Connection>();
+
+        synchronized (this) {
+
+            if (!connection.isAllocated()) return;
+
+            RoutePool routePool = routes.get(connection.getRoute());
+
+            deallocate(routePool, connection);
+
+            if (!closed) serviceWaiting(opened, evicted);
+        }
+
+        close(evicted);
+
+        open(opened);
+    }
+
+    /**
+     * Close every idle connection and fail every waiting exchange. Connections that are in use will be closed when
+     * their exchange completes, {@code HTTP/2} connections once their last stream completes.
+     */
+    @Override
+    public void close() {
+
+        List<Connection> idle = new ArrayList<Connection>();
+        List<Http2Connection> draining = new ArrayList<Http2Connection>();
+        List<Exchange> waiting = new ArrayList<Exchange>();
+
+        synchronized (this) {
+
+            closed = true;
+
+            for (Http2Connection connection : multiplexed.values()) {
+
+                draining.add(deallocate(routes.get(connection.getRoute()), connection));
+            }
+
+            multiplexed.clear();
+
+            for (RoutePool routePool : routes.values()) {
+
+                while (!routePool.idle.isEmpty()) idle.add(deallocate(routePool, routePool.idle.peekFirst()));
+
+                waiting.addAll(routePool.waiting);
+                routePool.waiting.clear();
+            }
+        }
+
+        timer.close();
+
+        close(idle);
+
+        for (Http2Connection connection : draining) connection.closeIdle();
+
+        for (Exchange exchange : waiting) exchange.fail(new TransportException("The connection pool has been closed."));
+    }
+
+    /**
+     * Close any connections that have been idle for longer than the idle timeout.
+     */
+    void evictIdle() {
+
+        long expired = System.currentTimeMillis() - idleTimeout;
+
+        List<Connection> evicted = new ArrayList<Connection>();
+        List<Http2Connection> evictedMultiplexed = new ArrayList<Http2Connection>();
+
+        synchronized (this) {
+
+            Iterator<Http2Connection> connections = multiplexed.values().iterator();
+
+            while (connections.hasNext()) {
+
+                Http2Connection connection = connections.next();
+
+                if (0 == connection.getIdleSince() || expired < connection.getIdleSince()) continue;
+
+                connections.remove();
+
+                evictedMultiplexed.add(deallocate(routes.get(connection.getRoute()), connection));
+            }
+
+            Iterator<RoutePool> routePools = routes.values().iterator();
+
+            while (routePools.hasNext()) {
+
+                RoutePool routePool = routePools.next();
+
+                // The oldest idle connections are at the tail of the queue.
+                while (!routePool.idle.isEmpty() && expired >= routePool.idle.peekLast().getIdleSince()) {
+
+                    evicted.add(deallocate(routePool, routePool.idle.peekLast()));
+                }
+
+                if (routePool.isUnused()) routePools.remove();
+            }
+        }
+
+        close(evicted);
+
+        for (Http2Connection connection : evictedMultiplexed) connection.closeIdle();
+    }
+
+
+    private RoutePool routePool(Route route) {
+
+        RoutePool routePool = routes.get(route);
+
+        if (isNull(routePool)) {
+
+            routePool = new RoutePool();
+
+            routes.put(route, routePool);
+        }
+
+        return routePool;
+    }
+
+    /**
+     * Try and allocate a slot for a new connection on the supplied route. If the pool is full an idle connection from
+     * another route will be evicted to make room. This must be called while holding the pool lock.
+     */
+    private boolean allocate(RoutePool routePool, List<Connection> evicted) {
+
+        if (maxConnectionsPerRoute <= routePool.allocated) return false;
+
+        if (maxConnections <= allocated) {
+
+            Connection idle = oldestIdle();
+
+            if (isNull(idle)) return false;
+
+            evicted.add(deallocate(routes.get(idle.getRoute()), idle));
+        }
+
+        routePool.allocated++;
+        allocated++;
+
+        return true;
+    }
+
+    /**
+     * Give the supplied connection to the supplied exchange. This must be called while holding the pool lock.
+     */
+    private static void assign(RoutePool routePool, Connection connection, Exchange exchange) {
+
+        connection.setOutstanding(1);
+        connection.setPipelinable(exchange.isPipelinable());
+
+        routePool.busy.add(connection);
+    }
+
+    /**
+     * Find the busy connection with the shortest pipeline that the supplied exchange can be pipelined on. This must be
+     * called while holding the pool lock.
+     */
+    private Connection pipeline(RoutePool routePool, Exchange exchange) {
+
+        Connection shortest = null;
+
+        for (Connection connection : routePool.busy) {
+
+            if (canPipeline(connection, exchange) &&
+                    (isNull(shortest) || connection.getOutstanding() < shortest.getOutstanding())) {
+
+                shortest = connection;
+            }
+        }
+
+        if (isNotNull(shortest)) shortest.setOutstanding(shortest.getOutstanding() + 1);
+
+        return shortest;
+    }
+
+    private boolean canPipeline(Connection connection, Exchange exchange) {
+
+        return pipelining && exchange.isPipelinable() && connection.isPipelinable() && connection.isPersistent() &&
+                maxPipelineDepth > connection.getOutstanding() && !unpipelinable.contains(connection.getRoute());
+    }
+
+    /**
+     * Give the supplied exchange to the {@code HTTP/2} connection for its route, opening the connection if there isn't
+     * one and the limits allow it. Handing an exchange to the connection only queues a task on its event loop so it is
+     * safe to do while holding the pool lock, which this must be called while holding.
+     */
+    private void executeMultiplexed(RoutePool routePool, Exchange exchange, List<Connection> evicted) {
+
+        Http2Connection connection = multiplexed.get(exchange.getRoute());
+
+        if (isNull(connection) && allocate(routePool, evicted)) connection = openMultiplexed(exchange);
+
+        if (isNotNull(connection)) dispatch(connection, exchange);
+        else routePool.waiting.add(exchange);
+    }
+
+    private boolean isMultiplexed(Route route) {
+
+        // Without TLS there is no way to negotiate HTTP/2 so the server is assumed to support it, with TLS the route
+        // is only multiplexed until its server doesn't agree to it through ALPN.
+        return HttpVersion.HTTP_2 == httpVersion && !unmultiplexable.contains(route);
+    }
+
+    /**
+     * Create the {@code HTTP/2} connection for the supplied exchanges route, the connection is opened on its event
+     * loop. This must be called while holding the pool lock.
+     */
+    private Http2Connection openMultiplexed(Exchange exchange) {
+
+        final Http2Connection connection = new Http2Connection(nextEventLoop(), this, exchange.getRoute(),
+                exchange.getAddresses(), maxConcurrentStreams);
+
+        multiplexed.put(exchange.getRoute(), connection);
+
+        final Exchange first = exchange;
+
+        connection.getEventLoop().execute(new Runnable() {
+
+            @Override
+            public void run() {
+
+                connection.connect(first.getConnectTimeout(), first.getTlsHandshakeTimeout());
+            }
+        });
+
+        return connection;
+    }
+
+    private static void dispatch(Http2Connection connection, Exchange exchange) {
+
+        connection.setIdleSince(0);
+
+        connection.dispatch(exchange);
+    }
+
+    private Http2Connection deallocate(RoutePool routePool, Http2Connection connection) {
+
+        routePool.allocated--;
+        allocated--;
+
+        connection.setAllocated(false);
+
+        return connection;
+    }
+
+    private Connection deallocate(RoutePool routePool, Connection connection) {
+
+        routePool.idle.remove(connection);
+        routePool.busy.remove(connection);
+        routePool.allocated--;
+        allocated--;
+
+        connection.setAllocated(false);
+
+        return connection;
+    }
+
+    private Connection oldestIdle() {
+
+        Connection oldest = null;
+
+        for (RoutePool routePool : routes.values()) {
+
+            Connection idle = routePool.idle.peekLast();
+
+            if (isNotNull(idle) && (isNull(oldest) || idle.getIdleSince() < oldest.getIdleSince())) oldest = idle;
+        }
+
+        return oldest;
+    }
+
+    /**
+     * Open connections for any waiting exchanges that now fit within the limits. This must be called while holding the
+     * pool lock.
+     */
+    private void serviceWaiting(List<Exchange> opened, List<Connection> evicted) {
+
+        for (Map.Entry<Route, RoutePool> entry : routes.entrySet()) {
+
+            RoutePool routePool = entry.getValue();
+
+            if (isMultiplexed(entry.getKey())) {
+
+                serviceMultiplexed(entry.getKey(), routePool, evicted);
+
+                continue;
+            }
+
+            while (!routePool.waiting.isEmpty() && allocate(routePool, evicted)) {
+
+                opened.add(routePool.waiting.poll());
+            }
+        }
+    }
+
+    /**
+     * Give every exchange waiting for a multiplexed route to the routes connection, opening one if the limits now
+     * allow it. This must be called while holding the pool lock.
+     */
+    private void serviceMultiplexed(Route route, RoutePool routePool, List<Connection> evicted) {
+
+        if (routePool.waiting.isEmpty()) return;
+
+        Http2Connection connection = multiplexed.get(route);
+
+        if (isNull(connection) && allocate(routePool, evicted)) connection = openMultiplexed(routePool.waiting.peek());
+
+        if (isNull(connection)) return;
+
+        while (!routePool.waiting.isEmpty()) dispatch(connection, routePool.waiting.poll());
+    }
+
+    private EventLoop nextEventLoop() {
+
+        return eventLoops[(nextEventLoop.getAndIncrement() & Integer.MAX_VALUE) % eventLoops.length];
+    }
+
+    private void open(Exchange exchange) {
+
+        final EventLoop eventLoop = nextEventLoop();
+
+        final Connection connection = new Connection(eventLoop, this, exchange.getRoute(), exchange.getAddresses());
+
+        final Exchange first = exchange;
+
+        eventLoop.execute(new Runnable() {
+
+            @Override
+            public void run() {
+
+                connection.connect(first);
+            }
+        });
+    }
+
+    private void open(List<Exchange> exchanges) {
+
+        for (Exchange exchange : exchanges) open(exchange);
+    }
+
+    private static void close(List<Connection> connections) {
+
+        for (Connection connection : connections) connection.closeIdle();
+    }
+
+    private void scheduleEviction() {
+
+        long interval = Math.max(MIN_EVICTION_INTERVAL, Math.min(MAX_EVICTION_INTERVAL, idleTimeout / 2));
+
+        try {
+
+            timer.schedule(nextEventLoop(), new Runnable() {
+
+                @Override
+                public void run() {
+
+                    synchronized (ConnectionPool.this) {
+
+                        if (closed) return;
+                    }
+
+                    evictIdle();
+
+                    scheduleEviction();
+                }
+            }, interval);
+
+        } catch (TransportException e) {
+
+            // The pool has been closed.
+        }
+    }
+}
@@ -0,0 +1,357 @@
+package http.transport;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.Inet6Address;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static http.util.Asserts.assertNotNull;
+import static http.util.Checks.isNotNull;
+import static http.util.Checks.isNull;
+import static http.util.IO.closeQuietly;
+
+/**
+ * Opens a socket to one of the addresses of a server, racing the addresses against each other as described by
+ * "Happy Eyeballs" (RFC 8305). The first address is tried straight away and each following address is tried when the
+ * one before it fails or once the attempt delay has passed without any connection succeeding. The first socket that
+ * connects is handed to the {@link Listener} and every other attempt is abandoned.
+ * <p/>
+ * The addresses are tried alternating between {@code IPv6} and {@code IPv4} starting with the family of the first
+ * address, and addresses that have failed recently are tried last. So an unreachable address only costs the attempt
+ * delay rather than the whole connect timeout.
+ * <p/>
+ * If a connect timeout is given the connector fails with a {@link RequestTimeoutException} once it has passed without
+ * any attempt succeeding, and the addresses that were still being connected to count as failed.
+ * <p/>
+ * A connector is only ever used on its {@link EventLoop} thread.
+ *
+ * @author Karl Bennett
+ */
+class Connector implements EventHandler {
+
+    public static final long DEFAULT_ATTEMPT_DELAY = 250;
+
+
+    /**
+     * Order the supplied addresses into the order they should be tried in.
+     *
+     * @param addresses the addresses of the server in the order they were resolved.
+     * @param failed    the addresses that have failed recently.
+     * @return the addresses with the families interleaved and the recently failed addresses last.
+     */
+    static List<InetSocketAddress> order(List<InetSocketAddress> addresses, FailedAddresses failed) {
+
+        List<InetSocketAddress> first = new ArrayList<InetSocketAddress>();
+        List<InetSocketAddress> second = new ArrayList<InetSocketAddress>();
+
+        boolean v6 = !addresses.isEmpty() && addresses.get(0).getAddress() instanceof Inet6Address;
+
+        for (InetSocketAddress address : addresses) {
+
+            if (v6 == address.getAddress() instanceof Inet6Address) first.add(address);
+            else second.add(address);
+        }
+
+        List<InetSocketAddress> interleaved = new ArrayList<InetSocketAddress>(addresses.size());
+
+        for (int i = 0; i < Math.max(first.size(), second.size()); i++) {
+
+            if (i < first.size()) interleaved.add(first.get(i));
+            if (i < second.size()) interleaved.add(second.get(i));
+        }
+
+        List<InetSocketAddress> ordered = new ArrayList<InetSocketAddress>(interleaved.size());
+        List<InetSocketAddress> penalised = new ArrayList<InetSocketAddress>();
+
+        for (InetSocketAddress address : interleaved) {
+
+            if (failed.isPenalised(address.getAddress())) penalised.add(address);
+            else ordered.add(address);
+        }
+
+        ordered.addAll(penalised);
+
+        return ordered;
+    }
+
+
+    private final EventLoop eventLoop;
+    private final FailedAddresses failed;
+    private final long attemptDelay;
+    private final HashedWheelTimer timer;
+    private final long connectTimeout;
+    private final Listener listener;
+
+    private final Deque<InetSocketAddress> remaining;
+    // The sockets that are still connecting and the address each is connecting to.
+    private final Map<SocketChannel, InetSocketAddress> attempts;
+
+    private IOException lastFailure;
+    private int started;
+    private boolean done;
+    private HashedWheelTimer.Timeout timeout;
+
+
+    /**
+     * Create a new {@code Connector}.
+     *
+     * @param eventLoop    the loop that drives the attempts.
+     * @param addresses    the addresses of the server in the order they were resolved.
+     * @param failed       the addresses that have failed recently, this is updated with the outcome of each attempt.
+     * @param attemptDelay the number of milliseconds to wait for an attempt before starting the next one.
+     * @param listener     the listener that is given the connected socket.
+     */
+    Connector(EventLoop eventLoop, List<InetSocketAddress> addresses, FailedAddresses failed, long attemptDelay,
+              Listener listener) {
+
+        this(eventLoop, addresses, failed, attemptDelay, null, 0, listener);
+    }
+
+    /**
+     * Create a new {@code Connector} that gives up once the connect timeout has passed.
+     *
+     * @param eventLoop      the loop that drives the attempts.
+     * @param addresses      the addresses of the server in the order they were resolved.
+     * @param failed         the addresses that have failed recently, this is updated with the outcome of each attempt.
+     * @param attemptDelay   the number of milliseconds to wait for an attempt before starting the next one.
+     * @param timer          the timer that enforces the connect timeout, or null if there is no connect timeout.
+     * @param connectTimeout the number of milliseconds to wait for any attempt to connect, or zero for no limit.
+     * @param listener       the listener that is given the connected socket.
+     */
+    Connector(EventLoop eventLoop, List<InetSocketAddress> addresses, FailedAddresses failed, long attemptDelay,
+              HashedWheelTimer timer, long connectTimeout, Listener listener) {
+
+        assertNotNull("eventLoop", eventLoop);
+        assertNotNull("addresses", addresses);
+        assertNotNull("failed", failed);
+        assertNotNull("listener", listener);
+
+        this.eventLoop = eventLoop;
+        this.failed = failed;
+        this.attemptDelay = attemptDelay;
+        this.timer = timer;
+        this.connectTimeout = connectTimeout;
+        this.listener = listener;
+        this.remaining = new ArrayDeque<InetSocketAddress>(order(addresses, failed));
+        this.attempts = new IdentityHashMap<SocketChannel, InetSocketAddress>();
+    }
+
+
+    /**
+     * Start connecting, the listener may be called before this returns.
+     */
+    void connect() {
+
+        if (isNotNull(timer) && 0 < connectTimeout) {
+
+            timeout = timer.schedule(eventLoop, new Runnable() {
+
+                @Override
+                public void run() {
+
+                    timedOut();
+                }
+            }, connectTimeout);
+        }
+
+        next();
+    }
+
+    /**
+     * Abandon every attempt that is still connecting, the listener won't be called.
+     */
+    void cancel() {
+
+        finish();
+
+        abandon();
+    }
+
+    @Override
+    public void handle(SelectionKey key) {
+
+        SocketChannel channel = (SocketChannel) key.channel();
+
+        InetSocketAddress address = attempts.get(channel);
+
+        try {
+
+            if (!channel.finishConnect()) return;
+
+        } catch (IOException e) {
+
+            attempts.remove(channel);
+
+            closeQuietly(channel);
+
+            failed(address, e);
+
+            next();
+
+            return;
+        }
+
+        attempts.remove(channel);
+
+        key.interestOps(0);
+
+        connected(channel, address);
+    }
+
+    @Override
+    public void fail(Throwable cause) {
+
+        if (done) return;
+
+        finish();
+
+        abandon();
+
+        listener.failed(cause);
+    }
+
+    /**
+     * Start the next attempt, skipping any address that fails straight away, and fail once every address has failed.
+     */
+    private void next() {
+
+        while (!done && !remaining.isEmpty()) {
+
+            InetSocketAddress address = remaining.poll();
+
+            SocketChannel channel = null;
+
+            try {
+
+                channel = SocketChannel.open();
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+
+                if (channel.connect(address)) {
+
+                    connected(channel, address);
+
+                    return;
+                }
+
+                attempts.put(channel, address);
+
+                eventLoop.register(channel, SelectionKey.OP_CONNECT, this);
+
+                delayNext();
+
+                return;
+
+            } catch (IOException e) {
+
+                if (isNotNull(channel)) attempts.remove(channel);
+
+                closeQuietly(channel);
+
+                failed(address, e);
+            }
+        }
+
+        if (!done && attempts.isEmpty()) {
+
+            finish();
+
+            listener.failed(isNull(lastFailure) ? new ConnectException("The server has no addresses.") : lastFailure);
+        }
+    }
+
+    /**
+     * Start the next attempt once the attempt delay has passed, unless another has been started by then.
+     */
+    private void delayNext() {
+
+        if (remaining.isEmpty()) return;
+
+        final int attempt = ++started;
+
+        eventLoop.schedule(new Runnable() {
+
+            @Override
+            public void run() {
+
+                if (attempt == started) next();
+            }
+        }, attemptDelay);
+    }
+
+    private void connected(SocketChannel channel, InetSocketAddress address) {
+
+        finish();
+
+        failed.succeeded(address.getAddress());
+
+        abandon();
+
+        listener.connected(channel);
+    }
+
+    /**
+     * Give up on every attempt that is still connecting once the connect timeout has passed.
+     */
+    private void timedOut() {
+
+        if (done) return;
+
+        for (InetSocketAddress address : attempts.values()) failed.failed(address.getAddress());
+
+        fail(new RequestTimeoutException("Could not connect to the server within (" + connectTimeout +
+                ") milliseconds."));
+    }
+
+    private void finish() {
+
+        done = true;
+
+        if (isNotNull(timeout)) timeout.cancel();
+    }
+
+    private void failed(InetSocketAddress address, IOException cause) {
+
+        failed.failed(address.getAddress());
+
+        lastFailure = cause;
+    }
+
+    private void abandon() {
+
+        for (SocketChannel channel : attempts.keySet()) closeQuietly(channel);
+
+        attempts.clear();
+        remaining.clear();
+    }
+
+
+    /**
+     * The listener that is told the outcome of a {@link Connector} on the event loop thread.
+     */
+    interface Listener {
+
+        /**
+         * Called with the first socket that connected, the socket is still registered with the event loop with no
+         * interest operations so the listener should register it again with itself as the handler.
+         *
+         * @param channel the connected socket.
+         */
+        void connected(SocketChannel channel);
+
+        /**
+         * Called if none of the addresses could be connected to.
+         *
+         * @param cause the failure of the last attempt.
+         */
+        void failed(Throwable cause);
+    }
+}
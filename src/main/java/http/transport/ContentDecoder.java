@@ -0,0 +1,30 @@
+package http.transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decodes a response body that was sent with a {@code Content-Encoding}. The {@link NioRequestHandler} decodes
+ * {@code gzip} and {@code deflate} itself, a decoder for any other encoding e.g. {@code br} can be added through
+ * {@link NioRequestHandler#addContentDecoder(ContentDecoder)}, its encoding is then advertised in the
+ * {@code Accept-Encoding} of every request.
+ *
+ * @author Karl Bennett
+ */
+public interface ContentDecoder {
+
+    /**
+     * @return the name of the encoding in lower case as it appears in a {@code Content-Encoding} header e.g. "br".
+     */
+    String getEncoding();
+
+    /**
+     * Wrap the supplied encoded body in a stream that decodes it. This is called on the thread that first reads the
+     * body so the decoder is free to block while it reads.
+     *
+     * @param body the encoded body.
+     * @return a stream of the decoded body, closing it must close the encoded body.
+     * @throws IOException if the body could not be read.
+     */
+    InputStream decode(InputStream body) throws IOException;
+}
@@ -0,0 +1,233 @@
+package http.transport;
+
+import http.Response;
+import http.header.Header;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static http.util.Asserts.assertNotNull;
+import static http.util.Checks.isNull;
+
+/**
+ * The {@link ContentDecoder}s that a {@link NioRequestHandler} can decode response bodies with. A body is only decoded
+ * if there is a decoder for every encoding in its {@code Content-Encoding}, the {@code Content-Encoding} and
+ * {@code Content-Length} headers are then removed from the response because they no longer describe the body.
+ *
+ * @author Karl Bennett
+ */
+class ContentDecoders {
+
+    static final String ACCEPT_ENCODING = "Accept-Encoding";
+    static final String CONTENT_ENCODING = "Content-Encoding";
+    static final String CONTENT_LENGTH = "Content-Length";
+
+    static final String GZIP = "gzip";
+    static final String DEFLATE = "deflate";
+
+    private static final String IDENTITY = "identity";
+
+
+    /**
+     * Split a {@code Content-Encoding} value into its lower case encodings in the order they were applied.
+     */
+    private static void encodings(String value, List<String> encodings) {
+
+        for (int start = 0, comma; start <= value.length(); start = comma + 1) {
+
+            comma = value.indexOf(',', start);
+
+            if (-1 == comma) comma = value.length();
+
+            String encoding = value.substring(start, comma).trim().toLowerCase();
+
+            if (0 != encoding.length() && !IDENTITY.equals(encoding)) encodings.add(encoding);
+        }
+    }
+
+
+    private final Map<String, ContentDecoder> decoders = new LinkedHashMap<String, ContentDecoder>();
+
+    private volatile String acceptEncoding;
+
+
+    /**
+     * Create a new {@code ContentDecoders} that can decode {@code gzip} and {@code deflate}.
+     */
+    ContentDecoders() {
+
+        add(new ContentDecoder() {
+
+            @Override
+            public String getEncoding() {
+
+                return GZIP;
+            }
+
+            @Override
+            public InputStream decode(InputStream body) {
+
+                return new InflatingInputStream(body, true);
+            }
+        });
+
+        add(new ContentDecoder() {
+
+            @Override
+            public String getEncoding() {
+
+                return DEFLATE;
+            }
+
+            @Override
+            public InputStream decode(InputStream body) {
+
+                return new InflatingInputStream(body, false);
+            }
+        });
+    }
+
+
+    /**
+     * Add a decoder, replacing any decoder for the same encoding.
+     *
+     * @param decoder the decoder to add.
+     */
+    synchronized void add(ContentDecoder decoder) {
+
+        assertNotNull("decoder", decoder);
+        assertNotNull("decoder.getEncoding()", decoder.getEncoding());
+
+        decoders.put(decoder.getEncoding().toLowerCase(), decoder);
+
+        StringBuilder builder = new StringBuilder();
+
+        for (String encoding : decoders.keySet()) {
+
+            if (0 != builder.length()) builder.append(", ");
+
+            builder.append(encoding);
+        }
+
+        acceptEncoding = builder.toString();
+    }
+
+    /**
+     * @return the value of the {@code Accept-Encoding} header that advertises every encoding that can be decoded.
+     */
+    String getAcceptEncoding() {
+
+        return acceptEncoding;
+    }
+
+    /**
+     * Decode the body of the supplied response if it has a {@code Content-Encoding} that can be decoded. This is called
+     * on the event loop thread so the decoding doesn't start until the body is first read.
+     *
+     * @param response the response the body belongs to, its encoding headers are removed if the body is decoded.
+     * @param body     the encoded body.
+     * @return the decoded body, or the encoded body if it can't be decoded.
+     */
+    InputStream decode(Response<InputStream> response, InputStream body) {
+
+        Set<Header> contentEncodings = response.getHeaders(CONTENT_ENCODING);
+
+        if (isNull(contentEncodings) || contentEncodings.isEmpty()) return body;
+
+        List<String> encodings = new ArrayList<String>();
+
+        for (Header header : contentEncodings) encodings(String.valueOf(header.getValue()), encodings);
+
+        List<ContentDecoder> chain = new ArrayList<ContentDecoder>();
+
+        synchronized (this) {
+
+            for (String encoding : encodings) {
+
+                ContentDecoder decoder = decoders.get(encoding);
+
+                // The caller gets the body as it was sent rather than half decoded.
+                if (isNull(decoder)) return body;
+
+                chain.add(decoder);
+            }
+        }
+
+        response.removeHeaders(new ArrayList<Header>(contentEncodings));
+
+        Set<Header> contentLengths = response.getHeaders(CONTENT_LENGTH);
+
+        if (!isNull(contentLengths)) response.removeHeaders(new ArrayList<Header>(contentLengths));
+
+        if (chain.isEmpty()) return body;
+
+        // The last encoding that was applied has to be decoded first.
+        Collections.reverse(chain);
+
+        return new DecodingInputStream(body, chain);
+    }
+
+
+    /**
+     * Builds the chain of decoding streams the first time the body is used, so that a decoder never reads the body on
+     * the event loop thread.
+     */
+    private static class DecodingInputStream extends InputStream {
+
+        private final InputStream body;
+        private final List<ContentDecoder> chain;
+
+        private InputStream decoded;
+
+        private DecodingInputStream(InputStream body, List<ContentDecoder> chain) {
+
+            this.body = body;
+            this.chain = chain;
+        }
+
+        @Override
+        public int read() throws IOException {
+
+            return decoded().read();
+        }
+
+        @Override
+        public int read(byte[] bytes, int off, int len) throws IOException {
+
+            return decoded().read(bytes, off, len);
+        }
+
+        @Override
+        public int available() throws IOException {
+
+            return decoded().available();
+        }
+
+        @Override
+        public void close() throws IOException {
+
+            if (isNull(decoded)) body.close();
+            else decoded.close();
+        }
+
+        private InputStream decoded() throws IOException {
+
+            if (isNull(decoded)) {
+
+                InputStream stream = body;
+
+                for (ContentDecoder decoder : chain) stream = decoder.decode(stream);
+
+                decoded = stream;
+            }
+
+            return decoded;
+        }
+    }
+}
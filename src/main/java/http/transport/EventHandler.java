@@ -0,0 +1,30 @@
+package http.transport;
+
+import java.nio.channels.SelectionKey;
+
+/**
+ * The handler interface that must be implemented by anything that registers a channel with an {@link EventLoop}. The
+ * handler is set as the attachment of its {@link SelectionKey} and is called on the event loop thread whenever the key
+ * is selected.
+ *
+ * @author Karl Bennett
+ */
+interface EventHandler {
+
+    /**
+     * Called on the event loop thread when the supplied key has been selected for one or more of its interest
+     * operations.
+     *
+     * @param key the selected key.
+     * @throws Exception if the handler failed, this will cause {@link #fail(Throwable)} to be called.
+     */
+    void handle(SelectionKey key) throws Exception;
+
+    /**
+     * Called on the event loop thread if {@link #handle(SelectionKey)} threw or if the event loop is shutting down.
+     * The handler should release any resources that it holds.
+     *
+     * @param cause the reason for the failure.
+     */
+    void fail(Throwable cause);
+}
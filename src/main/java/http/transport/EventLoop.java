@@ -0,0 +1,254 @@
+package http.transport;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static http.util.Asserts.assertNotNull;
+
+/**
+ * A single threaded {@link Selector} loop. Every channel registered with the loop is only ever touched by the loop
+ * thread, other threads hand work to the loop through {@link #execute(Runnable)}. Work that has to wait, e.g. the next
+ * connection attempt, can be delayed with {@link #schedule(Runnable, long)}.
+ *
+ * @author Karl Bennett
+ */
+class EventLoop implements Runnable, Closeable {
+
+    private final Selector selector;
+    private final Queue<Runnable> tasks;
+    // Only accessed on the event loop thread.
+    private final PriorityQueue<Timer> timers;
+    private final Thread thread;
+
+    private long timerCount;
+
+    private volatile boolean running;
+
+
+    /**
+     * Create and start a new {@code EventLoop} that runs on a daemon thread with the supplied name.
+     *
+     * @param name the name of the event loop thread.
+     * @throws TransportException if the selector could not be opened.
+     */
+    public EventLoop(String name) {
+
+        try {
+
+            this.selector = Selector.open();
+
+        } catch (IOException e) {
+
+            throw new TransportException("Could not open a selector for the event loop.", e);
+        }
+
+        this.tasks = new ConcurrentLinkedQueue<Runnable>();
+        this.timers = new PriorityQueue<Timer>();
+        this.running = true;
+
+        this.thread = new Thread(this, name);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+
+    /**
+     * Queue the supplied task to be run on the event loop thread.
+     *
+     * @param task the task to run.
+     */
+    public void execute(Runnable task) {
+
+        assertNotNull("task", task);
+
+        tasks.add(task);
+
+        if (!inEventLoop()) selector.wakeup();
+    }
+
+    /**
+     * Run the supplied task on the event loop thread once the delay has passed. This must be called on the event loop
+     * thread. Timers can't be cancelled so the task should check that it is still needed when it is run.
+     *
+     * @param task  the task to run.
+     * @param delay the number of milliseconds to wait before running the task.
+     */
+    public void schedule(Runnable task, long delay) {
+
+        assertNotNull("task", task);
+
+        timers.add(new Timer(task, now() + delay, timerCount++));
+    }
+
+    /**
+     * @return true if the current thread is the event loop thread, otherwise false.
+     */
+    public boolean inEventLoop() {
+
+        return Thread.currentThread() == thread;
+    }
+
+    /**
+     * Register the supplied channel with this loop. This must be called on the event loop thread.
+     *
+     * @param channel      the channel to register, it must be in non-blocking mode.
+     * @param interestOps  the initial interest operations.
+     * @param eventHandler the handler that will be called when the channel is selected.
+     * @return the new selection key.
+     * @throws IOException if the channel could not be registered.
+     */
+    public SelectionKey register(SelectableChannel channel, int interestOps, EventHandler eventHandler)
+            throws IOException {
+
+        return channel.register(selector, interestOps, eventHandler);
+    }
+
+    @Override
+    public void run() {
+
+        while (running) {
+
+            try {
+
+                // Don't block if there is already work waiting otherwise it won't be run until the next I/O event.
+                if (!tasks.isEmpty()) selector.selectNow();
+                else if (timers.isEmpty()) selector.select();
+                else selector.select(Math.max(1, timers.peek().deadline - now()));
+
+                runTasks();
+                runTimers();
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+
+                while (keys.hasNext()) {
+
+                    SelectionKey key = keys.next();
+                    keys.remove();
+
+                    handle(key);
+                }
+
+            } catch (Throwable t) {
+
+                // A failure in the loop itself is unrecoverable for the registered channels.
+                failAll(t);
+            }
+        }
+
+        failAll(new TransportException("The event loop has been closed."));
+
+        try {
+
+            selector.close();
+
+        } catch (IOException e) {
+
+            // There's nothing left that could be done with the selector so just let it go.
+        }
+    }
+
+    /**
+     * Stop the event loop, any channels that are still registered will be failed.
+     */
+    @Override
+    public void close() {
+
+        running = false;
+
+        selector.wakeup();
+    }
+
+
+    private void runTasks() {
+
+        Runnable task;
+        while (null != (task = tasks.poll())) {
+
+            try {
+
+                task.run();
+
+            } catch (Throwable t) {
+
+                // A broken task should never be able to stop the loop.
+            }
+        }
+    }
+
+    private void runTimers() {
+
+        long now = now();
+
+        while (!timers.isEmpty() && now >= timers.peek().deadline) {
+
+            try {
+
+                timers.poll().task.run();
+
+            } catch (Throwable t) {
+
+                // A broken timer should never be able to stop the loop.
+            }
+        }
+    }
+
+    private static long now() {
+
+        return System.nanoTime() / 1000000;
+    }
+
+    private static void handle(SelectionKey key) {
+
+        EventHandler eventHandler = (EventHandler) key.attachment();
+
+        try {
+
+            if (key.isValid()) eventHandler.handle(key);
+
+        } catch (Throwable t) {
+
+            eventHandler.fail(t);
+        }
+    }
+
+    private void failAll(Throwable cause) {
+
+        for (SelectionKey key : selector.keys()) {
+
+            if (key.isValid()) ((EventHandler) key.attachment()).fail(cause);
+        }
+    }
+
+
+    /**
+     * A task that is waiting to be run, timers with the same deadline are run in the order they were scheduled.
+     */
+    private static class Timer implements Comparable<Timer> {
+
+        private final Runnable task;
+        private final long deadline;
+        private final long sequence;
+
+        private Timer(Runnable task, long deadline, long sequence) {
+
+            this.task = task;
+            this.deadline = deadline;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Timer timer) {
+
+            if (deadline != timer.deadline) return deadline < timer.deadline ? -1 : 1;
+
+            return sequence < timer.sequence ? -1 : sequence == timer.sequence ? 0 : 1;
+        }
+    }
+}
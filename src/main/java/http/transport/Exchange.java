@@ -0,0 +1,524 @@
+package http.transport;
+
+import http.Callback;
+import http.Request;
+import http.Response;
+import http.ResponseFuture;
+import http.Timeouts;
+import http.header.Header;
+import http.header.RawHeaders;
+
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static http.Client.DELETE;
+import static http.Client.GET;
+import static http.Client.HEAD;
+import static http.Client.OPTIONS;
+import static http.Client.PUT;
+import static http.Client.TRACE;
+import static http.util.Asserts.assertNotNull;
+import static http.util.Checks.isNotNull;
+import static http.util.Checks.isNull;
+import static http.util.IO.closeQuietly;
+
+/**
+ * A single request/response exchange. The exchange is created on the calling thread, driven by a {@link Carrier} on
+ * the event loop thread, and completes its {@link ResponseFuture} once the response headers have been received.
+ * Cancelling the future before then abandons the exchange.
+ * <p/>
+ * The exchange is also the {@link ResponseInputStream.Demand} for its response body so that flow control from a body
+ * that is still being read never reaches an exchange that has since been given the same pooled connection.
+ * <p/>
+ * The first byte, idle read, and total {@link Timeouts} of the request are enforced by the exchange on a
+ * {@link HashedWheelTimer}. An exchange that runs out of time fails with a {@link RequestTimeoutException} and is then
+ * cancelled, which closes the connection it was on. The connect and {@code TLS} handshake timeouts belong to the
+ * connection that is opened for the exchange.
+ *
+ * @author Karl Bennett
+ */
+class Exchange implements ResponseParser.Listener, ResponseInputStream.Demand {
+
+    private static final Set<String> IDEMPOTENT_METHODS = Collections.unmodifiableSet(new HashSet<String>(
+            Arrays.asList(GET, HEAD, OPTIONS, TRACE, PUT, DELETE)));
+
+    private static final Set<String> PIPELINABLE_METHODS = Collections.unmodifiableSet(new HashSet<String>(
+            Arrays.asList(GET, HEAD, OPTIONS)));
+
+    private static final int NO_CONTENT = 204;
+    private static final int NOT_MODIFIED = 304;
+
+    // Never changed, it stands in for the timeouts of a request that has none.
+    private static final Timeouts NO_TIMEOUTS = new Timeouts();
+
+
+    private static long now() {
+
+        return System.nanoTime() / 1000000;
+    }
+
+    private static void cancelTimer(HashedWheelTimer.Timeout timeout) {
+
+        if (isNotNull(timeout)) timeout.cancel();
+    }
+
+
+    private final String method;
+    private final Request<InputStream> request;
+    private final Route route;
+    private final List<InetSocketAddress> addresses;
+    private final ResponseFuture<Response<InputStream>> future;
+    private final boolean lazyHeaders;
+    private final ContentDecoders decoders;
+    private final HashedWheelTimer timer;
+    private final long connectTimeout;
+    private final long tlsHandshakeTimeout;
+    private final long firstByteTimeout;
+    private final long idleReadTimeout;
+
+    private volatile Carrier carrier;
+    private volatile boolean cancelled;
+    private volatile boolean done;
+    private volatile HashedWheelTimer.Timeout totalTimer;
+    private volatile HashedWheelTimer.Timeout firstByteTimer;
+    private volatile HashedWheelTimer.Timeout idleReadTimer;
+    // The last time any of the response arrived, and whether the body has stopped the connection reading any more.
+    private volatile long lastRead;
+    private volatile boolean suspended;
+    private boolean retried;
+    private ResponseParser parser;
+    private int status;
+    private Collection<Header> headers;
+    private RawHeaders rawHeaders;
+    private volatile ResponseInputStream body;
+
+
+    /**
+     * Create a new {@code Exchange} for the supplied request. The total timeout of the request starts straight away.
+     *
+     * @param method      the request method.
+     * @param request     the request to send.
+     * @param route       the route the request should be sent on.
+     * @param addresses   the resolved addresses of the server, in the order they should be tried.
+     * @param future      the future the response will be delivered to.
+     * @param lazyHeaders true if an {@code HTTP/1.1} response should keep its headers undecoded until they are asked
+     *                    for.
+     * @param decoders    the decoders for an encoded response body, or null if the body should be left as it was sent.
+     * @param timer       the timer that enforces the timeouts of the request, or null if they shouldn't be enforced.
+     */
+    public Exchange(String method, Request<InputStream> request, Route route, List<InetSocketAddress> addresses,
+                    ResponseFuture<Response<InputStream>> future, boolean lazyHeaders, ContentDecoders decoders,
+                    HashedWheelTimer timer) {
+
+        assertNotNull("method", method);
+        assertNotNull("request", request);
+        assertNotNull("route", route);
+        assertNotNull("addresses", addresses);
+        assertNotNull("future", future);
+
+        this.method = method;
+        this.request = request;
+        this.route = route;
+        this.addresses = addresses;
+        this.future = future;
+        this.lazyHeaders = lazyHeaders;
+        this.decoders = decoders;
+        this.timer = timer;
+
+        Timeouts timeouts = isNull(timer) || isNull(request.getTimeouts()) ? NO_TIMEOUTS : request.getTimeouts();
+
+        this.connectTimeout = Math.max(Timeouts.NONE, timeouts.getConnectTimeout());
+        this.tlsHandshakeTimeout = Math.max(Timeouts.NONE, timeouts.getTlsHandshakeTimeout());
+        this.firstByteTimeout = Math.max(Timeouts.NONE, timeouts.getFirstByteTimeout());
+        this.idleReadTimeout = Math.max(Timeouts.NONE, timeouts.getIdleReadTimeout());
+
+        scheduleTotalTimeout(timeouts);
+
+        future.addCallback(new Callback<Response<InputStream>>() {
+
+            @Override
+            public void completed(Response<InputStream> response) {
+            }
+
+            @Override
+            public void failed(Throwable cause) {
+
+                if (Exchange.this.future.isCancelled()) cancel();
+            }
+        });
+    }
+
+
+    /**
+     * @return the request method.
+     */
+    public String getMethod() {
+
+        return method;
+    }
+
+    /**
+     * @return the request.
+     */
+    public Request<InputStream> getRequest() {
+
+        return request;
+    }
+
+    /**
+     * @return the route the request should be sent on.
+     */
+    public Route getRoute() {
+
+        return route;
+    }
+
+    /**
+     * @return the resolved addresses of the server, in the order they should be tried.
+     */
+    public List<InetSocketAddress> getAddresses() {
+
+        return addresses;
+    }
+
+    /**
+     * @return the number of milliseconds a connection opened for this exchange has to connect in, or zero if there is
+     *         no limit.
+     */
+    public long getConnectTimeout() {
+
+        return connectTimeout;
+    }
+
+    /**
+     * @return the number of milliseconds a connection opened for this exchange has to finish its {@code TLS} handshake
+     *         in, or zero if there is no limit.
+     */
+    public long getTlsHandshakeTimeout() {
+
+        return tlsHandshakeTimeout;
+    }
+
+    /**
+     * @return true if the caller has given up on the exchange.
+     */
+    public boolean isCancelled() {
+
+        return cancelled;
+    }
+
+    /**
+     * An exchange can be sent again on a new connection if it failed on a reused connection before any of the response
+     * had been received, its method is idempotent, and it has no body that would have been consumed by the first
+     * attempt. An exchange is only ever retried once.
+     *
+     * @return true if the exchange can be retried.
+     */
+    public boolean isRetryable() {
+
+        return !retried && !cancelled && !future.isDone() && isNull(request.getBody()) &&
+                IDEMPOTENT_METHODS.contains(method);
+    }
+
+    /**
+     * Mark the exchange as retried and unbind it from its failed connection.
+     */
+    public void retry() {
+
+        retried = true;
+        carrier = null;
+    }
+
+    /**
+     * An exchange can be pipelined behind others on the same connection if its method is safe and it has no body, so
+     * sending it again after the connection has been lost can never do any harm.
+     *
+     * @return true if the exchange can be pipelined.
+     */
+    public boolean isPipelinable() {
+
+        return PIPELINABLE_METHODS.contains(method) && isNull(request.getBody());
+    }
+
+    /**
+     * Unbind the exchange from a connection that was closed before it was answered so that it can be sent again. This
+     * doesn't count as a retry because the request was never given a chance to be answered.
+     */
+    public void requeue() {
+
+        carrier = null;
+    }
+
+    /**
+     * Bind this exchange to the connection or stream that will carry it. This is called on the event loop thread.
+     *
+     * @param carrier the carrier for the exchange.
+     */
+    public void bind(Carrier carrier) {
+
+        this.carrier = carrier;
+        this.parser = null;
+        this.headers = new ArrayList<Header>();
+        this.rawHeaders = null;
+
+        scheduleFirstByteTimeout();
+    }
+
+    /**
+     * Get the parser that an {@code HTTP/1.1} connection should push the response bytes into, it is created the first
+     * time it is asked for after the exchange has been bound. An {@code HTTP/2} stream calls the listener methods
+     * directly instead.
+     *
+     * @return the parser for the response to the exchange.
+     */
+    public ResponseParser getParser() {
+
+        if (isNull(parser)) parser = new ResponseParser(this, HEAD.equals(method), lazyHeaders);
+
+        return parser;
+    }
+
+    /**
+     * Fail the exchange. If the response has already been delivered then its body will be failed, otherwise the future
+     * will be failed.
+     *
+     * @param cause the reason the exchange failed.
+     */
+    public void fail(Throwable cause) {
+
+        finish();
+
+        if (isNotNull(body)) {
+
+            body.fail(cause);
+
+            return;
+        }
+
+        future.fail(cause);
+    }
+
+    @Override
+    public void onStatus(int status) {
+
+        this.status = status;
+
+        cancelTimer(firstByteTimer);
+
+        read();
+
+        scheduleIdleReadTimeout(idleReadTimeout);
+    }
+
+    @Override
+    public void onHeader(String name, String value) {
+
+        read();
+
+        headers.add(new Header<String>(name, value));
+    }
+
+    @Override
+    public void onHeaders(RawHeaders headers) {
+
+        read();
+
+        rawHeaders = headers;
+    }
+
+    @Override
+    public void onHeadersComplete() {
+
+        body = new ResponseInputStream(this);
+
+        Response<InputStream> response = isNull(rawHeaders) ? new Response<InputStream>(status, headers, body) :
+                new Response<InputStream>(status, rawHeaders, body);
+
+        // The body is only decoded once it is read so nothing blocks the event loop here.
+        if (isNotNull(decoders) && hasBody(response)) response.setBody(decoders.decode(response, body));
+
+        // If the future was cancelled while the headers were being read nobody will ever read the body.
+        if (!future.complete(response)) closeQuietly(body);
+    }
+
+    private boolean hasBody(Response<InputStream> response) {
+
+        return !HEAD.equals(method) && NO_CONTENT != response.getStatus() && NOT_MODIFIED != response.getStatus();
+    }
+
+    @Override
+    public void onContent(ByteBuffer content) {
+
+        read();
+
+        if (body.offer(content, carrier.getReadBuffer())) return;
+
+        suspended = true;
+
+        carrier.suspend(this);
+    }
+
+    @Override
+    public void onComplete() {
+
+        // The body is completed by the connection through complete() once it has been released, so that a caller that
+        // sends another request as soon as it has read the body will find the connection back in the pool.
+    }
+
+    /**
+     * Mark the response body as complete. This is called on the event loop thread.
+     */
+    public void complete() {
+
+        finish();
+
+        body.complete();
+    }
+
+    @Override
+    public void resume() {
+
+        // Time spent waiting for the caller to read the body doesn't count against the idle read timeout.
+        read();
+
+        suspended = false;
+
+        Carrier bound = carrier;
+
+        if (isNotNull(bound)) bound.resume(this);
+    }
+
+    @Override
+    public void cancel() {
+
+        cancelled = true;
+
+        finish();
+
+        Carrier bound = carrier;
+
+        if (isNotNull(bound)) bound.cancel(this);
+    }
+
+    /**
+     * Stop enforcing the timeouts, the exchange can't run out of time once it has completed, failed, or been cancelled.
+     */
+    private void finish() {
+
+        done = true;
+
+        cancelTimer(totalTimer);
+        cancelTimer(firstByteTimer);
+        cancelTimer(idleReadTimer);
+    }
+
+    /**
+     * Fail the exchange because it ran out of time, this is called on the timer thread. Cancelling it closes the
+     * connection or resets the stream, so nothing more is read for a response that nobody is waiting for.
+     */
+    private void expire(String message) {
+
+        if (done) return;
+
+        fail(new RequestTimeoutException(message));
+
+        cancel();
+    }
+
+    private void read() {
+
+        if (Timeouts.NONE != idleReadTimeout) lastRead = now();
+    }
+
+    /**
+     * The total timeout is the shorter of the total timeout of the request and the time left until its deadline.
+     */
+    private void scheduleTotalTimeout(Timeouts timeouts) {
+
+        long total = Math.max(Timeouts.NONE, timeouts.getTotalTimeout());
+        long delay = total;
+
+        boolean deadline = false;
+
+        if (timeouts.hasDeadline()) {
+
+            long remaining = Math.max(1, timeouts.getDeadline() - System.currentTimeMillis());
+
+            if (Timeouts.NONE == total || remaining < total) {
+
+                delay = remaining;
+                deadline = true;
+            }
+        }
+
+        if (Timeouts.NONE == delay) return;
+
+        final String message = deadline ?
+                "The request to (" + request.getUrl() + ") did not complete before its deadline." :
+                "The request to (" + request.getUrl() + ") did not complete within (" + total + ") milliseconds.";
+
+        totalTimer = timer.schedule(new Runnable() {
+
+            @Override
+            public void run() {
+
+                expire(message);
+            }
+        }, delay);
+    }
+
+    /**
+     * The first byte timeout starts again each time the exchange is bound, because a retried request is sent again.
+     */
+    private void scheduleFirstByteTimeout() {
+
+        cancelTimer(firstByteTimer);
+
+        if (Timeouts.NONE == firstByteTimeout || done) return;
+
+        firstByteTimer = timer.schedule(new Runnable() {
+
+            @Override
+            public void run() {
+
+                expire("No response was received from (" + route + ") within (" + firstByteTimeout +
+                        ") milliseconds.");
+            }
+        }, firstByteTimeout);
+    }
+
+    /**
+     * Check the response for being idle once the supplied delay has passed, the check is put off for as long as the
+     * response has been arriving or the body has been waiting to be read.
+     */
+    private void scheduleIdleReadTimeout(long delay) {
+
+        if (Timeouts.NONE == delay || done) return;
+
+        idleReadTimer = timer.schedule(new Runnable() {
+
+            @Override
+            public void run() {
+
+                long idle = suspended ? 0 : now() - lastRead;
+
+                if (idle >= idleReadTimeout) {
+
+                    expire("Nothing was received from (" + route + ") for (" + idleReadTimeout + ") milliseconds.");
+
+                } else {
+
+                    scheduleIdleReadTimeout(idleReadTimeout - idle);
+                }
+            }
+        }, delay);
+    }
+}
@@ -0,0 +1,113 @@
+package http.transport;
+
+import java.net.InetAddress;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static http.util.Asserts.assertNotNull;
+import static http.util.Checks.isNull;
+
+/**
+ * The addresses that a connection could not be opened to recently. An address that has failed is tried after the
+ * addresses of the same server that haven't until its penalty has passed or a connection to it succeeds, so requests
+ * don't keep waiting on an address that is known to be unreachable.
+ *
+ * @author Karl Bennett
+ */
+class FailedAddresses {
+
+    public static final long DEFAULT_PENALTY = 30000;
+
+    // The number of failed addresses that are kept before the ones whose penalty has passed are forgotten.
+    private static final int PURGE_SIZE = 1024;
+
+
+    private static long now() {
+
+        return System.nanoTime() / 1000000;
+    }
+
+
+    private final ConcurrentMap<InetAddress, Long> failures = new ConcurrentHashMap<InetAddress, Long>();
+
+    private volatile long penalty = DEFAULT_PENALTY;
+
+
+    /**
+     * @return the number of milliseconds an address is tried last for after it has failed.
+     */
+    public long getPenalty() {
+
+        return penalty;
+    }
+
+    /**
+     * Set the number of milliseconds an address is tried last for after it has failed, zero disables the penalty.
+     *
+     * @param penalty the penalty in milliseconds.
+     * @throws IllegalArgumentException if the penalty is negative.
+     */
+    public void setPenalty(long penalty) {
+
+        if (0 > penalty) throw new IllegalArgumentException("The (penalty) variable must not be negative.");
+
+        this.penalty = penalty;
+    }
+
+    /**
+     * Record that a connection could not be opened to the supplied address.
+     *
+     * @param address the address that failed.
+     */
+    public void failed(InetAddress address) {
+
+        assertNotNull("address", address);
+
+        if (0 == penalty) return;
+
+        failures.put(address, now() + penalty);
+
+        if (PURGE_SIZE < failures.size()) purge();
+    }
+
+    /**
+     * Record that a connection was opened to the supplied address, which clears any penalty it had.
+     *
+     * @param address the address that succeeded.
+     */
+    public void succeeded(InetAddress address) {
+
+        assertNotNull("address", address);
+
+        failures.remove(address);
+    }
+
+    /**
+     * @param address the address to check.
+     * @return true if the address has failed and its penalty hasn't passed yet.
+     */
+    public boolean isPenalised(InetAddress address) {
+
+        Long until = failures.get(address);
+
+        if (isNull(until)) return false;
+
+        if (now() < until) return true;
+
+        failures.remove(address, until);
+
+        return false;
+    }
+
+    private void purge() {
+
+        long now = now();
+
+        for (Iterator<Map.Entry<InetAddress, Long>> iterator = failures.entrySet().iterator(); iterator.hasNext(); ) {
+
+            if (now >= iterator.next().getValue()) iterator.remove();
+        }
+    }
+}
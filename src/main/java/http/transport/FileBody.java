@@ -0,0 +1,171 @@
+package http.transport;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+import static http.util.Asserts.assertNotNull;
+
+/**
+ * A request body that is read from a region of a file. The {@link NioRequestHandler} sends the file straight from the
+ * file system cache to the socket with {@link FileChannel#transferTo(long, long, WritableByteChannel)} when it can,
+ * so the content is never copied into the application. Anywhere else the body is read like any other
+ * {@link InputStream}.
+ * <p/>
+ * The {@code Content-Length} of the request is set to the length of the region unless the request already has one.
+ * The file channel is closed along with the body once the request has been sent.
+ *
+ * @author Karl Bennett
+ */
+public class FileBody extends InputStream {
+
+    private static FileChannel open(File file) throws IOException {
+
+        assertNotNull("file", file);
+
+        return new FileInputStream(file).getChannel();
+    }
+
+    private static long position(FileChannel channel) throws IOException {
+
+        assertNotNull("channel", channel);
+
+        return channel.position();
+    }
+
+
+    private final FileChannel channel;
+    private final long end;
+
+    private long position;
+
+
+    /**
+     * Create a new {@code FileBody} that contains the entire supplied file.
+     *
+     * @param file the file to send.
+     * @throws IOException if the file can not be opened.
+     */
+    public FileBody(File file) throws IOException {
+
+        this(open(file));
+    }
+
+    /**
+     * Create a new {@code FileBody} that contains the supplied file channel from its current position to the end of
+     * the file.
+     *
+     * @param channel the channel to send.
+     * @throws IOException if the position or size of the channel can not be read.
+     */
+    public FileBody(FileChannel channel) throws IOException {
+
+        this(channel, position(channel), channel.size() - channel.position());
+    }
+
+    /**
+     * Create a new {@code FileBody} that contains a region of the supplied file channel. The channels own position is
+     * not used or changed.
+     *
+     * @param channel  the channel to send.
+     * @param position the position in the file that the body starts at.
+     * @param length   the number of bytes in the body.
+     * @throws IllegalArgumentException if the position or length is negative.
+     */
+    public FileBody(FileChannel channel, long position, long length) {
+
+        assertNotNull("channel", channel);
+
+        if (0 > position) throw new IllegalArgumentException("The (position) variable must not be negative.");
+
+        if (0 > length) throw new IllegalArgumentException("The (length) variable must not be negative.");
+
+        this.channel = channel;
+        this.position = position;
+        this.end = position + length;
+    }
+
+
+    /**
+     * @return the number of bytes of the body that haven't been sent yet.
+     */
+    public long getRemaining() {
+
+        return end - position;
+    }
+
+    /**
+     * Send as much of the rest of the body as the target will accept without blocking.
+     *
+     * @param target the channel to send the body to.
+     * @return the number of bytes that were sent.
+     * @throws IOException if the file could not be read, it has become shorter than the body, or the body could not be
+     *                     written to the target.
+     */
+    public long transferTo(WritableByteChannel target) throws IOException {
+
+        long transferred = channel.transferTo(position, end - position, target);
+
+        if (0 == transferred && channel.size() <= position) throw truncated();
+
+        position += transferred;
+
+        return transferred;
+    }
+
+    @Override
+    public int read() throws IOException {
+
+        byte[] single = new byte[1];
+
+        return -1 == read(single, 0, 1) ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] bytes, int off, int len) throws IOException {
+
+        if (end <= position) return -1;
+
+        if (0 == len) return 0;
+
+        int read = channel.read(ByteBuffer.wrap(bytes, off, (int) Math.min(len, end - position)), position);
+
+        if (-1 == read) throw truncated();
+
+        position += read;
+
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+
+        long skipped = Math.max(0, Math.min(n, end - position));
+
+        position += skipped;
+
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+
+        return (int) Math.min(Integer.MAX_VALUE, end - position);
+    }
+
+    @Override
+    public void close() throws IOException {
+
+        channel.close();
+    }
+
+
+    private IOException truncated() {
+
+        return new IOException("The file ended " + (end - position) + " bytes before the end of the body.");
+    }
+}
@@ -0,0 +1,158 @@
+package http.transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import static http.util.Asserts.assertNotNull;
+import static http.util.Checks.isNotNull;
+
+/**
+ * A request body that is compressed with {@code gzip} as it is read. Only a buffer of the uncompressed body is ever
+ * held in memory, so a large body is compressed as it is streamed onto the connection rather than being compressed up
+ * front.
+ * <p/>
+ * The {@link http.Client} sends a {@code GzipBody} with a {@code Content-Encoding} of {@code gzip} and without a
+ * {@code Content-Length}, because the compressed length isn't known until the body has been sent.
+ *
+ * @author Karl Bennett
+ */
+public class GzipBody extends InputStream {
+
+    private static final int INPUT_SIZE = 8 * 1024;
+
+    // The magic number, the deflate method, no flags, no modification time, no extra flags, and an unknown system.
+    private static final byte[] HEADER = {0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+    private static final int TRAILER_SIZE = 8;
+
+
+    private final InputStream in;
+    private final Deflater deflater;
+    private final CRC32 crc = new CRC32();
+    private final byte[] input = new byte[INPUT_SIZE];
+
+    // The header or trailer, whatever hasn't been read yet.
+    private byte[] pending = HEADER;
+    private int pendingOffset;
+    private long size;
+    private boolean finished;
+    private boolean closed;
+
+
+    /**
+     * Create a new {@code GzipBody} that compresses with the default level.
+     *
+     * @param in the body to compress.
+     */
+    public GzipBody(InputStream in) {
+
+        this(in, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * Create a new {@code GzipBody}.
+     *
+     * @param in    the body to compress.
+     * @param level the compression level from 0 to 9, or -1 for the default level.
+     * @throws IllegalArgumentException if the level is not a valid compression level.
+     */
+    public GzipBody(InputStream in, int level) {
+
+        assertNotNull("in", in);
+
+        if (Deflater.DEFAULT_COMPRESSION > level || Deflater.BEST_COMPRESSION < level) {
+
+            throw new IllegalArgumentException("The (level) variable must be from -1 to 9.");
+        }
+
+        this.in = in;
+        this.deflater = new Deflater(level, true);
+    }
+
+
+    @Override
+    public int read() throws IOException {
+
+        byte[] single = new byte[1];
+
+        return -1 == read(single, 0, 1) ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] bytes, int off, int len) throws IOException {
+
+        if (closed) throw new IOException("The request body stream has been closed.");
+
+        if (0 == len) return 0;
+
+        while (true) {
+
+            if (isNotNull(pending)) {
+
+                int length = Math.min(len, pending.length - pendingOffset);
+
+                System.arraycopy(pending, pendingOffset, bytes, off, length);
+
+                pendingOffset += length;
+
+                if (pending.length == pendingOffset) pending = null;
+
+                return length;
+            }
+
+            if (finished) return -1;
+
+            // Compress straight into the callers array.
+            int deflated = deflater.deflate(bytes, off, len);
+
+            if (0 < deflated) return deflated;
+
+            if (deflater.finished()) {
+
+                finish();
+
+            } else if (deflater.needsInput()) {
+
+                int read = in.read(input, 0, input.length);
+
+                if (-1 == read) {
+
+                    deflater.finish();
+
+                } else {
+
+                    crc.update(input, 0, read);
+                    size += read;
+
+                    deflater.setInput(input, 0, read);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+
+        if (closed) return;
+
+        closed = true;
+
+        deflater.end();
+
+        in.close();
+    }
+
+    private void finish() {
+
+        finished = true;
+
+        pending = new byte[TRAILER_SIZE];
+        pendingOffset = 0;
+
+        long value = crc.getValue();
+
+        for (int i = 0; i < 4; i++) pending[i] = (byte) (value >>> (8 * i));
+        for (int i = 0; i < 4; i++) pending[4 + i] = (byte) (size >>> (8 * i));
+    }
+}
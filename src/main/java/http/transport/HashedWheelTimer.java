@@ -0,0 +1,409 @@
+package http.transport;
+
+import java.io.Closeable;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static http.util.Checks.isNotNull;
+import static http.util.Checks.isNull;
+
+/**
+ * A timer that runs its tasks from a wheel of buckets that is turned one bucket per tick by a single daemon thread, so
+ * scheduling and cancelling a task costs the same however many are pending. This is what makes it cheap enough to
+ * give every request its own timeouts, most of which are cancelled long before they would run.
+ * <p/>
+ * A task is run at most one tick late. Tasks are run on the timers thread so they must not block, they should hand any
+ * real work over to an {@link EventLoop}.
+ * <p/>
+ * The thread waits without ticking while nothing is scheduled, so an idle timer costs nothing.
+ *
+ * @author Karl Bennett
+ */
+class HashedWheelTimer implements Closeable {
+
+    public static final long DEFAULT_TICK = 10;
+    public static final int DEFAULT_WHEEL_SIZE = 512;
+
+    private static final int PENDING = 0;
+    private static final int CANCELLED = 1;
+    private static final int EXPIRED = 2;
+
+    private static final AtomicInteger TIMER_COUNT = new AtomicInteger();
+
+
+    private static long now() {
+
+        return System.nanoTime() / 1000000;
+    }
+
+
+    private final long tick;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final long start;
+
+    // Timeouts are only ever added to and removed from the wheel by the timers thread.
+    private final Queue<Timeout> added;
+    private final Queue<Timeout> cancelled;
+    private final AtomicInteger pending;
+    private final Object lock;
+    private final Thread worker;
+
+    private volatile boolean closed;
+
+    // Only accessed by the timers thread.
+    private long currentTick;
+
+
+    /**
+     * Create a new {@code HashedWheelTimer} with the default tick and wheel size.
+     */
+    public HashedWheelTimer() {
+
+        this(DEFAULT_TICK, DEFAULT_WHEEL_SIZE);
+    }
+
+    /**
+     * Create a new {@code HashedWheelTimer}.
+     *
+     * @param tick      the number of milliseconds between each turn of the wheel.
+     * @param wheelSize the number of buckets in the wheel, this is rounded up to a power of two.
+     */
+    public HashedWheelTimer(long tick, int wheelSize) {
+
+        if (1 > tick) throw new IllegalArgumentException("The (tick) variable must be greater than zero.");
+
+        if (1 > wheelSize || 1 << 30 < wheelSize) {
+
+            throw new IllegalArgumentException("The (wheelSize) variable must be from 1 to " + (1 << 30) + ".");
+        }
+
+        int size = Integer.highestOneBit(wheelSize);
+
+        if (size < wheelSize) size <<= 1;
+
+        this.tick = tick;
+        this.wheel = new Bucket[size];
+        this.mask = size - 1;
+        this.start = now();
+        this.added = new ConcurrentLinkedQueue<Timeout>();
+        this.cancelled = new ConcurrentLinkedQueue<Timeout>();
+        this.pending = new AtomicInteger();
+        this.lock = new Object();
+
+        for (int i = 0; i < size; i++) wheel[i] = new Bucket();
+
+        this.worker = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+
+                turn();
+            }
+        }, "http-client-timer-" + TIMER_COUNT.incrementAndGet());
+
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+
+    /**
+     * Run the supplied task once the supplied delay has passed, this can be called from any thread.
+     *
+     * @param task  the task to run on the timers thread.
+     * @param delay the number of milliseconds to wait before running the task.
+     * @return the timeout that can be used to cancel the task.
+     * @throws TransportException if the timer has been closed.
+     */
+    public Timeout schedule(Runnable task, long delay) {
+
+        if (closed) throw new TransportException("The timer has been closed.");
+
+        Timeout timeout = new Timeout(task, now() - start + Math.max(0, delay));
+
+        // The count is raised first so that the timers thread can't go back to waiting before it sees the timeout.
+        if (1 == pending.incrementAndGet()) {
+
+            synchronized (lock) {
+
+                lock.notifyAll();
+            }
+        }
+
+        added.add(timeout);
+
+        return timeout;
+    }
+
+    /**
+     * Run the supplied task on the supplied event loop once the supplied delay has passed, this can be called from any
+     * thread.
+     *
+     * @param eventLoop the loop to run the task on.
+     * @param task      the task to run on the loop thread.
+     * @param delay     the number of milliseconds to wait before running the task.
+     * @return the timeout that can be used to cancel the task, until it has been handed to the loop.
+     * @throws TransportException if the timer has been closed.
+     */
+    public Timeout schedule(final EventLoop eventLoop, final Runnable task, long delay) {
+
+        return schedule(new Runnable() {
+
+            @Override
+            public void run() {
+
+                eventLoop.execute(task);
+            }
+        }, delay);
+    }
+
+    /**
+     * @return the number of tasks that are waiting to be run.
+     */
+    public int getPendingCount() {
+
+        return pending.get();
+    }
+
+    /**
+     * Stop the timers thread, any tasks that are still waiting will never be run.
+     */
+    @Override
+    public void close() {
+
+        closed = true;
+
+        synchronized (lock) {
+
+            lock.notifyAll();
+        }
+
+        worker.interrupt();
+    }
+
+
+    private void turn() {
+
+        try {
+
+            while (!closed) {
+
+                awaitPending();
+
+                long now = awaitTick();
+
+                if (closed) return;
+
+                removeCancelled();
+                addScheduled();
+
+                wheel[(int) (currentTick & mask)].expire(now);
+
+                currentTick++;
+            }
+
+        } catch (InterruptedException e) {
+
+            // The timer has been closed.
+        }
+    }
+
+    /**
+     * Wait until there is something to run, then carry on from the current time rather than turning the wheel through
+     * every tick that passed while it was waiting.
+     */
+    private void awaitPending() throws InterruptedException {
+
+        if (0 != pending.get()) return;
+
+        synchronized (lock) {
+
+            while (0 == pending.get() && !closed) lock.wait();
+        }
+
+        currentTick = Math.max(currentTick, (now() - start) / tick);
+    }
+
+    /**
+     * @return the time since the timer started once the current tick has passed.
+     */
+    private long awaitTick() throws InterruptedException {
+
+        long deadline = (currentTick + 1) * tick;
+
+        while (true) {
+
+            long now = now() - start;
+
+            if (now >= deadline) return now;
+
+            Thread.sleep(deadline - now);
+        }
+    }
+
+    private void removeCancelled() {
+
+        for (Timeout timeout; isNotNull(timeout = cancelled.poll()); ) {
+
+            if (isNotNull(timeout.bucket)) timeout.bucket.remove(timeout);
+        }
+    }
+
+    private void addScheduled() {
+
+        for (Timeout timeout; isNotNull(timeout = added.poll()); ) {
+
+            if (CANCELLED == timeout.state.get()) continue;
+
+            long ticks = timeout.deadline / tick;
+
+            timeout.rounds = (ticks - currentTick) / wheel.length;
+
+            // A timeout whose deadline has already passed is run on this tick.
+            wheel[(int) (Math.max(ticks, currentTick) & mask)].add(timeout);
+        }
+    }
+
+
+    /**
+     * A task that has been scheduled on the timer.
+     */
+    final class Timeout {
+
+        private final Runnable task;
+        // The time since the timer started that the task should be run at.
+        private final long deadline;
+        private final AtomicInteger state;
+
+        // Only accessed by the timers thread.
+        private long rounds;
+        private Bucket bucket;
+        private Timeout next;
+        private Timeout previous;
+
+        private Timeout(Runnable task, long deadline) {
+
+            this.task = task;
+            this.deadline = deadline;
+            this.state = new AtomicInteger(PENDING);
+        }
+
+        /**
+         * Stop the task from being run, this can be called from any thread.
+         *
+         * @return true if the task had not been run or cancelled already.
+         */
+        public boolean cancel() {
+
+            if (!state.compareAndSet(PENDING, CANCELLED)) return false;
+
+            pending.decrementAndGet();
+
+            cancelled.add(this);
+
+            return true;
+        }
+
+        /**
+         * @return true if the task has been cancelled.
+         */
+        public boolean isCancelled() {
+
+            return CANCELLED == state.get();
+        }
+
+        /**
+         * @return true if the task has been run.
+         */
+        public boolean isExpired() {
+
+            return EXPIRED == state.get();
+        }
+
+        private void expire() {
+
+            if (!state.compareAndSet(PENDING, EXPIRED)) return;
+
+            pending.decrementAndGet();
+
+            try {
+
+                task.run();
+
+            } catch (RuntimeException e) {
+
+                // A failing task mustn't stop the timer from running every other task.
+            }
+        }
+    }
+
+    /**
+     * The timeouts that fall on the same slot of the wheel, as a doubly linked list so that a cancelled timeout can be
+     * removed straight away.
+     */
+    private static class Bucket {
+
+        private Timeout head;
+        private Timeout tail;
+
+        private void add(Timeout timeout) {
+
+            timeout.bucket = this;
+
+            if (isNull(head)) {
+
+                head = tail = timeout;
+
+                return;
+            }
+
+            tail.next = timeout;
+            timeout.previous = tail;
+            tail = timeout;
+        }
+
+        private void remove(Timeout timeout) {
+
+            if (isNotNull(timeout.previous)) timeout.previous.next = timeout.next;
+            else head = timeout.next;
+
+            if (isNotNull(timeout.next)) timeout.next.previous = timeout.previous;
+            else tail = timeout.previous;
+
+            timeout.bucket = null;
+            timeout.next = null;
+            timeout.previous = null;
+        }
+
+        /**
+         * Run every timeout in the bucket that is due on this turn of the wheel.
+         */
+        private void expire(long now) {
+
+            Timeout timeout = head;
+
+            while (isNotNull(timeout)) {
+
+                Timeout next = timeout.next;
+
+                if (CANCELLED == timeout.state.get()) {
+
+                    remove(timeout);
+
+                } else if (0 >= timeout.rounds && timeout.deadline <= now) {
+
+                    remove(timeout);
+
+                    timeout.expire();
+
+                } else {
+
+                    timeout.rounds--;
+                }
+
+                timeout = next;
+            }
+        }
+    }
+}
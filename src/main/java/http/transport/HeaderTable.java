@@ -0,0 +1,286 @@
+package http.transport;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static http.util.Checks.isNotNull;
+
+/**
+ * The {@code HPACK} indexing table, made up of the static table from appendix A of RFC 7541 followed by a dynamic table
+ * of the header fields that have been added by the encoder. The dynamic table is a ring buffer with the newest entry
+ * at the lowest index, entries are evicted from the oldest end whenever the table grows beyond its maximum size.
+ *
+ * @author Karl Bennett
+ */
+class HeaderTable {
+
+    /**
+     * The default maximum size of the dynamic table that both ends start with.
+     */
+    static final int DEFAULT_MAX_SIZE = 4096;
+
+    /**
+     * The number of bytes that each entry costs on top of its name and value.
+     */
+    static final int ENTRY_OVERHEAD = 32;
+
+    private static final String[][] STATIC_TABLE = {
+            {":authority", ""},
+            {":method", "GET"},
+            {":method", "POST"},
+            {":path", "/"},
+            {":path", "/index.html"},
+            {":scheme", "http"},
+            {":scheme", "https"},
+            {":status", "200"},
+            {":status", "204"},
+            {":status", "206"},
+            {":status", "304"},
+            {":status", "400"},
+            {":status", "404"},
+            {":status", "500"},
+            {"accept-charset", ""},
+            {"accept-encoding", "gzip, deflate"},
+            {"accept-language", ""},
+            {"accept-ranges", ""},
+            {"accept", ""},
+            {"access-control-allow-origin", ""},
+            {"age", ""},
+            {"allow", ""},
+            {"authorization", ""},
+            {"cache-control", ""},
+            {"content-disposition", ""},
+            {"content-encoding", ""},
+            {"content-language", ""},
+            {"content-length", ""},
+            {"content-location", ""},
+            {"content-range", ""},
+            {"content-type", ""},
+            {"cookie", ""},
+            {"date", ""},
+            {"etag", ""},
+            {"expect", ""},
+            {"expires", ""},
+            {"from", ""},
+            {"host", ""},
+            {"if-match", ""},
+            {"if-modified-since", ""},
+            {"if-none-match", ""},
+            {"if-range", ""},
+            {"if-unmodified-since", ""},
+            {"last-modified", ""},
+            {"link", ""},
+            {"location", ""},
+            {"max-forwards", ""},
+            {"proxy-authenticate", ""},
+            {"proxy-authorization", ""},
+            {"range", ""},
+            {"referer", ""},
+            {"refresh", ""},
+            {"retry-after", ""},
+            {"server", ""},
+            {"set-cookie", ""},
+            {"strict-transport-security", ""},
+            {"transfer-encoding", ""},
+            {"user-agent", ""},
+            {"vary", ""},
+            {"via", ""},
+            {"www-authenticate", ""}
+    };
+
+    // The static index of each name and of each name and value pair, the lowest index wins when a name is repeated.
+    private static final Map<String, Integer> STATIC_NAMES = new HashMap<String, Integer>();
+    private static final Map<String, Integer> STATIC_FIELDS = new HashMap<String, Integer>();
+
+    static {
+
+        for (int i = STATIC_TABLE.length - 1; 0 <= i; i--) {
+
+            STATIC_NAMES.put(STATIC_TABLE[i][0], i + 1);
+            STATIC_FIELDS.put(STATIC_TABLE[i][0] + '\u0000' + STATIC_TABLE[i][1], i + 1);
+        }
+    }
+
+    /**
+     * The number of entries in the static table, the dynamic table starts at the index after this.
+     */
+    static final int STATIC_LENGTH = STATIC_TABLE.length;
+
+
+    private String[] names;
+    private String[] values;
+    private int head;
+    private int length;
+    private int size;
+    private int maxSize;
+
+
+    /**
+     * Create a new {@code HeaderTable} with an empty dynamic table of the default maximum size.
+     */
+    public HeaderTable() {
+
+        this.names = new String[16];
+        this.values = new String[16];
+        this.maxSize = DEFAULT_MAX_SIZE;
+    }
+
+
+    /**
+     * @return the number of bytes the dynamic table currently holds.
+     */
+    public int getSize() {
+
+        return size;
+    }
+
+    /**
+     * @return the maximum number of bytes the dynamic table can hold.
+     */
+    public int getMaxSize() {
+
+        return maxSize;
+    }
+
+    /**
+     * Change the maximum size of the dynamic table, evicting entries until it fits.
+     *
+     * @param maxSize the new maximum size in bytes.
+     */
+    public void setMaxSize(int maxSize) {
+
+        this.maxSize = maxSize;
+
+        evict(0);
+    }
+
+    /**
+     * @return the number of entries in the dynamic table.
+     */
+    public int getLength() {
+
+        return length;
+    }
+
+    /**
+     * Add a new entry to the front of the dynamic table. An entry that is bigger than the whole table empties it and
+     * is not added.
+     *
+     * @param name  the header name.
+     * @param value the header value.
+     */
+    public void add(String name, String value) {
+
+        int entrySize = name.length() + value.length() + ENTRY_OVERHEAD;
+
+        evict(entrySize);
+
+        if (entrySize > maxSize) return;
+
+        if (length == names.length) grow();
+
+        head = (head + names.length - 1) % names.length;
+        names[head] = name;
+        values[head] = value;
+        length++;
+        size += entrySize;
+    }
+
+    /**
+     * @param index the one based index in the combined table.
+     * @return the header name at the supplied index.
+     * @throws TransportException if there is no entry at the index.
+     */
+    public String getName(int index) {
+
+        if (0 < index && STATIC_LENGTH >= index) return STATIC_TABLE[index - 1][0];
+
+        return names[slot(index)];
+    }
+
+    /**
+     * @param index the one based index in the combined table.
+     * @return the header value at the supplied index.
+     * @throws TransportException if there is no entry at the index.
+     */
+    public String getValue(int index) {
+
+        if (0 < index && STATIC_LENGTH >= index) return STATIC_TABLE[index - 1][1];
+
+        return values[slot(index)];
+    }
+
+    /**
+     * Find the supplied header in the table.
+     *
+     * @param name  the header name.
+     * @param value the header value.
+     * @return the index of an entry with the same name and value, or the negated index of an entry with the same name,
+     *         or zero if there is neither.
+     */
+    public int find(String name, String value) {
+
+        Integer field = STATIC_FIELDS.get(name + '\u0000' + value);
+
+        if (isNotNull(field)) return field;
+
+        int nameIndex = 0;
+
+        for (int i = 0; i < length; i++) {
+
+            int slot = (head + i) % names.length;
+
+            if (!names[slot].equals(name)) continue;
+
+            if (values[slot].equals(value)) return STATIC_LENGTH + 1 + i;
+
+            if (0 == nameIndex) nameIndex = STATIC_LENGTH + 1 + i;
+        }
+
+        Integer staticName = STATIC_NAMES.get(name);
+
+        if (isNotNull(staticName)) return -staticName;
+
+        return -nameIndex;
+    }
+
+
+    private int slot(int index) {
+
+        int dynamic = index - STATIC_LENGTH - 1;
+
+        if (0 > dynamic || length <= dynamic) throw new TransportException("The header table index (" + index +
+                ") is out of range.");
+
+        return (head + dynamic) % names.length;
+    }
+
+    private void evict(int needed) {
+
+        while (0 < length && size + needed > maxSize) {
+
+            int tail = (head + length - 1) % names.length;
+
+            size -= names[tail].length() + values[tail].length() + ENTRY_OVERHEAD;
+            names[tail] = null;
+            values[tail] = null;
+            length--;
+        }
+    }
+
+    private void grow() {
+
+        String[] grownNames = new String[names.length * 2];
+        String[] grownValues = new String[values.length * 2];
+
+        for (int i = 0; i < length; i++) {
+
+            grownNames[i] = names[(head + i) % names.length];
+            grownValues[i] = values[(head + i) % values.length];
+        }
+
+        names = grownNames;
+        values = grownValues;
+        head = 0;
+    }
+}
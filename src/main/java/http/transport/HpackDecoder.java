@@ -0,0 +1,175 @@
+package http.transport;
+
+import http.header.Header;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An {@code HPACK} header block decoder, see RFC 7541. The decoder keeps the dynamic table for one direction of a
+ * connection so every header block received on the connection must be decoded, in order, even if the stream it belongs
+ * to has been abandoned.
+ *
+ * @author Karl Bennett
+ */
+class HpackDecoder {
+
+    private final HeaderTable table;
+    private final int maxTableSize;
+
+    // The block that is being decoded and the position of the next byte in it.
+    private byte[] block;
+    private int position;
+
+
+    /**
+     * Create a new {@code HpackDecoder} that allows a dynamic table of the default size.
+     */
+    public HpackDecoder() {
+
+        this(HeaderTable.DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * Create a new {@code HpackDecoder} that allows a dynamic table of up to the supplied size.
+     *
+     * @param maxTableSize the header table size that was advertised to the peer.
+     */
+    public HpackDecoder(int maxTableSize) {
+
+        this.table = new HeaderTable();
+        this.table.setMaxSize(maxTableSize);
+        this.maxTableSize = maxTableSize;
+    }
+
+
+    /**
+     * Decode the supplied header block.
+     *
+     * @param block the complete header block, after any {@code CONTINUATION} frames have been joined.
+     * @return the headers in the order they were sent.
+     * @throws TransportException if the block can't be decoded, the connection can't be used after this.
+     */
+    public List<Header<String>> decode(byte[] block) {
+
+        this.block = block;
+        this.position = 0;
+
+        List<Header<String>> headers = new ArrayList<Header<String>>();
+
+        boolean first = true;
+
+        while (position < block.length) {
+
+            int b = block[position] & 0xFF;
+
+            if (0x80 == (b & 0x80)) {
+
+                // Indexed header field.
+                int index = readInteger(7);
+
+                if (0 == index) throw new TransportException("A header block contained the index zero.");
+
+                headers.add(new Header<String>(table.getName(index), table.getValue(index)));
+
+            } else if (0x40 == (b & 0xC0)) {
+
+                // Literal header field with incremental indexing.
+                Header<String> header = readLiteral(6);
+
+                table.add(header.getName(), header.getValue());
+
+                headers.add(header);
+
+            } else if (0x20 == (b & 0xE0)) {
+
+                // Dynamic table size update, these are only allowed at the start of a block.
+                if (!first) throw new TransportException("A header table size update came after a header.");
+
+                int size = readInteger(5);
+
+                if (maxTableSize < size) throw new TransportException("A header table size update was too large.");
+
+                table.setMaxSize(size);
+
+                continue;
+
+            } else {
+
+                // Literal header field without indexing or never indexed.
+                headers.add(readLiteral(4));
+            }
+
+            first = false;
+        }
+
+        return headers;
+    }
+
+
+    private Header<String> readLiteral(int prefix) {
+
+        int index = readInteger(prefix);
+
+        String name = 0 == index ? readString() : table.getName(index);
+
+        return new Header<String>(name, readString());
+    }
+
+    private String readString() {
+
+        if (block.length <= position) throw new TransportException("A header block ended in the middle of a string.");
+
+        boolean huffman = 0x80 == (block[position] & 0x80);
+
+        int length = readInteger(7);
+
+        if (block.length - position < length) {
+
+            throw new TransportException("A header block ended in the middle of a string.");
+        }
+
+        int offset = position;
+
+        position += length;
+
+        if (huffman) return Huffman.decode(block, offset, length);
+
+        StringBuilder string = new StringBuilder(length);
+
+        for (int i = offset; i < offset + length; i++) string.append((char) (block[i] & 0xFF));
+
+        return string.toString();
+    }
+
+    /**
+     * Read an integer with an N bit prefix, the position is moved past the integer.
+     */
+    private int readInteger(int prefix) {
+
+        int max = (1 << prefix) - 1;
+        int value = block[position++] & max;
+
+        if (max > value) return value;
+
+        for (int shift = 0; ; shift += 7) {
+
+            if (block.length <= position) {
+
+                throw new TransportException("A header block ended in the middle of an integer.");
+            }
+
+            int b = block[position++] & 0xFF;
+
+            // Anything that doesn't fit in an int is far bigger than any table index or string that could be sent.
+            if (28 < shift || 0 > value + ((b & 0x7F) << shift)) {
+
+                throw new TransportException("A header block contained an integer that was too large.");
+            }
+
+            value += (b & 0x7F) << shift;
+
+            if (0 == (b & 0x80)) return value;
+        }
+    }
+}
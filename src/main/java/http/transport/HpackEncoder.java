@@ -0,0 +1,172 @@
+package http.transport;
+
+import http.header.Header;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * An {@code HPACK} header block encoder, see RFC 7541. A header that is already in the table is sent as an index,
+ * anything else is sent as a literal and added to the dynamic table so that the same header on the next request on the
+ * connection costs a single byte. Headers that carry credentials are never indexed so that they can't be recovered by
+ * probing the compression. Strings are Huffman encoded whenever that makes them shorter.
+ *
+ * @author Karl Bennett
+ */
+class HpackEncoder {
+
+    private static final Set<String> SENSITIVE_HEADERS = Collections.unmodifiableSet(new HashSet<String>(
+            Arrays.asList("authorization", "proxy-authorization", "cookie", "set-cookie")));
+
+
+    private final HeaderTable table;
+
+    private int maxSize;
+    private int minSize;
+    private boolean resized;
+
+
+    /**
+     * Create a new {@code HpackEncoder} with a dynamic table of the default size.
+     */
+    public HpackEncoder() {
+
+        this.table = new HeaderTable();
+        this.maxSize = HeaderTable.DEFAULT_MAX_SIZE;
+        this.minSize = HeaderTable.DEFAULT_MAX_SIZE;
+    }
+
+
+    /**
+     * Change the size of the dynamic table, this is called when the peer changes its header table size setting. The
+     * encoder never uses a table bigger than the default size. The change is signalled at the start of the next header
+     * block.
+     *
+     * @param maxSize the largest table the peer will allow.
+     */
+    public void setMaxTableSize(int maxSize) {
+
+        int size = Math.min(maxSize, HeaderTable.DEFAULT_MAX_SIZE);
+
+        if (size == this.maxSize && !resized) return;
+
+        this.maxSize = size;
+        this.minSize = resized ? Math.min(minSize, size) : size;
+        this.resized = true;
+    }
+
+    /**
+     * Encode the supplied headers into a header block. The names must already be in lower case.
+     *
+     * @param headers the headers to encode, pseudo headers must come first.
+     * @return the header block.
+     */
+    public byte[] encode(List<Header<String>> headers) {
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream(64 * headers.size());
+
+        if (resized) {
+
+            // If the table shrank and then grew again both changes must be sent so the peer evicts the same entries.
+            if (minSize < maxSize) writeInteger(output, 0x20, 5, minSize);
+
+            writeInteger(output, 0x20, 5, maxSize);
+
+            table.setMaxSize(maxSize);
+
+            resized = false;
+        }
+
+        for (Header<String> header : headers) encode(output, header.getName(), header.getValue());
+
+        return output.toByteArray();
+    }
+
+
+    private void encode(ByteArrayOutputStream output, String name, String value) {
+
+        if (SENSITIVE_HEADERS.contains(name)) {
+
+            int index = table.find(name, "");
+
+            // Never indexed, with the name from the table if it's there.
+            writeLiteral(output, 0x10, 4, Math.abs(index), name, value);
+
+            return;
+        }
+
+        int index = table.find(name, value);
+
+        if (0 < index) {
+
+            writeInteger(output, 0x80, 7, index);
+
+            return;
+        }
+
+        // Literal with incremental indexing.
+        writeLiteral(output, 0x40, 6, -index, name, value);
+
+        table.add(name, value);
+    }
+
+    private static void writeLiteral(ByteArrayOutputStream output, int pattern, int prefix, int nameIndex, String name,
+                                     String value) {
+
+        writeInteger(output, pattern, prefix, nameIndex);
+
+        if (0 == nameIndex) writeString(output, name);
+
+        writeString(output, value);
+    }
+
+    private static void writeString(ByteArrayOutputStream output, String value) {
+
+        int huffmanLength = Huffman.encodedLength(value);
+
+        if (huffmanLength < value.length()) {
+
+            writeInteger(output, 0x80, 7, huffmanLength);
+
+            Huffman.encode(value, output);
+
+            return;
+        }
+
+        writeInteger(output, 0x00, 7, value.length());
+
+        for (int i = 0; i < value.length(); i++) output.write(value.charAt(i));
+    }
+
+    /**
+     * Write an integer with an N bit prefix, the bits above the prefix in the first byte are taken from the pattern.
+     */
+    static void writeInteger(ByteArrayOutputStream output, int pattern, int prefix, int value) {
+
+        int max = (1 << prefix) - 1;
+
+        if (max > value) {
+
+            output.write(pattern | value);
+
+            return;
+        }
+
+        output.write(pattern | max);
+
+        value -= max;
+
+        while (0x80 <= value) {
+
+            output.write((value & 0x7F) | 0x80);
+
+            value >>>= 7;
+        }
+
+        output.write(value);
+    }
+}
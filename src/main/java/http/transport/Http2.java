@@ -0,0 +1,116 @@
+package http.transport;
+
+import http.header.HeaderName;
+
+import java.nio.ByteBuffer;
+import java.util.Locale;
+
+import static http.util.Checks.isNotNull;
+
+/**
+ * The constants that make up the {@code HTTP/2} framing layer, see RFC 9113.
+ *
+ * @author Karl Bennett
+ */
+final class Http2 {
+
+    static final byte[] PREFACE = "PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n".getBytes(RequestEncoder.ASCII);
+
+    static final int FRAME_HEADER_LENGTH = 9;
+    static final int DEFAULT_MAX_FRAME_SIZE = 16384;
+    static final int MAX_MAX_FRAME_SIZE = 16777215;
+    static final int DEFAULT_WINDOW_SIZE = 65535;
+    static final int MAX_WINDOW_SIZE = Integer.MAX_VALUE;
+
+    static final int DATA = 0x0;
+    static final int HEADERS = 0x1;
+    static final int PRIORITY = 0x2;
+    static final int RST_STREAM = 0x3;
+    static final int SETTINGS = 0x4;
+    static final int PUSH_PROMISE = 0x5;
+    static final int PING = 0x6;
+    static final int GOAWAY = 0x7;
+    static final int WINDOW_UPDATE = 0x8;
+    static final int CONTINUATION = 0x9;
+
+    static final int FLAG_END_STREAM = 0x1;
+    static final int FLAG_ACK = 0x1;
+    static final int FLAG_END_HEADERS = 0x4;
+    static final int FLAG_PADDED = 0x8;
+    static final int FLAG_PRIORITY = 0x20;
+
+    static final int SETTINGS_HEADER_TABLE_SIZE = 0x1;
+    static final int SETTINGS_ENABLE_PUSH = 0x2;
+    static final int SETTINGS_MAX_CONCURRENT_STREAMS = 0x3;
+    static final int SETTINGS_INITIAL_WINDOW_SIZE = 0x4;
+    static final int SETTINGS_MAX_FRAME_SIZE = 0x5;
+
+    static final int NO_ERROR = 0x0;
+    static final int PROTOCOL_ERROR = 0x1;
+    static final int INTERNAL_ERROR = 0x2;
+    static final int FLOW_CONTROL_ERROR = 0x3;
+    static final int FRAME_SIZE_ERROR = 0x6;
+    static final int REFUSED_STREAM = 0x7;
+    static final int CANCEL = 0x8;
+    static final int COMPRESSION_ERROR = 0x9;
+
+
+    private Http2() {
+    }
+
+
+    /**
+     * Write a frame header to the supplied buffer.
+     *
+     * @param buffer   the buffer to write to.
+     * @param length   the length of the frame payload.
+     * @param type     the frame type.
+     * @param flags    the frame flags.
+     * @param streamId the stream the frame belongs to, or zero for the connection.
+     */
+    static void writeFrameHeader(ByteBuffer buffer, int length, int type, int flags, int streamId) {
+
+        buffer.put((byte) (length >>> 16));
+        buffer.put((byte) (length >>> 8));
+        buffer.put((byte) length);
+        buffer.put((byte) type);
+        buffer.put((byte) flags);
+        buffer.putInt(streamId & Integer.MAX_VALUE);
+    }
+
+    /**
+     * {@code HTTP/2} header names are always in lower case, so turn them back into the capitalised form that the
+     * {@code HTTP/1.1} transport would have received e.g. "content-type" becomes "Content-Type".
+     *
+     * @param name the lower case header name.
+     * @return the capitalised header name, this is the shared instance for a well known name.
+     */
+    static String capitalise(String name) {
+
+        HeaderName known = HeaderName.find(name);
+
+        if (isNotNull(known)) return known.toString();
+
+        char[] chars = name.toCharArray();
+
+        boolean start = true;
+
+        for (int i = 0; i < chars.length; i++) {
+
+            if (start) chars[i] = Character.toUpperCase(chars[i]);
+
+            start = '-' == chars[i];
+        }
+
+        return new String(chars);
+    }
+
+    /**
+     * @param name the header name.
+     * @return the header name in lower case, as it must be sent.
+     */
+    static String lowerCase(String name) {
+
+        return name.toLowerCase(Locale.ENGLISH);
+    }
+}
@@ -0,0 +1,1703 @@
+package http.transport;
+
+import http.Request;
+import http.header.Header;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static http.transport.Http2.*;
+import static http.transport.RequestEncoder.CONTENT_LENGTH;
+import static http.transport.RequestEncoder.expectsBody;
+import static http.transport.RequestEncoder.host;
+import static http.transport.RequestEncoder.target;
+import static http.util.Asserts.assertNotNull;
+import static http.util.Checks.isNotNull;
+import static http.util.Checks.isNull;
+import static http.util.IO.closeQuietly;
+
+/**
+ * A non-blocking {@code HTTP/2} connection to a single server, see RFC 9113. Every exchange for a route is carried as
+ * its own stream on the one connection so requests never wait for each other's responses. As with the
+ * {@code HTTP/1.1} {@link Connection} all of the methods that touch the channel are only ever called on the
+ * connections {@link EventLoop} thread.
+ * <p/>
+ * An {@code https} connection offers {@code h2} and {@code http/1.1} through {@code ALPN} during its {@code TLS}
+ * handshake. If the server doesn't pick {@code h2}, or the JVM can't negotiate through {@code ALPN}, the socket is
+ * handed over to an {@code HTTP/1.1} {@link Connection} and the route is no longer multiplexed. An {@code http}
+ * connection assumes the server speaks {@code HTTP/2}. The connect
+ * and {@code TLS} handshake timeouts are those of the exchange the connection was opened for, every stream fails with
+ * a {@link RequestTimeoutException} if either passes.
+ * <p/>
+ * Exchanges that arrive while the connection already has as many streams open as it is allowed wait in a queue that is
+ * ordered by the urgency from the requests RFC 9218 {@code Priority} header, the most urgent is started first. Request
+ * bodies are sent the same way, the most urgent stream with data to send goes first and streams of the same urgency
+ * take turns a frame at a time.
+ * <p/>
+ * Both ends of every stream are flow controlled. The server is credited for the data it sends as soon as it arrives
+ * unless the response body has stopped accepting data, in which case the stream is not credited again until the body
+ * has been drained, so a response that isn't being read can't hold more than about one stream window in memory. The
+ * connection window is much bigger and is always credited straight away so one slow reader never holds up the other
+ * streams.
+ *
+ * @author Karl Bennett
+ */
+class Http2Connection implements EventHandler, Carrier {
+
+    public static final int DEFAULT_MAX_CONCURRENT_STREAMS = 100;
+
+    /**
+     * The window each stream is given for its response, this matches the point at which a response body stops
+     * accepting data.
+     */
+    static final int STREAM_WINDOW = ResponseInputStream.HIGH_WATER_MARK;
+
+    /**
+     * The window the connection as a whole is given for every response on it.
+     */
+    static final int CONNECTION_WINDOW = 16 * 1024 * 1024;
+
+    static final int DEFAULT_URGENCY = 3;
+
+    private static final int URGENCY_LEVELS = 8;
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_HEADER_BLOCK_SIZE = 256 * 1024;
+
+    // HTTP/1.1 is offered as well so that the connection can fall back to it rather than fail.
+    private static final String[] APPLICATION_PROTOCOLS = {TlsConfig.H2, TlsConfig.HTTP_1_1};
+
+    private static final String PRIORITY_HEADER = "priority";
+    private static final String TE = "te";
+    private static final String TRAILERS = "trailers";
+
+    private static final Set<String> CONNECTION_HEADERS = Collections.unmodifiableSet(new HashSet<String>(
+            Arrays.asList("connection", "keep-alive", "proxy-connection", "transfer-encoding", "upgrade")));
+
+
+    /**
+     * The state of a single stream.
+     */
+    private static class Stream {
+
+        private final int id;
+        private final Exchange exchange;
+        private final int urgency;
+
+        // The rest of the request body, this is null once the body has been sent.
+        private InputStream body;
+        private long sendWindow;
+        private int receiveWindow;
+        private int unacknowledged;
+        private boolean sending;
+        private boolean headersReceived;
+        private boolean suspended;
+
+        private Stream(int id, Exchange exchange, int urgency, long sendWindow) {
+
+            this.id = id;
+            this.exchange = exchange;
+            this.urgency = urgency;
+            this.body = exchange.getRequest().getBody();
+            this.sendWindow = sendWindow;
+            this.receiveWindow = STREAM_WINDOW;
+        }
+    }
+
+
+    /**
+     * Get the urgency of the supplied request from its {@code Priority} header, see RFC 9218.
+     *
+     * @param request the request.
+     * @return the urgency from zero, the most urgent, to seven, the least urgent.
+     */
+    static int urgency(Request<InputStream> request) {
+
+        for (Header header : request.getHeaders()) {
+
+            if (!PRIORITY_HEADER.equalsIgnoreCase(header.getName())) continue;
+
+            for (String parameter : String.valueOf(header.getValue()).split(",")) {
+
+                parameter = parameter.trim();
+
+                if (parameter.startsWith("u=") && 3 == parameter.length()) {
+
+                    int urgency = parameter.charAt(2) - '0';
+
+                    if (0 <= urgency && URGENCY_LEVELS > urgency) return urgency;
+                }
+            }
+        }
+
+        return DEFAULT_URGENCY;
+    }
+
+
+    private final EventLoop eventLoop;
+    private final ConnectionPool pool;
+    private final Route route;
+    private final List<InetSocketAddress> addresses;
+    private final int maxConcurrentStreams;
+    private final HpackEncoder encoder;
+    private final HpackDecoder decoder;
+    private final Map<Integer, Stream> streams;
+    private final List<Deque<Exchange>> pending;
+    private final List<Deque<Stream>> sending;
+
+    private PooledBuffer readBuffer;
+    private PooledBuffer pooledWriteBuffer;
+    private ByteBuffer writeBuffer;
+    private byte[] bodyBuffer;
+    private Connector connector;
+    private long tlsHandshakeTimeout;
+    private HashedWheelTimer.Timeout handshakeTimeout;
+    private SocketChannel channel;
+    // The channel frames go through, the socket itself or the TLS channel over it.
+    private ByteChannel io;
+    private TlsChannel tls;
+    private SelectionKey key;
+
+    private boolean connected;
+    private boolean received;
+    private boolean goingAway;
+    private boolean shutdown;
+    private boolean closed;
+    private int nextStreamId;
+    private int pendingCount;
+
+    private long sendWindow;
+    private int receiveWindow;
+    private int unacknowledged;
+    private int initialSendWindow;
+    private int maxFrameSize;
+    private int peerMaxConcurrentStreams;
+
+    // The header block that is being assembled from a HEADERS frame and its CONTINUATION frames.
+    private ByteArrayOutputStream headerBlock;
+    private int headerStreamId;
+    private boolean headerEndStream;
+
+    // Only accessed while holding the pool lock.
+    private boolean allocated;
+
+    private volatile long idleSince;
+
+
+    /**
+     * Create a new {@code Http2Connection} to the server at one of the supplied addresses. The connection isn't opened
+     * until {@link #connect()} is called.
+     *
+     * @param eventLoop            the loop that will drive the connection.
+     * @param pool                 the pool the connection belongs to.
+     * @param route                the route the connection is for.
+     * @param addresses            the addresses of the server.
+     * @param maxConcurrentStreams the most streams that this end will open at once.
+     */
+    public Http2Connection(EventLoop eventLoop, ConnectionPool pool, Route route, List<InetSocketAddress> addresses,
+                           int maxConcurrentStreams) {
+
+        assertNotNull("eventLoop", eventLoop);
+        assertNotNull("pool", pool);
+        assertNotNull("route", route);
+        assertNotNull("addresses", addresses);
+
+        this.eventLoop = eventLoop;
+        this.pool = pool;
+        this.route = route;
+        this.addresses = addresses;
+        this.maxConcurrentStreams = maxConcurrentStreams;
+        this.encoder = new HpackEncoder();
+        this.decoder = new HpackDecoder();
+        this.streams = new HashMap<Integer, Stream>();
+        this.pending = new ArrayList<Deque<Exchange>>(URGENCY_LEVELS);
+        this.sending = new ArrayList<Deque<Stream>>(URGENCY_LEVELS);
+
+        for (int i = 0; i < URGENCY_LEVELS; i++) {
+
+            pending.add(new ArrayDeque<Exchange>());
+            sending.add(new ArrayDeque<Stream>());
+        }
+
+
+        this.nextStreamId = 1;
+        this.sendWindow = DEFAULT_WINDOW_SIZE;
+        this.receiveWindow = CONNECTION_WINDOW;
+        this.initialSendWindow = DEFAULT_WINDOW_SIZE;
+        this.maxFrameSize = DEFAULT_MAX_FRAME_SIZE;
+        this.peerMaxConcurrentStreams = Integer.MAX_VALUE;
+        this.allocated = true;
+    }
+
+
+    /**
+     * @return the loop that drives the connection.
+     */
+    public EventLoop getEventLoop() {
+
+        return eventLoop;
+    }
+
+    /**
+     * @return the route the connection is for.
+     */
+    public Route getRoute() {
+
+        return route;
+    }
+
+    boolean isAllocated() {
+
+        return allocated;
+    }
+
+    void setAllocated(boolean allocated) {
+
+        this.allocated = allocated;
+    }
+
+    /**
+     * @return the time the connection last became idle, or zero if it is in use.
+     */
+    long getIdleSince() {
+
+        return idleSince;
+    }
+
+    void setIdleSince(long idleSince) {
+
+        this.idleSince = idleSince;
+    }
+
+    /**
+     * Open the connection, this must be called on the event loop thread. Exchanges can be dispatched before the
+     * connection has been opened, they are sent once it is.
+     *
+     * @param connectTimeout      the number of milliseconds the socket has to connect in, or zero for no limit.
+     * @param tlsHandshakeTimeout the number of milliseconds the {@code TLS} handshake has to complete in, or zero for
+     *                            no limit.
+     */
+    public void connect(long connectTimeout, long tlsHandshakeTimeout) {
+
+        readBuffer = pool.getBufferPool().acquire();
+        readBuffer.getBuffer().limit(0);
+
+        pooledWriteBuffer = pool.getBufferPool().acquire(WRITE_BUFFER_SIZE);
+        writeBuffer = pooledWriteBuffer.getBuffer();
+
+        writePreface();
+
+        this.tlsHandshakeTimeout = tlsHandshakeTimeout;
+
+        connector = new Connector(eventLoop, addresses, pool.getFailedAddresses(), pool.getConnectAttemptDelay(),
+                pool.getTimer(), connectTimeout, new Connector.Listener() {
+
+                    @Override
+                    public void connected(SocketChannel channel) {
+
+                        Http2Connection.this.connected(channel);
+                    }
+
+                    @Override
+                    public void failed(Throwable cause) {
+
+                        fail(cause);
+                    }
+                });
+
+        connector.connect();
+    }
+
+    /**
+     * Send the supplied exchange on a new stream, this can be called from any thread. If the connection has been
+     * closed in the meantime the exchange is handed back to the pool.
+     *
+     * @param next the exchange to send.
+     */
+    public void dispatch(final Exchange next) {
+
+        eventLoop.execute(new Runnable() {
+
+            @Override
+            public void run() {
+
+                if (closed || goingAway) {
+
+                    next.requeue();
+
+                    execute(next);
+
+                    return;
+                }
+
+                // The caller gave up while the exchange was waiting for a connection.
+                if (next.isCancelled()) return;
+
+                idleSince = 0;
+
+                pending.get(urgency(next.getRequest())).add(next);
+                pendingCount++;
+
+                startStreams();
+
+                flush();
+            }
+        });
+    }
+
+    @Override
+    public void handle(SelectionKey key) throws IOException {
+
+        if (!connected) {
+
+            handshake();
+
+            flush();
+
+            return;
+        }
+
+        if (key.isReadable()) read();
+
+        flush();
+    }
+
+    @Override
+    public void fail(Throwable cause) {
+
+        if (closed) return;
+
+        List<Exchange> retried = new ArrayList<Exchange>();
+        List<Exchange> requeued = new ArrayList<Exchange>();
+        List<Exchange> failed = new ArrayList<Exchange>();
+
+        for (Stream stream : streams.values()) {
+
+            closeQuietly(stream.body);
+
+            // If the connection had been working a request that hasn't been answered can be tried once more.
+            if (received && !stream.headersReceived && stream.exchange.isRetryable()) retried.add(stream.exchange);
+            else failed.add(stream.exchange);
+        }
+
+        for (Deque<Exchange> urgency : pending) {
+
+            // The exchanges that were never started can always be sent again if the connection had been working.
+            if (received) requeued.addAll(urgency);
+            else failed.addAll(urgency);
+        }
+
+        streams.clear();
+        clearPending();
+
+        close();
+
+        for (Exchange exchange : retried) {
+
+            exchange.retry();
+
+            execute(exchange);
+        }
+
+        for (Exchange exchange : requeued) {
+
+            exchange.requeue();
+
+            execute(exchange);
+        }
+
+        for (Exchange exchange : failed) exchange.fail(cause);
+    }
+
+    /**
+     * Stop crediting the stream for the supplied exchange until {@link #resume(Exchange)} is called. The other streams
+     * on the connection carry on as normal. This must be called on the event loop thread.
+     *
+     * @param exchange the exchange whose body can't accept any more data.
+     */
+    @Override
+    public void suspend(Exchange exchange) {
+
+        Stream stream = find(exchange);
+
+        if (isNotNull(stream)) stream.suspended = true;
+    }
+
+    /**
+     * Credit the stream for the supplied exchange with everything it has received while it was suspended, this can be
+     * called from any thread.
+     *
+     * @param exchange the exchange whose body can accept more data.
+     */
+    @Override
+    public void resume(final Exchange exchange) {
+
+        eventLoop.execute(new Runnable() {
+
+            @Override
+            public void run() {
+
+                Stream stream = find(exchange);
+
+                if (closed || isNull(stream) || !stream.suspended) return;
+
+                stream.suspended = false;
+
+                credit(stream, true);
+
+                flush();
+            }
+        });
+    }
+
+    /**
+     * Abandon the supplied exchange by resetting its stream, the rest of the connection is unaffected. This can be
+     * called from any thread.
+     *
+     * @param exchange the exchange that has been cancelled.
+     */
+    @Override
+    public void cancel(final Exchange exchange) {
+
+        eventLoop.execute(new Runnable() {
+
+            @Override
+            public void run() {
+
+                if (closed) return;
+
+                Stream stream = find(exchange);
+
+                if (isNotNull(stream)) {
+
+                    reset(stream, CANCEL, new TransportException("The exchange was cancelled."));
+
+                } else if (pending.get(urgency(exchange.getRequest())).remove(exchange)) {
+
+                    pendingCount--;
+
+                    idle();
+                }
+
+                flush();
+            }
+        });
+    }
+
+    @Override
+    public PooledBuffer getReadBuffer() {
+
+        return readBuffer;
+    }
+
+    /**
+     * Close the connection once it has no streams left. This is used by the pool to evict connections, this can be
+     * called from any thread.
+     */
+    public void closeIdle() {
+
+        eventLoop.execute(new Runnable() {
+
+            @Override
+            public void run() {
+
+                if (closed) return;
+
+                shutdown = true;
+
+                idle();
+            }
+        });
+    }
+
+
+    private void startStreams() {
+
+        while (!closed && !goingAway && 0 < pendingCount &&
+                Math.min(maxConcurrentStreams, peerMaxConcurrentStreams) > streams.size()) {
+
+            int urgency = 0;
+
+            while (pending.get(urgency).isEmpty()) urgency++;
+
+            Exchange next = pending.get(urgency).poll();
+
+            pendingCount--;
+
+            if (next.isCancelled()) continue;
+
+            // The stream identifiers have run out so the connection can't be used for anything new.
+            if (0 > nextStreamId) {
+
+                goingAway = true;
+
+                pool.retire(this);
+
+                next.requeue();
+
+                execute(next);
+
+                continue;
+            }
+
+            Stream stream = new Stream(nextStreamId, next, urgency, initialSendWindow);
+
+            nextStreamId += 2;
+
+            next.bind(this);
+
+            streams.put(stream.id, stream);
+
+            writeHeaders(stream);
+
+            if (isNotNull(stream.body)) send(stream);
+        }
+
+        // Anything left over once the connection is going away has to be sent somewhere else.
+        if (goingAway && 0 < pendingCount) requeuePending();
+    }
+
+    private void writeHeaders(Stream stream) {
+
+        Request<InputStream> request = stream.exchange.getRequest();
+        URL url = request.getUrl();
+
+        String authority = host(url);
+        boolean hasLength = false;
+
+        List<Header<String>> fields = new ArrayList<Header<String>>();
+
+        for (Header header : request.getHeaders()) {
+
+            String name = lowerCase(header.getName());
+            String value = String.valueOf(header.getValue());
+
+            if (RequestEncoder.HOST.equalsIgnoreCase(name)) {
+
+                authority = value;
+
+                continue;
+            }
+
+            if (CONNECTION_HEADERS.contains(name) || (TE.equals(name) && !TRAILERS.equalsIgnoreCase(value))) continue;
+
+            hasLength |= CONTENT_LENGTH.equalsIgnoreCase(name);
+
+            fields.add(new Header<String>(name, value));
+        }
+
+        if (isNull(stream.body) && !hasLength && expectsBody(stream.exchange.getMethod())) {
+
+            fields.add(new Header<String>(lowerCase(CONTENT_LENGTH), "0"));
+        }
+
+        if (stream.body instanceof FileBody && !hasLength) {
+
+            fields.add(new Header<String>(lowerCase(CONTENT_LENGTH),
+                    String.valueOf(((FileBody) stream.body).getRemaining())));
+        }
+
+        fields.add(0, new Header<String>(":method", stream.exchange.getMethod()));
+        fields.add(1, new Header<String>(":scheme", route.getScheme()));
+        fields.add(2, new Header<String>(":authority", authority));
+        fields.add(3, new Header<String>(":path", target(url)));
+
+        byte[] block = encoder.encode(fields);
+
+        // Only send the deprecated stream priority as well if the caller actually asked for one.
+        boolean prioritised = hasPriority(request);
+
+        int flags = isNull(stream.body) ? FLAG_END_STREAM : 0;
+        int prefix = prioritised ? 5 : 0;
+        int length = Math.min(block.length, maxFrameSize - prefix);
+
+        if (length == block.length) flags |= FLAG_END_HEADERS;
+        if (prioritised) flags |= FLAG_PRIORITY;
+
+        ensureCapacity(FRAME_HEADER_LENGTH + prefix + length);
+
+        writeFrameHeader(writeBuffer, prefix + length, HEADERS, flags, stream.id);
+
+        if (prioritised) {
+
+            // No dependency, with the weight halving for each step down in urgency.
+            writeBuffer.putInt(0);
+            writeBuffer.put((byte) ((256 >> stream.urgency) - 1));
+        }
+
+        writeBuffer.put(block, 0, length);
+
+        for (int offset = length; offset < block.length; offset += length) {
+
+            length = Math.min(block.length - offset, maxFrameSize);
+
+            writeFrame(CONTINUATION, offset + length == block.length ? FLAG_END_HEADERS : 0, stream.id, block, offset,
+                    length);
+        }
+    }
+
+    private static boolean hasPriority(Request<InputStream> request) {
+
+        for (Header header : request.getHeaders()) if (PRIORITY_HEADER.equalsIgnoreCase(header.getName())) return true;
+
+        return false;
+    }
+
+    /**
+     * Queue the supplied stream to have its request body sent.
+     */
+    private void send(Stream stream) {
+
+        if (stream.sending || isNull(stream.body) || 0 >= stream.sendWindow) return;
+
+        stream.sending = true;
+
+        sending.get(stream.urgency).add(stream);
+    }
+
+    /**
+     * Fill the write buffer with request body frames for as long as the flow control windows allow it, the most urgent
+     * streams first.
+     */
+    private void writeData() {
+
+        while (0 < sendWindow && FRAME_HEADER_LENGTH < writeBuffer.remaining()) {
+
+            Stream stream = null;
+
+            for (Deque<Stream> urgency : sending) {
+
+                stream = urgency.poll();
+
+                if (isNotNull(stream)) break;
+            }
+
+            if (isNull(stream)) return;
+
+            stream.sending = false;
+
+            long window = Math.min(sendWindow, stream.sendWindow);
+            int length = (int) Math.min(window, Math.min(maxFrameSize, writeBuffer.remaining() - FRAME_HEADER_LENGTH));
+
+            int read;
+
+            try {
+
+                if (isNull(bodyBuffer)) bodyBuffer = new byte[DEFAULT_MAX_FRAME_SIZE];
+
+                read = stream.body.read(bodyBuffer, 0, Math.min(length, bodyBuffer.length));
+
+            } catch (IOException e) {
+
+                reset(stream, CANCEL, new TransportException("The request body could not be read.", e));
+
+                continue;
+            }
+
+            if (-1 == read) {
+
+                closeQuietly(stream.body);
+
+                stream.body = null;
+
+                writeFrameHeader(writeBuffer, 0, DATA, FLAG_END_STREAM, stream.id);
+
+                continue;
+            }
+
+            writeFrameHeader(writeBuffer, read, DATA, 0, stream.id);
+
+            writeBuffer.put(bodyBuffer, 0, read);
+
+            sendWindow -= read;
+            stream.sendWindow -= read;
+
+            // Go to the back of the queue so that streams of the same urgency take turns.
+            send(stream);
+        }
+    }
+
+    private void flush() {
+
+        if (closed || !connected) return;
+
+        try {
+
+            while (true) {
+
+                writeData();
+
+                // Anything the TLS channel has encrypted has to be written before the socket can be forgotten about.
+                if (0 == writeBuffer.position() && (isNull(tls) || tls.flush())) {
+
+                    key.interestOps(SelectionKey.OP_READ);
+
+                    return;
+                }
+
+                writeBuffer.flip();
+                io.write(writeBuffer);
+                writeBuffer.compact();
+
+                // The socket buffer is full so wait until it is writable again.
+                if (0 < writeBuffer.position() || (isNotNull(tls) && !tls.flush())) {
+
+                    key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+
+                    return;
+                }
+            }
+
+        } catch (IOException e) {
+
+            fail(e);
+        }
+    }
+
+    /**
+     * Start using the socket the connector opened, the preface is sent straight away on an {@code http} connection and
+     * once the handshake has completed on an {@code https} connection.
+     */
+    private void connected(SocketChannel connected) {
+
+        channel = connected;
+
+        try {
+
+            if (NioRequestHandler.HTTPS.equals(route.getScheme())) {
+
+                TlsConfig config = pool.getTlsConfig();
+
+                tls = new TlsChannel(channel, config.createEngine(route, APPLICATION_PROTOCOLS), route.getHost(),
+                        config.getHostnameVerifier());
+            }
+
+            io = isNull(tls) ? channel : tls;
+
+            // The preface can't be sent until the TLS handshake has completed.
+            this.connected = isNull(tls);
+
+            key = eventLoop.register(channel, this.connected ? SelectionKey.OP_READ : 0, this);
+
+            if (isNotNull(tls)) {
+
+                scheduleHandshakeTimeout();
+
+                handshake();
+            }
+
+            flush();
+
+        } catch (IOException e) {
+
+            fail(e);
+        }
+    }
+
+    /**
+     * Carry on with the TLS handshake, the connection can only be used once the server has agreed to {@code h2}
+     * otherwise it falls back to {@code HTTP/1.1}.
+     */
+    private void handshake() throws IOException {
+
+        int ops = tls.handshake();
+
+        if (0 != ops) {
+
+            key.interestOps(ops);
+
+            return;
+        }
+
+        if (!TlsConfig.H2.equals(tls.getApplicationProtocol())) {
+
+            fallBack();
+
+            return;
+        }
+
+        if (isNotNull(handshakeTimeout)) handshakeTimeout.cancel();
+
+        connected = true;
+
+        // The server's settings may have arrived along with the end of the handshake.
+        if (tls.hasBuffered()) read();
+    }
+
+    /**
+     * Hand the socket over to an {@code HTTP/1.1} {@link Connection} because the server didn't agree to {@code h2}.
+     * Nothing has been written to the server yet, so the first exchange is sent on the handed over socket and the rest
+     * go back to the pool, which no longer multiplexes the route.
+     */
+    private void fallBack() {
+
+        List<Exchange> unsent = new ArrayList<Exchange>();
+
+        for (Stream stream : streams.values()) unsent.add(stream.exchange);
+
+        for (Deque<Exchange> urgency : pending) unsent.addAll(urgency);
+
+        streams.clear();
+        clearPending();
+
+        for (Exchange exchange : unsent) exchange.requeue();
+
+        Exchange first = unsent.isEmpty() ? null : unsent.remove(0);
+
+        Connection connection = pool.fallBack(this, first);
+
+        if (isNull(connection)) {
+
+            close();
+
+            if (isNotNull(first)) execute(first);
+
+        } else {
+
+            SocketChannel handedOver = channel;
+
+            // The socket and its selection key now belong to the HTTP/1.1 connection so they mustn't be closed.
+            channel = null;
+            key = null;
+
+            close();
+
+            connection.takeOver(handedOver, tls, first);
+        }
+
+        for (Exchange exchange : unsent) execute(exchange);
+    }
+
+    /**
+     * Fail the connection if the {@code TLS} handshake hasn't completed once the handshake timeout has passed.
+     */
+    private void scheduleHandshakeTimeout() {
+
+        if (0 == tlsHandshakeTimeout) return;
+
+        handshakeTimeout = pool.getTimer().schedule(eventLoop, new Runnable() {
+
+            @Override
+            public void run() {
+
+                if (closed || tls.isHandshaken()) return;
+
+                fail(new RequestTimeoutException("The TLS handshake with (" + route + ") did not complete within (" +
+                        tlsHandshakeTimeout + ") milliseconds."));
+            }
+        }, tlsHandshakeTimeout);
+    }
+
+    private void read() throws IOException {
+
+        while (!closed) {
+
+            int start = prepareRead();
+
+            ByteBuffer buffer = readBuffer.getBuffer();
+
+            int read = io.read(buffer);
+
+            buffer.limit(buffer.position());
+            buffer.position(start);
+
+            if (0 == read) return;
+
+            if (-1 == read) {
+
+                if (goingAway && streams.isEmpty()) close();
+                else fail(new TransportException("The connection was closed by the server."));
+
+                return;
+            }
+
+            while (!closed && readFrame()) {
+                // Keep reading frames until there isn't a complete one left in the buffer.
+            }
+        }
+    }
+
+    /**
+     * The read buffer holds any partial frame that is left over from the last read between its position and limit.
+     * The partial frame is moved to the start of the buffer unless a response body still refers to the DATA frames
+     * before it, in that case the next read goes into the space after the partial frame, or the partial frame is moved
+     * into a new buffer if there isn't enough space left for the whole frame.
+     *
+     * @return the position that the partial frame starts at, the buffer is left ready to be read into.
+     */
+    private int prepareRead() {
+
+        ByteBuffer buffer = readBuffer.getBuffer();
+
+        if (!readBuffer.isShared()) {
+
+            buffer.compact();
+
+            return 0;
+        }
+
+        int start = buffer.position();
+
+        if (FRAME_HEADER_LENGTH + DEFAULT_MAX_FRAME_SIZE > buffer.capacity() - start) {
+
+            PooledBuffer replacement = pool.getBufferPool().acquire();
+            replacement.getBuffer().put(buffer);
+
+            readBuffer.release();
+            readBuffer = replacement;
+
+            return 0;
+        }
+
+        buffer.position(buffer.limit());
+        buffer.limit(buffer.capacity());
+
+        return start;
+    }
+
+    private boolean readFrame() {
+
+        ByteBuffer buffer = readBuffer.getBuffer();
+
+        if (FRAME_HEADER_LENGTH > buffer.remaining()) return false;
+
+        int start = buffer.position();
+        int length = ((buffer.get(start) & 0xFF) << 16) | ((buffer.get(start + 1) & 0xFF) << 8) |
+                (buffer.get(start + 2) & 0xFF);
+
+        // This end never raises the maximum frame size from the default.
+        if (DEFAULT_MAX_FRAME_SIZE < length) throw error(FRAME_SIZE_ERROR, "A frame was larger than allowed.");
+
+        if (FRAME_HEADER_LENGTH + length > buffer.remaining()) return false;
+
+        int type = buffer.get(start + 3) & 0xFF;
+        int flags = buffer.get(start + 4) & 0xFF;
+        int streamId = buffer.getInt(start + 5) & Integer.MAX_VALUE;
+
+        buffer.position(start + FRAME_HEADER_LENGTH);
+
+        ByteBuffer payload = buffer.slice();
+        payload.limit(length);
+
+        buffer.position(start + FRAME_HEADER_LENGTH + length);
+
+        received = true;
+
+        if (isNotNull(headerBlock) && CONTINUATION != type) {
+
+            throw error(PROTOCOL_ERROR, "A header block was interrupted by another frame.");
+        }
+
+        switch (type) {
+
+            case DATA:
+                onData(flags, streamId, payload);
+                break;
+
+            case HEADERS:
+                onHeaders(flags, streamId, payload);
+                break;
+
+            case RST_STREAM:
+                onReset(streamId, payload);
+                break;
+
+            case SETTINGS:
+                onSettings(flags, streamId, payload);
+                break;
+
+            case PUSH_PROMISE:
+                throw error(PROTOCOL_ERROR, "The server pushed a stream after push was disabled.");
+
+            case PING:
+                onPing(flags, streamId, payload);
+                break;
+
+            case GOAWAY:
+                onGoAway(streamId, payload);
+                break;
+
+            case WINDOW_UPDATE:
+                onWindowUpdate(streamId, payload);
+                break;
+
+            case CONTINUATION:
+                onContinuation(flags, streamId, payload);
+                break;
+
+            default:
+                // PRIORITY frames and unknown frame types are ignored.
+                break;
+        }
+
+        return true;
+    }
+
+    private void onData(int flags, int streamId, ByteBuffer payload) {
+
+        if (0 == streamId) throw error(PROTOCOL_ERROR, "A DATA frame was sent on the connection stream.");
+
+        int length = payload.remaining();
+
+        receiveWindow -= length;
+        unacknowledged += length;
+
+        if (0 > receiveWindow) throw error(FLOW_CONTROL_ERROR, "The server sent more than the connection window.");
+
+        unpad(flags, payload);
+
+        Stream stream = streams.get(streamId);
+
+        // Data can still arrive for a stream that this end has reset.
+        if (isNotNull(stream)) {
+
+            stream.receiveWindow -= length;
+            stream.unacknowledged += length;
+
+            if (!stream.headersReceived) {
+
+                reset(stream, PROTOCOL_ERROR, new TransportException("The server sent data before the headers."));
+
+            } else if (0 > stream.receiveWindow) {
+
+                reset(stream, FLOW_CONTROL_ERROR, new TransportException("The server sent more than the window."));
+
+            } else {
+
+                if (payload.hasRemaining()) stream.exchange.onContent(payload);
+
+                if (0 != (flags & FLAG_END_STREAM)) complete(stream);
+                else credit(stream, false);
+            }
+        }
+
+        if (CONNECTION_WINDOW / 2 <= unacknowledged) {
+
+            writeWindowUpdate(0, unacknowledged);
+
+            receiveWindow += unacknowledged;
+            unacknowledged = 0;
+        }
+    }
+
+    private void onHeaders(int flags, int streamId, ByteBuffer payload) {
+
+        if (0 == streamId) throw error(PROTOCOL_ERROR, "A HEADERS frame was sent on the connection stream.");
+
+        unpad(flags, payload);
+
+        if (0 != (flags & FLAG_PRIORITY)) {
+
+            if (5 > payload.remaining()) throw error(FRAME_SIZE_ERROR, "A HEADERS frame was too short.");
+
+            payload.position(payload.position() + 5);
+        }
+
+        headerBlock = new ByteArrayOutputStream(payload.remaining());
+        headerStreamId = streamId;
+        headerEndStream = 0 != (flags & FLAG_END_STREAM);
+
+        onContinuation(flags, streamId, payload);
+    }
+
+    private void onContinuation(int flags, int streamId, ByteBuffer payload) {
+
+        if (isNull(headerBlock) || headerStreamId != streamId) {
+
+            throw error(PROTOCOL_ERROR, "A CONTINUATION frame was sent without a header block.");
+        }
+
+        if (MAX_HEADER_BLOCK_SIZE < headerBlock.size() + payload.remaining()) {
+
+            throw error(PROTOCOL_ERROR, "A header block was larger than allowed.");
+        }
+
+        byte[] fragment = new byte[payload.remaining()];
+        payload.get(fragment);
+
+        headerBlock.write(fragment, 0, fragment.length);
+
+        if (0 == (flags & FLAG_END_HEADERS)) return;
+
+        byte[] block = headerBlock.toByteArray();
+
+        headerBlock = null;
+
+        List<Header<String>> fields;
+
+        try {
+
+            fields = decoder.decode(block);
+
+        } catch (TransportException e) {
+
+            throw error(COMPRESSION_ERROR, e.getMessage());
+        }
+
+        Stream stream = streams.get(streamId);
+
+        if (isNotNull(stream)) onHeaders(stream, fields);
+    }
+
+    private void onHeaders(Stream stream, List<Header<String>> fields) {
+
+        // A second header block is the trailers, which are only allowed to end the stream.
+        if (stream.headersReceived) {
+
+            if (headerEndStream) complete(stream);
+            else reset(stream, PROTOCOL_ERROR, new TransportException("The server sent trailers mid stream."));
+
+            return;
+        }
+
+        int status = -1;
+
+        for (Header<String> field : fields) {
+
+            if (!":status".equals(field.getName())) continue;
+
+            try {
+
+                status = Integer.parseInt(field.getValue());
+
+            } catch (NumberFormatException e) {
+
+                // Handled as a missing status.
+            }
+        }
+
+        if (100 > status || 999 < status) {
+
+            reset(stream, PROTOCOL_ERROR, new TransportException("The server sent a response without a status."));
+
+            return;
+        }
+
+        // An informational response is always followed by the real one.
+        if (200 > status) {
+
+            if (headerEndStream) {
+
+                reset(stream, PROTOCOL_ERROR, new TransportException("The server ended a stream without a response."));
+            }
+
+            return;
+        }
+
+        Exchange exchange = stream.exchange;
+
+        exchange.onStatus(status);
+
+        for (Header<String> field : fields) {
+
+            if (':' != field.getName().charAt(0)) exchange.onHeader(capitalise(field.getName()), field.getValue());
+        }
+
+        stream.headersReceived = true;
+
+        exchange.onHeadersComplete();
+
+        if (headerEndStream) complete(stream);
+    }
+
+    private void onReset(int streamId, ByteBuffer payload) {
+
+        if (0 == streamId) throw error(PROTOCOL_ERROR, "A RST_STREAM frame was sent on the connection stream.");
+
+        if (4 != payload.remaining()) throw error(FRAME_SIZE_ERROR, "A RST_STREAM frame was the wrong size.");
+
+        int code = payload.getInt();
+
+        Stream stream = remove(streamId);
+
+        if (isNull(stream)) return;
+
+        Exchange exchange = stream.exchange;
+
+        // A refused stream was never processed so it can be sent again.
+        if (REFUSED_STREAM == code && !stream.headersReceived && exchange.isRetryable()) {
+
+            exchange.retry();
+
+            execute(exchange);
+
+        } else {
+
+            exchange.fail(new TransportException("The stream was reset by the server with the error code (" + code +
+                    ")."));
+        }
+
+        startStreams();
+
+        idle();
+    }
+
+    private void onSettings(int flags, int streamId, ByteBuffer payload) {
+
+        if (0 != streamId) throw error(PROTOCOL_ERROR, "A SETTINGS frame was sent on a stream.");
+
+        if (0 != (flags & FLAG_ACK)) {
+
+            if (payload.hasRemaining()) throw error(FRAME_SIZE_ERROR, "A SETTINGS acknowledgement had a payload.");
+
+            return;
+        }
+
+        if (0 != payload.remaining() % 6) throw error(FRAME_SIZE_ERROR, "A SETTINGS frame was the wrong size.");
+
+        while (payload.hasRemaining()) {
+
+            int id = payload.getShort() & 0xFFFF;
+            long value = payload.getInt() & 0xFFFFFFFFL;
+
+            switch (id) {
+
+                case SETTINGS_HEADER_TABLE_SIZE:
+                    encoder.setMaxTableSize((int) Math.min(Integer.MAX_VALUE, value));
+                    break;
+
+                case SETTINGS_ENABLE_PUSH:
+                    if (1 < value) throw error(PROTOCOL_ERROR, "The server sent an invalid push setting.");
+                    break;
+
+                case SETTINGS_MAX_CONCURRENT_STREAMS:
+                    peerMaxConcurrentStreams = (int) Math.min(Integer.MAX_VALUE, value);
+                    break;
+
+                case SETTINGS_INITIAL_WINDOW_SIZE:
+                    if (MAX_WINDOW_SIZE < value) throw error(FLOW_CONTROL_ERROR, "The window size was too large.");
+                    updateInitialWindow((int) value);
+                    break;
+
+                case SETTINGS_MAX_FRAME_SIZE:
+                    if (DEFAULT_MAX_FRAME_SIZE > value || MAX_MAX_FRAME_SIZE < value) {
+
+                        throw error(PROTOCOL_ERROR, "The server sent an invalid maximum frame size.");
+                    }
+                    maxFrameSize = (int) value;
+                    break;
+
+                default:
+                    // Unknown settings are ignored.
+                    break;
+            }
+        }
+
+        writeFrame(SETTINGS, FLAG_ACK, 0, null, 0, 0);
+
+        startStreams();
+    }
+
+    private void updateInitialWindow(int window) {
+
+        int delta = window - initialSendWindow;
+
+        initialSendWindow = window;
+
+        for (Stream stream : streams.values()) {
+
+            stream.sendWindow += delta;
+
+            if (MAX_WINDOW_SIZE < stream.sendWindow) throw error(FLOW_CONTROL_ERROR, "A stream window was too large.");
+
+            send(stream);
+        }
+    }
+
+    private void onPing(int flags, int streamId, ByteBuffer payload) {
+
+        if (0 != streamId) throw error(PROTOCOL_ERROR, "A PING frame was sent on a stream.");
+
+        if (8 != payload.remaining()) throw error(FRAME_SIZE_ERROR, "A PING frame was the wrong size.");
+
+        if (0 == (flags & FLAG_ACK)) {
+
+            // The read buffer is direct so the opaque data has to be copied out to be echoed back.
+            byte[] data = new byte[8];
+            payload.get(data);
+
+            writeFrame(PING, FLAG_ACK, 0, data, 0, 8);
+        }
+    }
+
+    private void onGoAway(int streamId, ByteBuffer payload) {
+
+        if (0 != streamId) throw error(PROTOCOL_ERROR, "A GOAWAY frame was sent on a stream.");
+
+        if (8 > payload.remaining()) throw error(FRAME_SIZE_ERROR, "A GOAWAY frame was too short.");
+
+        int lastStreamId = payload.getInt() & Integer.MAX_VALUE;
+        int code = payload.getInt();
+
+        goingAway = true;
+
+        pool.retire(this);
+
+        // The streams after the last one the server processed never reached the application, so they can be sent
+        // again on a new connection.
+        for (Stream stream : new ArrayList<Stream>(streams.values())) {
+
+            if (lastStreamId >= stream.id) continue;
+
+            remove(stream.id);
+
+            if (stream.exchange.isRetryable()) {
+
+                stream.exchange.retry();
+
+                execute(stream.exchange);
+
+            } else {
+
+                stream.exchange.fail(new TransportException("The server went away with the error code (" + code +
+                        ") before processing the request."));
+            }
+        }
+
+        requeuePending();
+
+        idle();
+    }
+
+    private void onWindowUpdate(int streamId, ByteBuffer payload) {
+
+        if (4 != payload.remaining()) throw error(FRAME_SIZE_ERROR, "A WINDOW_UPDATE frame was the wrong size.");
+
+        int increment = payload.getInt() & Integer.MAX_VALUE;
+
+        if (0 == streamId) {
+
+            if (0 == increment) throw error(PROTOCOL_ERROR, "The connection window was updated by zero.");
+
+            sendWindow += increment;
+
+            if (MAX_WINDOW_SIZE < sendWindow) throw error(FLOW_CONTROL_ERROR, "The connection window was too large.");
+
+            return;
+        }
+
+        Stream stream = streams.get(streamId);
+
+        if (isNull(stream)) return;
+
+        if (0 == increment) {
+
+            reset(stream, PROTOCOL_ERROR, new TransportException("The stream window was updated by zero."));
+
+            return;
+        }
+
+        stream.sendWindow += increment;
+
+        if (MAX_WINDOW_SIZE < stream.sendWindow) {
+
+            reset(stream, FLOW_CONTROL_ERROR, new TransportException("The stream window was too large."));
+
+            return;
+        }
+
+        send(stream);
+    }
+
+    private void unpad(int flags, ByteBuffer payload) {
+
+        if (0 == (flags & FLAG_PADDED)) return;
+
+        if (!payload.hasRemaining()) throw error(FRAME_SIZE_ERROR, "A padded frame had no padding length.");
+
+        int padding = payload.get() & 0xFF;
+
+        if (padding > payload.remaining()) throw error(PROTOCOL_ERROR, "A frame had more padding than payload.");
+
+        payload.limit(payload.limit() - padding);
+    }
+
+    /**
+     * Credit the supplied stream with the data it has received, unless its body isn't accepting any more. The credit
+     * is held back until half the window has been used so that there isn't a {@code WINDOW_UPDATE} for every frame.
+     */
+    private void credit(Stream stream, boolean force) {
+
+        if (stream.suspended || 0 == stream.unacknowledged) return;
+
+        if (!force && STREAM_WINDOW / 2 > stream.unacknowledged) return;
+
+        writeWindowUpdate(stream.id, stream.unacknowledged);
+
+        stream.receiveWindow += stream.unacknowledged;
+        stream.unacknowledged = 0;
+    }
+
+    private void complete(Stream stream) {
+
+        remove(stream.id);
+
+        // The server has answered before the whole request was sent so tell it the rest isn't coming.
+        if (isNotNull(stream.body)) {
+
+            writeReset(stream.id, CANCEL);
+
+            closeQuietly(stream.body);
+        }
+
+        stream.exchange.onComplete();
+
+        startStreams();
+
+        idle();
+
+        stream.exchange.complete();
+    }
+
+    private void reset(Stream stream, int code, TransportException cause) {
+
+        remove(stream.id);
+
+        writeReset(stream.id, code);
+
+        closeQuietly(stream.body);
+
+        stream.exchange.fail(cause);
+
+        startStreams();
+
+        idle();
+    }
+
+    private Stream remove(int streamId) {
+
+        Stream stream = streams.remove(streamId);
+
+        if (isNotNull(stream) && stream.sending) {
+
+            sending.get(stream.urgency).remove(stream);
+
+            stream.sending = false;
+        }
+
+        return stream;
+    }
+
+    private Stream find(Exchange exchange) {
+
+        for (Stream stream : streams.values()) if (exchange == stream.exchange) return stream;
+
+        return null;
+    }
+
+    /**
+     * Note when the connection has nothing left to do, it is then either kept for the next exchange or closed if it is
+     * going away.
+     */
+    private void idle() {
+
+        if (closed || !streams.isEmpty() || 0 < pendingCount) return;
+
+        if (goingAway || shutdown) {
+
+            writeGoAway(NO_ERROR);
+
+            writeNow();
+
+            close();
+
+            return;
+        }
+
+        idleSince = System.currentTimeMillis();
+    }
+
+    private void requeuePending() {
+
+        List<Exchange> requeued = new ArrayList<Exchange>();
+
+        for (Deque<Exchange> urgency : pending) requeued.addAll(urgency);
+
+        clearPending();
+
+        for (Exchange exchange : requeued) {
+
+            exchange.requeue();
+
+            execute(exchange);
+        }
+    }
+
+    private void clearPending() {
+
+        for (Deque<Exchange> urgency : pending) urgency.clear();
+
+        pendingCount = 0;
+    }
+
+    private void execute(Exchange next) {
+
+        try {
+
+            pool.execute(next);
+
+        } catch (TransportException e) {
+
+            next.fail(e);
+        }
+    }
+
+    /**
+     * Tell the server why the connection is being closed and create the exception that will close it.
+     */
+    private TransportException error(int code, String message) {
+
+        writeGoAway(code);
+
+        writeNow();
+
+        return new TransportException(message);
+    }
+
+    /**
+     * Write as much of the write buffer as the socket will take without waiting, this is used just before the
+     * connection is closed.
+     */
+    private void writeNow() {
+
+        if (closed || !connected) return;
+
+        try {
+
+            writeBuffer.flip();
+            io.write(writeBuffer);
+
+        } catch (IOException e) {
+
+            // The connection is being closed anyway.
+
+        } finally {
+
+            writeBuffer.compact();
+        }
+    }
+
+    private void writePreface() {
+
+        ensureCapacity(PREFACE.length + FRAME_HEADER_LENGTH + 12 + FRAME_HEADER_LENGTH + 4);
+
+        writeBuffer.put(PREFACE);
+
+        writeFrameHeader(writeBuffer, 12, SETTINGS, 0, 0);
+        writeBuffer.putShort((short) SETTINGS_ENABLE_PUSH).putInt(0);
+        writeBuffer.putShort((short) SETTINGS_INITIAL_WINDOW_SIZE).putInt(STREAM_WINDOW);
+
+        writeWindowUpdate(0, CONNECTION_WINDOW - DEFAULT_WINDOW_SIZE);
+    }
+
+    private void writeWindowUpdate(int streamId, int increment) {
+
+        if (closed) return;
+
+        ensureCapacity(FRAME_HEADER_LENGTH + 4);
+
+        writeFrameHeader(writeBuffer, 4, WINDOW_UPDATE, 0, streamId);
+        writeBuffer.putInt(increment);
+    }
+
+    private void writeReset(int streamId, int code) {
+
+        if (closed) return;
+
+        ensureCapacity(FRAME_HEADER_LENGTH + 4);
+
+        writeFrameHeader(writeBuffer, 4, RST_STREAM, 0, streamId);
+        writeBuffer.putInt(code);
+    }
+
+    private void writeGoAway(int code) {
+
+        if (closed) return;
+
+        ensureCapacity(FRAME_HEADER_LENGTH + 8);
+
+        // This end never accepts streams from the server.
+        writeFrameHeader(writeBuffer, 8, GOAWAY, 0, 0);
+        writeBuffer.putInt(0);
+        writeBuffer.putInt(code);
+    }
+
+    private void writeFrame(int type, int flags, int streamId, byte[] payload, int offset, int length) {
+
+        if (closed) return;
+
+        ensureCapacity(FRAME_HEADER_LENGTH + length);
+
+        writeFrameHeader(writeBuffer, length, type, flags, streamId);
+
+        if (0 < length) writeBuffer.put(payload, offset, length);
+    }
+
+    private void ensureCapacity(int length) {
+
+        if (length <= writeBuffer.remaining()) return;
+
+        PooledBuffer grown = pool.getBufferPool().acquire(Math.max(writeBuffer.capacity() * 2,
+                writeBuffer.position() + length));
+
+        writeBuffer.flip();
+
+        grown.getBuffer().put(writeBuffer);
+
+        pooledWriteBuffer.release();
+        pooledWriteBuffer = grown;
+        writeBuffer = grown.getBuffer();
+    }
+
+    private void close() {
+
+        if (closed) return;
+
+        closed = true;
+
+        if (isNotNull(connector)) connector.cancel();
+
+        if (isNotNull(handshakeTimeout)) handshakeTimeout.cancel();
+
+        // Any body that still refers to the read buffer keeps its own reference.
+        if (isNotNull(readBuffer)) readBuffer.release();
+
+        // The write buffer goes back to the pool so nothing can be written once the connection has been closed.
+        if (isNotNull(pooledWriteBuffer)) pooledWriteBuffer.release();
+
+        for (Stream stream : streams.values()) closeQuietly(stream.body);
+
+        if (isNotNull(key)) key.cancel();
+
+        if (isNotNull(channel)) {
+
+            try {
+
+                if (isNotNull(tls)) tls.close();
+                else channel.close();
+
+            } catch (IOException e) {
+
+                // The connection is being thrown away so there's nothing else to do.
+            }
+        }
+
+        pool.remove(this);
+    }
+}
@@ -0,0 +1,19 @@
+package http.transport;
+
+/**
+ * The versions of {@code HTTP} that the {@link NioRequestHandler} can speak to a server.
+ *
+ * @author Karl Bennett
+ */
+public enum HttpVersion {
+
+    /**
+     * {@code HTTP/1.1}, with one request at a time on each connection unless pipelining is enabled.
+     */
+    HTTP_1_1,
+
+    /**
+     * {@code HTTP/2}, with every request to a server multiplexed onto a single connection.
+     */
+    HTTP_2
+}
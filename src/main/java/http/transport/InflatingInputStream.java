@@ -0,0 +1,346 @@
+package http.transport;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import static http.util.Asserts.assertNotNull;
+import static http.util.Checks.isNull;
+
+/**
+ * Inflates a {@code gzip} or {@code deflate} response body as it is read. Unlike {@link java.util.zip.GZIPInputStream}
+ * the {@link Inflater} isn't created for each body, it is taken from a shared pool when the body is first read and
+ * handed back, reset, once the body has been read or closed. This saves allocating and freeing the native state of an
+ * inflater for every response.
+ * <p/>
+ * A {@code gzip} body can hold several members one after the other, the checksum and length in the trailer of each
+ * member is checked. A {@code deflate} body should be wrapped in the {@code zlib} format but some servers send the raw
+ * deflate data, so the format is detected from the first two bytes.
+ *
+ * @author Karl Bennett
+ */
+class InflatingInputStream extends InputStream {
+
+    static final int MAX_POOLED = 32;
+
+    private static final int INPUT_SIZE = 8 * 1024;
+
+    private static final int GZIP_MAGIC = 0x8b1f;
+    private static final int GZIP_DEFLATE = 8;
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+
+    private static final Queue<Inflater> ZLIB_INFLATERS = new ConcurrentLinkedQueue<Inflater>();
+    private static final Queue<Inflater> RAW_INFLATERS = new ConcurrentLinkedQueue<Inflater>();
+    private static final AtomicInteger ZLIB_COUNT = new AtomicInteger();
+    private static final AtomicInteger RAW_COUNT = new AtomicInteger();
+
+
+    private static Inflater acquire(boolean raw) {
+
+        Inflater inflater = (raw ? RAW_INFLATERS : ZLIB_INFLATERS).poll();
+
+        if (isNull(inflater)) return new Inflater(raw);
+
+        (raw ? RAW_COUNT : ZLIB_COUNT).decrementAndGet();
+
+        return inflater;
+    }
+
+    private static void release(Inflater inflater, boolean raw) {
+
+        AtomicInteger count = raw ? RAW_COUNT : ZLIB_COUNT;
+
+        if (MAX_POOLED < count.incrementAndGet()) {
+
+            count.decrementAndGet();
+            inflater.end();
+
+            return;
+        }
+
+        inflater.reset();
+        (raw ? RAW_INFLATERS : ZLIB_INFLATERS).offer(inflater);
+    }
+
+    /**
+     * @return the number of inflaters that are waiting to be reused.
+     */
+    static int getPooledCount() {
+
+        return ZLIB_COUNT.get() + RAW_COUNT.get();
+    }
+
+
+    private final InputStream in;
+    private final boolean gzip;
+    private final byte[] input = new byte[INPUT_SIZE];
+    private final CRC32 crc;
+
+    private Inflater inflater;
+    private boolean raw;
+    private int position;
+    private int limit;
+    private long size;
+    private boolean started;
+    private boolean finished;
+    private boolean closed;
+
+
+    /**
+     * Create a new {@code InflatingInputStream}.
+     *
+     * @param in   the compressed body.
+     * @param gzip true if the body is {@code gzip}, false if it is {@code deflate}.
+     */
+    InflatingInputStream(InputStream in, boolean gzip) {
+
+        assertNotNull("in", in);
+
+        this.in = in;
+        this.gzip = gzip;
+        this.crc = gzip ? new CRC32() : null;
+    }
+
+
+    @Override
+    public int read() throws IOException {
+
+        byte[] single = new byte[1];
+
+        return -1 == read(single, 0, 1) ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] bytes, int off, int len) throws IOException {
+
+        if (closed) throw new IOException("The response body stream has been closed.");
+
+        if (0 == len) return 0;
+
+        if (!started) start();
+
+        while (!finished) {
+
+            int inflated;
+
+            try {
+
+                inflated = inflater.inflate(bytes, off, len);
+
+            } catch (DataFormatException e) {
+
+                throw new IOException("The response body could not be decompressed.", e);
+            }
+
+            if (0 < inflated) {
+
+                if (gzip) crc.update(bytes, off, inflated);
+
+                size += inflated;
+
+                return inflated;
+            }
+
+            if (inflater.finished()) {
+
+                endMember();
+
+            } else if (inflater.needsDictionary()) {
+
+                throw new IOException("The response body needs a preset dictionary to be decompressed.");
+
+            } else if (inflater.needsInput()) {
+
+                if (!fill()) throw new EOFException("The compressed response body ended early.");
+
+                inflater.setInput(input, position, limit - position);
+                position = limit;
+            }
+        }
+
+        return -1;
+    }
+
+    @Override
+    public int available() throws IOException {
+
+        return finished || closed ? 0 : 1;
+    }
+
+    @Override
+    public void close() throws IOException {
+
+        if (closed) return;
+
+        closed = true;
+
+        releaseInflater();
+
+        in.close();
+    }
+
+    /**
+     * Read the header of the body and take an inflater from the pool.
+     */
+    private void start() throws IOException {
+
+        started = true;
+
+        // An empty body is left empty whatever it claims to be encoded with.
+        if (!fill()) {
+
+            finished = true;
+
+            return;
+        }
+
+        if (gzip) {
+
+            readGzipHeader();
+
+            raw = true;
+
+        } else {
+
+            // A zlib header is a compression method of 8 and a check that makes the first two bytes a multiple of 31.
+            if (1 == limit - position) fill();
+
+            int first = input[position] & 0xFF;
+            int second = position + 1 < limit ? input[position + 1] & 0xFF : 0;
+
+            raw = GZIP_DEFLATE != (first & 0x0F) || 0 != ((first << 8) | second) % 31;
+        }
+
+        inflater = acquire(raw);
+
+        inflater.setInput(input, position, limit - position);
+        position = limit;
+    }
+
+    /**
+     * Check the trailer of the member that has just been inflated and start the next member if there is one.
+     */
+    private void endMember() throws IOException {
+
+        // Whatever the inflater didn't use is the start of the trailer.
+        position = limit - inflater.getRemaining();
+
+        if (!gzip) {
+
+            finish();
+
+            return;
+        }
+
+        long expectedCrc = readInt();
+        long expectedSize = readInt();
+
+        if (expectedCrc != crc.getValue() || expectedSize != (size & 0xFFFFFFFFL)) {
+
+            throw new IOException("The decompressed response body failed its checksum.");
+        }
+
+        if (position == limit && !fill()) {
+
+            finish();
+
+            return;
+        }
+
+        crc.reset();
+        size = 0;
+        inflater.reset();
+
+        readGzipHeader();
+
+        inflater.setInput(input, position, limit - position);
+        position = limit;
+    }
+
+    private void finish() {
+
+        finished = true;
+
+        releaseInflater();
+    }
+
+    private void releaseInflater() {
+
+        if (isNull(inflater)) return;
+
+        release(inflater, raw);
+
+        inflater = null;
+    }
+
+    private void readGzipHeader() throws IOException {
+
+        if (GZIP_MAGIC != readShort()) throw new IOException("The response body is not in the gzip format.");
+
+        if (GZIP_DEFLATE != readByte()) throw new IOException("The response body uses an unknown gzip method.");
+
+        int flags = readByte();
+
+        // The modification time, extra flags, and operating system.
+        skip(6);
+
+        if (0 != (flags & FEXTRA)) skip(readShort());
+        if (0 != (flags & FNAME)) while (0 != readByte()) continue;
+        if (0 != (flags & FCOMMENT)) while (0 != readByte()) continue;
+        if (0 != (flags & FHCRC)) skip(2);
+    }
+
+    private long readInt() throws IOException {
+
+        return readShort() | ((long) readShort() << 16);
+    }
+
+    private int readShort() throws IOException {
+
+        return readByte() | (readByte() << 8);
+    }
+
+    private int readByte() throws IOException {
+
+        if (position == limit && !fill()) throw new EOFException("The compressed response body ended early.");
+
+        return input[position++] & 0xFF;
+    }
+
+    private void skip(int count) throws IOException {
+
+        for (int i = 0; i < count; i++) readByte();
+    }
+
+    /**
+     * Read more of the compressed body into the input buffer, keeping anything that hasn't been used yet.
+     *
+     * @return false if the body has ended.
+     */
+    private boolean fill() throws IOException {
+
+        if (0 < position) {
+
+            System.arraycopy(input, position, input, 0, limit - position);
+            limit -= position;
+            position = 0;
+        }
+
+        int read = in.read(input, limit, input.length - limit);
+
+        if (-1 == read) return false;
+
+        limit += read;
+
+        return true;
+    }
+}
@@ -0,0 +1,651 @@
+package http.transport;
+
+import http.AsyncRequestHandler;
+import http.Request;
+import http.RequestHandler;
+import http.Response;
+import http.ResponseFuture;
+import http.dns.AddressRecord;
+import http.dns.CachingResolver;
+import http.dns.Resolver;
+import http.dns.SystemResolver;
+
+import java.io.Closeable;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static http.transport.ContentDecoders.ACCEPT_ENCODING;
+import static http.util.Asserts.assertNotNull;
+import static http.util.Checks.isNotNull;
+import static http.util.Checks.isNull;
+
+/**
+ * The default {@link RequestHandler} that is used by the {@link http.Client}. It carries out requests with non-blocking
+ * {@link java.nio.channels.SocketChannel}s that are driven by a fixed number of {@link java.nio.channels.Selector}
+ * event loops, so the number of requests that can be in flight is not limited by the number of threads.
+ * <p/>
+ * The calling thread only blocks until the response headers have been received, the response body is then streamed
+ * from the connection as the caller reads it. The handler is also an {@link AsyncRequestHandler} so requests can be
+ * made without blocking a thread at all.
+ * <p/>
+ * Response bodies are read into pooled direct buffers and are never copied onto the heap by the handler. Every body is
+ * also a {@link ChunkedBody} so a caller that is passing the body on can take the content in those buffers directly.
+ * <p/>
+ * Connections are kept alive and pooled per scheme, host, and port. The number of connections to a single route and in
+ * total can be limited, requests that can't be given a connection are queued until one is released. Idle connections
+ * are closed once they have been idle for longer than the idle timeout.
+ * <p/>
+ * Every connection is made straight to the server, proxies are not supported so the {@link java.net.ProxySelector} and
+ * the proxy system properties are ignored.
+ * <p/>
+ * Pipelining can be enabled through {@link #setPipelining(boolean)}. {@code GET}, {@code HEAD}, and {@code OPTIONS}
+ * requests without a body are then written back to back on busy connections instead of waiting for a connection of
+ * their own, which saves a round trip per request on high latency links.
+ * <p/>
+ * {@code HTTP/2} can be enabled through {@link #setHttpVersion(HttpVersion)}. Every request to a server is then sent as
+ * a stream on a single multiplexed connection, with the streams started and their bodies sent in the order of the
+ * urgency from each requests {@code Priority} header.
+ * <p/>
+ * {@code https} requests are carried out with an {@link javax.net.ssl.SSLEngine} on the same event loops, configured
+ * through {@link #setTlsConfig(TlsConfig)}. Connections to the same server resume the session of an earlier connection
+ * instead of doing a full handshake. With {@code HTTP/2} enabled an {@code https} server has to agree to {@code h2}
+ * through {@code ALPN}, otherwise its connections fall back to {@code HTTP/1.1}.
+ * <p/>
+ * Response bodies that were sent with a {@code gzip} or {@code deflate} {@code Content-Encoding} are decompressed as
+ * they are read, and every request that doesn't have its own {@code Accept-Encoding} asks for them. A request that
+ * does have its own is given the body just as the server sent it. Other encodings can be decoded by adding a
+ * {@link ContentDecoder}, decompression can be disabled through {@link #setDecompression(boolean)}.
+ * <p/>
+ * Host names are looked up with a {@link Resolver}, by default a {@link CachingResolver} over the resolution of the
+ * JVM that refreshes busy hosts in the background so that requests don't wait on {@code DNS}. A different resolver can
+ * be supplied through {@link #setResolver(Resolver)}.
+ * <p/>
+ * When a host has several addresses a new connection races them, starting an attempt to the next address each time
+ * the connect attempt delay passes without a connection, and uses the first socket that connects. Addresses that
+ * couldn't be connected to are tried last for a while, so an unreachable address doesn't hold up every request.
+ * <p/>
+ * The {@link http.Timeouts} of each request are enforced by a single hashed wheel timer that the handler shares
+ * between all of its requests. Scheduling and cancelling a timeout costs the same however many requests are in flight,
+ * and no thread or scheduled task is ever created per request.
+ *
+ * @author Karl Bennett
+ */
+public class NioRequestHandler implements AsyncRequestHandler, Closeable {
+
+    static final String HTTP = "http";
+    static final String HTTPS = "https";
+
+    private static final AtomicInteger HANDLER_COUNT = new AtomicInteger();
+
+
+    private final EventLoop[] eventLoops;
+    private final ConnectionPool pool;
+    private final ContentDecoders decoders = new ContentDecoders();
+
+    private volatile boolean lazyHeaders;
+    private volatile boolean decompression = true;
+    private volatile Resolver resolver = new CachingResolver(new SystemResolver());
+
+
+    /**
+     * Create a new {@code NioRequestHandler} with a single event loop.
+     */
+    public NioRequestHandler() {
+
+        this(1);
+    }
+
+    /**
+     * Create a new {@code NioRequestHandler} with the supplied number of event loops. Each event loop has its own
+     * thread and new connections are spread across the loops.
+     *
+     * @param eventLoopCount the number of event loops.
+     * @throws IllegalArgumentException if the event loop count is less than one.
+     */
+    public NioRequestHandler(int eventLoopCount) {
+
+        if (1 > eventLoopCount) {
+
+            throw new IllegalArgumentException("The (eventLoopCount) variable must be greater than zero.");
+        }
+
+        int handler = HANDLER_COUNT.incrementAndGet();
+
+        this.eventLoops = new EventLoop[eventLoopCount];
+
+        for (int i = 0; i < eventLoopCount; i++) {
+
+            eventLoops[i] = new EventLoop("http-client-" + handler + "-io-" + i);
+        }
+
+        this.pool = new ConnectionPool(eventLoops);
+    }
+
+
+    /**
+     * @return the maximum number of connections that can be open to a single scheme, host, and port.
+     */
+    public int getMaxConnectionsPerRoute() {
+
+        return pool.getMaxConnectionsPerRoute();
+    }
+
+    /**
+     * Set the maximum number of connections that can be open to a single scheme, host, and port, the default is
+     * 20.
+     *
+     * @param maxConnectionsPerRoute the maximum number of connections per route.
+     * @throws IllegalArgumentException if the maximum is less than one.
+     */
+    public void setMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
+
+        pool.setMaxConnectionsPerRoute(maxConnectionsPerRoute);
+    }
+
+    /**
+     * @return the maximum number of connections that can be open in total.
+     */
+    public int getMaxConnections() {
+
+        return pool.getMaxConnections();
+    }
+
+    /**
+     * Set the maximum number of connections that can be open in total, the default is 200.
+     *
+     * @param maxConnections the maximum number of connections.
+     * @throws IllegalArgumentException if the maximum is less than one.
+     */
+    public void setMaxConnections(int maxConnections) {
+
+        pool.setMaxConnections(maxConnections);
+    }
+
+    /**
+     * @return the number of milliseconds a connection can be idle before it is closed.
+     */
+    public long getIdleTimeout() {
+
+        return pool.getIdleTimeout();
+    }
+
+    /**
+     * Set the number of milliseconds a connection can be idle before it is closed, the default is 60 seconds.
+     *
+     * @param idleTimeout the idle timeout in milliseconds.
+     * @throws IllegalArgumentException if the timeout is negative.
+     */
+    public void setIdleTimeout(long idleTimeout) {
+
+        pool.setIdleTimeout(idleTimeout);
+    }
+
+    /**
+     * @return true if requests can be pipelined.
+     */
+    public boolean isPipelining() {
+
+        return pool.isPipelining();
+    }
+
+    /**
+     * Enable or disable pipelining, it is disabled by default. When enabled a {@code GET}, {@code HEAD}, or
+     * {@code OPTIONS} request without a body can be written on a connection that is still waiting for earlier
+     * responses, the responses are matched to the requests in the order they were sent.
+     * <p/>
+     * Requests are only pipelined on connections that the server has already kept open after a response. If a server
+     * closes a connection before answering every pipelined request the unanswered requests are sent again without
+     * pipelining, and requests to that server are never pipelined again.
+     *
+     * @param pipelining true to enable pipelining.
+     */
+    public void setPipelining(boolean pipelining) {
+
+        pool.setPipelining(pipelining);
+    }
+
+    /**
+     * @return true if the headers of responses are only decoded when they are asked for.
+     */
+    public boolean isLazyHeaders() {
+
+        return lazyHeaders;
+    }
+
+    /**
+     * Enable or disable lazy headers, they are disabled by default. When enabled an {@code HTTP/1.1} response keeps
+     * its header block as undecoded bytes and a {@link http.header.Header} is only created when its name is asked for
+     * through {@link Response#getHeaders(String)} or {@link Response#getHeaders(Class)}. This saves decoding every
+     * header of a response when only the status and one or two headers are read. {@code HTTP/2} headers are always
+     * decoded because they have to be decompressed as they arrive.
+     *
+     * @param lazyHeaders true to enable lazy headers.
+     */
+    public void setLazyHeaders(boolean lazyHeaders) {
+
+        this.lazyHeaders = lazyHeaders;
+    }
+
+    /**
+     * @return the configuration of {@code https} connections.
+     */
+    public TlsConfig getTlsConfig() {
+
+        return pool.getTlsConfig();
+    }
+
+    /**
+     * Set the configuration of {@code https} connections, by default the JVMs default {@link javax.net.ssl.SSLContext}
+     * is used. This only affects connections that are opened after it is set.
+     *
+     * @param tlsConfig the {@code TLS} configuration.
+     */
+    public void setTlsConfig(TlsConfig tlsConfig) {
+
+        pool.setTlsConfig(tlsConfig);
+    }
+
+    /**
+     * @return the resolver that host names are looked up with.
+     */
+    public Resolver getResolver() {
+
+        return resolver;
+    }
+
+    /**
+     * Set the resolver that host names are looked up with.
+     *
+     * @param resolver the resolver.
+     */
+    public void setResolver(Resolver resolver) {
+
+        assertNotNull("resolver", resolver);
+
+        this.resolver = resolver;
+    }
+
+    /**
+     * @return the number of milliseconds a connection attempt to one address of a server is given before the next
+     *         address is tried as well.
+     */
+    public long getConnectAttemptDelay() {
+
+        return pool.getConnectAttemptDelay();
+    }
+
+    /**
+     * Set the number of milliseconds a connection attempt to one address of a server is given before the next address
+     * is tried alongside it, the default is 250 milliseconds. The first attempt to connect wins and the others are
+     * abandoned.
+     *
+     * @param connectAttemptDelay the delay between connection attempts in milliseconds.
+     * @throws IllegalArgumentException if the delay is negative.
+     */
+    public void setConnectAttemptDelay(long connectAttemptDelay) {
+
+        pool.setConnectAttemptDelay(connectAttemptDelay);
+    }
+
+    /**
+     * @return the number of milliseconds an address that couldn't be connected to is tried last for.
+     */
+    public long getFailedAddressPenalty() {
+
+        return pool.getFailedAddresses().getPenalty();
+    }
+
+    /**
+     * Set the number of milliseconds an address that couldn't be connected to is tried after the other addresses of
+     * the server for, the default is 30 seconds. Zero disables the penalty.
+     *
+     * @param failedAddressPenalty the penalty in milliseconds.
+     * @throws IllegalArgumentException if the penalty is negative.
+     */
+    public void setFailedAddressPenalty(long failedAddressPenalty) {
+
+        pool.getFailedAddresses().setPenalty(failedAddressPenalty);
+    }
+
+    /**
+     * @return true if encoded response bodies are decoded.
+     */
+    public boolean isDecompression() {
+
+        return decompression;
+    }
+
+    /**
+     * Enable or disable decompression, it is enabled by default. When enabled a request without an
+     * {@code Accept-Encoding} header is sent with one that lists every encoding that can be decoded, and a response
+     * body with one of those encodings is decoded as it is read. The {@code Content-Encoding} and
+     * {@code Content-Length} headers are removed from a decoded response because they describe the encoded body. The
+     * body of a request that has its own {@code Accept-Encoding} is never decoded.
+     *
+     * @param decompression true to enable decompression.
+     */
+    public void setDecompression(boolean decompression) {
+
+        this.decompression = decompression;
+    }
+
+    /**
+     * Add a decoder for a {@code Content-Encoding}, replacing the decoder for that encoding if there already is one.
+     *
+     * @param decoder the decoder to add.
+     */
+    public void addContentDecoder(ContentDecoder decoder) {
+
+        decoders.add(decoder);
+    }
+
+    /**
+     * @return the maximum number of requests that can be waiting for a response on a single connection.
+     */
+    public int getMaxPipelineDepth() {
+
+        return pool.getMaxPipelineDepth();
+    }
+
+    /**
+     * Set the maximum number of requests that can be waiting for a response on a single connection when pipelining,
+     * the default is 8.
+     *
+     * @param maxPipelineDepth the maximum pipeline depth.
+     * @throws IllegalArgumentException if the maximum is less than one.
+     */
+    public void setMaxPipelineDepth(int maxPipelineDepth) {
+
+        pool.setMaxPipelineDepth(maxPipelineDepth);
+    }
+
+    /**
+     * @return the version of {@code HTTP} that is spoken to servers.
+     */
+    public HttpVersion getHttpVersion() {
+
+        return pool.getHttpVersion();
+    }
+
+    /**
+     * Set the version of {@code HTTP} that is spoken to servers, the default is {@link HttpVersion#HTTP_1_1}. Plain
+     * {@code http} requests are sent with {@code HTTP/2} straight away when it is selected, so it must only be used
+     * with servers that are known to support {@code HTTP/2} without an upgrade.
+     *
+     * @param httpVersion the version of {@code HTTP}.
+     */
+    public void setHttpVersion(HttpVersion httpVersion) {
+
+        pool.setHttpVersion(httpVersion);
+    }
+
+    /**
+     * @return the maximum number of streams that can be open at once on an {@code HTTP/2} connection.
+     */
+    public int getMaxConcurrentStreams() {
+
+        return pool.getMaxConcurrentStreams();
+    }
+
+    /**
+     * Set the maximum number of streams that can be open at once on an {@code HTTP/2} connection, the default is 100.
+     * The server can lower this further. Requests beyond the limit wait for a stream to finish, the most urgent
+     * request is started first.
+     *
+     * @param maxConcurrentStreams the maximum number of concurrent streams.
+     * @throws IllegalArgumentException if the maximum is less than one.
+     */
+    public void setMaxConcurrentStreams(int maxConcurrentStreams) {
+
+        pool.setMaxConcurrentStreams(maxConcurrentStreams);
+    }
+
+    /**
+     * @return one in how many of the buffers that connections use are checked for leaks, zero if leak detection is off.
+     */
+    public int getLeakSampling() {
+
+        return pool.getBufferPool().getLeakSampling();
+    }
+
+    /**
+     * Set one in how many of the pooled buffers that connections read into and write from are checked for leaks, the
+     * default is zero which turns leak detection off. A sampled buffer that is garbage collected without having been
+     * released, usually because a response body was dropped without being read to the end or closed, is logged as a
+     * warning along with the stack trace of where it was acquired.
+     *
+     * @param leakSampling one in how many buffers to check.
+     * @throws IllegalArgumentException if the sampling is negative.
+     */
+    public void setLeakSampling(int leakSampling) {
+
+        pool.getBufferPool().setLeakSampling(leakSampling);
+    }
+
+
+    /**
+     * Send the supplied request and wait for the response headers.
+     *
+     * @param method  the HTTP method for the request e.g. "GET", "POST", "PUT", "DELETE"...
+     * @param request the request object that contains the request details.
+     * @return the response, its body is streamed from the connection as it is read.
+     * @throws TransportException      if the request could not be sent or the response could not be read.
+     * @throws RequestTimeoutException if the request ran out of time before the response headers were received.
+     */
+    @Override
+    public Response<InputStream> handleRequest(String method, Request<InputStream> request) {
+
+        ResponseFuture<Response<InputStream>> future = new ResponseFuture<Response<InputStream>>();
+
+        handleRequest(method, request, future);
+
+        try {
+
+            return future.get();
+
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+
+            future.cancel(true);
+
+            throw new TransportException("Interrupted while waiting for the response.", e);
+
+        } catch (ExecutionException e) {
+
+            // A timeout is thrown as one so that running out of time can be told apart from any other failure.
+            if (e.getCause() instanceof RequestTimeoutException) {
+
+                throw new RequestTimeoutException(e.getCause().getMessage(), e.getCause());
+            }
+
+            throw new TransportException("The request could not be completed.", e.getCause());
+        }
+    }
+
+    /**
+     * Send the supplied request and return straight away. A host that isn't already cached by a
+     * {@link CachingResolver} is looked up on a separate thread, so neither the caller nor an event loop waits on
+     * {@code DNS}. The future is completed on the event loop thread once the response headers have been received.
+     *
+     * @param method  the HTTP method for the request e.g. "GET", "POST", "PUT", "DELETE"...
+     * @param request the request object that contains the request details.
+     * @param future  the future that the response will be delivered to, it is failed with a {@link TransportException}
+     *                if the request could not be sent.
+     */
+    @Override
+    public void handleRequest(final String method, final Request<InputStream> request,
+                              final ResponseFuture<Response<InputStream>> future) {
+
+        assertNotNull("method", method);
+        assertNotNull("request", request);
+        assertNotNull("future", future);
+
+        try {
+
+            final URL url = request.getUrl();
+
+            List<InetSocketAddress> addresses = addresses(url, true);
+
+            if (isNotNull(addresses)) {
+
+                send(method, request, addresses, future);
+
+                return;
+            }
+
+            ResolveExecutorHolder.INSTANCE.execute(new Runnable() {
+
+                @Override
+                public void run() {
+
+                    if (future.isDone()) return;
+
+                    try {
+
+                        send(method, request, addresses(url, false), future);
+
+                    } catch (RuntimeException e) {
+
+                        fail(future, e);
+                    }
+                }
+            });
+
+        } catch (RuntimeException e) {
+
+            fail(future, e);
+        }
+    }
+
+    /**
+     * Close the connection pool and stop all the event loops. Any requests that are still in flight will fail.
+     */
+    @Override
+    public void close() {
+
+        pool.close();
+
+        for (EventLoop eventLoop : eventLoops) eventLoop.close();
+    }
+
+    /**
+     * @return the number of connections that are currently open or being opened.
+     */
+    int getConnectionCount() {
+
+        return pool.getConnectionCount();
+    }
+
+    /**
+     * @return the number of open connections that are waiting to be reused.
+     */
+    int getIdleConnectionCount() {
+
+        return pool.getIdleConnectionCount();
+    }
+
+    /**
+     * @return a copy of the supplied request that accepts the encodings that can be decoded.
+     */
+    private Request<InputStream> acceptEncoding(Request<InputStream> request) {
+
+        Request<InputStream> accepting = new Request<InputStream>(request, request.getBody());
+        accepting.addHeader(ACCEPT_ENCODING, decoders.getAcceptEncoding());
+
+        return accepting;
+    }
+
+    private void send(String method, Request<InputStream> request, List<InetSocketAddress> addresses,
+                      ResponseFuture<Response<InputStream>> future) {
+
+        Route route = Route.of(request.getUrl());
+
+        // A caller that asks for its own encodings gets the body exactly as the server sent it.
+        if (decompression && isNull(request.getHeaders(ACCEPT_ENCODING))) {
+
+            pool.execute(new Exchange(method, acceptEncoding(request), route, addresses, future, lazyHeaders, decoders,
+                    pool.getTimer()));
+
+        } else {
+
+            pool.execute(new Exchange(method, request, route, addresses, future, lazyHeaders, null, pool.getTimer()));
+        }
+    }
+
+    /**
+     * @param cachedOnly true if the host must not be looked up, only taken from the cache of a
+     *                   {@link CachingResolver}.
+     * @return the addresses of the server in the supplied URL, or null if only cached addresses were asked for and the
+     *         host isn't cached.
+     * @throws TransportException if the scheme isn't supported or the host could not be resolved.
+     */
+    private List<InetSocketAddress> addresses(URL url, boolean cachedOnly) {
+
+        if (!HTTP.equalsIgnoreCase(url.getProtocol()) && !HTTPS.equalsIgnoreCase(url.getProtocol())) {
+
+            throw new TransportException("The (" + url.getProtocol() + ") scheme is not supported.");
+        }
+
+        String host = url.getHost();
+        int port = -1 == url.getPort() ? url.getDefaultPort() : url.getPort();
+
+        Resolver resolver = this.resolver;
+
+        List<AddressRecord> records;
+
+        try {
+
+            if (!cachedOnly) records = resolver.resolve(host);
+            else if (resolver instanceof CachingResolver) records = ((CachingResolver) resolver).resolveCached(host);
+            else return null;
+
+        } catch (UnknownHostException e) {
+
+            throw new TransportException("Could not resolve the host (" + host + ").", e);
+
+        } catch (RuntimeException e) {
+
+            throw new TransportException("Could not resolve the host (" + host + ").", e);
+        }
+
+        if (isNull(records)) return null;
+
+        List<InetSocketAddress> addresses = new ArrayList<InetSocketAddress>(records.size());
+
+        for (AddressRecord record : records) addresses.add(new InetSocketAddress(record.getAddress(), port));
+
+        return addresses;
+    }
+
+    private static void fail(ResponseFuture<Response<InputStream>> future, RuntimeException e) {
+
+        future.fail(e instanceof TransportException ? e : new TransportException("The request could not be sent.", e));
+    }
+
+
+    private static class ResolveExecutorHolder {
+        public static final Executor INSTANCE = Executors.newCachedThreadPool(new ThreadFactory() {
+
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+
+                Thread thread = new Thread(runnable, "http-client-resolve-" + count.incrementAndGet());
+                thread.setDaemon(true);
+
+                return thread;
+            }
+        });
+    }
+}
@@ -0,0 +1,97 @@
+package http.transport;
+
+import java.lang.ref.ReferenceQueue;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static http.util.Asserts.assertNotNull;
+
+/**
+ * A reference counted buffer from a {@link BufferPool}. Whatever acquired the buffer holds the first reference, every
+ * response body that keeps a section of the buffer takes another. The buffer goes back to the pool when the last
+ * reference is released.
+ *
+ * @author Karl Bennett
+ */
+class PooledBuffer {
+
+    private final BufferPool pool;
+    private final ByteBuffer buffer;
+    private final BufferPool.Arena arena;
+    private final AtomicInteger references;
+
+    private volatile BufferPool.Leak leak;
+
+
+    PooledBuffer(BufferPool pool, ByteBuffer buffer, BufferPool.Arena arena) {
+
+        assertNotNull("pool", pool);
+        assertNotNull("buffer", buffer);
+
+        this.pool = pool;
+        this.buffer = buffer;
+        this.arena = arena;
+        this.references = new AtomicInteger(1);
+    }
+
+
+    /**
+     * @return the underlying buffer, this must not be used once the callers reference has been released.
+     */
+    public ByteBuffer getBuffer() {
+
+        return buffer;
+    }
+
+    /**
+     * Take another reference to the buffer.
+     *
+     * @throws IllegalStateException if every reference to the buffer has already been released.
+     */
+    public void retain() {
+
+        if (0 < references.getAndIncrement()) return;
+
+        references.decrementAndGet();
+
+        throw new IllegalStateException("The buffer has already been released.");
+    }
+
+    /**
+     * Release a reference to the buffer, the buffer is recycled once every reference has been released.
+     *
+     * @throws IllegalStateException if every reference to the buffer has already been released.
+     */
+    public void release() {
+
+        int remaining = references.decrementAndGet();
+
+        if (0 > remaining) throw new IllegalStateException("The buffer has already been released.");
+
+        if (0 == remaining) pool.recycle(buffer, arena, leak);
+    }
+
+    /**
+     * A connection can only reuse the parts of its read buffer that have already been read into when nothing else
+     * refers to the buffer.
+     *
+     * @return true if something other than the owner of the first reference still refers to the buffer.
+     */
+    public boolean isShared() {
+
+        return 1 < references.get();
+    }
+
+    /**
+     * Start tracking the buffer for leaks.
+     *
+     * @param queue the queue the tracking is put on if the buffer is garbage collected.
+     * @return the tracking for the buffer.
+     */
+    BufferPool.Leak track(ReferenceQueue<PooledBuffer> queue) {
+
+        leak = new BufferPool.Leak(this, queue);
+
+        return leak;
+    }
+}
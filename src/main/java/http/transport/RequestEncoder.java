@@ -0,0 +1,228 @@
+package http.transport;
+
+import http.Request;
+import http.header.Header;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import static http.Client.*;
+import static http.util.Asserts.assertNotNull;
+import static http.util.Checks.isNotNull;
+import static http.util.Checks.isNull;
+
+/**
+ * Encodes a {@link Request} into the bytes of an {@code HTTP/1.1} request. The request is encoded into the connections
+ * write buffer a buffer full at a time through {@link #encode(ByteBuffer)} so that the body can be streamed onto the
+ * connection as it becomes writable rather than being read into memory up front.
+ * <p/>
+ * If the request contains a {@code Content-Length} header the body is written as is, otherwise a body is sent with
+ * the {@code chunked} transfer encoding. A {@link FileBody} always has a known length, and if the connection can
+ * transfer it straight from the file the encoder leaves it for the connection to send through {@link #getTransfer()}.
+ *
+ * @author Karl Bennett
+ */
+class RequestEncoder {
+
+    static final Charset ASCII = Charset.forName("ISO-8859-1");
+
+    static final String HOST = "Host";
+    static final String CONTENT_LENGTH = "Content-Length";
+    static final String TRANSFER_ENCODING = "Transfer-Encoding";
+    static final String CONNECTION = "Connection";
+
+    private static final String CRLF = "\r\n";
+    private static final byte[] LAST_CHUNK = ("0" + CRLF + CRLF).getBytes(ASCII);
+    private static final int CHUNK_SIZE = 8 * 1024;
+    // The chunk size line for the largest chunk and the line break after the chunk.
+    private static final int CHUNK_OVERHEAD = Integer.toHexString(CHUNK_SIZE).length() + 4;
+
+
+    /**
+     * Check if a request with the supplied method should always declare the length of its body, even if it is empty.
+     *
+     * @param method the request method.
+     * @return true if the method is expected to carry a body.
+     */
+    static boolean expectsBody(String method) {
+
+        return POST.equals(method) || PUT.equals(method);
+    }
+
+    /**
+     * Get the request target for the supplied {@link URL}, that is the path and query of the {@code URL}.
+     *
+     * @param url the {@code URL} of the request.
+     * @return the request target.
+     */
+    static String target(URL url) {
+
+        String file = url.getFile();
+
+        return 0 == file.length() ? "/" : file;
+    }
+
+    /**
+     * Get the value of the {@code Host} header for the supplied {@link URL}.
+     *
+     * @param url the {@code URL} of the request.
+     * @return the host and, if it isn't the default for the scheme, the port.
+     */
+    static String host(URL url) {
+
+        int port = url.getPort();
+
+        return -1 == port || url.getDefaultPort() == port ? url.getHost() : url.getHost() + ':' + port;
+    }
+
+
+    private final InputStream body;
+    private final FileBody transfer;
+    private final boolean chunked;
+
+    // The request head or the last chunk, whatever didn't fit into the last buffer.
+    private byte[] pending;
+    private int pendingOffset;
+    private byte[] chunk;
+    private boolean complete;
+
+
+    /**
+     * Create a new {@code RequestEncoder} for the supplied request.
+     *
+     * @param method   the request method.
+     * @param request  the request to encode.
+     * @param close    true if the server should close the connection after the response.
+     * @param transfer true if the connection can transfer a {@link FileBody} itself.
+     */
+    public RequestEncoder(String method, Request<InputStream> request, boolean close, boolean transfer) {
+
+        assertNotNull("method", method);
+        assertNotNull("request", request);
+
+        this.body = request.getBody();
+
+        boolean hasLength = isNotNull(request.getHeaders(CONTENT_LENGTH));
+        boolean file = body instanceof FileBody;
+
+        this.transfer = file && transfer ? (FileBody) body : null;
+        this.chunked = isNotNull(body) && !hasLength && !file;
+
+        URL url = request.getUrl();
+
+        StringBuilder builder = new StringBuilder(256);
+        builder.append(method).append(' ').append(target(url)).append(" HTTP/1.1").append(CRLF);
+
+        if (isNull(request.getHeaders(HOST))) appendHeader(builder, HOST, host(url));
+
+        for (Header header : request.getHeaders()) appendHeader(builder, header.getName(), header.getValue());
+
+        if (chunked) appendHeader(builder, TRANSFER_ENCODING, "chunked");
+        else if (file && !hasLength) appendHeader(builder, CONTENT_LENGTH, ((FileBody) body).getRemaining());
+        else if (isNull(body) && !hasLength && expectsBody(method)) appendHeader(builder, CONTENT_LENGTH, "0");
+
+        if (close) appendHeader(builder, CONNECTION, "close");
+
+        builder.append(CRLF);
+
+        this.pending = builder.toString().getBytes(ASCII);
+    }
+
+
+    /**
+     * Encode as much of the request as will fit into the supplied buffer.
+     *
+     * @param buffer the buffer to encode the request into from its position.
+     * @return true if the entire request has been encoded, false if there wasn't enough space left in the buffer or
+     *         the connection has to transfer a file body first.
+     * @throws IOException if the request body could not be read.
+     */
+    public boolean encode(ByteBuffer buffer) throws IOException {
+
+        while (!isComplete() && buffer.hasRemaining()) {
+
+            if (isNotNull(pending)) {
+
+                int length = Math.min(buffer.remaining(), pending.length - pendingOffset);
+
+                buffer.put(pending, pendingOffset, length);
+
+                pendingOffset += length;
+
+                if (pending.length == pendingOffset) pending = null;
+
+                continue;
+            }
+
+            if (isNotNull(transfer)) {
+
+                // The connection sends the file itself once everything before it has been written.
+                if (0 < transfer.getRemaining()) return false;
+
+                complete = true;
+
+                body.close();
+
+                continue;
+            }
+
+            int space = Math.min(CHUNK_SIZE, buffer.remaining() - (chunked ? CHUNK_OVERHEAD : 0));
+
+            // Wait for an emptier buffer rather than sending a tiny chunk.
+            if (0 >= space) return false;
+
+            if (isNull(chunk)) chunk = new byte[CHUNK_SIZE];
+
+            int read = body.read(chunk, 0, space);
+
+            if (-1 == read) {
+
+                complete = true;
+
+                body.close();
+
+                if (chunked) {
+
+                    pending = LAST_CHUNK;
+                    pendingOffset = 0;
+                }
+
+                continue;
+            }
+
+            if (chunked) buffer.put((Integer.toHexString(read) + CRLF).getBytes(ASCII));
+
+            buffer.put(chunk, 0, read);
+
+            if (chunked) buffer.put((byte) '\r').put((byte) '\n');
+        }
+
+        return isComplete();
+    }
+
+
+    /**
+     * Get the file body that the connection should transfer straight to the socket, this is only available once
+     * everything before it has been encoded.
+     *
+     * @return the file body to transfer or null if there isn't one to transfer right now.
+     */
+    public FileBody getTransfer() {
+
+        return isNull(pending) && isNotNull(transfer) && !complete ? transfer : null;
+    }
+
+
+    private boolean isComplete() {
+
+        return isNull(pending) && (isNull(body) || complete);
+    }
+
+    private static void appendHeader(StringBuilder builder, String name, Object value) {
+
+        builder.append(name).append(": ").append(value).append(CRLF);
+    }
+}
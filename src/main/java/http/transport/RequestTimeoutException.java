@@ -0,0 +1,29 @@
+package http.transport;
+
+/**
+ * An exception that is thrown when a request runs out of time, either because one of its {@link http.Timeouts} passed
+ * or because its deadline passed before it could be sent.
+ *
+ * @author Karl Bennett
+ */
+public class RequestTimeoutException extends TransportException {
+
+    /**
+     * Create a {@code RequestTimeoutException} with the supplied message.
+     *
+     * @param message the message for the exception.
+     */
+    public RequestTimeoutException(String message) {
+        super(message);
+    }
+
+    /**
+     * Create a {@code RequestTimeoutException} with the supplied message and cause.
+     *
+     * @param message the message for the exception.
+     * @param cause   the timeout that this was thrown for.
+     */
+    public RequestTimeoutException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,272 @@
+package http.transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import static http.util.Asserts.assertNotNull;
+import static http.util.Checks.isNotNull;
+
+/**
+ * The {@link InputStream} that is handed to the caller as the body of a {@link http.Response}. The event loop pushes the
+ * body into the stream as it is read from the socket and the caller pulls it out on its own thread.
+ * <p/>
+ * The body isn't copied out of the pooled buffers that the connection read it into, the stream keeps a reference to
+ * each buffer until its content has been read. The stream is also a {@link ChunkedBody} so the caller can take the
+ * content in the buffers themselves.
+ * <p/>
+ * The stream applies back-pressure, once more than {@link #HIGH_WATER_MARK} bytes are waiting to be read, or have been
+ * handed out as chunks that haven't been released, the event loop is told to stop reading from the connection until
+ * the caller has drained the stream below {@link #LOW_WATER_MARK}.
+ *
+ * @author Karl Bennett
+ */
+class ResponseInputStream extends InputStream implements ChunkedBody {
+
+    /**
+     * The interface the stream uses to control the flow of data from the connection.
+     */
+    static interface Demand {
+
+        /**
+         * Called from the reading thread when the stream can accept more data after having been suspended.
+         */
+        void resume();
+
+        /**
+         * Called from the reading thread when the stream has been closed before the entire body was read.
+         */
+        void cancel();
+    }
+
+    public static final int HIGH_WATER_MARK = 256 * 1024;
+    public static final int LOW_WATER_MARK = 64 * 1024;
+
+
+    private final Demand demand;
+    private final Deque<BodyChunk> chunks;
+
+    private long buffered;
+    private boolean suspended;
+    private boolean complete;
+    private boolean closed;
+    private Throwable failure;
+
+
+    /**
+     * Create a new {@code ResponseInputStream} that will use the supplied {@link Demand} to control the connection.
+     *
+     * @param demand the flow control for the connection that is supplying the body.
+     */
+    public ResponseInputStream(Demand demand) {
+
+        assertNotNull("demand", demand);
+
+        this.demand = demand;
+        this.chunks = new ArrayDeque<BodyChunk>();
+    }
+
+
+    /**
+     * Push a section of the body into the stream. This is called on the event loop thread.
+     *
+     * @param content the section of the body, the stream keeps the content in place and takes a reference to the
+     *                buffer that holds it.
+     * @param source  the pooled buffer that holds the content.
+     * @return true if the stream can accept more data, false if the connection should stop reading until
+     *         {@link Demand#resume()} is called.
+     */
+    public synchronized boolean offer(ByteBuffer content, PooledBuffer source) {
+
+        // If the caller has given up on the body just drop the data.
+        if (closed || !content.hasRemaining()) return !closed;
+
+        source.retain();
+
+        BodyChunk chunk = new BodyChunk(this, content.slice().asReadOnlyBuffer(), source);
+
+        content.position(content.limit());
+
+        chunks.add(chunk);
+        buffered += chunk.getContent().remaining();
+
+        notifyAll();
+
+        if (HIGH_WATER_MARK > buffered) return true;
+
+        suspended = true;
+
+        return false;
+    }
+
+    /**
+     * Mark the body as complete. This is called on the event loop thread.
+     */
+    public synchronized void complete() {
+
+        complete = true;
+
+        notifyAll();
+    }
+
+    /**
+     * Fail the body, any subsequent reads will throw an {@link IOException}. This is called on the event loop thread,
+     * or on the timer thread if the body ran out of time. Only the first failure is kept, so the reason is not lost
+     * when the connection is then closed because of it.
+     *
+     * @param cause the reason the body could not be read.
+     */
+    public synchronized void fail(Throwable cause) {
+
+        if (complete || isNotNull(failure)) return;
+
+        failure = cause;
+
+        notifyAll();
+    }
+
+    @Override
+    public int read() throws IOException {
+
+        byte[] single = new byte[1];
+
+        return -1 == read(single, 0, 1) ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] bytes, int off, int len) throws IOException {
+
+        if (0 == len) return 0;
+
+        int read = 0;
+
+        synchronized (this) {
+
+            if (!await()) return -1;
+
+            while (read < len && !chunks.isEmpty()) {
+
+                BodyChunk chunk = chunks.peek();
+                ByteBuffer content = chunk.getContent();
+
+                int length = Math.min(len - read, content.remaining());
+                content.get(bytes, off + read, length);
+
+                read += length;
+
+                if (!content.hasRemaining()) chunks.poll().discard();
+            }
+        }
+
+        released(read);
+
+        return read;
+    }
+
+    @Override
+    public synchronized BodyChunk nextChunk() throws IOException {
+
+        if (!await()) return null;
+
+        BodyChunk chunk = chunks.poll();
+
+        // The content stays counted against the body until the caller releases the chunk.
+        chunk.handOut();
+
+        return chunk;
+    }
+
+    @Override
+    public synchronized int available() throws IOException {
+
+        return (int) Math.min(Integer.MAX_VALUE, buffered);
+    }
+
+    /**
+     * Close the stream, if the body has not been completely read then the underlying connection is closed. Chunks that
+     * have already been handed out can still be released once the stream has been closed.
+     */
+    @Override
+    public void close() throws IOException {
+
+        boolean cancel;
+
+        synchronized (this) {
+
+            if (closed) return;
+
+            closed = true;
+            cancel = !complete && null == failure;
+
+            for (BodyChunk chunk : chunks) chunk.discard();
+
+            chunks.clear();
+            buffered = 0;
+
+            notifyAll();
+        }
+
+        if (cancel) demand.cancel();
+    }
+
+    /**
+     * Stop counting the supplied number of bytes against the body, the connection is resumed if this takes the body
+     * below the low water mark.
+     *
+     * @param length the number of bytes that have been read or released.
+     */
+    void released(int length) {
+
+        if (0 == length) return;
+
+        synchronized (this) {
+
+            if (closed) return;
+
+            buffered -= length;
+
+            if (!suspended || LOW_WATER_MARK < buffered) return;
+
+            suspended = false;
+        }
+
+        demand.resume();
+    }
+
+    /**
+     * Wait until there is a chunk to read or the body has ended, this must be called while holding the lock.
+     *
+     * @return true if there is a chunk to read, false if the body is complete.
+     * @throws IOException if the stream has been closed or the body failed.
+     */
+    private boolean await() throws IOException {
+
+        while (chunks.isEmpty() && !complete && !closed && null == failure) {
+
+            try {
+
+                wait();
+
+            } catch (InterruptedException e) {
+
+                Thread.currentThread().interrupt();
+
+                throw new InterruptedIOException("Interrupted while waiting for the response body.");
+            }
+        }
+
+        if (closed) throw new IOException("The response body stream has been closed.");
+
+        if (chunks.isEmpty()) {
+
+            if (isNotNull(failure)) throw new IOException("The response body could not be read.", failure);
+
+            return false;
+        }
+
+        return true;
+    }
+}
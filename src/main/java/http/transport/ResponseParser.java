@@ -0,0 +1,671 @@
+package http.transport;
+
+import http.header.HeaderName;
+import http.header.RawHeaders;
+
+import java.nio.ByteBuffer;
+
+import static http.util.Asserts.assertNotNull;
+import static http.util.Checks.isNotNull;
+import static http.util.Checks.isNull;
+
+/**
+ * An incremental {@code HTTP/1.1} response parser. Bytes are pushed into the parser as they arrive from the socket
+ * through {@link #parse(ByteBuffer)}, so a response can be split across any number of reads. The parsed components are
+ * passed to a {@link Listener} as soon as they are available.
+ * <p/>
+ * The parser is a state machine that works on the bytes of the buffer. The status code, the headers that frame the
+ * body, and the chunk sizes are read straight from the bytes. A well known {@link HeaderName} is found from the bytes
+ * and handed to the listener as its shared name, so the only {@link String}s that are created are the header values and
+ * any other names. Each line is gathered into a buffer that is reused for the whole response, so a line that is split
+ * between reads costs a copy rather than an allocation.
+ * <p/>
+ * A parser that is created with lazy headers doesn't decode the headers at all. Each header line is copied into a
+ * {@link RawHeaders} block that is handed to the listener in one go once the headers are complete.
+ *
+ * @author Karl Bennett
+ */
+class ResponseParser {
+
+    /**
+     * The callback interface that receives the parsed response components.
+     */
+    static interface Listener {
+
+        /**
+         * Called when the status line of a final (non {@code 1xx}) response has been parsed.
+         *
+         * @param status the status code of the response.
+         */
+        void onStatus(int status);
+
+        /**
+         * Called for every header in the response, unless the headers are lazy.
+         *
+         * @param name  the name of the header.
+         * @param value the value of the header.
+         */
+        void onHeader(String name, String value);
+
+        /**
+         * Called with all the undecoded headers of the response just before {@link #onHeadersComplete()}, only if the
+         * headers are lazy.
+         *
+         * @param headers the undecoded headers.
+         */
+        void onHeaders(RawHeaders headers);
+
+        /**
+         * Called once all the response headers have been parsed.
+         */
+        void onHeadersComplete();
+
+        /**
+         * Called for each section of the response body. The supplied buffer is only valid for the duration of the
+         * call.
+         *
+         * @param content the section of the body.
+         */
+        void onContent(ByteBuffer content);
+
+        /**
+         * Called once the entire response has been parsed.
+         */
+        void onComplete();
+    }
+
+    private static enum State {
+        STATUS_LINE,
+        HEADER_LINE,
+        FIXED_BODY,
+        CHUNK_SIZE,
+        CHUNK_EXTENSION,
+        CHUNK_DATA,
+        CHUNK_DATA_END,
+        TRAILER_LINE,
+        EOF_BODY,
+        COMPLETE
+    }
+
+    /**
+     * The longest status, header, or trailer line that will be accepted.
+     */
+    static final int MAX_LINE_LENGTH = 64 * 1024;
+
+    private static final int INITIAL_LINE_LENGTH = 256;
+
+    private static final byte[] HTTP = ascii("HTTP/");
+    private static final byte[] HTTP_1_0 = ascii("HTTP/1.0");
+    private static final byte[] CHUNKED = ascii("chunked");
+    private static final byte[] CLOSE = ascii("close");
+
+
+    private static byte[] ascii(String string) {
+
+        byte[] bytes = new byte[string.length()];
+
+        for (int i = 0; i < bytes.length; i++) bytes[i] = (byte) string.charAt(i);
+
+        return bytes;
+    }
+
+    private static int lowerCase(int b) {
+
+        return 'A' <= b && 'Z' >= b ? b + ('a' - 'A') : b;
+    }
+
+    private static int hexValue(int b) {
+
+        if ('0' <= b && '9' >= b) return b - '0';
+
+        if ('a' <= b && 'f' >= b) return b - 'a' + 10;
+
+        if ('A' <= b && 'F' >= b) return b - 'A' + 10;
+
+        return -1;
+    }
+
+    private static boolean isWhitespace(int b) {
+
+        return ' ' == b || '\t' == b;
+    }
+
+
+    private final Listener listener;
+    private final boolean bodiless;
+    private final boolean lazyHeaders;
+
+    private byte[] line;
+    private int lineLength;
+    private char[] chars;
+
+    private State state;
+    private int status;
+    private boolean interim;
+    private long contentLength;
+    private boolean chunked;
+    private boolean close;
+    private long remaining;
+    private int chunkDigits;
+    private RawHeaders rawHeaders;
+
+
+    /**
+     * Create a new {@code ResponseParser} that will send the parsed response to the supplied {@link Listener}.
+     *
+     * @param listener the listener for the parsed response.
+     * @param bodiless true if the response can never contain a body e.g. it is the response to a {@code HEAD} request.
+     */
+    public ResponseParser(Listener listener, boolean bodiless) {
+
+        this(listener, bodiless, false);
+    }
+
+    /**
+     * Create a new {@code ResponseParser} that will send the parsed response to the supplied {@link Listener}.
+     *
+     * @param listener    the listener for the parsed response.
+     * @param bodiless    true if the response can never contain a body e.g. it is the response to a {@code HEAD}
+     *                    request.
+     * @param lazyHeaders true if the headers should be handed to the listener undecoded.
+     */
+    public ResponseParser(Listener listener, boolean bodiless, boolean lazyHeaders) {
+
+        assertNotNull("listener", listener);
+
+        this.listener = listener;
+        this.bodiless = bodiless;
+        this.lazyHeaders = lazyHeaders;
+        this.line = new byte[INITIAL_LINE_LENGTH];
+        this.chars = new char[INITIAL_LINE_LENGTH];
+
+        this.state = State.STATUS_LINE;
+    }
+
+
+    /**
+     * Parse as much of the supplied buffer as possible. All the remaining bytes will be consumed unless the response
+     * completes part way through the buffer, in which case the buffers position will be left at the first byte after
+     * the response.
+     *
+     * @param buffer the bytes read from the connection.
+     * @throws TransportException if the response is malformed.
+     */
+    public void parse(ByteBuffer buffer) {
+
+        while (buffer.hasRemaining() && State.COMPLETE != state) {
+
+            switch (state) {
+
+                case STATUS_LINE:
+                case HEADER_LINE:
+                case TRAILER_LINE:
+                    if (readLine(buffer)) parseLine();
+                    break;
+
+                case CHUNK_SIZE:
+                    parseChunkSize(buffer);
+                    break;
+
+                case CHUNK_EXTENSION:
+                case CHUNK_DATA_END:
+                    skipLine(buffer);
+                    break;
+
+                case FIXED_BODY:
+                case CHUNK_DATA:
+                    parseContent(buffer);
+                    break;
+
+                case EOF_BODY:
+                    listener.onContent(buffer);
+                    buffer.position(buffer.limit());
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Tell the parser that the connection has been closed by the server. This will complete a response that is
+     * delimited by the connection closing.
+     *
+     * @throws TransportException if the response was not complete.
+     */
+    public void close() {
+
+        if (State.EOF_BODY == state) {
+
+            complete();
+
+            return;
+        }
+
+        if (State.COMPLETE != state) {
+
+            throw new TransportException("The connection was closed before the response was complete.");
+        }
+    }
+
+    /**
+     * @return true if the entire response has been parsed, otherwise false.
+     */
+    public boolean isComplete() {
+
+        return State.COMPLETE == state;
+    }
+
+    /**
+     * @return true if the server has indicated that the connection can not be reused after this response.
+     */
+    public boolean isClose() {
+
+        return close;
+    }
+
+    /**
+     * @return the status code of the response or {@code 0} if the status line hasn't been parsed yet.
+     */
+    public int getStatus() {
+
+        return status;
+    }
+
+
+    /**
+     * Gather the bytes of the current line until its line feed is reached.
+     *
+     * @return true if a whole line has been read, its line ending is not included.
+     */
+    private boolean readLine(ByteBuffer buffer) {
+
+        int start = buffer.position();
+        int limit = buffer.limit();
+        int end = start;
+
+        while (end < limit && '\n' != buffer.get(end)) end++;
+
+        appendLine(buffer, end - start);
+
+        if (end == limit) return false;
+
+        // Skip the line feed.
+        buffer.get();
+
+        // Tolerate bare LF line endings as well as CRLF.
+        if (0 < lineLength && '\r' == line[lineLength - 1]) lineLength--;
+
+        return true;
+    }
+
+    private void appendLine(ByteBuffer buffer, int length) {
+
+        int required = lineLength + length;
+
+        if (MAX_LINE_LENGTH < required) {
+
+            throw new TransportException("A response line is longer than " + MAX_LINE_LENGTH + " bytes.");
+        }
+
+        if (line.length < required) {
+
+            byte[] grown = new byte[Math.min(MAX_LINE_LENGTH, Math.max(required, line.length * 2))];
+            System.arraycopy(line, 0, grown, 0, lineLength);
+
+            line = grown;
+        }
+
+        buffer.get(line, lineLength, length);
+
+        lineLength = required;
+    }
+
+    /**
+     * Skip the rest of the current line, this is the extension after a chunk size or the line ending after its data.
+     */
+    private void skipLine(ByteBuffer buffer) {
+
+        while (buffer.hasRemaining()) {
+
+            if ('\n' != buffer.get()) continue;
+
+            state = State.CHUNK_EXTENSION == state ? chunkSizeComplete() : State.CHUNK_SIZE;
+
+            return;
+        }
+    }
+
+    private void parseLine() {
+
+        int length = lineLength;
+        lineLength = 0;
+
+        switch (state) {
+
+            case STATUS_LINE:
+                parseStatusLine(length);
+                break;
+
+            case HEADER_LINE:
+                parseHeaderLine(length);
+                break;
+
+            case TRAILER_LINE:
+                if (0 == length) complete();
+                break;
+        }
+    }
+
+    private void parseStatusLine(int length) {
+
+        // Some servers send a blank line between responses, these can be ignored.
+        if (0 == length) return;
+
+        int space = indexOf(' ', 0, length);
+
+        if (-1 == space || !startsWith(HTTP, 0, space)) throw malformed("status line", length);
+
+        // The status code is exactly three digits followed by the end of the line or the reason phrase.
+        int end = space + 4;
+
+        if (end > length || (end < length && ' ' != line[end])) throw malformed("status code in status line", length);
+
+        int code = 0;
+
+        for (int i = space + 1; i < end; i++) {
+
+            int digit = line[i] - '0';
+
+            if (0 > digit || 9 < digit) throw malformed("status code in status line", length);
+
+            code = code * 10 + digit;
+        }
+
+        status = code;
+        interim = 100 <= status && 200 > status;
+
+        // HTTP/1.0 connections are not persistent by default.
+        if (HTTP_1_0.length == space && startsWith(HTTP_1_0, 0, space)) close = true;
+
+        contentLength = -1;
+        chunked = false;
+        rawHeaders = lazyHeaders && !interim ? new RawHeaders() : null;
+
+        if (!interim) listener.onStatus(status);
+
+        state = State.HEADER_LINE;
+    }
+
+    private void parseHeaderLine(int length) {
+
+        if (0 == length) {
+
+            headersComplete();
+
+            return;
+        }
+
+        int colon = indexOf(':', 0, length);
+
+        if (0 >= colon) throw malformed("header line", length);
+
+        int nameEnd = trimEnd(0, colon);
+        int valueStart = trimStart(colon + 1, length);
+        int valueEnd = trimEnd(valueStart, length);
+
+        // Well known names are shared instances so they can be compared by reference and don't need decoding.
+        HeaderName name = HeaderName.lookup(line, 0, nameEnd);
+
+        if (HeaderName.CONTENT_LENGTH == name) {
+
+            contentLength = parseContentLength(valueStart, valueEnd);
+
+        } else if (HeaderName.TRANSFER_ENCODING == name) {
+
+            // Chunked has to be the last encoding that was applied.
+            if (endsWithIgnoreCase(CHUNKED, valueStart, valueEnd)) chunked = true;
+
+        } else if (HeaderName.CONNECTION == name) {
+
+            if (equalsIgnoreCase(CLOSE, valueStart, valueEnd)) close = true;
+        }
+
+        if (interim) return;
+
+        if (isNotNull(rawHeaders)) {
+
+            rawHeaders.add(line, 0, nameEnd, valueStart, valueEnd, name);
+
+            return;
+        }
+
+        listener.onHeader(isNull(name) ? decode(0, nameEnd) : name.toString(), decode(valueStart, valueEnd));
+    }
+
+    private void headersComplete() {
+
+        // Interim responses (e.g. 100 Continue) are dropped and the real response is parsed next.
+        if (interim) {
+
+            state = State.STATUS_LINE;
+
+            return;
+        }
+
+        if (isNotNull(rawHeaders)) listener.onHeaders(rawHeaders);
+
+        rawHeaders = null;
+
+        listener.onHeadersComplete();
+
+        if (bodiless || 204 == status || 304 == status) {
+
+            complete();
+
+        } else if (chunked) {
+
+            startChunk();
+
+        } else if (0 <= contentLength) {
+
+            remaining = contentLength;
+
+            if (0 == remaining) complete();
+            else state = State.FIXED_BODY;
+
+        } else {
+
+            // Without any framing the body is delimited by the connection closing.
+            close = true;
+            state = State.EOF_BODY;
+        }
+    }
+
+    private void startChunk() {
+
+        remaining = 0;
+        chunkDigits = 0;
+
+        state = State.CHUNK_SIZE;
+    }
+
+    /**
+     * Read the hexadecimal size at the start of a chunk, anything after the digits is skipped up to the end of the
+     * line.
+     */
+    private void parseChunkSize(ByteBuffer buffer) {
+
+        while (buffer.hasRemaining()) {
+
+            int b = buffer.get();
+            int digit = hexValue(b);
+
+            if (-1 != digit) {
+
+                // Another digit would overflow the size.
+                if (0 != (remaining >>> 59)) throw new TransportException("Chunk size is too large.");
+
+                remaining = remaining << 4 | digit;
+                chunkDigits++;
+
+                continue;
+            }
+
+            if ('\n' == b) {
+
+                state = chunkSizeComplete();
+
+                return;
+            }
+
+            // Tolerate padding before the digits.
+            if (0 == chunkDigits && isWhitespace(b)) continue;
+
+            if (';' != b && '\r' != b && !isWhitespace(b)) {
+
+                throw new TransportException("Malformed chunk size, unexpected character (" + (char) (b & 0xFF) +
+                        ").");
+            }
+
+            state = State.CHUNK_EXTENSION;
+
+            return;
+        }
+    }
+
+    private State chunkSizeComplete() {
+
+        if (0 == chunkDigits) throw new TransportException("Malformed chunk size, there are no digits.");
+
+        return 0 == remaining ? State.TRAILER_LINE : State.CHUNK_DATA;
+    }
+
+    private void parseContent(ByteBuffer buffer) {
+
+        int length = (int) Math.min(remaining, buffer.remaining());
+
+        int limit = buffer.limit();
+        buffer.limit(buffer.position() + length);
+
+        ByteBuffer content = buffer.slice();
+
+        buffer.position(buffer.limit());
+        buffer.limit(limit);
+
+        remaining -= length;
+
+        listener.onContent(content);
+
+        if (0 < remaining) return;
+
+        if (State.CHUNK_DATA == state) {
+
+            chunkDigits = 0;
+
+            state = State.CHUNK_DATA_END;
+
+        } else {
+
+            complete();
+        }
+    }
+
+    private void complete() {
+
+        state = State.COMPLETE;
+
+        listener.onComplete();
+    }
+
+    private long parseContentLength(int start, int end) {
+
+        if (start == end) throw malformed("Content-Length", start, end);
+
+        long length = 0;
+
+        for (int i = start; i < end; i++) {
+
+            int digit = line[i] - '0';
+
+            if (0 > digit || 9 < digit) throw malformed("Content-Length", start, end);
+
+            if (Long.MAX_VALUE / 10 < length) throw malformed("Content-Length", start, end);
+
+            length = length * 10 + digit;
+        }
+
+        return length;
+    }
+
+    private int indexOf(char c, int start, int end) {
+
+        for (int i = start; i < end; i++) if (c == line[i]) return i;
+
+        return -1;
+    }
+
+    private int trimStart(int start, int end) {
+
+        while (start < end && isWhitespace(line[start])) start++;
+
+        return start;
+    }
+
+    private int trimEnd(int start, int end) {
+
+        while (end > start && isWhitespace(line[end - 1])) end--;
+
+        return end;
+    }
+
+    private boolean startsWith(byte[] prefix, int start, int end) {
+
+        if (prefix.length > end - start) return false;
+
+        for (int i = 0; i < prefix.length; i++) if (prefix[i] != line[start + i]) return false;
+
+        return true;
+    }
+
+    private boolean equalsIgnoreCase(byte[] expected, int start, int end) {
+
+        return expected.length == end - start && endsWithIgnoreCase(expected, start, end);
+    }
+
+    private boolean endsWithIgnoreCase(byte[] suffix, int start, int end) {
+
+        if (suffix.length > end - start) return false;
+
+        int offset = end - suffix.length;
+
+        for (int i = 0; i < suffix.length; i++) {
+
+            if (lowerCase(suffix[i]) != lowerCase(line[offset + i])) return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Turn a section of the current line into a {@code String}, header bytes are {@code ISO-8859-1}.
+     */
+    private String decode(int start, int end) {
+
+        int length = end - start;
+
+        if (chars.length < length) chars = new char[Math.max(length, chars.length * 2)];
+
+        for (int i = 0; i < length; i++) chars[i] = (char) (line[start + i] & 0xFF);
+
+        return new String(chars, 0, length);
+    }
+
+    private TransportException malformed(String component, int length) {
+
+        return malformed(component, 0, length);
+    }
+
+    private TransportException malformed(String component, int start, int end) {
+
+        return new TransportException("Malformed " + component + " (" + decode(start, end) + ").");
+    }
+}
@@ -0,0 +1,107 @@
+package http.transport;
+
+import java.net.URL;
+import java.util.Locale;
+
+import static http.util.Asserts.assertNotEmpty;
+
+/**
+ * The key that connections are pooled by, made up of the scheme, host, and port of a request {@link URL}. Two requests
+ * with the same route can share a connection.
+ *
+ * @author Karl Bennett
+ */
+final class Route {
+
+    /**
+     * Create the {@code Route} for the supplied {@link URL}.
+     *
+     * @param url the request {@code URL}.
+     * @return the route for the {@code URL}.
+     */
+    public static Route of(URL url) {
+
+        int port = -1 == url.getPort() ? url.getDefaultPort() : url.getPort();
+
+        return new Route(url.getProtocol(), url.getHost(), port);
+    }
+
+
+    private final String scheme;
+    private final String host;
+    private final int port;
+
+
+    /**
+     * Create a new {@code Route}, the scheme and host are case insensitive.
+     *
+     * @param scheme the scheme e.g. "http".
+     * @param host   the host name or address.
+     * @param port   the port.
+     */
+    public Route(String scheme, String host, int port) {
+
+        assertNotEmpty("scheme", scheme);
+        assertNotEmpty("host", host);
+
+        this.scheme = scheme.toLowerCase(Locale.ENGLISH);
+        this.host = host.toLowerCase(Locale.ENGLISH);
+        this.port = port;
+    }
+
+
+    /**
+     * @return the lower case scheme.
+     */
+    public String getScheme() {
+
+        return scheme;
+    }
+
+    /**
+     * @return the lower case host.
+     */
+    public String getHost() {
+
+        return host;
+    }
+
+    /**
+     * @return the port.
+     */
+    public int getPort() {
+
+        return port;
+    }
+
+
+    @Override
+    public boolean equals(Object o) {
+
+        if (this == o) return true;
+
+        if (o == null || getClass() != o.getClass()) return false;
+
+        Route route = (Route) o;
+
+        return port == route.port && scheme.equals(route.scheme) && host.equals(route.host);
+    }
+
+    @Override
+    public int hashCode() {
+
+        int result = scheme.hashCode();
+
+        result = 31 * result + host.hashCode();
+
+        result = 31 * result + port;
+
+        return result;
+    }
+
+    @Override
+    public String toString() {
+
+        return scheme + "://" + host + ':' + port;
+    }
+}
@@ -0,0 +1,400 @@
+package http.transport;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLHandshakeException;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+
+import static http.util.Asserts.assertNotNull;
+import static http.util.Checks.isNotNull;
+import static http.util.Checks.isNull;
+import static javax.net.ssl.SSLEngineResult.HandshakeStatus.FINISHED;
+import static javax.net.ssl.SSLEngineResult.HandshakeStatus.NEED_TASK;
+import static javax.net.ssl.SSLEngineResult.HandshakeStatus.NEED_WRAP;
+import static javax.net.ssl.SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING;
+import static javax.net.ssl.SSLEngineResult.Status.BUFFER_OVERFLOW;
+import static javax.net.ssl.SSLEngineResult.Status.BUFFER_UNDERFLOW;
+import static javax.net.ssl.SSLEngineResult.Status.CLOSED;
+
+/**
+ * A non-blocking {@code TLS} channel over a {@link SocketChannel}, driven by an {@link SSLEngine} on the event loop
+ * thread. The connection drives the handshake through {@link #handshake()} until it completes and then reads and
+ * writes plain text through the channel as it would a socket.
+ * <p/>
+ * Records are decrypted straight into the callers buffer when there is room for a whole record, otherwise they are
+ * decrypted into a buffer of the channel and copied out. Encrypted data that the socket wouldn't take is kept until
+ * {@link #flush()} is called, so a connection has to flush the channel before it stops waiting for the socket to be
+ * writable.
+ * <p/>
+ * The engines delegated tasks are run on the event loop thread, they are only needed for a full handshake.
+ *
+ * @author Karl Bennett
+ */
+class TlsChannel implements ByteChannel {
+
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+
+    private final SocketChannel channel;
+    private final SSLEngine engine;
+    private final String host;
+    private final HostnameVerifier hostnameVerifier;
+
+    // The encrypted data that has been read but not decrypted, and that has been encrypted but not written.
+    private ByteBuffer netIn;
+    private ByteBuffer netOut;
+    // Decrypted data that didn't fit into the callers buffer.
+    private ByteBuffer appIn;
+
+    private boolean started;
+    private boolean handshaken;
+    private boolean inboundDone;
+
+
+    /**
+     * Create a new {@code TlsChannel}.
+     *
+     * @param channel          the connected socket.
+     * @param engine           the client mode engine for the connection.
+     * @param host             the host the connection is to.
+     * @param hostnameVerifier the verifier that checks the host once the handshake is complete, or null if the engine
+     *                         does its own endpoint identification.
+     */
+    TlsChannel(SocketChannel channel, SSLEngine engine, String host, HostnameVerifier hostnameVerifier) {
+
+        assertNotNull("channel", channel);
+        assertNotNull("engine", engine);
+        assertNotNull("host", host);
+
+        this.channel = channel;
+        this.engine = engine;
+        this.host = host;
+        this.hostnameVerifier = hostnameVerifier;
+
+        int packetSize = engine.getSession().getPacketBufferSize();
+
+        this.netIn = (ByteBuffer) ByteBuffer.allocateDirect(packetSize).flip();
+        this.netOut = (ByteBuffer) ByteBuffer.allocateDirect(packetSize).flip();
+        this.appIn = (ByteBuffer) ByteBuffer.allocate(engine.getSession().getApplicationBufferSize()).flip();
+    }
+
+
+    /**
+     * Carry the handshake on as far as it can go without blocking.
+     *
+     * @return the {@link SelectionKey} operation to wait for before calling this again, or zero if the handshake is
+     *         complete.
+     * @throws IOException if the handshake failed.
+     */
+    int handshake() throws IOException {
+
+        if (handshaken) return 0;
+
+        if (!started) {
+
+            started = true;
+
+            engine.beginHandshake();
+        }
+
+        while (true) {
+
+            if (!flush()) return SelectionKey.OP_WRITE;
+
+            SSLEngineResult.HandshakeStatus status = engine.getHandshakeStatus();
+
+            if (NEED_WRAP == status) {
+
+                wrap(EMPTY);
+
+            } else if (NEED_TASK == status) {
+
+                runTasks();
+
+            } else if (NOT_HANDSHAKING == status || FINISHED == status) {
+
+                verify();
+
+                handshaken = true;
+
+                return 0;
+
+            } else if (!unwrap()) {
+
+                return SelectionKey.OP_READ;
+            }
+        }
+    }
+
+    /**
+     * @return true once the handshake has completed.
+     */
+    boolean isHandshaken() {
+
+        return handshaken;
+    }
+
+    /**
+     * @return true if there is data that has been read from the socket but not yet read from the channel. The socket
+     *         won't become readable for it so it has to be read as soon as the reader is ready for it.
+     */
+    boolean hasBuffered() {
+
+        return appIn.hasRemaining() || netIn.hasRemaining();
+    }
+
+    /**
+     * @return the application protocol that was agreed with {@code ALPN}, or null if none was agreed or the JVM doesn't
+     *         support {@code ALPN}.
+     */
+    String getApplicationProtocol() {
+
+        Object protocol = TlsConfig.invoke(SSLEngine.class, engine, "getApplicationProtocol", new Class<?>[0]);
+
+        return isNull(protocol) || 0 == ((String) protocol).length() ? null : (String) protocol;
+    }
+
+    /**
+     * Write as much of the encrypted data that is waiting to be written as the socket will take.
+     *
+     * @return true if everything has been written.
+     * @throws IOException if the data could not be written.
+     */
+    boolean flush() throws IOException {
+
+        if (netOut.hasRemaining()) channel.write(netOut);
+
+        return !netOut.hasRemaining();
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+
+        if (appIn.hasRemaining()) return drain(dst);
+
+        if (inboundDone) return -1;
+
+        while (true) {
+
+            // A whole record can be decrypted straight into the callers buffer.
+            ByteBuffer target = dst.remaining() >= appIn.capacity() ? dst : (ByteBuffer) appIn.clear();
+
+            SSLEngineResult result = engine.unwrap(netIn, target);
+
+            if (target == appIn) appIn.flip();
+
+            afterHandshakeMessage(result);
+
+            if (CLOSED == result.getStatus()) inboundDone = true;
+
+            if (0 < result.bytesProduced()) return target == dst ? result.bytesProduced() : drain(dst);
+
+            if (CLOSED == result.getStatus()) return -1;
+
+            if (BUFFER_OVERFLOW == result.getStatus()) {
+
+                appIn = (ByteBuffer) ByteBuffer.allocate(engine.getSession().getApplicationBufferSize()).flip();
+
+                continue;
+            }
+
+            // Some records, e.g. session tickets, don't hold any data so carry on with the next one.
+            if (BUFFER_UNDERFLOW != result.getStatus() && 0 < result.bytesConsumed()) continue;
+
+            int read = fill();
+
+            if (0 == read) return 0;
+
+            if (-1 == read) {
+
+                inboundDone = true;
+
+                return -1;
+            }
+        }
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+
+        int written = 0;
+
+        while (src.hasRemaining() && flush()) {
+
+            SSLEngineResult result = wrap(src);
+
+            written += result.bytesConsumed();
+
+            if (CLOSED == result.getStatus()) throw new IOException("The TLS connection has been closed.");
+
+            afterHandshakeMessage(result);
+        }
+
+        flush();
+
+        return written;
+    }
+
+    @Override
+    public boolean isOpen() {
+
+        return channel.isOpen();
+    }
+
+    /**
+     * Send a {@code close_notify} if the socket will take it and close the socket.
+     */
+    @Override
+    public void close() throws IOException {
+
+        try {
+
+            engine.closeOutbound();
+
+            if (flush()) {
+
+                wrap(EMPTY);
+                flush();
+            }
+
+        } catch (IOException e) {
+
+            // The connection is being closed anyway.
+
+        } finally {
+
+            channel.close();
+        }
+    }
+
+    private void verify() throws SSLException {
+
+        if (isNotNull(hostnameVerifier) && !hostnameVerifier.verify(host, engine.getSession())) {
+
+            throw new SSLHandshakeException("The certificate of the server does not match the host (" + host + ").");
+        }
+    }
+
+    /**
+     * Encrypt the supplied data into the empty network buffer.
+     */
+    private SSLEngineResult wrap(ByteBuffer src) throws IOException {
+
+        while (true) {
+
+            netOut.clear();
+
+            SSLEngineResult result = engine.wrap(src, netOut);
+
+            netOut.flip();
+
+            if (BUFFER_OVERFLOW != result.getStatus()) return result;
+
+            netOut = (ByteBuffer) ByteBuffer.allocateDirect(engine.getSession().getPacketBufferSize()).flip();
+        }
+    }
+
+    /**
+     * Decrypt a handshake record, any application data that comes with it is kept for the first read.
+     *
+     * @return false if more data has to be read from the socket first.
+     */
+    private boolean unwrap() throws IOException {
+
+        appIn.compact();
+
+        SSLEngineResult result;
+
+        try {
+
+            result = engine.unwrap(netIn, appIn);
+
+        } finally {
+
+            appIn.flip();
+        }
+
+        if (CLOSED == result.getStatus()) throw new SSLHandshakeException("The server closed the TLS handshake.");
+
+        if (BUFFER_OVERFLOW == result.getStatus()) throw new SSLException("The TLS record is too large.");
+
+        if (BUFFER_UNDERFLOW != result.getStatus()) return true;
+
+        int read = fill();
+
+        if (-1 == read) throw new EOFException("The server closed the connection during the TLS handshake.");
+
+        return 0 < read;
+    }
+
+    /**
+     * Answer anything the engine needs after a record once the handshake has completed, e.g. a key update.
+     */
+    private void afterHandshakeMessage(SSLEngineResult result) throws IOException {
+
+        SSLEngineResult.HandshakeStatus status = result.getHandshakeStatus();
+
+        while (NEED_TASK == status || (NEED_WRAP == status && flush())) {
+
+            if (NEED_TASK == status) runTasks();
+            else wrap(EMPTY);
+
+            status = engine.getHandshakeStatus();
+        }
+    }
+
+    private void runTasks() {
+
+        for (Runnable task; isNotNull(task = engine.getDelegatedTask()); ) task.run();
+    }
+
+    /**
+     * Read more encrypted data from the socket, keeping anything that hasn't been decrypted yet.
+     *
+     * @return the number of bytes read, or -1 if the socket has been closed.
+     */
+    private int fill() throws IOException {
+
+        int packetSize = engine.getSession().getPacketBufferSize();
+
+        if (packetSize > netIn.capacity()) {
+
+            ByteBuffer larger = ByteBuffer.allocateDirect(packetSize);
+            larger.put(netIn);
+            netIn = larger;
+
+        } else {
+
+            netIn.compact();
+        }
+
+        try {
+
+            return channel.read(netIn);
+
+        } finally {
+
+            netIn.flip();
+        }
+    }
+
+    private int drain(ByteBuffer dst) {
+
+        int length = Math.min(dst.remaining(), appIn.remaining());
+
+        int limit = appIn.limit();
+
+        appIn.limit(appIn.position() + length);
+        dst.put(appIn);
+        appIn.limit(limit);
+
+        return length;
+    }
+}
@@ -0,0 +1,298 @@
+package http.transport;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSessionContext;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.security.NoSuchAlgorithmException;
+
+import static http.util.Asserts.assertNotNull;
+import static http.util.Checks.isNotNull;
+import static http.util.Checks.isNull;
+
+/**
+ * The {@code TLS} configuration that a {@link NioRequestHandler} uses for its {@code https} connections. The
+ * {@link SSLContext} holds the key and trust material, by default it is the JVMs default context which is configured
+ * through the {@code javax.net.ssl.*} system properties.
+ * <p/>
+ * Every connection to the same host and port is created from the same context, so it can resume a session from the
+ * contexts client session cache, or use a session ticket, instead of doing a full handshake. The size of the cache and
+ * how long a session is kept for can be set through {@link #setSessionCacheSize(int)} and
+ * {@link #setSessionTimeout(int)}.
+ * <p/>
+ * The server's host name is checked against its certificate with the {@code HTTPS} endpoint identification of the JVM,
+ * or with the supplied {@link HostnameVerifier}. Application protocols are only negotiated with {@code ALPN} on JVMs
+ * that support it.
+ *
+ * @author Karl Bennett
+ */
+public class TlsConfig {
+
+    /**
+     * The {@code ALPN} name of {@code HTTP/1.1}.
+     */
+    public static final String HTTP_1_1 = "http/1.1";
+
+    /**
+     * The {@code ALPN} name of {@code HTTP/2}.
+     */
+    public static final String H2 = "h2";
+
+    private static final String HTTPS = "HTTPS";
+
+
+    private static SSLContext defaultContext() {
+
+        try {
+
+            return SSLContext.getDefault();
+
+        } catch (NoSuchAlgorithmException e) {
+
+            throw new IllegalStateException("The default SSL context could not be created.", e);
+        }
+    }
+
+    /**
+     * Call a method that is only available on newer JVMs, these are looked up by name because they can't be compiled
+     * against. The method is looked up on the public type rather than the class of the target, which may not be
+     * accessible.
+     *
+     * @return the result of the method or null if it isn't available.
+     */
+    static Object invoke(Class<?> type, Object target, String name, Class<?>[] types, Object... arguments) {
+
+        try {
+
+            Method method = type.getMethod(name, types);
+
+            return method.invoke(target, arguments);
+
+        } catch (NoSuchMethodException e) {
+
+            return null;
+
+        } catch (IllegalAccessException e) {
+
+            return null;
+
+        } catch (InvocationTargetException e) {
+
+            // Older JVMs throw an UnsupportedOperationException from the abstract methods.
+            if (e.getCause() instanceof UnsupportedOperationException) return null;
+
+            throw new IllegalStateException("Could not call (" + name + ").", e.getCause());
+        }
+    }
+
+
+    private final SSLContext sslContext;
+
+    private volatile String[] protocols;
+    private volatile String[] cipherSuites;
+    private volatile String[] applicationProtocols;
+    private volatile HostnameVerifier hostnameVerifier;
+
+
+    /**
+     * Create a new {@code TlsConfig} that uses the default {@link SSLContext}.
+     *
+     * @throws IllegalStateException if the default context could not be created.
+     */
+    public TlsConfig() {
+
+        this(defaultContext());
+    }
+
+    /**
+     * Create a new {@code TlsConfig} that uses the supplied {@link SSLContext}.
+     *
+     * @param sslContext the context that every connection is created from.
+     */
+    public TlsConfig(SSLContext sslContext) {
+
+        assertNotNull("sslContext", sslContext);
+
+        this.sslContext = sslContext;
+    }
+
+
+    /**
+     * @return the context that every connection is created from.
+     */
+    public SSLContext getSslContext() {
+
+        return sslContext;
+    }
+
+    /**
+     * @return the enabled protocols e.g. "TLSv1.2", or null if the defaults of the context are used.
+     */
+    public String[] getProtocols() {
+
+        return isNull(protocols) ? null : protocols.clone();
+    }
+
+    /**
+     * Set the protocols that can be used e.g. "TLSv1.2", "TLSv1.3".
+     *
+     * @param protocols the enabled protocols, or null to use the defaults of the context.
+     */
+    public void setProtocols(String... protocols) {
+
+        this.protocols = isNull(protocols) ? null : protocols.clone();
+    }
+
+    /**
+     * @return the enabled cipher suites, or null if the defaults of the context are used.
+     */
+    public String[] getCipherSuites() {
+
+        return isNull(cipherSuites) ? null : cipherSuites.clone();
+    }
+
+    /**
+     * Set the cipher suites that can be used.
+     *
+     * @param cipherSuites the enabled cipher suites, or null to use the defaults of the context.
+     */
+    public void setCipherSuites(String... cipherSuites) {
+
+        this.cipherSuites = isNull(cipherSuites) ? null : cipherSuites.clone();
+    }
+
+    /**
+     * @return the application protocols that are offered with {@code ALPN}, or null if none are offered.
+     */
+    public String[] getApplicationProtocols() {
+
+        return isNull(applicationProtocols) ? null : applicationProtocols.clone();
+    }
+
+    /**
+     * Set the application protocols that are offered to the server with {@code ALPN} e.g. {@link #HTTP_1_1}. When the
+     * {@link NioRequestHandler} speaks {@code HTTP/2} it always offers {@link #H2} and {@link #HTTP_1_1}.
+     *
+     * @param applicationProtocols the application protocols in order of preference, or null to offer none.
+     */
+    public void setApplicationProtocols(String... applicationProtocols) {
+
+        this.applicationProtocols = isNull(applicationProtocols) ? null : applicationProtocols.clone();
+    }
+
+    /**
+     * @return the verifier that checks the server's host name, or null if the endpoint identification of the JVM is
+     *         used.
+     */
+    public HostnameVerifier getHostnameVerifier() {
+
+        return hostnameVerifier;
+    }
+
+    /**
+     * Set a verifier that checks the server's host name once the handshake has completed instead of the
+     * {@code HTTPS} endpoint identification of the JVM.
+     *
+     * @param hostnameVerifier the host name verifier, or null to use the endpoint identification of the JVM.
+     */
+    public void setHostnameVerifier(HostnameVerifier hostnameVerifier) {
+
+        this.hostnameVerifier = hostnameVerifier;
+    }
+
+    /**
+     * @return the number of sessions the client session cache can hold, zero means there is no limit.
+     */
+    public int getSessionCacheSize() {
+
+        return sessionContext().getSessionCacheSize();
+    }
+
+    /**
+     * Set the number of sessions the client session cache can hold, this is shared by everything that uses the same
+     * {@link SSLContext}.
+     *
+     * @param sessionCacheSize the size of the cache, zero means there is no limit.
+     * @throws IllegalArgumentException if the size is negative.
+     */
+    public void setSessionCacheSize(int sessionCacheSize) {
+
+        if (0 > sessionCacheSize) {
+
+            throw new IllegalArgumentException("The (sessionCacheSize) variable must not be negative.");
+        }
+
+        sessionContext().setSessionCacheSize(sessionCacheSize);
+    }
+
+    /**
+     * @return the number of seconds a session can be resumed for, zero means there is no limit.
+     */
+    public int getSessionTimeout() {
+
+        return sessionContext().getSessionTimeout();
+    }
+
+    /**
+     * Set the number of seconds a session can be resumed for, this is shared by everything that uses the same
+     * {@link SSLContext}.
+     *
+     * @param sessionTimeout the session timeout in seconds, zero means there is no limit.
+     * @throws IllegalArgumentException if the timeout is negative.
+     */
+    public void setSessionTimeout(int sessionTimeout) {
+
+        if (0 > sessionTimeout) {
+
+            throw new IllegalArgumentException("The (sessionTimeout) variable must not be negative.");
+        }
+
+        sessionContext().setSessionTimeout(sessionTimeout);
+    }
+
+    /**
+     * Create the engine for a connection to the supplied route. The engine is created with the host and port so that
+     * it can find a session to resume.
+     *
+     * @param route                the route the connection is for.
+     * @param applicationProtocols the application protocols to offer, or null to offer the configured protocols.
+     * @return a client mode engine.
+     */
+    SSLEngine createEngine(Route route, String[] applicationProtocols) {
+
+        SSLEngine engine = sslContext.createSSLEngine(route.getHost(), route.getPort());
+        engine.setUseClientMode(true);
+
+        SSLParameters parameters = engine.getSSLParameters();
+
+        if (isNotNull(protocols)) parameters.setProtocols(protocols);
+
+        if (isNotNull(cipherSuites)) parameters.setCipherSuites(cipherSuites);
+
+        if (isNull(hostnameVerifier)) {
+
+            invoke(SSLParameters.class, parameters, "setEndpointIdentificationAlgorithm", new Class<?>[]{String.class},
+                    HTTPS);
+        }
+
+        String[] offered = isNull(applicationProtocols) ? this.applicationProtocols : applicationProtocols;
+
+        if (isNotNull(offered)) {
+
+            invoke(SSLParameters.class, parameters, "setApplicationProtocols", new Class<?>[]{String[].class},
+                    (Object) offered);
+        }
+
+        engine.setSSLParameters(parameters);
+
+        return engine;
+    }
+
+    private SSLSessionContext sessionContext() {
+
+        return sslContext.getClientSessionContext();
+    }
+}
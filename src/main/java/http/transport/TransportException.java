@@ -0,0 +1,46 @@
+package http.transport;
+
+/**
+ * An exception that is thrown when an {@code HTTP} exchange fails at the transport level e.g. the connection could not
+ * be opened, it was closed before the response was complete, or the response could not be parsed. This is thrown
+ * instead of {@link java.io.IOException} so that the {@link http.Client} request methods can be called without the
+ * need for checked exceptions.
+ *
+ * @author Karl Bennett
+ */
+public class TransportException extends IllegalStateException {
+
+    /**
+     * Create an empty {@code TransportException}.
+     */
+    public TransportException() {
+    }
+
+    /**
+     * Create a {@code TransportException} with the supplied message.
+     *
+     * @param message the message for the exception.
+     */
+    public TransportException(String message) {
+        super(message);
+    }
+
+    /**
+     * Create a {@code TransportException} with the supplied message and cause.
+     *
+     * @param message the message for the exception.
+     * @param cause   the cause of the exception, this will usually be an {@link java.io.IOException}.
+     */
+    public TransportException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    /**
+     * Create a {@code TransportException} with the supplied cause.
+     *
+     * @param cause the cause of the exception, this will usually be an {@link java.io.IOException}.
+     */
+    public TransportException(Throwable cause) {
+        super(cause);
+    }
+}
@@ -0,0 +1,6 @@
+/**
+ * This package contains the default non-blocking {@link http.RequestHandler} implementation that drives the
+ * {@link http.Client} request methods. All socket I/O is carried out by {@link java.nio.channels.Selector} event loops so
+ * that many requests can be in flight on a single thread.
+ */
+package http.transport;
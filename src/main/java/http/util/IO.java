@@ -1,6 +1,7 @@
 package http.util;
 
 import java.io.BufferedReader;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -40,4 +41,24 @@ public final class IO {
 
         return output.toString();
     }
+
+    /**
+     * Close the supplied {@link Closeable} ignoring any {@link IOException}, this is for closing resources that are
+     * being abandoned.
+     *
+     * @param closeable the resource to close, this can be null.
+     */
+    public static void closeQuietly(Closeable closeable) {
+
+        if (null == closeable) return;
+
+        try {
+
+            closeable.close();
+
+        } catch (IOException e) {
+
+            // The resource is being abandoned so there's nothing else to do.
+        }
+    }
 }
@@ -1,10 +1,13 @@
 package http.util;
 
-import static http.util.Checks.isNotEmpty;
+import static http.util.Checks.isEmpty;
 
 /**
  * A simple parser that splits a {@link String} by a supplied {@code delimiter} and sequentially exposes the parts
  * through it's abstract {@link #next(String)} method.
+ * <p/>
+ * The delimiter is matched literally and the string is scanned in place, so no regular expression is compiled and no
+ * intermediate array is built. Like {@link String#split(String)} any empty parts at the end of the string are dropped.
  *
  * @author Karl Bennett
  */
@@ -41,6 +44,29 @@ public abstract class Parser {
      */
     public void parse() {
 
-        if (isNotEmpty(string)) for (String part : string.split(delimiter)) next(part);
+        if (isEmpty(string)) return;
+
+        int empty = 0;
+
+        for (int start = 0, length = string.length(); start < length; ) {
+
+            int end = string.indexOf(delimiter, start);
+
+            if (-1 == end) end = length;
+
+            if (start == end) {
+
+                // Hold back empty parts until it's known that they aren't at the end of the string.
+                empty++;
+
+            } else {
+
+                for (; 0 < empty; empty--) next("");
+
+                next(string.substring(start, end));
+            }
+
+            start = end + delimiter.length();
+        }
     }
 }
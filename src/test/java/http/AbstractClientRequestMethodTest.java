@@ -3,6 +3,8 @@ package http;
 import http.header.Header;
 import http.parameter.Parameter;
 import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
 import org.junit.Test;
 
 import java.io.ByteArrayInputStream;
@@ -53,10 +55,11 @@ public abstract class AbstractClientRequestMethodTest implements RequestHandler
          * {@link Client#GET(String)}, {@link Client#POST(String)}, {@link Client#PUT(String)}, or
          * {@link Client#get(String)}, {@link Client#post(String)}, {@link Client#put(String)}...
          *
-         * @param input the input for the request method, it's type is set generically for the class.
+         * @param client the client whose handler is the test, an instance request method should be called on it.
+         * @param input  the input for the request method, it's type is set generically for the class.
          * @return the response object returned from the request method.
          */
-        public <B> Response<B> execute(T input);
+        public <B> Response<B> execute(Client client, T input);
     }
 
 
@@ -85,6 +88,9 @@ public abstract class AbstractClientRequestMethodTest implements RequestHandler
     }
 
 
+    private Client client;
+    private Client instance;
+
     private String method;
     private URL url;
     private Collection<Header> headers;
@@ -103,43 +109,62 @@ public abstract class AbstractClientRequestMethodTest implements RequestHandler
         return TEST_RESPONSE;
     }
 
+    /**
+     * Send every request to this test instead of over the network, the static request methods are pointed at it as
+     * well.
+     */
+    @Before
+    public void setUp() {
+
+        client = new Client(this);
+
+        instance = Client.getInstance();
+        Client.setInstance(client);
+    }
+
+    @After
+    public void tearDown() {
+
+        Client.setInstance(instance);
+    }
+
     @Test
     public void testSimpleStringRequest() throws Exception {
 
-        simpleRequestTest(TEST_URL, stringRequestExecutor.<InputStream>execute(TEST_URL_STRING));
+        simpleRequestTest(TEST_URL, stringRequestExecutor.<InputStream>execute(client, TEST_URL_STRING));
     }
 
     @Test
     public void testSimpleUrlRequest() throws Exception {
 
-        simpleRequestTest(TEST_URL, urlRequestExecutor.<InputStream>execute(TEST_URL));
+        simpleRequestTest(TEST_URL, urlRequestExecutor.<InputStream>execute(client, TEST_URL));
     }
 
     @Test
     public void testSimpleRequest() throws Exception {
 
-        simpleRequestTest(TEST_URL, requestExecutor.<InputStream>execute(new Request(TEST_URL)));
+        simpleRequestTest(TEST_URL, requestExecutor.<InputStream>execute(client, new Request(TEST_URL)));
     }
 
     @Test
     public void testStringRequestWithQueryString() throws Exception {
 
         requestWithParametersTest(TEST_URL_WITH_QUERY, PARAMETERS,
-                stringRequestExecutor.<InputStream>execute(TEST_URL_STRING_WITH_QUERY_STRING));
+                stringRequestExecutor.<InputStream>execute(client, TEST_URL_STRING_WITH_QUERY_STRING));
     }
 
     @Test
     public void testUrlRequestWithQueryString() throws Exception {
 
         requestWithParametersTest(TEST_URL_WITH_QUERY, PARAMETERS,
-                urlRequestExecutor.<InputStream>execute(TEST_URL_WITH_QUERY));
+                urlRequestExecutor.<InputStream>execute(client, TEST_URL_WITH_QUERY));
     }
 
     @Test
     public void testRequestWithQueryString() throws Exception {
 
         requestWithParametersTest(TEST_URL_WITH_QUERY, PARAMETERS,
-                requestExecutor.<InputStream>execute(new Request(TEST_URL_WITH_QUERY)));
+                requestExecutor.<InputStream>execute(client, new Request(TEST_URL_WITH_QUERY)));
     }
 
     @Test
@@ -148,7 +173,7 @@ public abstract class AbstractClientRequestMethodTest implements RequestHandler
         Request<Object> request = new Request<Object>(TEST_URL);
         request.setHeaders(HEADERS);
 
-        requestWithHeadersTest(TEST_URL, HEADERS, requestExecutor.<InputStream>execute(request));
+        requestWithHeadersTest(TEST_URL, HEADERS, requestExecutor.<InputStream>execute(client, request));
     }
 
     @Test
@@ -157,7 +182,7 @@ public abstract class AbstractClientRequestMethodTest implements RequestHandler
         Request<Object> request = new Request<Object>(TEST_URL);
         request.setHeaders(COOKIE_HEADERS);
 
-        requestWithCookiesTest(TEST_URL, COOKIES, requestExecutor.<InputStream>execute(request));
+        requestWithCookiesTest(TEST_URL, COOKIES, requestExecutor.<InputStream>execute(client, request));
     }
 
     @Test
@@ -166,7 +191,8 @@ public abstract class AbstractClientRequestMethodTest implements RequestHandler
         Request request = new Request(TEST_URL);
         request.setParameters(PARAMETERS);
 
-        requestWithParametersTest(TEST_URL_WITH_QUERY, PARAMETERS, requestExecutor.<InputStream>execute(request));
+        requestWithParametersTest(TEST_URL_WITH_QUERY, PARAMETERS,
+                requestExecutor.<InputStream>execute(client, request));
     }
 
     @Test
@@ -175,7 +201,7 @@ public abstract class AbstractClientRequestMethodTest implements RequestHandler
         Request<InputStream> request = new Request<InputStream>(TEST_URL);
         request.setBody(TEST_INPUT_STREAM_BODY);
 
-        requestWithBodyTest(TEST_URL, TEST_INPUT_STREAM_BODY, requestExecutor.<InputStream>execute(request));
+        requestWithBodyTest(TEST_URL, TEST_INPUT_STREAM_BODY, requestExecutor.<InputStream>execute(client, request));
     }
 
 
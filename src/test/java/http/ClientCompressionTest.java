@@ -0,0 +1,160 @@
+package http;
+
+import http.transport.GzipBody;
+import http.transport.NioRequestHandler;
+import http.transport.TestServer;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Karl Bennett
+ */
+public class ClientCompressionTest {
+
+    private static final String LARGE_BODY;
+
+    static {
+
+        StringBuilder body = new StringBuilder();
+
+        for (int i = 0; i < 1000; i++) body.append("line ").append(i).append('\n');
+
+        LARGE_BODY = body.toString();
+    }
+
+
+    private static String gunzip(byte[] compressed) throws IOException {
+
+        return new String(IOUtils.toByteArray(new GZIPInputStream(new ByteArrayInputStream(compressed))), "UTF-8");
+    }
+
+
+    private TestServer server;
+    private NioRequestHandler handler;
+    private Client client;
+
+
+    @Before
+    public void setUp() throws Exception {
+
+        server = new TestServer(TestServer.fixed(200, "ok"));
+        handler = new NioRequestHandler();
+        client = new Client(handler);
+        client.setCompressionThreshold(1024);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+
+        handler.close();
+        server.close();
+    }
+
+
+    private TestServer.ReceivedRequest post(Object body) throws Exception {
+
+        Request<Object> request = new Request<Object>(server.url("/ingest"));
+        request.setBody(body);
+
+        client.post(request).getBody().close();
+
+        return server.getRequests().get(server.getRequests().size() - 1);
+    }
+
+    @Test
+    public void testLargeStringBodyIsCompressed() throws Exception {
+
+        TestServer.ReceivedRequest received = post(LARGE_BODY);
+
+        assertEquals("the body should be marked as gzip.", "gzip", received.getHeader("Content-Encoding"));
+        assertEquals("the compressed body should be chunked.", "chunked", received.getHeader("Transfer-Encoding"));
+        assertTrue("the body should be smaller.", LARGE_BODY.length() > received.getBody().length);
+        assertEquals("the body should decompress to the original.", LARGE_BODY, gunzip(received.getBody()));
+    }
+
+    @Test
+    public void testLargeStreamBodyIsCompressed() throws Exception {
+
+        TestServer.ReceivedRequest received = post(IOUtils.toInputStream(LARGE_BODY, "UTF-8"));
+
+        assertEquals("the body should be marked as gzip.", "gzip", received.getHeader("Content-Encoding"));
+        assertEquals("the body should decompress to the original.", LARGE_BODY, gunzip(received.getBody()));
+    }
+
+    @Test
+    public void testSmallBodyIsNotCompressed() throws Exception {
+
+        TestServer.ReceivedRequest received = post("small body");
+
+        assertNull("the body should not be marked as gzip.", received.getHeader("Content-Encoding"));
+        assertEquals("the body should be sent as it is.", "small body", new String(received.getBody(), "UTF-8"));
+    }
+
+    @Test
+    public void testSmallStreamBodyIsNotCompressed() throws Exception {
+
+        TestServer.ReceivedRequest received = post(IOUtils.toInputStream("small body", "UTF-8"));
+
+        assertNull("the body should not be marked as gzip.", received.getHeader("Content-Encoding"));
+        assertEquals("the body should be sent as it is.", "small body", new String(received.getBody(), "UTF-8"));
+    }
+
+    @Test
+    public void testEncodedBodyIsNotCompressedAgain() throws Exception {
+
+        Request<String> request = new Request<String>(server.url("/ingest"));
+        request.addHeader("Content-Encoding", "br");
+        request.setBody(LARGE_BODY);
+
+        client.post(request).getBody().close();
+
+        TestServer.ReceivedRequest received = server.getRequests().get(0);
+
+        assertEquals("the encoding should be left alone.", "br", received.getHeader("Content-Encoding"));
+        assertEquals("the body should be sent as it is.", LARGE_BODY, new String(received.getBody(), "UTF-8"));
+    }
+
+    @Test
+    public void testCompressionDisabled() throws Exception {
+
+        client.setCompressionThreshold(-1);
+
+        TestServer.ReceivedRequest received = post(LARGE_BODY);
+
+        assertNull("the body should not be marked as gzip.", received.getHeader("Content-Encoding"));
+        assertEquals("the body should be sent as it is.", LARGE_BODY, new String(received.getBody(), "UTF-8"));
+    }
+
+    @Test
+    public void testGzipBodyIsAlwaysCompressed() throws Exception {
+
+        client.setCompressionThreshold(-1);
+
+        Request<InputStream> request = new Request<InputStream>(server.url("/ingest"));
+        request.addHeader("Content-Length", "5");
+        request.setBody(new GzipBody(IOUtils.toInputStream("small", "UTF-8")));
+
+        client.post(request).getBody().close();
+
+        TestServer.ReceivedRequest received = server.getRequests().get(0);
+
+        assertEquals("the body should be marked as gzip.", "gzip", received.getHeader("Content-Encoding"));
+        assertNull("the uncompressed length should be removed.", received.getHeader("Content-Length"));
+        assertEquals("the body should decompress to the original.", "small", gunzip(received.getBody()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidThreshold() throws Exception {
+
+        client.setCompressionThreshold(-2);
+    }
+}
@@ -15,25 +15,25 @@ public class ClientInstanceOptionsTest extends AbstractClientRequestMethodTest {
                 new RequestExecutor<String>() {
 
                     @Override
-                    public Response execute(String input) {
+                    public Response execute(Client client, String input) {
 
-                        return new Client().options(input);
+                        return client.options(input);
                     }
                 },
                 new RequestExecutor<URL>() {
 
                     @Override
-                    public Response execute(URL input) {
+                    public Response execute(Client client, URL input) {
 
-                        return new Client().options(input);
+                        return client.options(input);
                     }
                 },
                 new RequestExecutor<Request>() {
 
                     @Override
-                    public Response execute(Request input) {
+                    public Response execute(Client client, Request input) {
 
-                        return new Client().options(input);
+                        return client.options(input);
                     }
                 }
         );
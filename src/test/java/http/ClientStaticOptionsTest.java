@@ -15,7 +15,7 @@ public class ClientStaticOptionsTest extends AbstractClientRequestMethodTest {
                 new RequestExecutor<String>() {
 
                     @Override
-                    public Response execute(String input) {
+                    public Response execute(Client client, String input) {
 
                         return OPTIONS(input);
                     }
@@ -23,7 +23,7 @@ public class ClientStaticOptionsTest extends AbstractClientRequestMethodTest {
                 new RequestExecutor<URL>() {
 
                     @Override
-                    public Response execute(URL input) {
+                    public Response execute(Client client, URL input) {
 
                         return OPTIONS(input);
                     }
@@ -31,7 +31,7 @@ public class ClientStaticOptionsTest extends AbstractClientRequestMethodTest {
                 new RequestExecutor<Request>() {
 
                     @Override
-                    public Response execute(Request input) {
+                    public Response execute(Client client, Request input) {
 
                         return OPTIONS(input);
                     }
@@ -0,0 +1,393 @@
+package http;
+
+import http.transport.NioRequestHandler;
+import http.transport.RequestTimeoutException;
+import http.transport.TestServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.concurrent.ExecutionException;
+
+import static http.util.IO.readAll;
+import static org.junit.Assert.*;
+
+/**
+ * @author Karl Bennett
+ */
+public class ClientTimeoutsTest {
+
+    private static final String RESPONSE_BODY = "timely response body";
+
+
+    private static void sleep(long millis) throws IOException {
+
+        try {
+
+            Thread.sleep(millis);
+
+        } catch (InterruptedException e) {
+
+            throw new InterruptedIOException();
+        }
+    }
+
+    /**
+     * @return a responder that waits before it sends anything.
+     */
+    private static TestServer.Responder stalling(final long millis) {
+
+        return new TestServer.Responder() {
+
+            @Override
+            public boolean respond(TestServer.ReceivedRequest request, OutputStream output) throws IOException {
+
+                sleep(millis);
+
+                return TestServer.fixed(200, RESPONSE_BODY).respond(request, output);
+            }
+        };
+    }
+
+    /**
+     * @return a responder that sends the start of the body and then stops.
+     */
+    private static TestServer.Responder stopping() {
+
+        return new TestServer.Responder() {
+
+            @Override
+            public boolean respond(TestServer.ReceivedRequest request, OutputStream output) throws IOException {
+
+                output.write("HTTP/1.1 200 OK\r\nContent-Length: 10\r\n\r\n12345".getBytes("ISO-8859-1"));
+                output.flush();
+
+                sleep(5000);
+
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @return a responder that sends its body a byte at a time, never stopping for long.
+     */
+    private static TestServer.Responder trickling(final int length) {
+
+        return new TestServer.Responder() {
+
+            @Override
+            public boolean respond(TestServer.ReceivedRequest request, OutputStream output) throws IOException {
+
+                output.write(("HTTP/1.1 200 OK\r\nContent-Length: " + length + "\r\n\r\n").getBytes("ISO-8859-1"));
+                output.flush();
+
+                for (int i = 0; i < length; i++) {
+
+                    output.write('a');
+                    output.flush();
+
+                    sleep(50);
+                }
+
+                return true;
+            }
+        };
+    }
+
+    private static RequestTimeoutException timeout(IOException e) {
+
+        assertTrue("the body should fail because it ran out of time.", e.getCause() instanceof RequestTimeoutException);
+
+        return (RequestTimeoutException) e.getCause();
+    }
+
+
+    private TestServer server;
+    private NioRequestHandler handler;
+    private Client client;
+
+
+    @Before
+    public void setUp() throws Exception {
+
+        handler = new NioRequestHandler();
+        client = new Client(handler);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+
+        handler.close();
+
+        if (null != server) server.close();
+    }
+
+
+    @Test
+    public void testFirstByteTimeout() throws Exception {
+
+        server = new TestServer(stalling(5000));
+
+        Timeouts timeouts = new Timeouts();
+        timeouts.setFirstByteTimeout(200);
+
+        client.setTimeouts(timeouts);
+
+        long start = System.currentTimeMillis();
+
+        try {
+
+            client.get(server.url("/slow"));
+
+            fail("the request should time out.");
+
+        } catch (RequestTimeoutException e) {
+
+            assertTrue("the request should fail once the first byte timeout has passed.",
+                    2000 > System.currentTimeMillis() - start);
+        }
+    }
+
+    @Test
+    public void testIdleReadTimeout() throws Exception {
+
+        server = new TestServer(stopping());
+
+        Timeouts timeouts = new Timeouts();
+        timeouts.setIdleReadTimeout(200);
+
+        client.setTimeouts(timeouts);
+
+        InputStream body = client.get(server.url("/stops")).getBody();
+
+        try {
+
+            readAll(body);
+
+            fail("the body should time out.");
+
+        } catch (IOException e) {
+
+            timeout(e);
+        }
+    }
+
+    @Test
+    public void testSlowReaderIsNotIdle() throws Exception {
+
+        final byte[] large = new byte[1024 * 1024];
+
+        server = new TestServer(new TestServer.Responder() {
+
+            @Override
+            public boolean respond(TestServer.ReceivedRequest request, OutputStream output) throws IOException {
+
+                output.write(("HTTP/1.1 200 OK\r\nContent-Length: " + large.length + "\r\n\r\n")
+                        .getBytes("ISO-8859-1"));
+                output.write(large);
+                output.flush();
+
+                return true;
+            }
+        });
+
+        Timeouts timeouts = new Timeouts();
+        timeouts.setIdleReadTimeout(200);
+
+        client.setTimeouts(timeouts);
+
+        InputStream body = client.get(server.url("/large")).getBody();
+
+        // The body fills up and stops the connection reading, which is the callers doing rather than the servers.
+        Thread.sleep(500);
+
+        byte[] buffer = new byte[8192];
+        int total = 0;
+
+        for (int read; -1 != (read = body.read(buffer)); ) total += read;
+
+        assertEquals("the whole body should be read.", large.length, total);
+    }
+
+    @Test
+    public void testTotalTimeout() throws Exception {
+
+        server = new TestServer(trickling(100));
+
+        Timeouts timeouts = new Timeouts();
+        timeouts.setIdleReadTimeout(1000);
+        timeouts.setTotalTimeout(300);
+
+        client.setTimeouts(timeouts);
+
+        InputStream body = client.get(server.url("/trickle")).getBody();
+
+        try {
+
+            readAll(body);
+
+            fail("the body should time out.");
+
+        } catch (IOException e) {
+
+            assertTrue("the total timeout should be reported.", timeout(e).getMessage().contains("(300) milliseconds"));
+        }
+    }
+
+    @Test
+    public void testDeadline() throws Exception {
+
+        server = new TestServer(stalling(5000));
+
+        Request<String> request = new Request<String>(server.url("/slow"));
+        request.setTimeouts(new Timeouts());
+        request.getTimeouts().setDeadline(System.currentTimeMillis() + 200);
+
+        try {
+
+            client.get(request);
+
+            fail("the request should time out.");
+
+        } catch (RequestTimeoutException e) {
+
+            assertTrue("the deadline should be reported.", e.getMessage().contains("deadline"));
+        }
+    }
+
+    @Test
+    public void testPassedDeadlineIsShed() throws Exception {
+
+        server = new TestServer(TestServer.fixed(200, RESPONSE_BODY));
+
+        Request<String> request = new Request<String>(server.url("/shed"));
+        request.setTimeouts(new Timeouts());
+        request.getTimeouts().setDeadline(System.currentTimeMillis() - 1);
+
+        try {
+
+            client.get(request);
+
+            fail("the request should be shed.");
+
+        } catch (RequestTimeoutException e) {
+
+            // The request has run out of time.
+        }
+
+        try {
+
+            client.getAsync(request).get();
+
+            fail("the async request should be shed.");
+
+        } catch (ExecutionException e) {
+
+            assertTrue("the future should fail because the request ran out of time.",
+                    e.getCause() instanceof RequestTimeoutException);
+        }
+
+        assertEquals("the request should never be sent.", 0, server.getRequests().size());
+    }
+
+    @Test
+    public void testNoDeadline() throws Exception {
+
+        server = new TestServer(TestServer.fixed(200, RESPONSE_BODY));
+
+        Timeouts defaults = new Timeouts();
+        defaults.setDeadline(System.currentTimeMillis() - 1);
+
+        client.setTimeouts(defaults);
+
+        Request<String> request = new Request<String>(server.url("/none"));
+        request.setTimeouts(new Timeouts());
+        request.getTimeouts().setDeadline(Timeouts.NONE);
+
+        assertFalse("there should be no deadline.", request.getTimeouts().hasDeadline());
+        assertFalse("no deadline should never pass.", request.getTimeouts().isExpired());
+        assertEquals("the request should be sent without a deadline.", RESPONSE_BODY,
+                readAll(client.get(request).getBody()));
+    }
+
+    @Test
+    public void testRequestOverridesClientTimeouts() throws Exception {
+
+        server = new TestServer(stalling(300));
+
+        Timeouts defaults = new Timeouts();
+        defaults.setFirstByteTimeout(100);
+        defaults.setIdleReadTimeout(2000);
+
+        client.setTimeouts(defaults);
+
+        Request<String> request = new Request<String>(server.url("/override"));
+        request.setTimeouts(new Timeouts());
+        request.getTimeouts().setFirstByteTimeout(Timeouts.NONE);
+
+        assertEquals("the response should be received.", RESPONSE_BODY, readAll(client.get(request).getBody()));
+        assertEquals("the request should keep its own timeouts.", Timeouts.UNSET,
+                request.getTimeouts().getIdleReadTimeout());
+    }
+
+    @Test
+    public void testTlsHandshakeTimeout() throws Exception {
+
+        // The socket is connected by the backlog but nothing ever answers the handshake.
+        ServerSocket silent = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+
+        try {
+
+            Timeouts timeouts = new Timeouts();
+            timeouts.setTlsHandshakeTimeout(200);
+
+            client.setTimeouts(timeouts);
+
+            long start = System.currentTimeMillis();
+
+            try {
+
+                client.get("https://127.0.0.1:" + silent.getLocalPort() + "/");
+
+                fail("the handshake should time out.");
+
+            } catch (RequestTimeoutException e) {
+
+                assertTrue("the handshake timeout should be reported.", e.getMessage().contains("TLS handshake"));
+                assertTrue("the request should fail once the handshake timeout has passed.",
+                        2000 > System.currentTimeMillis() - start);
+            }
+
+        } finally {
+
+            silent.close();
+        }
+    }
+
+    @Test
+    public void testClientTimeoutsAreCopied() throws Exception {
+
+        Timeouts timeouts = new Timeouts();
+        timeouts.setConnectTimeout(100);
+
+        client.setTimeouts(timeouts);
+
+        timeouts.setConnectTimeout(200);
+        client.getTimeouts().setConnectTimeout(300);
+
+        assertEquals("the timeouts of the client should not change.", 100, client.getTimeouts().getConnectTimeout());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidTimeout() throws Exception {
+
+        new Timeouts().setConnectTimeout(-2);
+    }
+}
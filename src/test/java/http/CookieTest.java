@@ -9,6 +9,7 @@ import org.junit.Test;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -282,4 +283,39 @@ public class CookieTest {
         assertTrue("the cookies collection should contain cookie one.", parsedCookies.contains(cookieOne));
         assertTrue("the cookies collection should contain cookie two.", parsedCookies.contains(cookieTwo));
     }
+
+    @Test
+    public void testParseSetCookieWithUnsupportedAttributes() throws Exception {
+
+        Cookie cookie = new Cookie(NAME_ONE, VALUE);
+        cookie.setPath(PATH);
+        cookie.setSecure(SECURE);
+
+        Collection<Cookie> parsedCookies = Cookie.parse(NAME_ONE + "=" + VALUE + "; path=" + PATH +
+                "; HttpOnly; secure");
+
+        assertEquals("only the cookie should be parsed.", Collections.singleton(cookie), parsedCookies);
+    }
+
+    @Test
+    public void testParseCommaSeparatedCookies() throws Exception {
+
+        Cookie cookieOne = new Cookie(NAME_ONE, VALUE);
+        cookieOne.setExpires(EXPIRES);
+        cookieOne.setPath(PATH);
+
+        Cookie cookieTwo = new Cookie(NAME_TWO, VALUE);
+
+        Collection<Cookie> parsedCookies = Cookie.parse(NAME_ONE + "=" + VALUE + "; Expires=" + EXPIRES + "; Path=" +
+                PATH + ", " + NAME_TWO + "=" + VALUE);
+
+        assertEquals("two cookies should be parsed.", 2, parsedCookies.size());
+        assertTrue("the cookies collection should contain cookie one.", parsedCookies.contains(cookieOne));
+        assertTrue("the cookies collection should contain cookie two.", parsedCookies.contains(cookieTwo));
+
+        assertEquals("an expires date should not split a cookie.", Collections.singleton(cookieOne),
+                Cookie.parse(NAME_ONE + "=" + VALUE + "; Path=" + PATH + "; Expires=" + EXPIRES));
+        assertEquals("cookies separated by a comma after an expires date should be parsed.", 2,
+                Cookie.parse(NAME_ONE + "=" + VALUE + "; Expires=" + EXPIRES + ", " + NAME_TWO + "=" + VALUE).size());
+    }
 }
@@ -0,0 +1,318 @@
+package http;
+
+import http.transport.NioRequestHandler;
+import http.transport.RequestTimeoutException;
+import http.transport.TestServer;
+import http.transport.TransportException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Karl Bennett
+ */
+public class DownloadTest {
+
+    private static final byte[] BODY = new byte[1024 * 1024];
+
+    static {
+
+        for (int i = 0; i < BODY.length; i++) BODY[i] = (byte) (i % 251);
+    }
+
+
+    private static byte[] read(File file) throws IOException {
+
+        byte[] bytes = new byte[(int) file.length()];
+
+        FileInputStream input = new FileInputStream(file);
+
+        try {
+
+            for (int read = 0; read < bytes.length; ) read += input.read(bytes, read, bytes.length - read);
+
+        } finally {
+
+            input.close();
+        }
+
+        return bytes;
+    }
+
+    /**
+     * Answer a request for the resource, honouring any {@code Range} header.
+     *
+     * @param send the number of bytes to send before the connection is closed.
+     */
+    private static boolean respond(TestServer.ReceivedRequest request, OutputStream output, int send)
+            throws IOException {
+
+        String range = request.getHeader("Range");
+
+        int start = null == range ? 0 : Integer.parseInt(range.substring(6, range.length() - 1));
+
+        String head = null == range ? "HTTP/1.1 200 OK\r\n" : "HTTP/1.1 206 Partial Content\r\nContent-Range: bytes " +
+                start + "-" + (BODY.length - 1) + "/" + BODY.length + "\r\n";
+
+        output.write((head + "ETag: \"v1\"\r\nContent-Length: " + (BODY.length - start) + "\r\n\r\n")
+                .getBytes("ISO-8859-1"));
+        output.write(BODY, start, Math.min(send, BODY.length - start));
+        output.flush();
+
+        return BODY.length - start <= send;
+    }
+
+
+    private File file;
+    private NioRequestHandler handler;
+    private Client client;
+
+
+    @Before
+    public void setUp() throws Exception {
+
+        file = File.createTempFile("download", ".bin");
+        handler = new NioRequestHandler();
+        client = new Client(handler);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+
+        handler.close();
+        file.delete();
+    }
+
+
+    @Test
+    public void testDownload() throws Exception {
+
+        TestServer server = new TestServer(new TestServer.Responder() {
+
+            @Override
+            public boolean respond(TestServer.ReceivedRequest request, OutputStream output) throws IOException {
+
+                return DownloadTest.respond(request, output, BODY.length);
+            }
+        });
+
+        try {
+
+            FileOutputStream stale = new FileOutputStream(file);
+            stale.write(new byte[BODY.length * 2]);
+            stale.close();
+
+            Response<File> response = client.download(server.url("/export"), file);
+
+            assertEquals("the status should be returned.", 200, response.getStatus());
+            assertSame("the file should be the body.", file, response.getBody());
+            assertTrue("the file should only contain the body.", Arrays.equals(BODY, read(file)));
+
+        } finally {
+
+            server.close();
+        }
+    }
+
+    @Test
+    public void testDownloadIsResumedAfterFailure() throws Exception {
+
+        TestServer server = new TestServer(new TestServer.Responder() {
+
+            @Override
+            public boolean respond(TestServer.ReceivedRequest request, OutputStream output) throws IOException {
+
+                return DownloadTest.respond(request, output, BODY.length / 2);
+            }
+        });
+
+        try {
+
+            Response<File> response = client.download(server.url("/export"), file);
+
+            assertEquals("the status of the last part should be returned.", 206, response.getStatus());
+            assertTrue("the whole body should be downloaded.", Arrays.equals(BODY, read(file)));
+
+            List<TestServer.ReceivedRequest> requests = server.getRequests();
+
+            assertEquals("the rest of the body should be requested once.", 2, requests.size());
+            assertNull("the first request should not have a range.", requests.get(0).getHeader("Range"));
+            assertEquals("the second request should start where the first stopped.",
+                    "bytes=" + BODY.length / 2 + "-", requests.get(1).getHeader("Range"));
+            assertEquals("the resumed request should be conditional on the first response.", "\"v1\"",
+                    requests.get(1).getHeader("If-Range"));
+
+        } finally {
+
+            server.close();
+        }
+    }
+
+    @Test
+    public void testResumeExistingFile() throws Exception {
+
+        TestServer server = new TestServer(new TestServer.Responder() {
+
+            @Override
+            public boolean respond(TestServer.ReceivedRequest request, OutputStream output) throws IOException {
+
+                return DownloadTest.respond(request, output, BODY.length);
+            }
+        });
+
+        try {
+
+            FileOutputStream partial = new FileOutputStream(file);
+            partial.write(BODY, 0, 1000);
+            partial.close();
+
+            client.download(new Request(server.url("/export")), file, true);
+
+            assertEquals("only the rest of the body should be requested.", "bytes=1000-",
+                    server.getRequests().get(0).getHeader("Range"));
+            assertTrue("the whole body should be in the file.", Arrays.equals(BODY, read(file)));
+
+        } finally {
+
+            server.close();
+        }
+    }
+
+    @Test
+    public void testRangeIsIgnored() throws Exception {
+
+        final boolean[] failed = new boolean[1];
+
+        TestServer server = new TestServer(new TestServer.Responder() {
+
+            @Override
+            public boolean respond(TestServer.ReceivedRequest request, OutputStream output) throws IOException {
+
+                output.write(("HTTP/1.1 200 OK\r\nContent-Length: " + BODY.length + "\r\n\r\n").getBytes("ISO-8859-1"));
+                output.write(BODY, 0, failed[0] ? BODY.length : BODY.length / 2);
+                output.flush();
+
+                failed[0] = true;
+
+                return false;
+            }
+        });
+
+        try {
+
+            client.download(server.url("/export"), file);
+
+            assertTrue("the body should be written again from the start.", Arrays.equals(BODY, read(file)));
+
+        } finally {
+
+            server.close();
+        }
+    }
+
+    @Test
+    public void testErrorIsNotWritten() throws Exception {
+
+        TestServer server = new TestServer(TestServer.fixed(404, "not found"));
+
+        try {
+
+            Response<File> response = client.download(server.url("/missing"), file);
+
+            assertEquals("the status should be returned.", 404, response.getStatus());
+            assertNull("there should be no body.", response.getBody());
+            assertEquals("nothing should be written to the file.", 0, file.length());
+
+        } finally {
+
+            server.close();
+        }
+    }
+
+    @Test
+    public void testDownloadIsGivenUp() throws Exception {
+
+        TestServer server = new TestServer(new TestServer.Responder() {
+
+            @Override
+            public boolean respond(TestServer.ReceivedRequest request, OutputStream output) throws IOException {
+
+                output.write(("HTTP/1.1 200 OK\r\nContent-Length: " + BODY.length + "\r\n\r\n").getBytes("ISO-8859-1"));
+                output.flush();
+
+                return false;
+            }
+        });
+
+        try {
+
+            client.download(server.url("/export"), file);
+
+            fail("a download that never makes progress should fail.");
+
+        } catch (TransportException e) {
+
+            assertEquals("the download should be attempted the maximum number of times.", Download.MAX_ATTEMPTS,
+                    server.getRequests().size());
+
+        } finally {
+
+            server.close();
+        }
+    }
+
+    @Test
+    public void testTimeoutIsNotRetried() throws Exception {
+
+        TestServer server = new TestServer(new TestServer.Responder() {
+
+            @Override
+            public boolean respond(TestServer.ReceivedRequest request, OutputStream output) throws IOException {
+
+                DownloadTest.respond(request, output, BODY.length / 2);
+
+                try {
+
+                    Thread.sleep(2000);
+
+                } catch (InterruptedException e) {
+
+                    Thread.currentThread().interrupt();
+                }
+
+                return false;
+            }
+        });
+
+        Timeouts timeouts = new Timeouts();
+        timeouts.setIdleReadTimeout(200);
+
+        client.setTimeouts(timeouts);
+
+        try {
+
+            client.download(server.url("/export"), file);
+
+            fail("a download that runs out of time should fail.");
+
+        } catch (RequestTimeoutException e) {
+
+            assertEquals("a download that runs out of time should not be attempted again.", 1,
+                    server.getRequests().size());
+
+        } finally {
+
+            server.close();
+        }
+    }
+}
@@ -187,6 +187,20 @@ public class MessageTest {
         assertEquals("the attribute map should have no entries.", 0, attributeMap.size());
     }
 
+    @Test
+    public void testGetHeadersIgnoresCase() throws Exception {
+
+        Message<Void> message = new Message<Void>();
+        message.addHeader("content-type", "text/plain");
+        message.addHeader("X-Custom", "custom");
+
+        assertEquals("a well known header should be found in any case.",
+                Collections.singleton(new Header<Object>("content-type", "text/plain")),
+                message.getHeaders("CONTENT-TYPE"));
+        assertEquals("any other header should be found in any case.",
+                Collections.singleton(new Header<Object>("X-Custom", "custom")), message.getHeaders("x-custom"));
+    }
+
     @Test
     public void testGetHeaderWithTypeAndNormalHeaders() throws Exception {
 
@@ -342,4 +356,64 @@ public class MessageTest {
         assertNull("still no content type headers should be returned.", message.getHeaders(ContentType.class));
         assertNull("still no cookie headers should be returned.", message.getHeaders(http.header.Cookie.class));
     }
+
+    @Test
+    public void testGetHeaderWithTypeIsKeptUpToDate() throws Exception {
+
+        Message<Void> message = new Message<Void>();
+        message.addHeader(ContentType.CONTENT_TYPE, "application/json");
+
+        assertEquals("the content type should be converted.",
+                Collections.<ContentType>singleton(new JsonContentType()), message.getHeaders(ContentType.class));
+
+        message.addHeader(new XmlContentType());
+
+        assertEquals("an added content type should be found.", 2, message.getHeaders(ContentType.class).size());
+        assertEquals("only the content types of the sub class should be returned.",
+                Collections.<XmlContentType>singleton(new XmlContentType()), message.getHeaders(XmlContentType.class));
+
+        message.removeHeader(ContentType.CONTENT_TYPE, "application/json");
+
+        assertEquals("a removed content type should not be found.",
+                Collections.<ContentType>singleton(new XmlContentType()), message.getHeaders(ContentType.class));
+        assertNull("no json content types should be left.", message.getHeaders(JsonContentType.class));
+    }
+
+    @Test
+    public void testGetHeaderWithTypeAndListOfAccepts() throws Exception {
+
+        Message<Void> message = new Message<Void>();
+        message.addHeader("accept", "application/json, application/xml;q=0.9, not a mime type");
+
+        Set<Accept> accepts = message.getHeaders(Accept.class);
+
+        assertEquals("each listed type should be its own header.", 2, accepts.size());
+        assertTrue("a json accept header should be returned.", accepts.contains(new JsonAccept()));
+    }
+
+    @Test
+    public void testRawHeadersAreDecodedWhenAskedFor() throws Exception {
+
+        RawHeaders raw = new RawHeaders();
+
+        for (String line : new String[]{"content-type: application/json", "X-Custom: one", "x-custom: two"}) {
+
+            byte[] bytes = line.getBytes("ISO-8859-1");
+            int colon = line.indexOf(':');
+
+            raw.add(bytes, 0, colon, colon + 2, bytes.length, HeaderName.lookup(bytes, 0, colon));
+        }
+
+        Response<Void> response = new Response<Void>(200, raw, null);
+
+        assertEquals("the headers with the name should be decoded.", 2, response.getHeaders("X-CUSTOM").size());
+        assertEquals("the typed header should be converted.",
+                Collections.<ContentType>singleton(new JsonContentType()), response.getHeaders(ContentType.class));
+
+        response.removeHeader("X-Custom", "one");
+
+        assertEquals("the removed header should be gone.",
+                Collections.singleton(new Header<Object>("x-custom", "two")), response.getHeaders("X-Custom"));
+        assertEquals("all the other headers should be decoded.", 2, response.getHeaders().size());
+    }
 }
@@ -9,8 +9,7 @@ import java.util.HashSet;
 
 import static http.Urls.*;
 import static http.parameter.Parameters.*;
-import static org.junit.Assert.assertEquals;
-import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.*;
 
 /**
  * @author Karl Bennett
@@ -41,6 +40,26 @@ public class RequestCreationTest {
         createRequestWithQuery(new Request<Object>(TEST_URL_WITH_QUERY));
     }
 
+    @Test
+    public void testCopyRequest() throws Exception {
+
+        Request<String> request = new Request<String>(TEST_URL_WITH_QUERY);
+        request.addHeader("Accept", "text/plain");
+        request.setBody("original");
+        request.setTimeouts(new Timeouts());
+
+        Request<Integer> copy = new Request<Integer>(request, 1);
+
+        createRequestWithQuery(copy);
+        assertEquals("the headers should be copied.", request.getHeaders(), copy.getHeaders());
+        assertEquals("the copy should have its own body.", Integer.valueOf(1), copy.getBody());
+        assertSame("the timeouts should be copied.", request.getTimeouts(), copy.getTimeouts());
+
+        copy.addHeader("Accept-Encoding", "gzip");
+
+        assertNull("the headers of the original should not change.", request.getHeaders("Accept-Encoding"));
+    }
+
 
     public void createRequestTest(Request request) {
 
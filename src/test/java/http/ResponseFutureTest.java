@@ -0,0 +1,172 @@
+package http;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Karl Bennett
+ */
+public class ResponseFutureTest {
+
+    private static final String RESULT = "test result";
+
+
+    private List<Runnable> scheduled;
+    private ResponseFuture<String> future;
+    private List<Object> notifications;
+    private Callback<String> callback;
+
+
+    @Before
+    public void setUp() throws Exception {
+
+        scheduled = new ArrayList<Runnable>();
+
+        future = new ResponseFuture<String>(new Executor() {
+
+            @Override
+            public void execute(Runnable command) {
+
+                scheduled.add(command);
+            }
+        });
+
+        notifications = new ArrayList<Object>();
+
+        callback = new Callback<String>() {
+
+            @Override
+            public void completed(String result) {
+
+                notifications.add(result);
+            }
+
+            @Override
+            public void failed(Throwable cause) {
+
+                notifications.add(cause);
+            }
+        };
+    }
+
+
+    @Test
+    public void testComplete() throws Exception {
+
+        future.addCallback(callback);
+
+        assertFalse("the future should not be done.", future.isDone());
+        assertTrue("the future should be completed.", future.complete(RESULT));
+        assertTrue("the future should be done.", future.isDone());
+        assertEquals("the result should be returned.", RESULT, future.get());
+        assertEquals("the result should be returned.", RESULT, future.get(1, TimeUnit.SECONDS));
+
+        assertTrue("the callback should not be run on the completing thread.", notifications.isEmpty());
+        assertEquals("the callback should be scheduled on the executor.", 1, scheduled.size());
+
+        scheduled.get(0).run();
+
+        assertEquals("the callback should be given the result.", RESULT, notifications.get(0));
+    }
+
+    @Test
+    public void testCompleteTwice() throws Exception {
+
+        future.complete(RESULT);
+
+        assertFalse("the future should not be completed again.", future.complete("other"));
+        assertFalse("the future should not be failed once complete.", future.fail(new RuntimeException()));
+        assertFalse("the future should not be cancelled once complete.", future.cancel(true));
+        assertEquals("the first result should be kept.", RESULT, future.get());
+    }
+
+    @Test
+    public void testFail() throws Exception {
+
+        RuntimeException cause = new RuntimeException("test failure");
+
+        future.addCallback(callback);
+        future.fail(cause);
+
+        try {
+
+            future.get();
+
+            fail("the failure should be thrown.");
+
+        } catch (ExecutionException e) {
+
+            assertEquals("the cause should be the failure.", cause, e.getCause());
+        }
+
+        scheduled.get(0).run();
+
+        assertEquals("the callback should be given the failure.", cause, notifications.get(0));
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+
+        future.addCallback(callback);
+
+        assertTrue("the future should be cancelled.", future.cancel(true));
+        assertTrue("the future should be cancelled.", future.isCancelled());
+        assertFalse("the future should not be completed once cancelled.", future.complete(RESULT));
+
+        try {
+
+            future.get();
+
+            fail("the cancellation should be thrown.");
+
+        } catch (CancellationException e) {
+
+            // Expected.
+        }
+
+        scheduled.get(0).run();
+
+        assertTrue("the callback should be told of the cancellation.",
+                notifications.get(0) instanceof CancellationException);
+    }
+
+    @Test
+    public void testAddCallbackWhenDone() throws Exception {
+
+        future.complete(RESULT);
+        future.addCallback(callback);
+
+        assertEquals("the callback should be scheduled straight away.", 1, scheduled.size());
+
+        scheduled.get(0).run();
+
+        assertEquals("the callback should be given the result.", RESULT, notifications.get(0));
+    }
+
+    @Test
+    public void testDirectCallback() throws Exception {
+
+        ResponseFuture<String> direct = new ResponseFuture<String>();
+
+        direct.addCallback(callback);
+        direct.complete(RESULT);
+
+        assertEquals("the callback should be run on the completing thread.", RESULT, notifications.get(0));
+    }
+
+    @Test(expected = TimeoutException.class)
+    public void testGetTimeout() throws Exception {
+
+        future.get(10, TimeUnit.MILLISECONDS);
+    }
+}
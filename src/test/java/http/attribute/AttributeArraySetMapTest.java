@@ -0,0 +1,188 @@
+package http.attribute;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static http.Attributes.*;
+import static org.junit.Assert.*;
+
+/**
+ * @author Karl Bennett
+ */
+public class AttributeArraySetMapTest {
+
+    private static Attribute<String> attribute(String name, String value) {
+
+        return new Attribute<String>(name, value, TEST_ATTRIBUTE_OPERATOR);
+    }
+
+
+    @Test
+    public void testAttributeArraySetMap() throws Exception {
+
+        AttributeSetMap<Attribute> map = new AttributeArraySetMap<Attribute>();
+
+        assertTrue("the first attribute should be added.", map.add(TEST_ATTRIBUTE_ONE));
+        assertFalse("the same attribute should not be added twice.", map.add(TEST_ATTRIBUTE_ONE));
+        map.add(TEST_ATTRIBUTE_TWO);
+        map.add(TEST_ATTRIBUTE_THREE);
+
+        assertEquals("the attribute array set map should contain three attribute entries.", 3, map.size());
+        assertEquals("one instance of " + TEST_ATTRIBUTE_NAME_ONE + " should be in the map.", 1,
+                map.get(TEST_ATTRIBUTE_NAME_ONE).size());
+        assertEquals("one instance of " + TEST_ATTRIBUTE_NAME_TWO + " should be in the map.", 1,
+                map.get(TEST_ATTRIBUTE_NAME_TWO).size());
+        assertEquals("one instance of " + TEST_ATTRIBUTE_NAME_THREE + " should be in the map.", 1,
+                map.get(TEST_ATTRIBUTE_NAME_THREE).size());
+        assertNull("a missing name should not be found.", map.get("missing"));
+    }
+
+    @Test
+    public void testMultipleValues() throws Exception {
+
+        AttributeSetMap<Attribute<String>> map = new AttributeArraySetMap<Attribute<String>>();
+        map.add(attribute("one", "1"));
+        map.add(attribute("two", "2"));
+        map.add(attribute("one", "3"));
+
+        assertEquals("there should be two names.", 2, map.size());
+        assertEquals("both values should be mapped to the name.",
+                new HashSet<Attribute<String>>(Arrays.asList(attribute("one", "1"), attribute("one", "3"))),
+                map.get("one"));
+
+        List<String> names = new ArrayList<String>();
+
+        for (Map.Entry<String, Set<Attribute<String>>> entry : map.entrySet()) names.add(entry.getKey());
+
+        assertEquals("the names should be in the order they were first added.", Arrays.asList("one", "two"), names);
+
+        assertTrue("an attribute should be removed.", map.remove(attribute("one", "1")));
+        assertFalse("a missing attribute should not be removed.", map.remove(attribute("one", "1")));
+        assertEquals("the other value should remain.", 1, map.get("one").size());
+
+        map.remove(attribute("one", "3"));
+
+        assertFalse("the name should be removed with its last attribute.", map.containsKey("one"));
+        assertEquals("there should be one name.", 1, map.size());
+    }
+
+    @Test
+    public void testPutAndRemoveName() throws Exception {
+
+        AttributeSetMap<Attribute<String>> map = new AttributeArraySetMap<Attribute<String>>();
+        map.add(attribute("one", "1"));
+        map.add(attribute("one", "2"));
+
+        Set<Attribute<String>> previous = map.put("one", new HashSet<Attribute<String>>(
+                Arrays.asList(attribute("one", "3"))));
+
+        assertEquals("the replaced attributes should be returned.", 2, previous.size());
+        assertEquals("the new attribute should be mapped.", new HashSet<Attribute<String>>(
+                Arrays.asList(attribute("one", "3"))), map.get("one"));
+
+        assertEquals("the removed attributes should be returned.", 1, map.remove("one").size());
+        assertTrue("the map should be empty.", map.isEmpty());
+        assertNull("a missing name should not be removed.", map.remove("one"));
+    }
+
+    @Test
+    public void testLiveView() throws Exception {
+
+        AttributeSetMap<Attribute<String>> map = new AttributeArraySetMap<Attribute<String>>();
+        map.add(attribute("one", "1"));
+        map.add(attribute("two", "2"));
+        map.add(attribute("one", "3"));
+
+        Set<Attribute<String>> ones = map.get("one");
+        ones.add(attribute("one", "4"));
+
+        assertEquals("adding to the view should add to the map.", 3, map.get("one").size());
+
+        Iterator<Attribute<String>> iterator = ones.iterator();
+
+        while (iterator.hasNext()) {
+
+            if (!"3".equals(iterator.next().getValue())) iterator.remove();
+        }
+
+        assertEquals("removing from the view should remove from the map.",
+                new HashSet<Attribute<String>>(Arrays.asList(attribute("one", "3"))), map.get("one"));
+        assertEquals("the other name should be untouched.", 1, map.get("two").size());
+    }
+
+    @Test
+    public void testEntryIteratorRemove() throws Exception {
+
+        AttributeSetMap<Attribute<String>> map = new AttributeArraySetMap<Attribute<String>>();
+        map.add(attribute("one", "1"));
+        map.add(attribute("two", "2"));
+        map.add(attribute("one", "3"));
+        map.add(attribute("three", "4"));
+
+        Iterator<Map.Entry<String, Set<Attribute<String>>>> entries = map.entrySet().iterator();
+        entries.next();
+        entries.remove();
+
+        assertEquals("the next name should follow the removed one.", "two", entries.next().getKey());
+        assertEquals("the last name should follow.", "three", entries.next().getKey());
+        assertFalse("there should be no more names.", entries.hasNext());
+        assertEquals("there should be two names left.", 2, map.size());
+    }
+
+    @Test
+    public void testIndexedMap() throws Exception {
+
+        AttributeSetMap<Attribute<String>> map = new AttributeArraySetMap<Attribute<String>>();
+
+        int count = AttributeArraySetMap.INDEX_THRESHOLD * 5;
+
+        for (int i = 0; i < count; i++) map.add(attribute("name" + i % 10, String.valueOf(i)));
+
+        assertEquals("there should be ten names.", 10, map.size());
+
+        for (int i = 0; i < 10; i++) {
+
+            assertEquals("every value should be mapped to its name.", count / 10, map.get("name" + i).size());
+        }
+
+        assertFalse("a duplicate should not be added.", map.add(attribute("name3", "3")));
+
+        for (int i = 0; i < count; i += 2) map.remove(attribute("name" + i % 10, String.valueOf(i)));
+
+        assertEquals("the odd names should be left.", 5, map.size());
+        assertNull("an even name should be gone.", map.get("name4"));
+        assertEquals("the odd values should be left.", count / 10, map.get("name5").size());
+
+        map.clear();
+
+        assertTrue("the map should be empty.", map.isEmpty());
+        assertNull("nothing should be found.", map.get("name5"));
+    }
+
+    @Test
+    public void testKey() throws Exception {
+
+        AttributeSetMap<Attribute<String>> map = new AttributeArraySetMap<Attribute<String>>() {
+
+            @Override
+            protected Object key(String name) {
+
+                return name.toLowerCase();
+            }
+        };
+
+        map.add(attribute("One", "1"));
+        map.add(attribute("ONE", "2"));
+
+        assertEquals("the names should share a key.", 1, map.size());
+        assertEquals("both values should be found.", 2, map.get("one").size());
+        assertEquals("the entry should be named by the key.", "one", map.keySet().iterator().next());
+    }
+}
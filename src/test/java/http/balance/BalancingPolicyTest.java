@@ -0,0 +1,124 @@
+package http.balance;
+
+import org.junit.Test;
+
+import java.net.URL;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Karl Bennett
+ */
+public class BalancingPolicyTest {
+
+    private static Endpoint endpoint(String host) throws Exception {
+
+        return new Endpoint(new URL("http://" + host));
+    }
+
+
+    @Test
+    public void testRoundRobin() throws Exception {
+
+        Endpoint a = endpoint("a");
+        Endpoint b = endpoint("b");
+
+        List<Endpoint> endpoints = Arrays.asList(a, b);
+
+        BalancingPolicy policy = new RoundRobinPolicy();
+
+        assertSame("the first endpoint should be chosen first.", a, policy.choose(endpoints));
+        assertSame("the second endpoint should be chosen next.", b, policy.choose(endpoints));
+        assertSame("the endpoints should be chosen in turn.", a, policy.choose(endpoints));
+    }
+
+    @Test
+    public void testLeastOutstanding() throws Exception {
+
+        Endpoint busy = endpoint("busy");
+        Endpoint idle = endpoint("idle");
+
+        for (int i = 0; i < 5; i++) busy.started();
+
+        BalancingPolicy policy = new LeastOutstandingPolicy();
+
+        for (int i = 0; i < 20; i++) {
+
+            assertSame("the endpoint with fewer requests should be chosen.", idle,
+                    policy.choose(Arrays.asList(busy, idle)));
+        }
+    }
+
+    @Test
+    public void testLeastOutstandingSpreadsRequests() throws Exception {
+
+        List<Endpoint> endpoints = Arrays.asList(endpoint("a"), endpoint("b"), endpoint("c"), endpoint("d"));
+
+        BalancingPolicy policy = new LeastOutstandingPolicy();
+
+        for (int i = 0; i < 400; i++) policy.choose(endpoints).started();
+
+        for (Endpoint endpoint : endpoints) {
+
+            assertTrue("the requests should be spread evenly.", Math.abs(100 - endpoint.getOutstanding()) <= 2);
+        }
+    }
+
+    @Test
+    public void testEwmaLatency() throws Exception {
+
+        Endpoint slow = endpoint("slow");
+        Endpoint fast = endpoint("fast");
+
+        slow.started();
+        slow.completed(200, false);
+
+        fast.started();
+        fast.completed(10, false);
+
+        BalancingPolicy policy = new EwmaLatencyPolicy();
+
+        for (int i = 0; i < 20; i++) {
+
+            assertSame("the faster endpoint should be chosen.", fast, policy.choose(Arrays.asList(slow, fast)));
+        }
+
+        for (int i = 0; i < 30; i++) fast.started();
+
+        assertSame("a fast endpoint with many requests in flight should cost more.", slow,
+                policy.choose(Arrays.asList(slow, fast)));
+    }
+
+    @Test
+    public void testUnsampledEndpointIsTried() throws Exception {
+
+        Endpoint sampled = endpoint("sampled");
+        Endpoint fresh = endpoint("fresh");
+
+        sampled.started();
+        sampled.completed(10, false);
+
+        assertSame("an endpoint without any latency should be tried.", fresh,
+                new EwmaLatencyPolicy().choose(Arrays.asList(sampled, fresh)));
+    }
+
+    @Test
+    public void testSlowSampleIsTakenAtOnce() throws Exception {
+
+        Endpoint endpoint = endpoint("a");
+
+        endpoint.started();
+        endpoint.completed(10, false);
+        endpoint.started();
+        endpoint.completed(500, false);
+
+        assertEquals("a slower sample should replace the average.", 500, endpoint.getLatency(), 0);
+
+        endpoint.started();
+        endpoint.completed(1, true);
+
+        assertEquals("a quick failure should not lower the average.", 500, endpoint.getLatency(), 0);
+    }
+}
@@ -0,0 +1,303 @@
+package http.balance;
+
+import http.Client;
+import http.Request;
+import http.RequestHandler;
+import http.Response;
+import http.header.Header;
+import http.transport.NioRequestHandler;
+import http.transport.TestServer;
+import http.transport.TransportException;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static http.util.IO.readAll;
+import static org.junit.Assert.*;
+
+/**
+ * @author Karl Bennett
+ */
+public class LoadBalancingRequestHandlerTest {
+
+    private StubHandler stub;
+    private LoadBalancingRequestHandler handler;
+
+
+    @Before
+    public void setUp() throws Exception {
+
+        stub = new StubHandler();
+        handler = new LoadBalancingRequestHandler(stub);
+    }
+
+
+    private Response<InputStream> get(String url) {
+
+        return handler.handleRequest(Client.GET, new Request<InputStream>(url));
+    }
+
+    @Test
+    public void testRequestIsSentToAnEndpoint() throws Exception {
+
+        handler.addService("orders", new RoundRobinPolicy(), "http://10.0.0.1:8080/base/");
+
+        Request<InputStream> request = new Request<InputStream>("http://orders/items?id=1");
+        request.addHeader("Accept", "application/json");
+
+        handler.handleRequest(Client.GET, request);
+
+        assertEquals("the path and query should be appended to the endpoint.",
+                "http://10.0.0.1:8080/base/items?id=1", stub.urls.get(0));
+        assertEquals("the headers should be kept.", "application/json",
+                stub.requests.get(0).getHeaders("Accept").iterator().next().getValue());
+    }
+
+    @Test
+    public void testOtherHostsArePassedThrough() throws Exception {
+
+        handler.addService("orders", new RoundRobinPolicy(), "http://10.0.0.1:8080");
+
+        get("http://example.com/path");
+
+        assertEquals("the request should be sent as it is.", "http://example.com/path", stub.urls.get(0));
+    }
+
+    @Test
+    public void testServiceNameIsCaseInsensitive() throws Exception {
+
+        handler.addService("Orders", new RoundRobinPolicy(), "http://10.0.0.1:8080");
+
+        get("http://orders/");
+
+        assertEquals("the request should be balanced.", "http://10.0.0.1:8080/", stub.urls.get(0));
+    }
+
+    @Test
+    public void testRoundRobin() throws Exception {
+
+        handler.addService("orders", new RoundRobinPolicy(), "http://10.0.0.1", "http://10.0.0.2", "http://10.0.0.3");
+
+        for (int i = 0; i < 6; i++) get("http://orders/" + i);
+
+        assertEquals("the endpoints should be taken in turn.", "10.0.0.1 10.0.0.2 10.0.0.3 10.0.0.1 10.0.0.2 10.0.0.3",
+                stub.hosts());
+    }
+
+    @Test
+    public void testFailedRequestIsTriedOnAnotherEndpoint() throws Exception {
+
+        handler.addService("orders", new RoundRobinPolicy(), "http://10.0.0.1", "http://10.0.0.2");
+
+        stub.unreachable.add("10.0.0.1");
+
+        Response<InputStream> response = get("http://orders/");
+
+        assertEquals("the response of the second endpoint should be returned.", 200, response.getStatus());
+        assertEquals("the request should be tried on both endpoints.", "10.0.0.1 10.0.0.2", stub.hosts());
+        assertEquals("the failure should be counted.", 1, handler.getEndpoints("orders").get(0).getFailures());
+        assertEquals("no request should be outstanding.", 0, handler.getEndpoints("orders").get(0).getOutstanding());
+    }
+
+    @Test
+    public void testRequestWithBodyIsNotRetried() throws Exception {
+
+        handler.addService("orders", new RoundRobinPolicy(), "http://10.0.0.1", "http://10.0.0.2");
+
+        stub.unreachable.add("10.0.0.1");
+
+        Request<InputStream> request = new Request<InputStream>("http://orders/");
+        request.setBody(new ByteArrayInputStream(new byte[]{1}));
+
+        try {
+
+            handler.handleRequest(Client.POST, request);
+
+            fail("the request should fail.");
+
+        } catch (TransportException e) {
+
+            assertEquals("the request should only be tried once.", "10.0.0.1", stub.hosts());
+        }
+    }
+
+    @Test
+    public void testAttemptsAreLimited() throws Exception {
+
+        handler.addService("orders", new RoundRobinPolicy(), "http://10.0.0.1", "http://10.0.0.2", "http://10.0.0.3");
+
+        stub.unreachable.addAll(Arrays.asList("10.0.0.1", "10.0.0.2", "10.0.0.3"));
+
+        try {
+
+            get("http://orders/");
+
+            fail("the request should fail.");
+
+        } catch (TransportException e) {
+
+            assertEquals("the request should only be tried twice.", 2, stub.urls.size());
+        }
+    }
+
+    @Test
+    public void testFailingEndpointIsEjected() throws Exception {
+
+        handler.setEjectionThreshold(2);
+        handler.addService("orders", new RoundRobinPolicy(), "http://10.0.0.1", "http://10.0.0.2");
+
+        stub.errors.add("10.0.0.1");
+
+        for (int i = 0; i < 4; i++) get("http://orders/");
+
+        Endpoint failing = handler.getEndpoints("orders").get(0);
+
+        assertTrue("the failing endpoint should be ejected.", failing.isEjected());
+
+        stub.urls.clear();
+
+        for (int i = 0; i < 4; i++) get("http://orders/");
+
+        assertEquals("the ejected endpoint should not be chosen.", "10.0.0.2 10.0.0.2 10.0.0.2 10.0.0.2", stub.hosts());
+    }
+
+    @Test
+    public void testEjectionEnds() throws Exception {
+
+        handler.setEjectionThreshold(1);
+        handler.setEjectionTime(100);
+        handler.addService("orders", new RoundRobinPolicy(), "http://10.0.0.1", "http://10.0.0.2");
+
+        stub.unreachable.add("10.0.0.1");
+
+        get("http://orders/");
+
+        Endpoint failing = handler.getEndpoints("orders").get(0);
+
+        assertTrue("the failing endpoint should be ejected.", failing.isEjected());
+
+        Thread.sleep(150);
+
+        assertFalse("the endpoint should return once the ejection time has passed.", failing.isEjected());
+    }
+
+    @Test
+    public void testEjectionIsLimited() throws Exception {
+
+        handler.setEjectionThreshold(1);
+        handler.addService("orders", new RoundRobinPolicy(), "http://10.0.0.1", "http://10.0.0.2");
+
+        stub.errors.add("10.0.0.1");
+        stub.errors.add("10.0.0.2");
+
+        for (int i = 0; i < 4; i++) get("http://orders/");
+
+        int ejected = 0;
+
+        for (Endpoint endpoint : handler.getEndpoints("orders")) if (endpoint.isEjected()) ejected++;
+
+        assertEquals("only half of the endpoints should be ejected.", 1, ejected);
+    }
+
+    @Test
+    public void testEjectedEndpointsAreUsedIfThereIsNoOther() throws Exception {
+
+        handler.setEjectionThreshold(1);
+        handler.addService("orders", new RoundRobinPolicy(), "http://10.0.0.1");
+
+        stub.errors.add("10.0.0.1");
+
+        get("http://orders/");
+
+        assertTrue("the endpoint should be ejected.", handler.getEndpoints("orders").get(0).isEjected());
+        assertEquals("the ejected endpoint should still be used.", 503, get("http://orders/").getStatus());
+    }
+
+    @Test
+    public void testBalancesAcrossServers() throws Exception {
+
+        TestServer first = new TestServer(TestServer.fixed(200, "first"));
+        TestServer second = new TestServer(TestServer.fixed(200, "second"));
+
+        NioRequestHandler transport = new NioRequestHandler();
+
+        try {
+
+            handler = new LoadBalancingRequestHandler(transport);
+            handler.addService("orders", new LeastOutstandingPolicy(), first.url(""), second.url(""));
+
+            Client client = new Client(handler);
+
+            Set<String> bodies = new HashSet<String>();
+
+            for (int i = 0; i < 20; i++) bodies.add(readAll(client.get("http://orders/items").getBody()));
+
+            assertEquals("both servers should be used.", new HashSet<String>(Arrays.asList("first", "second")), bodies);
+            assertEquals("every request should reach a server.", 20,
+                    first.getRequests().size() + second.getRequests().size());
+            assertEquals("the path should be sent.", "GET /items HTTP/1.1",
+                    first.getRequests().get(0).getRequestLine());
+
+        } finally {
+
+            transport.close();
+            first.close();
+            second.close();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testServiceMustHaveEndpoints() throws Exception {
+
+        handler.addService("orders", new RoundRobinPolicy());
+    }
+
+
+    /**
+     * Records the requests and answers them, failing the hosts that are unreachable and answering the hosts that are
+     * erroring with a server error.
+     */
+    private static class StubHandler implements RequestHandler {
+
+        private final List<String> urls = new ArrayList<String>();
+        private final List<Request<InputStream>> requests = new ArrayList<Request<InputStream>>();
+        private final Set<String> unreachable = new HashSet<String>();
+        private final Set<String> errors = new HashSet<String>();
+
+        @Override
+        public Response<InputStream> handleRequest(String method, Request<InputStream> request) {
+
+            urls.add(request.getUrl().toString());
+            requests.add(request);
+
+            String host = request.getUrl().getHost();
+
+            if (unreachable.contains(host)) throw new TransportException("Could not connect to (" + host + ").");
+
+            return new Response<InputStream>(errors.contains(host) ? 503 : 200, Collections.<Header>emptySet(),
+                    new ByteArrayInputStream(new byte[0]));
+        }
+
+        private String hosts() {
+
+            StringBuilder hosts = new StringBuilder();
+
+            for (String url : urls) {
+
+                if (0 < hosts.length()) hosts.append(' ');
+
+                hosts.append(url.replaceAll("^http://([^:/]+).*$", "$1"));
+            }
+
+            return hosts.toString();
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package http.cache;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Karl Bennett
+ */
+public class CacheControlTest {
+
+    @Test
+    public void testParse() throws Exception {
+
+        CacheControl control = CacheControl.parse("Max-Age=60, no-cache=\"Set-Cookie, Age\", public");
+
+        assertEquals("the max age should be parsed in any case.", 60, control.seconds(CacheControl.MAX_AGE));
+        assertTrue("a quoted value should not split the directives.", control.has(CacheControl.NO_CACHE));
+        assertTrue("the last directive should be parsed.", control.has(CacheControl.PUBLIC));
+        assertFalse("a missing directive should not be found.", control.has(CacheControl.PRIVATE));
+    }
+
+    @Test
+    public void testSeconds() throws Exception {
+
+        CacheControl control = CacheControl.parse("max-age=abc, s-maxage=99999999999999999999, max-stale");
+
+        assertEquals("an invalid value should be ignored.", -1, control.seconds(CacheControl.MAX_AGE));
+        assertEquals("a huge value should be capped.", Long.MAX_VALUE / 1000, control.seconds(CacheControl.S_MAXAGE));
+        assertEquals("a missing value should be ignored.", -1, control.seconds(CacheControl.MAX_STALE));
+        assertEquals("a missing directive should be ignored.", -1, control.seconds(CacheControl.MIN_FRESH));
+    }
+
+    @Test
+    public void testParseNull() throws Exception {
+
+        assertFalse("a null header should have no directives.", CacheControl.parse(null).has(CacheControl.NO_STORE));
+    }
+}
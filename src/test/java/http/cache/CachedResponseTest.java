@@ -0,0 +1,99 @@
+package http.cache;
+
+import http.Response;
+import http.header.Header;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static http.util.IO.readAll;
+import static org.junit.Assert.*;
+
+/**
+ * @author Karl Bennett
+ */
+public class CachedResponseTest {
+
+    @SuppressWarnings("unchecked")
+    private static final List<Header<String>> HEADERS = Arrays.asList(new Header<String>("ETag", "\"v1\""),
+            new Header<String>("Cache-Control", "max-age=60"), new Header<String>("Link", "<a>"),
+            new Header<String>("link", "<b>"));
+
+
+    @Test
+    public void testBytesRoundTrip() throws Exception {
+
+        Map<String, String> vary = new HashMap<String, String>();
+        vary.put("accept-language", "en");
+        vary.put("accept", null);
+
+        CachedResponse response = new CachedResponse(200, HEADERS, "body".getBytes("UTF-8"), 1, 2, vary);
+
+        CachedResponse read = CachedResponse.fromBytes(ByteBuffer.wrap(response.toBytes()));
+
+        assertEquals("the status should be read.", 200, read.getStatus());
+        assertEquals("the headers should be read.", HEADERS, read.getHeaders());
+        assertEquals("the body should be read.", "body", new String(read.getBody(), "UTF-8"));
+        assertEquals("the request time should be read.", 1, read.getRequestTime());
+        assertEquals("the response time should be read.", 2, read.getResponseTime());
+        assertEquals("the vary values should be read.", vary, read.getVary());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFromIncompleteBytes() throws Exception {
+
+        CachedResponse response = new CachedResponse(200, HEADERS, new byte[10], 1, 2,
+                Collections.<String, String>emptyMap());
+
+        byte[] bytes = response.toBytes();
+
+        CachedResponse.fromBytes(ByteBuffer.wrap(bytes, 0, bytes.length - 1));
+    }
+
+    @Test
+    public void testGetHeader() throws Exception {
+
+        CachedResponse response = new CachedResponse(200, HEADERS, new byte[0], 1, 2,
+                Collections.<String, String>emptyMap());
+
+        assertEquals("a header should be found in any case.", "\"v1\"", response.getHeader("etag"));
+        assertEquals("repeated headers should be joined.", "<a>, <b>", response.getHeader("Link"));
+        assertNull("a missing header should not be found.", response.getHeader("Expires"));
+    }
+
+    @Test
+    public void testUpdate() throws Exception {
+
+        CachedResponse response = new CachedResponse(200, HEADERS, "body".getBytes("UTF-8"), 1, 2,
+                Collections.<String, String>emptyMap());
+
+        CachedResponse updated = response.update(Collections.singletonList(
+                new Header<String>("cache-control", "max-age=120")), 3, 4);
+
+        assertEquals("the new header should replace the stored one.", "max-age=120",
+                updated.getHeader("Cache-Control"));
+        assertEquals("the other headers should be kept.", "\"v1\"", updated.getHeader("ETag"));
+        assertSame("the body should be kept.", response.getBody(), updated.getBody());
+        assertEquals("the request time should be updated.", 3, updated.getRequestTime());
+        assertEquals("the response time should be updated.", 4, updated.getResponseTime());
+    }
+
+    @Test
+    public void testToResponse() throws Exception {
+
+        CachedResponse cached = new CachedResponse(404, HEADERS, "body".getBytes("UTF-8"), 1, 2,
+                Collections.<String, String>emptyMap());
+
+        Response<InputStream> response = cached.toResponse();
+
+        assertEquals("the status should be copied.", 404, response.getStatus());
+        assertEquals("the body should be readable.", "body", readAll(response.getBody()));
+        assertEquals("the headers should be copied.", 4, response.getHeaders().size());
+    }
+}
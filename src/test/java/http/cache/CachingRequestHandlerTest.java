@@ -0,0 +1,303 @@
+package http.cache;
+
+import http.Client;
+import http.Request;
+import http.Response;
+import http.date.HttpDates;
+import http.header.Header;
+import http.parameter.Parameter;
+import http.transport.NioRequestHandler;
+import http.transport.TestServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static http.util.IO.readAll;
+import static org.junit.Assert.*;
+
+/**
+ * @author Karl Bennett
+ */
+public class CachingRequestHandlerTest {
+
+    /**
+     * Answer every request with the supplied headers and a body that counts the requests, or with a
+     * {@code 304 Not Modified} if the request carries a matching {@code If-None-Match}.
+     */
+    private static TestServer server(final String headers) throws IOException {
+
+        return new TestServer(new TestServer.Responder() {
+
+            private int count;
+
+            @Override
+            public synchronized boolean respond(TestServer.ReceivedRequest request, OutputStream output)
+                    throws IOException {
+
+                String date = "Date: " + HttpDates.format(System.currentTimeMillis()) + "\r\n";
+
+                if ("\"v1\"".equals(request.getHeader("If-None-Match"))) {
+
+                    output.write(("HTTP/1.1 304 Not Modified\r\n" + date + "ETag: \"v1\"\r\n" +
+                            "Cache-Control: max-age=60\r\nContent-Length: 0\r\n\r\n").getBytes("ISO-8859-1"));
+
+                    return true;
+                }
+
+                String body = "response " + ++count;
+
+                output.write(("HTTP/1.1 200 OK\r\n" + date + headers + "Content-Length: " + body.length() +
+                        "\r\n\r\n" + body).getBytes("ISO-8859-1"));
+                output.flush();
+
+                return true;
+            }
+        });
+    }
+
+    private static long lifetime(long now, String... headers) {
+
+        List<Header<String>> list = new ArrayList<Header<String>>();
+
+        for (int i = 0; i < headers.length; i += 2) list.add(new Header<String>(headers[i], headers[i + 1]));
+
+        return CachingRequestHandler.freshnessLifetime(new CachedResponse(200, list, new byte[0], now, now,
+                Collections.<String, String>emptyMap()));
+    }
+
+    private static String body(Response<InputStream> response) throws IOException {
+
+        return readAll(response.getBody());
+    }
+
+
+    private NioRequestHandler handler;
+    private MemoryCacheStore store;
+    private Client client;
+
+
+    @Before
+    public void setUp() throws Exception {
+
+        handler = new NioRequestHandler();
+        store = new MemoryCacheStore(1024 * 1024);
+        client = new Client(new CachingRequestHandler(handler, store));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+
+        handler.close();
+    }
+
+
+    @Test
+    public void testFreshResponseIsServedFromTheCache() throws Exception {
+
+        TestServer server = server("Cache-Control: max-age=60\r\n");
+
+        try {
+
+            assertEquals("the first response should come from the server.", "response 1",
+                    body(client.get(server.url("/reference"))));
+            assertEquals("the second response should come from the cache.", "response 1",
+                    body(client.get(server.url("/reference"))));
+            assertEquals("only one request should reach the server.", 1, server.getRequests().size());
+
+            Response<InputStream> head = client.head(server.url("/reference"));
+
+            assertEquals("a head request should be answered from the cache.", 200, head.getStatus());
+            assertEquals("the head response should have no body.", "", body(head));
+            assertEquals("the head request should not reach the server.", 1, server.getRequests().size());
+
+        } finally {
+
+            server.close();
+        }
+    }
+
+    @Test
+    public void testStaleResponseIsRevalidated() throws Exception {
+
+        TestServer server = server("Cache-Control: max-age=0\r\nETag: \"v1\"\r\n");
+
+        try {
+
+            assertEquals("the first response should come from the server.", "response 1",
+                    body(client.get(server.url("/reference"))));
+
+            Response<InputStream> revalidated = client.get(server.url("/reference"));
+
+            assertEquals("a not modified response should be served from the cache.", 200, revalidated.getStatus());
+            assertEquals("the stored body should be returned.", "response 1", body(revalidated));
+
+            List<TestServer.ReceivedRequest> requests = server.getRequests();
+
+            assertEquals("the stale response should have been revalidated.", 2, requests.size());
+            assertEquals("the revalidation should be conditional.", "\"v1\"",
+                    requests.get(1).getHeader("If-None-Match"));
+
+            assertEquals("the refreshed response should now be fresh.", "response 1",
+                    body(client.get(server.url("/reference"))));
+            assertEquals("the refreshed response should not be revalidated.", 2, server.getRequests().size());
+
+        } finally {
+
+            server.close();
+        }
+    }
+
+    @Test
+    public void testResponseIsOnlyServedForMatchingVary() throws Exception {
+
+        TestServer server = server("Cache-Control: max-age=60\r\nVary: Accept-Language\r\n");
+
+        try {
+
+            client.get(server.url("/reference"));
+
+            Request<InputStream> request = new Request<InputStream>(server.url("/reference"),
+                    Collections.<Header>singleton(new Header<String>("Accept-Language", "fr")),
+                    Collections.<Parameter<String>>emptySet());
+
+            Response<InputStream> response = client.get(request);
+
+            assertEquals("a different language should go to the server.", "response 2", body(response));
+            assertEquals("both requests should reach the server.", 2, server.getRequests().size());
+
+        } finally {
+
+            server.close();
+        }
+    }
+
+    @Test
+    public void testNoStoreResponseIsNotCached() throws Exception {
+
+        TestServer server = server("Cache-Control: no-store\r\n");
+
+        try {
+
+            client.get(server.url("/reference"));
+
+            assertEquals("the second response should come from the server.", "response 2",
+                    body(client.get(server.url("/reference"))));
+            assertEquals("nothing should have been stored.", 0, store.getCount());
+
+        } finally {
+
+            server.close();
+        }
+    }
+
+    @Test
+    public void testUnsafeRequestInvalidatesTheCache() throws Exception {
+
+        TestServer server = server("Cache-Control: max-age=60\r\n");
+
+        try {
+
+            client.get(server.url("/reference"));
+            client.post(server.url("/reference"));
+
+            assertEquals("the post should have removed the stored response.", "response 3",
+                    body(client.get(server.url("/reference"))));
+
+        } finally {
+
+            server.close();
+        }
+    }
+
+    @Test
+    public void testOnlyIfCachedWithoutStoredResponse() throws Exception {
+
+        TestServer server = server("Cache-Control: max-age=60\r\n");
+
+        try {
+
+            Request<InputStream> request = new Request<InputStream>(server.url("/reference"));
+            request.addHeader("Cache-Control", "only-if-cached");
+
+            assertEquals("a gateway timeout should be returned.", 504, client.get(request).getStatus());
+            assertEquals("the request should not reach the server.", 0, server.getRequests().size());
+
+        } finally {
+
+            server.close();
+        }
+    }
+
+    @Test
+    public void testLargeBodyIsStreamedWithoutBeingStored() throws Exception {
+
+        TestServer server = server("Cache-Control: max-age=60\r\n");
+
+        try {
+
+            client = new Client(new CachingRequestHandler(handler, store, 4));
+
+            assertEquals("the whole body should be returned.", "response 1", body(client.get(server.url("/big"))));
+            assertEquals("the body should not have been stored.", 0, store.getCount());
+
+        } finally {
+
+            server.close();
+        }
+    }
+
+    @Test
+    public void testRevalidatedHeadHasNoBody() throws Exception {
+
+        TestServer server = server("Cache-Control: max-age=60\r\n");
+
+        try {
+
+            client = new Client(new CachingRequestHandler(handler, store, 4));
+
+            long then = System.currentTimeMillis() - 60000;
+
+            // A stale response that the server won't answer with a not modified, so a full body comes back.
+            store.put(server.url("/big").toString(), new CachedResponse(200, Arrays.asList(
+                    new Header<String>("Cache-Control", "max-age=0"), new Header<String>("ETag", "\"v2\"")),
+                    "stale".getBytes("UTF-8"), then, then, Collections.<String, String>emptyMap()));
+
+            Response<InputStream> head = client.head(server.url("/big"));
+
+            assertEquals("the head should be answered.", 200, head.getStatus());
+            assertEquals("the head response should have no body.", "", body(head));
+            assertEquals("the stale response should have been revalidated with a get.", "GET /big HTTP/1.1",
+                    server.getRequests().get(0).getRequestLine());
+
+        } finally {
+
+            server.close();
+        }
+    }
+
+    @Test
+    public void testFreshnessLifetime() throws Exception {
+
+        long now = System.currentTimeMillis();
+
+        assertEquals("s-maxage should be used first.", 10000, lifetime(now,
+                "Cache-Control", "max-age=5, s-maxage=10", "Expires", HttpDates.format(now + 20000)));
+        assertEquals("max-age should be used before expires.", 5000, lifetime(now,
+                "Cache-Control", "max-age=5", "Expires", HttpDates.format(now + 20000)));
+        assertEquals("expires should be relative to the date.", 20000, lifetime(now,
+                "Date", HttpDates.format(now), "Expires", HttpDates.format(now + 20000)));
+        assertEquals("an invalid expires should have already expired.", 0, lifetime(now,
+                "Expires", "0"));
+        assertEquals("the heuristic lifetime should be a tenth of the age.", 10000,
+                lifetime(now, "Date", HttpDates.format(now),
+                        "Last-Modified", HttpDates.format(now - 100000)));
+    }
+}
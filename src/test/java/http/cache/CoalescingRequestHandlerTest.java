@@ -0,0 +1,272 @@
+package http.cache;
+
+import http.Request;
+import http.RequestHandler;
+import http.Response;
+import http.Timeouts;
+import http.header.Header;
+import http.transport.RequestTimeoutException;
+import http.transport.TransportException;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static http.util.IO.readAll;
+import static org.junit.Assert.*;
+
+/**
+ * @author Karl Bennett
+ */
+public class CoalescingRequestHandlerTest {
+
+    private static final int THREADS = 10;
+
+
+    /**
+     * A request handler that counts its requests and holds each one until it is released.
+     */
+    private static class BlockingRequestHandler implements RequestHandler {
+
+        private final CountDownLatch release = new CountDownLatch(1);
+        private final AtomicInteger requests = new AtomicInteger();
+        private final String body;
+
+        private BlockingRequestHandler(String body) {
+
+            this.body = body;
+        }
+
+        @Override
+        public Response<InputStream> handleRequest(String method, Request<InputStream> request) {
+
+            requests.incrementAndGet();
+
+            try {
+
+                release.await();
+
+            } catch (InterruptedException e) {
+
+                throw new IllegalStateException(e);
+            }
+
+            if (null == body) throw new TransportException("The connection was refused.");
+
+            return new Response<InputStream>(200, Collections.<Header>singleton(new Header<String>("ETag", "\"v1\"")),
+                    new ByteArrayInputStream(body.getBytes()));
+        }
+    }
+
+    private static List<Future<Response<InputStream>>> submit(ExecutorService executor,
+                                                              final CoalescingRequestHandler handler,
+                                                              final String url) {
+
+        List<Future<Response<InputStream>>> futures = new ArrayList<Future<Response<InputStream>>>();
+
+        for (int i = 0; i < THREADS; i++) {
+
+            futures.add(executor.submit(new Callable<Response<InputStream>>() {
+
+                @Override
+                public Response<InputStream> call() throws Exception {
+
+                    return handler.handleRequest("GET", new Request<InputStream>(url));
+                }
+            }));
+        }
+
+        return futures;
+    }
+
+    private static void awaitCoalesced(CoalescingRequestHandler handler, long count) throws Exception {
+
+        for (long end = System.currentTimeMillis() + 5000; handler.getCoalescedCount() < count; Thread.sleep(1)) {
+
+            if (System.currentTimeMillis() > end) fail("the requests were not coalesced.");
+        }
+    }
+
+
+    @Test
+    public void testConcurrentRequestsAreCoalesced() throws Exception {
+
+        BlockingRequestHandler blocking = new BlockingRequestHandler("shared");
+        CoalescingRequestHandler handler = new CoalescingRequestHandler(blocking);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+        try {
+
+            List<Future<Response<InputStream>>> futures = submit(executor, handler, "http://localhost/popular");
+
+            awaitCoalesced(handler, THREADS - 1);
+
+            blocking.release.countDown();
+
+            for (Future<Response<InputStream>> future : futures) {
+
+                Response<InputStream> response = future.get();
+
+                assertEquals("every request should get the status.", 200, response.getStatus());
+                assertEquals("every request should get the headers.", 1, response.getHeaders("ETag").size());
+                assertEquals("every request should get its own copy of the body.", "shared",
+                        readAll(response.getBody()));
+            }
+
+            assertEquals("only one request should have been sent.", 1, blocking.requests.get());
+
+        } finally {
+
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testFailureIsShared() throws Exception {
+
+        BlockingRequestHandler blocking = new BlockingRequestHandler(null);
+        CoalescingRequestHandler handler = new CoalescingRequestHandler(blocking);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+        try {
+
+            List<Future<Response<InputStream>>> futures = submit(executor, handler, "http://localhost/popular");
+
+            awaitCoalesced(handler, THREADS - 1);
+
+            blocking.release.countDown();
+
+            for (Future<Response<InputStream>> future : futures) {
+
+                try {
+
+                    future.get();
+
+                    fail("every request should fail.");
+
+                } catch (ExecutionException e) {
+
+                    assertTrue("the failure should be a transport exception.",
+                            e.getCause() instanceof TransportException);
+                }
+            }
+
+            assertEquals("only one request should have been sent.", 1, blocking.requests.get());
+
+        } finally {
+
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testWaitingRequestKeepsItsOwnTimeout() throws Exception {
+
+        final BlockingRequestHandler blocking = new BlockingRequestHandler("popular");
+        final CoalescingRequestHandler handler = new CoalescingRequestHandler(blocking);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        try {
+
+            Future<Response<InputStream>> leader = executor.submit(new Callable<Response<InputStream>>() {
+
+                @Override
+                public Response<InputStream> call() throws Exception {
+
+                    return handler.handleRequest("GET", new Request<InputStream>("http://localhost/popular"));
+                }
+            });
+
+            for (long end = System.currentTimeMillis() + 5000; 0 == blocking.requests.get(); Thread.sleep(1)) {
+
+                if (System.currentTimeMillis() > end) fail("the first request was not sent.");
+            }
+
+            Request<InputStream> request = new Request<InputStream>("http://localhost/popular");
+            request.setTimeouts(new Timeouts());
+            request.getTimeouts().setTotalTimeout(100);
+
+            long start = System.currentTimeMillis();
+
+            try {
+
+                handler.handleRequest("GET", request);
+
+                fail("the waiting request should run out of time.");
+
+            } catch (RequestTimeoutException e) {
+
+                assertTrue("the request should not wait for longer than its timeout.",
+                        2000 > System.currentTimeMillis() - start);
+            }
+
+            blocking.release.countDown();
+
+            assertEquals("the first request should still complete.", "popular", readAll(leader.get().getBody()));
+
+        } finally {
+
+            blocking.release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testLargeBodyIsNotShared() throws Exception {
+
+        BlockingRequestHandler blocking = new BlockingRequestHandler("too large to share");
+        CoalescingRequestHandler handler = new CoalescingRequestHandler(blocking, 4);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+        try {
+
+            List<Future<Response<InputStream>>> futures = submit(executor, handler, "http://localhost/large");
+
+            awaitCoalesced(handler, THREADS - 1);
+
+            blocking.release.countDown();
+
+            for (Future<Response<InputStream>> future : futures) {
+
+                assertEquals("every request should get the whole body.", "too large to share",
+                        readAll(future.get().getBody()));
+            }
+
+            assertEquals("the waiting requests should have been sent on their own.", THREADS,
+                    blocking.requests.get());
+
+        } finally {
+
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testRequestsWithDifferentHeadersAreNotCoalesced() throws Exception {
+
+        BlockingRequestHandler blocking = new BlockingRequestHandler("body");
+        blocking.release.countDown();
+
+        CoalescingRequestHandler handler = new CoalescingRequestHandler(blocking);
+
+        Request<InputStream> request = new Request<InputStream>("http://localhost/popular");
+        request.addHeader("Accept", "text/plain");
+
+        handler.handleRequest("GET", new Request<InputStream>("http://localhost/popular"));
+        handler.handleRequest("GET", request);
+        handler.handleRequest("POST", new Request<InputStream>("http://localhost/popular"));
+
+        assertEquals("every request should have been sent.", 3, blocking.requests.get());
+        assertEquals("no request should have been coalesced.", 0, handler.getCoalescedCount());
+    }
+}
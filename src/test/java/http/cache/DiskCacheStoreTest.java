@@ -0,0 +1,166 @@
+package http.cache;
+
+import http.header.Header;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Karl Bennett
+ */
+public class DiskCacheStoreTest {
+
+    private static CachedResponse response(String body) throws Exception {
+
+        return new CachedResponse(200, Collections.singletonList(new Header<String>("ETag", "\"" + body + "\"")),
+                body.getBytes("UTF-8"), 1, 2, Collections.<String, String>emptyMap());
+    }
+
+    private static String body(CachedResponse response) throws Exception {
+
+        return new String(response.getBody(), "UTF-8");
+    }
+
+
+    private File directory;
+
+
+    @Before
+    public void setUp() throws Exception {
+
+        directory = File.createTempFile("cache", "");
+        directory.delete();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+
+        File[] files = directory.listFiles();
+
+        if (null != files) for (File file : files) file.delete();
+
+        directory.delete();
+    }
+
+
+    @Test
+    public void testPutAndGet() throws Exception {
+
+        DiskCacheStore store = new DiskCacheStore(directory, 1024 * 1024, 64 * 1024);
+
+        try {
+
+            store.put("one", response("first"));
+            store.put("two", response("second"));
+            store.put("one", response("third"));
+
+            assertEquals("the latest response should be returned.", "third", body(store.get("one")));
+            assertEquals("the other response should be returned.", "second", body(store.get("two")));
+            assertEquals("the headers should be stored.", "\"second\"", store.get("two").getHeader("ETag"));
+
+            store.remove("two");
+
+            assertNull("the response should be removed.", store.get("two"));
+
+        } finally {
+
+            store.close();
+        }
+    }
+
+    @Test
+    public void testResponsesSurviveReopening() throws Exception {
+
+        DiskCacheStore store = new DiskCacheStore(directory, 1024 * 1024, 64 * 1024);
+
+        store.put("one", response("first"));
+        store.put("two", response("second"));
+        store.put("one", response("third"));
+        store.remove("two");
+        store.close();
+
+        store = new DiskCacheStore(directory, 1024 * 1024, 64 * 1024);
+
+        try {
+
+            assertEquals("only the live responses should be loaded.", 1, store.getCount());
+            assertEquals("the latest response should be loaded.", "third", body(store.get("one")));
+
+        } finally {
+
+            store.close();
+        }
+    }
+
+    @Test
+    public void testTornRecordIsIgnoredWhenReopening() throws Exception {
+
+        DiskCacheStore store = new DiskCacheStore(directory, 1024 * 1024, 64 * 1024);
+
+        store.put("one", response("first"));
+        store.put("two", response("second"));
+        store.close();
+
+        File segment = new File(directory, "segment-0.dat");
+        RandomAccessFile file = new RandomAccessFile(segment, "rw");
+
+        try {
+
+            // Corrupt the last byte of the second records value, as if the process stopped while writing it.
+            int first = 16 + "one".length() + response("first").toBytes().length;
+            int last = first + 12 + "two".length() + response("second").toBytes().length - 1;
+
+            file.seek(last);
+            file.write(file.read() ^ 0xFF);
+
+        } finally {
+
+            file.close();
+        }
+
+        store = new DiskCacheStore(directory, 1024 * 1024, 64 * 1024);
+
+        try {
+
+            assertEquals("the complete record should be loaded.", "first", body(store.get("one")));
+            assertNull("the torn record should be ignored.", store.get("two"));
+
+            store.put("three", response("third"));
+
+            assertEquals("new records should be written over the torn one.", "third", body(store.get("three")));
+
+        } finally {
+
+            store.close();
+        }
+    }
+
+    @Test
+    public void testOldestSegmentIsEvicted() throws Exception {
+
+        DiskCacheStore store = new DiskCacheStore(directory, 2 * 1024, 1024);
+
+        try {
+
+            String body = new String(new char[400]).replace('\0', 'x');
+
+            store.put("one", response(body));
+            store.put("two", response(body));
+            store.put("three", response(body));
+
+            assertNull("the response in the oldest segment should be evicted.", store.get("one"));
+            assertEquals("the newer responses should be kept.", body, body(store.get("three")));
+            assertEquals("only two segments should be kept.", 2, directory.listFiles().length);
+
+        } finally {
+
+            store.close();
+        }
+    }
+}
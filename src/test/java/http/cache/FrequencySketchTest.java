@@ -0,0 +1,48 @@
+package http.cache;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Karl Bennett
+ */
+public class FrequencySketchTest {
+
+    @Test
+    public void testFrequency() throws Exception {
+
+        FrequencySketch sketch = new FrequencySketch(64);
+
+        for (int i = 0; i < 5; i++) sketch.increment(1);
+
+        sketch.increment(2);
+
+        assertEquals("the frequent key should be counted.", 5, sketch.frequency(1));
+        assertEquals("the rare key should be counted.", 1, sketch.frequency(2));
+        assertEquals("an unseen key should not be counted.", 0, sketch.frequency(3));
+    }
+
+    @Test
+    public void testFrequencyIsCapped() throws Exception {
+
+        FrequencySketch sketch = new FrequencySketch(64);
+
+        for (int i = 0; i < 100; i++) sketch.increment(1);
+
+        assertEquals("the count should be capped.", 15, sketch.frequency(1));
+    }
+
+    @Test
+    public void testCountsAreAged() throws Exception {
+
+        FrequencySketch sketch = new FrequencySketch(16);
+
+        for (int i = 0; i < 8; i++) sketch.increment(1);
+
+        // Enough other keys to fill the sample and halve every counter.
+        for (long hash = 2; hash < 1000; hash++) sketch.increment(hash);
+
+        assertTrue("the old count should have been aged.", 8 > sketch.frequency(1));
+    }
+}
@@ -0,0 +1,75 @@
+package http.cache;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Karl Bennett
+ */
+public class HashIndexTest {
+
+    @Test
+    public void testPutGetAndRemove() throws Exception {
+
+        HashIndex index = new HashIndex(4);
+
+        index.put(1, 10);
+        index.put(17, 20);
+        index.put(1, 30);
+
+        assertEquals("the replaced value should be returned.", 30, index.get(1));
+        assertEquals("the colliding value should be returned.", 20, index.get(17));
+        assertEquals("a missing hash should not be found.", -1, index.get(33));
+        assertEquals("the size should only count each hash once.", 2, index.size());
+
+        assertEquals("the removed value should be returned.", 30, index.remove(1));
+        assertEquals("the entry after the removed one should still be found.", 20, index.get(17));
+        assertEquals("a missing hash should not be removed.", -1, index.remove(1));
+    }
+
+    @Test
+    public void testManyEntries() throws Exception {
+
+        HashIndex index = new HashIndex(16);
+        Map<Long, Long> expected = new HashMap<Long, Long>();
+        Random random = new Random(42);
+
+        for (int i = 0; i < 10000; i++) {
+
+            long hash = 1 + random.nextInt(5000);
+
+            if (random.nextBoolean()) {
+
+                index.put(hash, i);
+                expected.put(hash, (long) i);
+
+            } else {
+
+                Long removed = expected.remove(hash);
+
+                assertEquals("the removed value should be returned.", null == removed ? -1 : removed,
+                        index.remove(hash));
+            }
+        }
+
+        assertEquals("the index should hold every entry.", expected.size(), index.size());
+
+        for (Map.Entry<Long, Long> entry : expected.entrySet()) {
+
+            assertEquals("every entry should be found.", (long) entry.getValue(), index.get(entry.getKey()));
+        }
+    }
+
+    @Test
+    public void testHashIsNeverZero() throws Exception {
+
+        assertFalse("the hash should not be empty.", 0 == HashIndex.hash(new byte[0]));
+        assertFalse("different keys should have different hashes.",
+                HashIndex.hash("a".getBytes("UTF-8")) == HashIndex.hash("b".getBytes("UTF-8")));
+    }
+}
@@ -0,0 +1,74 @@
+package http.cache;
+
+import http.header.Header;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Karl Bennett
+ */
+public class MemoryCacheStoreTest {
+
+    private static CachedResponse response(int size) {
+
+        return new CachedResponse(200, Collections.<Header<String>>emptyList(), new byte[size], 0, 0,
+                Collections.<String, String>emptyMap());
+    }
+
+
+    @Test
+    public void testPutAndGet() throws Exception {
+
+        MemoryCacheStore store = new MemoryCacheStore(10000);
+        CachedResponse response = response(10);
+
+        store.put("one", response);
+
+        assertSame("the response should be stored.", response, store.get("one"));
+        assertEquals("the size should be tracked.", response.getSize(), store.getSize());
+
+        store.put("one", response(20));
+
+        assertEquals("the replaced response should not be counted.", response(20).getSize(), store.getSize());
+
+        store.remove("one");
+
+        assertNull("the response should be removed.", store.get("one"));
+        assertEquals("the size should be given back.", 0, store.getSize());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() throws Exception {
+
+        long size = response(100).getSize();
+
+        MemoryCacheStore store = new MemoryCacheStore(size * 3);
+
+        store.put("one", response(100));
+        store.put("two", response(100));
+        store.put("three", response(100));
+
+        store.get("one");
+
+        store.put("four", response(100));
+
+        assertNotNull("the recently used response should be kept.", store.get("one"));
+        assertNull("the least recently used response should be evicted.", store.get("two"));
+        assertNotNull("the newer response should be kept.", store.get("three"));
+        assertNotNull("the new response should be stored.", store.get("four"));
+        assertEquals("the store should not grow past its size.", size * 3, store.getSize());
+    }
+
+    @Test
+    public void testResponseLargerThanStoreIsNotStored() throws Exception {
+
+        MemoryCacheStore store = new MemoryCacheStore(100);
+
+        store.put("one", response(1000));
+
+        assertEquals("nothing should be stored.", 0, store.getCount());
+    }
+}
@@ -0,0 +1,238 @@
+package http.cache;
+
+import http.header.Header;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Karl Bennett
+ */
+public class OffHeapCacheStoreTest {
+
+    private static final int SEGMENT_SIZE = 4096;
+
+
+    private static CachedResponse response(String body) throws Exception {
+
+        return new CachedResponse(200, Collections.singletonList(new Header<String>("ETag", "\"" + body + "\"")),
+                body.getBytes("UTF-8"), 1, 2, Collections.<String, String>emptyMap());
+    }
+
+    private static String body(CachedResponse response) throws Exception {
+
+        return new String(response.getBody(), "UTF-8");
+    }
+
+    /**
+     * Store a popular response followed by responses that are each asked for more often than the last, so that every
+     * one of them is admitted, reading the popular response before each one.
+     */
+    private static void fill(OffHeapCacheStore store, int count) throws Exception {
+
+        store.put("popular", response(large("popular")));
+
+        for (int i = 0; i < count; i++) {
+
+            assertNotNull("the read response should be kept.", store.get("popular"));
+
+            for (int j = 0; j <= i; j++) store.get("key" + i);
+
+            store.put("key" + i, response(large("key" + i)));
+        }
+    }
+
+    private static String large(String key) {
+
+        return key + new String(new char[300]).replace('\0', 'x');
+    }
+
+
+    private File directory;
+
+
+    @Before
+    public void setUp() throws Exception {
+
+        directory = File.createTempFile("cache", "");
+        directory.delete();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+
+        File[] files = directory.listFiles();
+
+        if (null != files) for (File file : files) file.delete();
+
+        directory.delete();
+    }
+
+
+    @Test
+    public void testPutAndGet() throws Exception {
+
+        OffHeapCacheStore store = new OffHeapCacheStore(SEGMENT_SIZE * 4, SEGMENT_SIZE);
+
+        store.put("one", response("first"));
+        store.put("two", response("second"));
+        store.put("one", response("third"));
+
+        assertEquals("the latest response should be returned.", "third", body(store.get("one")));
+        assertEquals("the other response should be returned.", "second", body(store.get("two")));
+        assertEquals("the headers should be stored.", "\"second\"", store.get("two").getHeader("ETag"));
+        assertEquals("each key should be counted once.", 2, store.getCount());
+
+        store.remove("two");
+
+        assertNull("the response should be removed.", store.get("two"));
+        assertNull("a missing response should not be found.", store.get("three"));
+
+        store.clear();
+
+        assertNull("the responses should be cleared.", store.get("one"));
+    }
+
+    @Test
+    public void testResponseLargerThanASlabQuarterIsNotStored() throws Exception {
+
+        OffHeapCacheStore store = new OffHeapCacheStore(SEGMENT_SIZE * 4, SEGMENT_SIZE);
+
+        store.put("one", response(new String(new char[SEGMENT_SIZE / 4]).replace('\0', 'x')));
+
+        assertEquals("nothing should be stored.", 0, store.getCount());
+    }
+
+    @Test
+    public void testReadResponsesSurviveReclaim() throws Exception {
+
+        OffHeapCacheStore store = new OffHeapCacheStore(SEGMENT_SIZE * 2, SEGMENT_SIZE);
+
+        fill(store, 12);
+
+        assertNull("an old unread response should be evicted.", store.get("key0"));
+        assertEquals("the read response should be intact.", large("popular"), body(store.get("popular")));
+    }
+
+    @Test
+    public void testRarelyRequestedResponseIsNotAdmittedWhenFull() throws Exception {
+
+        OffHeapCacheStore store = new OffHeapCacheStore(SEGMENT_SIZE * 2, SEGMENT_SIZE);
+
+        for (int i = 0; i < 5; i++) {
+
+            for (int j = 0; j < 3; j++) store.get("key" + i);
+
+            store.put("key" + i, response(large("key" + i)));
+        }
+
+        store.put("once", response(large("once")));
+
+        assertNull("a response that was never asked for should not be admitted.", store.get("once"));
+        assertNotNull("the popular responses should be kept.", store.get("key0"));
+    }
+
+    @Test
+    public void testResponsesSurviveReopening() throws Exception {
+
+        OffHeapCacheStore store = new OffHeapCacheStore(directory, SEGMENT_SIZE * 4, SEGMENT_SIZE);
+
+        store.put("one", response("first"));
+        store.put("two", response("second"));
+        store.put("one", response("third"));
+        store.remove("two");
+        store.close();
+
+        store = new OffHeapCacheStore(directory, SEGMENT_SIZE * 4, SEGMENT_SIZE);
+
+        try {
+
+            assertEquals("only the live responses should be loaded.", 1, store.getCount());
+            assertEquals("the latest response should be loaded.", "third", body(store.get("one")));
+
+        } finally {
+
+            store.close();
+        }
+    }
+
+    @Test
+    public void testResponsesSurviveReopeningAfterReclaim() throws Exception {
+
+        OffHeapCacheStore store = new OffHeapCacheStore(directory, SEGMENT_SIZE * 3, SEGMENT_SIZE);
+
+        fill(store, 12);
+
+        int count = store.getCount();
+
+        store.close();
+
+        store = new OffHeapCacheStore(directory, SEGMENT_SIZE * 3, SEGMENT_SIZE);
+
+        try {
+
+            assertEquals("the same responses should be loaded.", count, store.getCount());
+            assertEquals("the copied response should be loaded.", large("popular"), body(store.get("popular")));
+            assertEquals("the newest response should be loaded.", large("key11"), body(store.get("key11")));
+
+        } finally {
+
+            store.close();
+        }
+    }
+
+    @Test
+    public void testTornRecordIsIgnoredWhenReopening() throws Exception {
+
+        OffHeapCacheStore store = new OffHeapCacheStore(directory, SEGMENT_SIZE * 4, SEGMENT_SIZE);
+
+        store.put("one", response("first"));
+        store.put("two", response("second"));
+        store.close();
+
+        File[] slabs = directory.listFiles();
+
+        for (File slab : slabs) {
+
+            RandomAccessFile file = new RandomAccessFile(slab, "rw");
+
+            try {
+
+                // Corrupt the last byte of the second records value, as if the process stopped while writing it.
+                int first = 12 + 24 + "one".length() + response("first").toBytes().length;
+                int last = first + 20 + "two".length() + response("second").toBytes().length - 1;
+
+                file.seek(last);
+                int b = file.read();
+                file.seek(last);
+                file.write(b ^ 0xFF);
+
+            } finally {
+
+                file.close();
+            }
+        }
+
+        store = new OffHeapCacheStore(directory, SEGMENT_SIZE * 4, SEGMENT_SIZE);
+
+        try {
+
+            assertEquals("the complete record should be loaded.", "first", body(store.get("one")));
+            assertNull("the torn record should be ignored.", store.get("two"));
+
+            store.put("three", response("third"));
+
+            assertEquals("new records should be written over the torn one.", "third", body(store.get("three")));
+
+        } finally {
+
+            store.close();
+        }
+    }
+}
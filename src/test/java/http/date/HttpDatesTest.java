@@ -0,0 +1,37 @@
+package http.date;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Karl Bennett
+ */
+public class HttpDatesTest {
+
+    private static final long DATE = 784111777000L;
+
+
+    @Test
+    public void testFormat() throws Exception {
+
+        assertEquals("the date should be formatted as an IMF-fixdate.", "Sun, 06 Nov 1994 08:49:37 GMT",
+                HttpDates.format(DATE));
+    }
+
+    @Test
+    public void testParse() throws Exception {
+
+        assertEquals("an IMF-fixdate should be parsed.", DATE, HttpDates.parse("Sun, 06 Nov 1994 08:49:37 GMT"));
+        assertEquals("an RFC 850 date should be parsed.", DATE, HttpDates.parse("Sunday, 06-Nov-94 08:49:37 GMT"));
+        assertEquals("an asctime date should be parsed.", DATE, HttpDates.parse("Sun Nov  6 08:49:37 1994"));
+    }
+
+    @Test
+    public void testParseInvalid() throws Exception {
+
+        assertEquals("a null date should not be parsed.", -1, HttpDates.parse(null));
+        assertEquals("a number should not be parsed.", -1, HttpDates.parse("0"));
+        assertEquals("trailing text should not be parsed.", -1, HttpDates.parse("Sun, 06 Nov 1994 08:49:37 GMT x"));
+    }
+}
@@ -0,0 +1,370 @@
+package http.dns;
+
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Karl Bennett
+ */
+public class CachingResolverTest {
+
+    private static final String HOST = "service.example";
+
+    private static final Executor SAME_THREAD = new Executor() {
+
+        @Override
+        public void execute(Runnable command) {
+
+            command.run();
+        }
+    };
+
+
+    private static AddressRecord record(String address, long ttl) throws UnknownHostException {
+
+        return new AddressRecord(InetAddress.getByName(address), ttl);
+    }
+
+    private static CachingResolver caching(Resolver resolver) {
+
+        return new CachingResolver(resolver, 200, CachingResolver.DEFAULT_MAX_ENTRIES, SAME_THREAD);
+    }
+
+
+    @Test
+    public void testAddressesAreCachedForTheirTtl() throws Exception {
+
+        StubResolver stub = new StubResolver(record("10.0.0.1", 200));
+
+        CachingResolver resolver = caching(stub);
+
+        assertEquals("the address should be resolved.", stub.records, resolver.resolve(HOST));
+        assertEquals("the address should be cached.", stub.records, resolver.resolve(HOST));
+        assertEquals("the host should only be looked up once.", 1, stub.count.get());
+
+        Thread.sleep(250);
+
+        resolver.resolve(HOST);
+
+        assertEquals("the host should be looked up again once the address expires.", 2, stub.count.get());
+    }
+
+    @Test
+    public void testShortestTtlIsHonoured() throws Exception {
+
+        StubResolver stub = new StubResolver(record("10.0.0.1", 60000), record("10.0.0.2", 100));
+
+        CachingResolver resolver = caching(stub);
+
+        resolver.resolve(HOST);
+
+        Thread.sleep(150);
+
+        resolver.resolve(HOST);
+
+        assertEquals("the host should expire with its shortest lived record.", 2, stub.count.get());
+    }
+
+    @Test
+    public void testHostIsCaseInsensitive() throws Exception {
+
+        StubResolver stub = new StubResolver(record("10.0.0.1", 60000));
+
+        CachingResolver resolver = caching(stub);
+
+        resolver.resolve(HOST);
+        resolver.resolve(HOST.toUpperCase());
+
+        assertEquals("the host should only be looked up once.", 1, stub.count.get());
+    }
+
+    @Test
+    public void testFailuresAreCached() throws Exception {
+
+        StubResolver stub = new StubResolver();
+
+        CachingResolver resolver = caching(stub);
+
+        for (int i = 0; i < 3; i++) {
+
+            try {
+
+                resolver.resolve(HOST);
+
+                fail("the host should not be resolved.");
+
+            } catch (UnknownHostException e) {
+
+                assertEquals("the failure should be described.", HOST, e.getMessage());
+            }
+        }
+
+        assertEquals("the failure should be cached.", 1, stub.count.get());
+
+        stub.records = Arrays.asList(record("10.0.0.1", 60000));
+
+        Thread.sleep(250);
+
+        assertEquals("the host should be looked up again once the failure expires.", stub.records,
+                resolver.resolve(HOST));
+        assertEquals("the host should be looked up twice.", 2, stub.count.get());
+    }
+
+    @Test
+    public void testPopularHostIsRefreshedBeforeItExpires() throws Exception {
+
+        StubResolver stub = new StubResolver(record("10.0.0.1", 400));
+
+        CachingResolver resolver = caching(stub);
+
+        resolver.resolve(HOST);
+        resolver.resolve(HOST);
+
+        Thread.sleep(320);
+
+        stub.records = Arrays.asList(record("10.0.0.2", 400));
+
+        assertEquals("the cached address should be returned while it is refreshed.", "10.0.0.1",
+                resolver.resolve(HOST).get(0).getAddress().getHostAddress());
+        assertEquals("the host should be refreshed.", 1, resolver.getRefreshCount());
+
+        Thread.sleep(200);
+
+        assertEquals("the refreshed address should be returned.", "10.0.0.2",
+                resolver.resolve(HOST).get(0).getAddress().getHostAddress());
+        assertEquals("no caller should wait for the host.", 1, resolver.getLookupCount());
+        assertEquals("the host should be looked up twice.", 2, stub.count.get());
+    }
+
+    @Test
+    public void testUnpopularHostIsNotRefreshed() throws Exception {
+
+        StubResolver stub = new StubResolver(record("10.0.0.1", 400));
+
+        CachingResolver resolver = caching(stub);
+
+        resolver.resolve(HOST);
+
+        Thread.sleep(320);
+
+        resolver.resolve(HOST);
+
+        assertEquals("the host should not be refreshed.", 0, resolver.getRefreshCount());
+        assertEquals("the host should only be looked up once.", 1, stub.count.get());
+    }
+
+    @Test(timeout = 5000)
+    public void testRefreshDoesNotBlockTheCaller() throws Exception {
+
+        StubResolver stub = new StubResolver(record("10.0.0.1", 400));
+
+        CachingResolver resolver = new CachingResolver(stub, 200, 10, new Executor() {
+
+            @Override
+            public void execute(Runnable command) {
+
+                new Thread(command).start();
+            }
+        });
+
+        resolver.resolve(HOST);
+        resolver.resolve(HOST);
+
+        Thread.sleep(320);
+
+        stub.block = new CountDownLatch(1);
+
+        try {
+
+            assertEquals("the cached address should be returned.", stub.records, resolver.resolve(HOST));
+            assertEquals("the cached address should be returned again.", stub.records, resolver.resolve(HOST));
+
+        } finally {
+
+            stub.block.countDown();
+        }
+    }
+
+    @Test
+    public void testFailedRefreshKeepsTheCachedAddresses() throws Exception {
+
+        StubResolver stub = new StubResolver(record("10.0.0.1", 400));
+
+        CachingResolver resolver = caching(stub);
+
+        List<AddressRecord> records = stub.records;
+
+        resolver.resolve(HOST);
+        resolver.resolve(HOST);
+
+        Thread.sleep(320);
+
+        stub.records = null;
+
+        assertEquals("the cached address should be returned.", records, resolver.resolve(HOST));
+        assertEquals("the cached address should be kept.", records, resolver.resolve(HOST));
+        assertEquals("the refresh should only be tried once.", 2, stub.count.get());
+        assertEquals("the refresh should not replace the addresses.", 0, resolver.getRefreshCount());
+    }
+
+    @Test
+    public void testConcurrentLookupsAreShared() throws Exception {
+
+        final StubResolver stub = new StubResolver(record("10.0.0.1", 60000));
+        stub.block = new CountDownLatch(1);
+
+        final CachingResolver resolver = caching(stub);
+
+        final List<AddressRecord> results = new ArrayList<AddressRecord>();
+        final CountDownLatch done = new CountDownLatch(5);
+
+        for (int i = 0; i < 5; i++) {
+
+            new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+
+                    try {
+
+                        List<AddressRecord> records = resolver.resolve(HOST);
+
+                        synchronized (results) {
+
+                            results.addAll(records);
+                        }
+
+                    } catch (UnknownHostException e) {
+
+                        // The result will be missing.
+
+                    } finally {
+
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+
+        Thread.sleep(100);
+
+        stub.block.countDown();
+
+        assertTrue("every look up should finish.", done.await(5, TimeUnit.SECONDS));
+        assertEquals("every caller should get the address.", 5, results.size());
+        assertEquals("the host should only be looked up once.", 1, stub.count.get());
+    }
+
+    @Test
+    public void testResolveCachedNeverLooksUp() throws Exception {
+
+        StubResolver stub = new StubResolver(record("10.0.0.1", 60000));
+
+        CachingResolver resolver = caching(stub);
+
+        assertNull("a host that isn't cached should not be returned.", resolver.resolveCached(HOST));
+        assertEquals("the host should not be looked up.", 0, stub.count.get());
+
+        resolver.resolve(HOST);
+
+        assertEquals("the cached address should be returned.", stub.records, resolver.resolveCached(HOST));
+        assertEquals("the host should only be looked up once.", 1, stub.count.get());
+    }
+
+    @Test
+    public void testInvalidate() throws Exception {
+
+        StubResolver stub = new StubResolver(record("10.0.0.1", 60000));
+
+        CachingResolver resolver = caching(stub);
+
+        resolver.resolve(HOST);
+        resolver.invalidate(HOST);
+        resolver.resolve(HOST);
+
+        assertEquals("the host should be looked up again.", 2, stub.count.get());
+    }
+
+    @Test
+    public void testSizeIsBounded() throws Exception {
+
+        StubResolver stub = new StubResolver(record("10.0.0.1", 60000));
+
+        CachingResolver resolver = new CachingResolver(stub, 200, 3, SAME_THREAD);
+
+        for (int i = 0; i < 10; i++) resolver.resolve("host" + i);
+
+        assertEquals("the number of hosts should be bounded.", 3, resolver.getSize());
+
+        resolver.resolve("host9");
+
+        assertEquals("the latest host should be kept.", 10, stub.count.get());
+    }
+
+    @Test(expected = UnknownHostException.class)
+    public void testEmptyRecordsAreAFailure() throws Exception {
+
+        StubResolver stub = new StubResolver();
+        stub.records = new ArrayList<AddressRecord>();
+
+        caching(stub).resolve(HOST);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidNegativeTtl() throws Exception {
+
+        new CachingResolver(new StubResolver(), -1, 10, SAME_THREAD);
+    }
+
+
+    /**
+     * Returns the current records, or fails if there are none, and counts the look ups.
+     */
+    private static class StubResolver implements Resolver {
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        private volatile List<AddressRecord> records;
+        private volatile CountDownLatch block;
+
+        private StubResolver(AddressRecord... records) {
+
+            this.records = 0 == records.length ? null : Arrays.asList(records);
+        }
+
+        @Override
+        public List<AddressRecord> resolve(String host) throws UnknownHostException {
+
+            count.incrementAndGet();
+
+            CountDownLatch latch = block;
+
+            if (null != latch) {
+
+                try {
+
+                    latch.await();
+
+                } catch (InterruptedException e) {
+
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            if (null == records) throw new UnknownHostException(host);
+
+            return records;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package http.header;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Karl Bennett
+ */
+public class HeaderNameTest {
+
+    @Test
+    public void testWellKnownNameIsShared() throws Exception {
+
+        assertSame("a well known name should be the shared instance.", HeaderName.CONTENT_TYPE,
+                HeaderName.of("Content-Type"));
+        assertSame("a well known name should be found in any case.", HeaderName.CONTENT_TYPE,
+                HeaderName.of("cOnTeNt-TyPe"));
+        assertEquals("a well known name should keep its usual spelling.", "Content-Type",
+                HeaderName.of("content-type").toString());
+        assertTrue("a well known name should have an ordinal.", HeaderName.CONTENT_TYPE.isKnown());
+        assertSame("the ordinal should find the name.", HeaderName.CONTENT_TYPE,
+                HeaderName.valueOf(HeaderName.CONTENT_TYPE.ordinal()));
+    }
+
+    @Test
+    public void testOtherNameIgnoresCase() throws Exception {
+
+        HeaderName name = HeaderName.of("X-Custom");
+
+        assertFalse("the name should not be well known.", name.isKnown());
+        assertEquals("the ordinal should be -1.", -1, name.ordinal());
+        assertEquals("the name should equal itself in another case.", name, HeaderName.of("x-CUSTOM"));
+        assertEquals("the hash codes should match.", name.hashCode(), HeaderName.of("x-CUSTOM").hashCode());
+        assertFalse("different names should not be equal.", name.equals(HeaderName.of("X-Other")));
+        assertNull("an unknown name should not be found.", HeaderName.find("x-custom"));
+    }
+
+    @Test
+    public void testLookupBytes() throws Exception {
+
+        byte[] line = "set-cookie: a=b".getBytes("ISO-8859-1");
+
+        assertSame("a well known name should be found from its bytes.", HeaderName.SET_COOKIE,
+                HeaderName.lookup(line, 0, 10));
+        assertNull("a partial name should not be found.", HeaderName.lookup(line, 0, 9));
+        assertNull("an unknown name should not be found.", HeaderName.lookup("X-Custom".getBytes("ISO-8859-1"), 0, 8));
+    }
+
+    @Test
+    public void testEveryWellKnownNameCanBeFound() throws Exception {
+
+        for (int i = 0; i < HeaderName.KNOWN_COUNT; i++) {
+
+            HeaderName name = HeaderName.valueOf(i);
+            byte[] bytes = name.toString().toUpperCase().getBytes("ISO-8859-1");
+
+            assertSame("the name should be found.", name, HeaderName.find(name.toString().toLowerCase()));
+            assertSame("the name should be found from its bytes.", name, HeaderName.lookup(bytes, 0, bytes.length));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEmptyName() throws Exception {
+
+        HeaderName.of("");
+    }
+}
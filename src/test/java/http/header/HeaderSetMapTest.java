@@ -0,0 +1,110 @@
+package http.header;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Karl Bennett
+ */
+public class HeaderSetMapTest {
+
+    private static Header<String> header(String name, String value) {
+
+        return new Header<String>(name, value);
+    }
+
+
+    @Test
+    public void testGetIgnoresCase() throws Exception {
+
+        HeaderSetMap map = new HeaderSetMap();
+        map.add(header("content-type", "text/plain"));
+        map.add(header("X-Custom", "one"));
+        map.add(header("x-custom", "two"));
+
+        assertEquals("there should be two names.", 2, map.size());
+        assertEquals("a well known name should be found in any case.", 1, map.get("Content-Type").size());
+        assertEquals("any other name should be found in any case.", 2, map.get("X-CUSTOM").size());
+        assertTrue("the map should contain the well known name.", map.containsKey("CONTENT-TYPE"));
+        assertFalse("the map should not contain a missing well known name.", map.containsKey("Accept"));
+        assertNull("a missing name should not be found.", map.get("X-Missing"));
+    }
+
+    @Test
+    public void testNames() throws Exception {
+
+        HeaderSetMap map = new HeaderSetMap();
+        map.add(header("content-type", "text/plain"));
+        map.add(header("X-Custom", "one"));
+        map.add(header("x-custom", "two"));
+
+        List<String> names = new ArrayList<String>();
+
+        for (Map.Entry<String, Set<Header>> entry : map.entrySet()) names.add(entry.getKey());
+
+        assertEquals("the names should be the usual spelling or the first spelling.",
+                Arrays.asList("Content-Type", "X-Custom"), names);
+    }
+
+    @Test
+    public void testRemoveKeepsTheKnownSlots() throws Exception {
+
+        HeaderSetMap map = new HeaderSetMap();
+        map.add(header("X-Custom", "one"));
+        map.add(header("Content-Type", "text/plain"));
+        map.add(header("Accept", "*/*"));
+        map.add(header("accept", "text/html"));
+
+        assertEquals("the removed headers should be returned.", 1, map.remove("x-custom").size());
+        assertNull("a missing name should not be removed.", map.remove("x-custom"));
+        assertEquals("a well known name should still be found once the others have moved.", 2,
+                map.get("ACCEPT").size());
+
+        assertTrue("a single header should be removed.", map.remove(header("Accept", "*/*")));
+        assertEquals("the other header should remain.", 1, map.get("accept").size());
+
+        Iterator<Map.Entry<String, Set<Header>>> entries = map.entrySet().iterator();
+        entries.next();
+        entries.remove();
+
+        assertNull("the first name should be removed.", map.get("Content-Type"));
+        assertEquals("the last name should still be found.", 1, map.get("Accept").size());
+
+        map.clear();
+
+        assertTrue("the map should be empty.", map.isEmpty());
+        assertNull("the well known name should be gone.", map.get("Accept"));
+    }
+
+    @Test
+    public void testManyHeaders() throws Exception {
+
+        HeaderSetMap map = new HeaderSetMap();
+
+        for (int i = 0; i < 20; i++) {
+
+            map.add(header("X-Custom-" + i, "value"));
+            map.add(header(0 == i % 2 ? "Vary" : "Set-Cookie", "value " + i));
+        }
+
+        assertEquals("every name should be in the map.", 22, map.size());
+        assertEquals("any other name should be found through the index in any case.", 1,
+                map.get("x-custom-13").size());
+        assertEquals("every value of a well known name should be found.", 10, map.get("set-cookie").size());
+
+        map.remove("X-Custom-0");
+
+        assertEquals("every value of a well known name should be found after a removal.", 10,
+                map.get("VARY").size());
+        assertNull("a removed name should not be found.", map.get("x-custom-0"));
+        assertEquals("any other name should still be found.", 1, map.get("X-CUSTOM-19").size());
+    }
+}
@@ -0,0 +1,66 @@
+package http.header;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Karl Bennett
+ */
+public class RawHeadersTest {
+
+    private static RawHeaders rawHeaders(String... lines) throws Exception {
+
+        RawHeaders headers = new RawHeaders();
+
+        for (String line : lines) {
+
+            byte[] bytes = line.getBytes("ISO-8859-1");
+            int colon = line.indexOf(':');
+
+            headers.add(bytes, 0, colon, colon + 2, bytes.length, HeaderName.lookup(bytes, 0, colon));
+        }
+
+        return headers;
+    }
+
+
+    @Test
+    public void testRawHeaders() throws Exception {
+
+        RawHeaders headers = rawHeaders("content-type: text/plain", "X-Custom: one", "Set-Cookie: a=b");
+
+        assertEquals("there should be three headers.", 3, headers.size());
+        assertEquals("a well known name should have its usual spelling.", "Content-Type", headers.getName(0));
+        assertEquals("any other name should keep its spelling.", "X-Custom", headers.getName(1));
+        assertEquals("the value should be decoded.", "one", headers.getValue(1));
+        assertEquals("the header should be decoded.", new Header<String>("Set-Cookie", "a=b"), headers.getHeader(2));
+    }
+
+    @Test
+    public void testHasName() throws Exception {
+
+        RawHeaders headers = rawHeaders("content-type: text/plain", "X-Custom: one");
+
+        assertTrue("a well known name should match.", headers.hasName(0, HeaderName.CONTENT_TYPE));
+        assertFalse("a different well known name should not match.", headers.hasName(0, HeaderName.ACCEPT));
+        assertFalse("another name should not match a well known one.", headers.hasName(0, HeaderName.of("X-Custom")));
+        assertTrue("another name should match in any case.", headers.hasName(1, HeaderName.of("x-CUSTOM")));
+        assertFalse("a well known name should not match another one.", headers.hasName(1, HeaderName.ACCEPT));
+        assertFalse("a longer name should not match.", headers.hasName(1, HeaderName.of("X-Customer")));
+    }
+
+    @Test
+    public void testManyHeaders() throws Exception {
+
+        String[] lines = new String[100];
+
+        for (int i = 0; i < lines.length; i++) lines[i] = "X-Header-" + i + ": value " + i + " long enough to grow";
+
+        RawHeaders headers = rawHeaders(lines);
+
+        assertEquals("every header should be kept.", 100, headers.size());
+        assertEquals("the last name should be decoded.", "X-Header-99", headers.getName(99));
+        assertEquals("the last value should be decoded.", "value 99 long enough to grow", headers.getValue(99));
+    }
+}
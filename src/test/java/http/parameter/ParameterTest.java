@@ -53,6 +53,14 @@ public class ParameterTest {
                 Parameter.parse(parametersString));
     }
 
+    @Test
+    public void testParseValueContainingOperator() throws Exception {
+
+        assertEquals("only the first operator should separate the name from the value.",
+                Collections.singleton(new Parameter<String>(PARAMETER_NAME_ONE, "a=b")),
+                Parameter.parse(PARAMETER_NAME_ONE + "=a=b"));
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void testParseWithInvalidString() throws Exception {
 
@@ -0,0 +1,366 @@
+package http.transport;
+
+import http.Callback;
+import http.Client;
+import http.Request;
+import http.RequestHandler;
+import http.Response;
+import http.ResponseFuture;
+import http.dns.AddressRecord;
+import http.dns.Resolver;
+import http.dns.SystemResolver;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import static http.util.IO.readAll;
+import static org.junit.Assert.*;
+
+/**
+ * @author Karl Bennett
+ */
+public class AsyncRequestTest {
+
+    private static final String RESPONSE_BODY = "test response body";
+    private static final String CALLBACK_THREAD = "test-callback";
+
+
+    private TestServer server;
+    private NioRequestHandler handler;
+    private ExecutorService callbackExecutor;
+    private Client client;
+
+
+    @Before
+    public void setUp() throws Exception {
+
+        server = new TestServer(TestServer.fixed(200, RESPONSE_BODY));
+        handler = new NioRequestHandler();
+        callbackExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+
+                return new Thread(runnable, CALLBACK_THREAD);
+            }
+        });
+        client = new Client(handler, callbackExecutor);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+
+        callbackExecutor.shutdownNow();
+        handler.close();
+        server.close();
+    }
+
+
+    @Test
+    public void testGetAsync() throws Exception {
+
+        Response<InputStream> response = client.getAsync(server.url("/")).get(5, TimeUnit.SECONDS);
+
+        assertEquals("the status should be returned.", 200, response.getStatus());
+        assertEquals("the body should be returned.", RESPONSE_BODY, readAll(response.getBody()));
+    }
+
+    @Test
+    public void testPostAsync() throws Exception {
+
+        Request<String> request = new Request<String>(server.url("/post"));
+        request.setBody("test request body");
+
+        readAll(client.postAsync(request).get(5, TimeUnit.SECONDS).getBody());
+
+        TestServer.ReceivedRequest received = server.getRequests().get(0);
+
+        assertEquals("the method should be sent.", "POST /post HTTP/1.1", received.getRequestLine());
+        assertEquals("the body should be sent.", "test request body", new String(received.getBody(), "UTF-8"));
+    }
+
+    @Test
+    public void testManyRequestsFromOneThread() throws Exception {
+
+        List<ResponseFuture<Response<InputStream>>> futures = new ArrayList<ResponseFuture<Response<InputStream>>>();
+
+        for (int i = 0; i < 50; i++) futures.add(client.getAsync(server.url("/" + i)));
+
+        for (ResponseFuture<Response<InputStream>> future : futures) {
+
+            assertEquals("every response should be correct.", RESPONSE_BODY,
+                    readAll(future.get(5, TimeUnit.SECONDS).getBody()));
+        }
+    }
+
+    @Test
+    public void testCallbackRunsOnCallbackExecutor() throws Exception {
+
+        final CountDownLatch called = new CountDownLatch(1);
+        final List<String> threads = Collections.synchronizedList(new ArrayList<String>());
+
+        client.getAsync(new Request(server.url("/")), new Callback<Response<InputStream>>() {
+
+            @Override
+            public void completed(Response<InputStream> response) {
+
+                threads.add(Thread.currentThread().getName());
+
+                called.countDown();
+            }
+
+            @Override
+            public void failed(Throwable cause) {
+
+                called.countDown();
+            }
+        });
+
+        assertTrue("the callback should be run.", called.await(5, TimeUnit.SECONDS));
+        assertEquals("the callback should be run on the callback executor.", CALLBACK_THREAD, threads.get(0));
+    }
+
+    @Test
+    public void testFailedCallback() throws Exception {
+
+        final CountDownLatch called = new CountDownLatch(1);
+        final List<String> callbacks = Collections.synchronizedList(new ArrayList<String>());
+        final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+
+        client.deleteAsync(new Request("http://127.0.0.1:" + TestServer.refusedPort() + "/"),
+                new Callback<Response<InputStream>>() {
+
+                    @Override
+                    public void completed(Response<InputStream> response) {
+
+                        callbacks.add("completed");
+
+                        called.countDown();
+                    }
+
+                    @Override
+                    public void failed(Throwable cause) {
+
+                        callbacks.add("failed");
+                        failures.add(cause);
+
+                        called.countDown();
+                    }
+                });
+
+        assertTrue("a callback should be run.", called.await(5, TimeUnit.SECONDS));
+        assertEquals("only the failed callback should be run.", Collections.singletonList("failed"), callbacks);
+        assertEquals("the failure should be passed to the callback.", 1, failures.size());
+    }
+
+    @Test
+    public void testUnsupportedSchemeFailsFuture() throws Exception {
+
+        try {
+
+            client.putAsync("ftp://127.0.0.1/").get(5, TimeUnit.SECONDS);
+
+            fail("the request should fail.");
+
+        } catch (ExecutionException e) {
+
+            assertTrue("the cause should be a transport exception.", e.getCause() instanceof TransportException);
+        }
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+
+        final CountDownLatch release = new CountDownLatch(1);
+
+        TestServer slow = new TestServer(new TestServer.Responder() {
+
+            @Override
+            public boolean respond(TestServer.ReceivedRequest request, OutputStream output) throws IOException {
+
+                try {
+
+                    release.await(5, TimeUnit.SECONDS);
+
+                } catch (InterruptedException e) {
+
+                    Thread.currentThread().interrupt();
+                }
+
+                return TestServer.fixed(200, RESPONSE_BODY).respond(request, output);
+            }
+        });
+
+        try {
+
+            ResponseFuture<Response<InputStream>> future = client.getAsync(slow.url("/"));
+
+            assertTrue("the future should be cancelled.", future.cancel(true));
+
+            release.countDown();
+
+            try {
+
+                future.get();
+
+                fail("the cancellation should be thrown.");
+
+            } catch (CancellationException e) {
+
+                // Expected.
+            }
+
+            assertEquals("a new request should still succeed.", RESPONSE_BODY,
+                    readAll(client.getAsync(slow.url("/")).get(5, TimeUnit.SECONDS).getBody()));
+
+        } finally {
+
+            slow.close();
+        }
+    }
+
+    @Test
+    public void testBlockingHandlerIsRunOnCallbackExecutor() throws Exception {
+
+        final List<String> threads = Collections.synchronizedList(new ArrayList<String>());
+
+        Client blocking = new Client(new RequestHandler() {
+
+            @Override
+            public Response<InputStream> handleRequest(String method, Request<InputStream> request) {
+
+                threads.add(Thread.currentThread().getName());
+
+                return new Response<InputStream>(200, new ByteArrayInputStream(RESPONSE_BODY.getBytes()));
+            }
+        }, callbackExecutor);
+
+        Response<InputStream> response = blocking.executeAsync(Client.GET, new Request(server.url("/")))
+                .get(5, TimeUnit.SECONDS);
+
+        assertEquals("the response should be returned.", RESPONSE_BODY, readAll(response.getBody()));
+        assertEquals("the blocking handler should be run on the callback executor.", CALLBACK_THREAD, threads.get(0));
+    }
+
+    @Test
+    public void testHostIsNotLookedUpOnTheCallingThread() throws Exception {
+
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<String> threads = Collections.synchronizedList(new ArrayList<String>());
+
+        handler.setResolver(new Resolver() {
+
+            @Override
+            public List<AddressRecord> resolve(String host) throws UnknownHostException {
+
+                threads.add(Thread.currentThread().getName());
+
+                try {
+
+                    release.await(5, TimeUnit.SECONDS);
+
+                } catch (InterruptedException e) {
+
+                    Thread.currentThread().interrupt();
+                }
+
+                return new SystemResolver().resolve(host);
+            }
+        });
+
+        ResponseFuture<Response<InputStream>> future = client.getAsync(server.url("/"));
+
+        assertFalse("the request should wait for the host to be looked up.", future.isDone());
+
+        release.countDown();
+
+        assertEquals("the response should be returned.", RESPONSE_BODY,
+                readAll(future.get(5, TimeUnit.SECONDS).getBody()));
+        assertFalse("the host should not be looked up on the calling thread.",
+                threads.contains(Thread.currentThread().getName()));
+    }
+
+    @Test
+    public void testFailingResolverFailsFuture() throws Exception {
+
+        handler.setResolver(new Resolver() {
+
+            @Override
+            public List<AddressRecord> resolve(String host) {
+
+                throw new IllegalStateException("failed");
+            }
+        });
+
+        try {
+
+            client.getAsync(server.url("/")).get(5, TimeUnit.SECONDS);
+
+            fail("the request should fail.");
+
+        } catch (ExecutionException e) {
+
+            assertTrue("the cause should be a transport exception.", e.getCause() instanceof TransportException);
+        }
+    }
+
+    @Test
+    public void testUnconvertibleBodyFailsFuture() throws Exception {
+
+        Request<Object> request = new Request<Object>(server.url("/post"));
+        request.setBody(new Object());
+
+        try {
+
+            client.postAsync(request).get(5, TimeUnit.SECONDS);
+
+            fail("the request should fail.");
+
+        } catch (ExecutionException e) {
+
+            assertTrue("the cause should be the conversion failure.", e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    @Test
+    public void testStreamBodyIsNotReadOnTheCallingThread() throws Exception {
+
+        final List<String> threads = Collections.synchronizedList(new ArrayList<String>());
+
+        client.setCompressionThreshold(1024);
+
+        Request<InputStream> request = new Request<InputStream>(server.url("/post"));
+        // A stream of unknown length has to be read to find out if it is over the compression threshold.
+        request.setBody(new FilterInputStream(new ByteArrayInputStream("test request body".getBytes("UTF-8"))) {
+
+            @Override
+            public int read(byte[] bytes, int offset, int length) throws IOException {
+
+                threads.add(Thread.currentThread().getName());
+
+                return super.read(bytes, offset, length);
+            }
+        });
+
+        readAll(client.postAsync(request).get(5, TimeUnit.SECONDS).getBody());
+
+        assertEquals("the start of the body should be read on the callback executor.", CALLBACK_THREAD, threads.get(0));
+    }
+}
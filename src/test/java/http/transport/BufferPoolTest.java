@@ -0,0 +1,182 @@
+package http.transport;
+
+import org.junit.Test;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Karl Bennett
+ */
+public class BufferPoolTest {
+
+    @Test
+    public void testAcquireDirectBuffer() throws Exception {
+
+        PooledBuffer buffer = new BufferPool().acquire();
+
+        assertTrue("the buffer should be direct.", buffer.getBuffer().isDirect());
+        assertEquals("the buffer should be the default size.", BufferPool.BUFFER_SIZE, buffer.getBuffer().capacity());
+        assertFalse("a new buffer should not be shared.", buffer.isShared());
+    }
+
+    @Test
+    public void testSizeClasses() throws Exception {
+
+        BufferPool pool = new BufferPool();
+
+        assertEquals("a small buffer should be the smallest size.", BufferPool.MIN_SIZE,
+                pool.acquire(1).getBuffer().capacity());
+        assertEquals("an exact size should not be rounded.", 8 * 1024, pool.acquire(8 * 1024).getBuffer().capacity());
+        assertEquals("a size should be rounded up to the next power of two.", 16 * 1024,
+                pool.acquire(8 * 1024 + 1).getBuffer().capacity());
+        assertEquals("the largest size should be pooled.", BufferPool.MAX_SIZE,
+                pool.acquire(BufferPool.MAX_SIZE).getBuffer().capacity());
+        assertEquals("a larger buffer should be exactly the size asked for.", BufferPool.MAX_SIZE + 1,
+                pool.acquire(BufferPool.MAX_SIZE + 1).getBuffer().capacity());
+    }
+
+    @Test
+    public void testReleasedBufferIsReused() throws Exception {
+
+        BufferPool pool = new BufferPool();
+
+        PooledBuffer first = pool.acquire();
+        first.getBuffer().position(100);
+        first.release();
+
+        PooledBuffer second = pool.acquire();
+
+        assertSame("the buffer should be reused.", first.getBuffer(), second.getBuffer());
+        assertEquals("the reused buffer should be cleared.", 0, second.getBuffer().position());
+    }
+
+    @Test
+    public void testRetainedBufferIsNotReused() throws Exception {
+
+        BufferPool pool = new BufferPool();
+
+        PooledBuffer buffer = pool.acquire();
+        buffer.retain();
+
+        assertTrue("the buffer should be shared.", buffer.isShared());
+
+        buffer.release();
+
+        assertFalse("the buffer should not be shared.", buffer.isShared());
+        assertNotSame("the buffer should still be in use.", buffer.getBuffer(), pool.acquire().getBuffer());
+
+        buffer.release();
+
+        assertSame("the buffer should be reused once it is released.", buffer.getBuffer(), pool.acquire().getBuffer());
+    }
+
+    @Test
+    public void testCacheOverflowsIntoArena() throws Exception {
+
+        BufferPool pool = new BufferPool(1, 1, 1);
+
+        PooledBuffer first = pool.acquire();
+        PooledBuffer second = pool.acquire();
+        PooledBuffer third = pool.acquire();
+
+        first.release();
+
+        assertEquals("the first buffer should go into the threads cache.", 0, pool.getPooled());
+
+        second.release();
+        third.release();
+
+        assertEquals("only one buffer should be kept in the arena.", 1, pool.getPooled());
+    }
+
+    @Test
+    public void testBufferIsSharedByOtherThreads() throws Exception {
+
+        final BufferPool pool = new BufferPool(1, 1, 0);
+
+        final PooledBuffer[] acquired = new PooledBuffer[1];
+
+        Thread thread = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+
+                acquired[0] = pool.acquire();
+            }
+        });
+
+        thread.start();
+        thread.join();
+
+        acquired[0].release();
+
+        assertSame("a buffer released on another thread should be reused.", acquired[0].getBuffer(),
+                pool.acquire().getBuffer());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testReleaseTooManyTimes() throws Exception {
+
+        PooledBuffer buffer = new BufferPool().acquire();
+
+        buffer.release();
+        buffer.release();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testRetainAfterRelease() throws Exception {
+
+        PooledBuffer buffer = new BufferPool().acquire();
+
+        buffer.release();
+        buffer.retain();
+    }
+
+    @Test
+    public void testLeakDetection() throws Exception {
+
+        Logger logger = Logger.getLogger(BufferPool.class.getName());
+        Level level = logger.getLevel();
+
+        // The leak is expected so don't clutter the test output with it.
+        logger.setLevel(Level.OFF);
+
+        try {
+
+            BufferPool pool = new BufferPool();
+            pool.setLeakSampling(1);
+
+            pool.acquire().release();
+            pool.acquire();
+
+            for (int i = 0; i < 100 && 0 == pool.getLeakCount(); i++) {
+
+                System.gc();
+                Thread.sleep(10);
+
+                pool.acquire().release();
+            }
+
+            assertEquals("only the buffer that wasn't released should be reported.", 1, pool.getLeakCount());
+
+        } finally {
+
+            logger.setLevel(level);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeLeakSampling() throws Exception {
+
+        new BufferPool().setLeakSampling(-1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoArenas() throws Exception {
+
+        new BufferPool(0, 1, 1);
+    }
+}
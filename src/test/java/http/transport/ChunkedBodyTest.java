@@ -0,0 +1,208 @@
+package http.transport;
+
+import http.Client;
+import http.Response;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Karl Bennett
+ */
+public class ChunkedBodyTest {
+
+    private static final byte[] BODY = new byte[4 * 1024 * 1024];
+
+    static {
+
+        for (int i = 0; i < BODY.length; i++) BODY[i] = (byte) (i % 251);
+    }
+
+
+    private TestServer server;
+    private NioRequestHandler handler;
+    private Client client;
+
+
+    @Before
+    public void setUp() throws Exception {
+
+        server = new TestServer(new TestServer.Responder() {
+
+            @Override
+            public boolean respond(TestServer.ReceivedRequest request, OutputStream output) throws IOException {
+
+                if (request.getRequestLine().startsWith("GET /chunked")) {
+
+                    output.write("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n".getBytes("ISO-8859-1"));
+
+                    for (int i = 0; i < BODY.length; i += 10000) {
+
+                        int length = Math.min(10000, BODY.length - i);
+
+                        output.write((Integer.toHexString(length) + "\r\n").getBytes("ISO-8859-1"));
+                        output.write(BODY, i, length);
+                        output.write("\r\n".getBytes("ISO-8859-1"));
+                    }
+
+                    output.write("0\r\n\r\n".getBytes("ISO-8859-1"));
+
+                } else {
+
+                    output.write(("HTTP/1.1 200 OK\r\nContent-Length: " + BODY.length + "\r\n\r\n")
+                            .getBytes("ISO-8859-1"));
+                    output.write(BODY);
+                }
+
+                output.flush();
+
+                return true;
+            }
+        });
+
+        handler = new NioRequestHandler();
+        client = new Client(handler);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+
+        handler.close();
+        server.close();
+    }
+
+
+    @Test
+    public void testReadChunks() throws Exception {
+
+        Response<InputStream> response = client.get(server.url("/fixed"));
+
+        ChunkedBody body = (ChunkedBody) response.getBody();
+
+        byte[] read = new byte[BODY.length];
+        int length = 0;
+
+        for (BodyChunk chunk; null != (chunk = body.nextChunk()); ) {
+
+            ByteBuffer content = chunk.getContent();
+
+            assertTrue("the content should be held in a direct buffer.", content.isDirect());
+            assertTrue("the content should be read only.", content.isReadOnly());
+
+            int remaining = content.remaining();
+            content.get(read, length, remaining);
+            length += remaining;
+
+            chunk.release();
+        }
+
+        assertEquals("the whole body should be read.", BODY.length, length);
+        assertTrue("the body should be correct.", Arrays.equals(BODY, read));
+    }
+
+    @Test
+    public void testReadChunkedEncodingThroughStreamAndChunks() throws Exception {
+
+        Response<InputStream> response = client.get(server.url("/chunked"));
+
+        InputStream stream = response.getBody();
+
+        byte[] read = new byte[BODY.length];
+        int length = stream.read(read, 0, 1000);
+
+        ChunkedBody body = (ChunkedBody) stream;
+
+        for (BodyChunk chunk; null != (chunk = body.nextChunk()); ) {
+
+            int remaining = chunk.getContent().remaining();
+            chunk.getContent().get(read, length, remaining);
+            length += remaining;
+
+            chunk.release();
+        }
+
+        assertEquals("the whole body should be read.", BODY.length, length);
+        assertTrue("the chunks should carry on from where the stream stopped.", Arrays.equals(BODY, read));
+
+        Response<InputStream> next = client.get(server.url("/fixed"));
+        next.getBody().close();
+
+        assertEquals("the connection should be reused once the body is released.", 1, server.getConnectionCount());
+    }
+
+    @Test
+    public void testUnreleasedChunksApplyBackPressure() throws Exception {
+
+        Response<InputStream> response = client.get(server.url("/fixed"));
+
+        ChunkedBody body = (ChunkedBody) response.getBody();
+
+        List<BodyChunk> held = new ArrayList<BodyChunk>();
+        long length = 0;
+
+        while (ResponseInputStream.HIGH_WATER_MARK > length) {
+
+            BodyChunk chunk = body.nextChunk();
+
+            held.add(chunk);
+            length += chunk.getContent().remaining();
+        }
+
+        Thread.sleep(200);
+
+        int available = response.getBody().available();
+
+        Thread.sleep(200);
+
+        assertEquals("nothing more should be read while the chunks are held.", available,
+                response.getBody().available());
+
+        for (BodyChunk chunk : held) chunk.release();
+
+        for (BodyChunk chunk; null != (chunk = body.nextChunk()); ) {
+
+            length += chunk.getContent().remaining();
+
+            chunk.release();
+        }
+
+        assertEquals("the rest of the body should be read once the chunks are released.", BODY.length, length);
+    }
+
+    @Test
+    public void testReleaseAfterClose() throws Exception {
+
+        Response<InputStream> response = client.get(server.url("/fixed"));
+
+        ChunkedBody body = (ChunkedBody) response.getBody();
+
+        BodyChunk chunk = body.nextChunk();
+
+        body.close();
+
+        chunk.release();
+        chunk.release();
+
+        try {
+
+            body.nextChunk();
+
+            fail("a closed body should not return any more chunks.");
+
+        } catch (IOException e) {
+
+            assertEquals("the error should say the body is closed.", "The response body stream has been closed.",
+                    e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package http.transport;
+
+import http.Client;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static http.util.IO.readAll;
+import static org.junit.Assert.*;
+
+/**
+ * @author Karl Bennett
+ */
+public class ConnectionPoolTest {
+
+    private static final String RESPONSE_BODY = "test response body";
+
+
+    private TestServer server;
+    private NioRequestHandler handler;
+    private Client client;
+
+
+    @Before
+    public void setUp() throws Exception {
+
+        server = new TestServer(TestServer.fixed(200, RESPONSE_BODY));
+        handler = new NioRequestHandler();
+        client = new Client(handler);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+
+        handler.close();
+        server.close();
+    }
+
+
+    @Test
+    public void testConnectionIsReused() throws Exception {
+
+        for (int i = 0; i < 5; i++) {
+
+            assertEquals("the response should be correct.", RESPONSE_BODY, readAll(client.get(server.url("/")).getBody()));
+        }
+
+        assertEquals("only one connection should be opened.", 1, server.getConnectionCount());
+        assertEquals("the connection should be idle.", 1, handler.getIdleConnectionCount());
+        assertFalse("the requests should not ask for the connection to be closed.",
+                "close".equalsIgnoreCase(server.getRequests().get(0).getHeader("Connection")));
+    }
+
+    @Test
+    public void testUnfinishedConnectionIsNotReused() throws Exception {
+
+        TestServer large = new TestServer(new TestServer.Responder() {
+
+            @Override
+            public boolean respond(TestServer.ReceivedRequest request, OutputStream output) throws IOException {
+
+                byte[] body = new byte[ResponseInputStream.HIGH_WATER_MARK * 4];
+
+                output.write(("HTTP/1.1 200 OK\r\nContent-Length: " + body.length + "\r\n\r\n").getBytes("ISO-8859-1"));
+                output.write(body);
+                output.flush();
+
+                return true;
+            }
+        });
+
+        try {
+
+            client.get(large.url("/")).getBody().close();
+            client.get(large.url("/")).getBody().close();
+
+            assertEquals("a new connection should be opened for each abandoned response.", 2,
+                    large.getConnectionCount());
+
+        } finally {
+
+            large.close();
+        }
+    }
+
+    @Test
+    public void testMaxConnectionsPerRoute() throws Exception {
+
+        final AtomicInteger concurrent = new AtomicInteger();
+        final AtomicInteger maxConcurrent = new AtomicInteger();
+
+        final TestServer slow = new TestServer(new TestServer.Responder() {
+
+            private final TestServer.Responder responder = TestServer.fixed(200, RESPONSE_BODY);
+
+            @Override
+            public boolean respond(TestServer.ReceivedRequest request, OutputStream output) throws IOException {
+
+                int current = concurrent.incrementAndGet();
+
+                synchronized (maxConcurrent) {
+
+                    maxConcurrent.set(Math.max(maxConcurrent.get(), current));
+                }
+
+                try {
+
+                    Thread.sleep(20);
+
+                } catch (InterruptedException e) {
+
+                    Thread.currentThread().interrupt();
+                }
+
+                concurrent.decrementAndGet();
+
+                return responder.respond(request, output);
+            }
+        });
+
+        handler.setMaxConnectionsPerRoute(2);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        try {
+
+            List<Future<String>> futures = new ArrayList<Future<String>>();
+
+            for (int i = 0; i < 16; i++) {
+
+                futures.add(executor.submit(new Callable<String>() {
+
+                    @Override
+                    public String call() throws Exception {
+
+                        return readAll(client.get(slow.url("/")).getBody());
+                    }
+                }));
+            }
+
+            for (Future<String> future : futures) {
+
+                assertEquals("every response should be correct.", RESPONSE_BODY, future.get());
+            }
+
+            assertTrue("no more than two connections should be opened.", 2 >= slow.getConnectionCount());
+            assertTrue("no more than two requests should be in flight.", 2 >= maxConcurrent.get());
+
+        } finally {
+
+            executor.shutdownNow();
+            slow.close();
+        }
+    }
+
+    @Test
+    public void testMaxConnectionsEvictsIdleConnection() throws Exception {
+
+        TestServer other = new TestServer(TestServer.fixed(200, RESPONSE_BODY));
+
+        handler.setMaxConnections(1);
+
+        try {
+
+            readAll(client.get(server.url("/")).getBody());
+            readAll(client.get(other.url("/")).getBody());
+
+            assertEquals("the response from the second route should be correct.", RESPONSE_BODY,
+                    readAll(client.get(other.url("/")).getBody()));
+            assertEquals("the idle connection to the second route should be reused.", 1, other.getConnectionCount());
+            assertEquals("only one connection should be open.", 1, handler.getConnectionCount());
+
+        } finally {
+
+            other.close();
+        }
+    }
+
+    @Test
+    public void testIdleConnectionIsEvicted() throws Exception {
+
+        handler.setIdleTimeout(50);
+
+        readAll(client.get(server.url("/")).getBody());
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (0 < handler.getConnectionCount() && System.currentTimeMillis() < deadline) Thread.sleep(10);
+
+        assertEquals("the idle connection should be closed.", 0, handler.getConnectionCount());
+
+        readAll(client.get(server.url("/")).getBody());
+
+        assertEquals("a new connection should be opened.", 2, server.getConnectionCount());
+    }
+
+    @Test
+    public void testClosedConnectionIsReplaced() throws Exception {
+
+        TestServer closing = new TestServer(new TestServer.Responder() {
+
+            private final TestServer.Responder responder = TestServer.fixed(200, RESPONSE_BODY);
+
+            @Override
+            public boolean respond(TestServer.ReceivedRequest request, OutputStream output) throws IOException {
+
+                responder.respond(request, output);
+
+                // Drop the connection without telling the client.
+                return false;
+            }
+        });
+
+        try {
+
+            for (int i = 0; i < 5; i++) {
+
+                assertEquals("the response should be correct.", RESPONSE_BODY,
+                        readAll(client.get(closing.url("/")).getBody()));
+            }
+
+            assertEquals("a new connection should be opened for each request.", 5, closing.getConnectionCount());
+
+        } finally {
+
+            closing.close();
+        }
+    }
+}
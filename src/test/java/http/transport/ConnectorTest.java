@@ -0,0 +1,256 @@
+package http.transport;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static http.util.IO.closeQuietly;
+import static org.junit.Assert.*;
+
+/**
+ * @author Karl Bennett
+ */
+public class ConnectorTest {
+
+    private static InetSocketAddress address(String host, int port) throws IOException {
+
+        return new InetSocketAddress(InetAddress.getByName(host), port);
+    }
+
+    /**
+     * @return a server socket whose accept queue is full, so any further connection to it never completes.
+     */
+    static ServerSocket unresponsive(String host, int port, List<SocketChannel> backlog) throws IOException {
+
+        ServerSocket server = new ServerSocket();
+        server.bind(new InetSocketAddress(host, port), 1);
+
+        for (int i = 0; i < 2; i++) backlog.add(SocketChannel.open(server.getLocalSocketAddress()));
+
+        return server;
+    }
+
+
+    private EventLoop eventLoop;
+    private FailedAddresses failed;
+    private ServerSocket server;
+
+
+    @Before
+    public void setUp() throws Exception {
+
+        eventLoop = new EventLoop("connector-test");
+        failed = new FailedAddresses();
+        server = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+
+        eventLoop.close();
+        server.close();
+    }
+
+
+    private Outcome connect(List<InetSocketAddress> addresses, long attemptDelay) throws Exception {
+
+        return connect(addresses, attemptDelay, null, 0);
+    }
+
+    private Outcome connect(List<InetSocketAddress> addresses, long attemptDelay, HashedWheelTimer timer,
+                            long connectTimeout) throws Exception {
+
+        final Outcome outcome = new Outcome();
+
+        final Connector connector = new Connector(eventLoop, addresses, failed, attemptDelay, timer, connectTimeout,
+                outcome);
+
+        eventLoop.execute(new Runnable() {
+
+            @Override
+            public void run() {
+
+                connector.connect();
+            }
+        });
+
+        assertTrue("the connector should finish.", outcome.done.await(5, TimeUnit.SECONDS));
+
+        return outcome;
+    }
+
+    @Test
+    public void testConnect() throws Exception {
+
+        Outcome outcome = connect(Arrays.asList(address("127.0.0.1", server.getLocalPort())), 100);
+
+        assertNotNull("the socket should be connected.", outcome.channel);
+        assertTrue("the socket should be connected.", outcome.channel.isConnected());
+
+        outcome.channel.close();
+    }
+
+    @Test
+    public void testRefusedAddressIsSkippedAndPenalised() throws Exception {
+
+        InetSocketAddress refused = address("127.0.0.2", server.getLocalPort());
+        InetSocketAddress listening = address("127.0.0.1", server.getLocalPort());
+
+        long start = System.currentTimeMillis();
+
+        Outcome outcome = connect(Arrays.asList(refused, listening), 2000);
+
+        assertTrue("the next address should be tried as soon as the first is refused.",
+                2000 > System.currentTimeMillis() - start);
+        assertEquals("the listening address should be connected to.", listening,
+                outcome.channel.socket().getRemoteSocketAddress());
+        assertTrue("the refused address should be penalised.", failed.isPenalised(refused.getAddress()));
+        assertFalse("the listening address should not be penalised.", failed.isPenalised(listening.getAddress()));
+        assertEquals("the refused address should be tried last.", Arrays.asList(listening, refused),
+                Connector.order(Arrays.asList(refused, listening), failed));
+
+        outcome.channel.close();
+    }
+
+    @Test
+    public void testUnresponsiveAddressIsRaced() throws Exception {
+
+        List<SocketChannel> backlog = new ArrayList<SocketChannel>();
+
+        ServerSocket unresponsive = unresponsive("127.0.0.2", server.getLocalPort(), backlog);
+
+        try {
+
+            InetSocketAddress stalled = address("127.0.0.2", server.getLocalPort());
+            InetSocketAddress listening = address("127.0.0.1", server.getLocalPort());
+
+            long start = System.currentTimeMillis();
+
+            Outcome outcome = connect(Arrays.asList(stalled, listening), 100);
+
+            assertTrue("the next address should be tried once the attempt delay has passed.",
+                    2000 > System.currentTimeMillis() - start);
+            assertEquals("the listening address should be connected to.", listening,
+                    outcome.channel.socket().getRemoteSocketAddress());
+
+            outcome.channel.close();
+
+        } finally {
+
+            for (SocketChannel channel : backlog) closeQuietly(channel);
+
+            unresponsive.close();
+        }
+    }
+
+    @Test
+    public void testConnectTimeout() throws Exception {
+
+        List<SocketChannel> backlog = new ArrayList<SocketChannel>();
+
+        ServerSocket unresponsive = unresponsive("127.0.0.2", server.getLocalPort(), backlog);
+
+        HashedWheelTimer timer = new HashedWheelTimer();
+
+        try {
+
+            InetSocketAddress stalled = address("127.0.0.2", server.getLocalPort());
+
+            long start = System.currentTimeMillis();
+
+            Outcome outcome = connect(Arrays.asList(stalled), 100, timer, 200);
+
+            assertNull("no socket should be connected.", outcome.channel);
+            assertTrue("the connector should time out.", outcome.cause instanceof RequestTimeoutException);
+            assertTrue("the connector should give up once the timeout has passed.",
+                    2000 > System.currentTimeMillis() - start);
+            assertTrue("the address that timed out should be penalised.", failed.isPenalised(stalled.getAddress()));
+
+        } finally {
+
+            timer.close();
+
+            for (SocketChannel channel : backlog) closeQuietly(channel);
+
+            unresponsive.close();
+        }
+    }
+
+    @Test
+    public void testEveryAddressFails() throws Exception {
+
+        int port = server.getLocalPort();
+
+        server.close();
+
+        Outcome outcome = connect(Arrays.asList(address("127.0.0.1", port), address("127.0.0.2", port)), 100);
+
+        assertNull("no socket should be connected.", outcome.channel);
+        assertTrue("the last failure should be reported.", outcome.cause instanceof ConnectException);
+    }
+
+    @Test
+    public void testAddressFamiliesAreInterleaved() throws Exception {
+
+        InetSocketAddress v6a = address("2001:db8::1", 80);
+        InetSocketAddress v6b = address("2001:db8::2", 80);
+        InetSocketAddress v4a = address("192.0.2.1", 80);
+        InetSocketAddress v4b = address("192.0.2.2", 80);
+        InetSocketAddress v4c = address("192.0.2.3", 80);
+
+        assertEquals("the families should alternate starting with the first.", Arrays.asList(v6a, v4a, v6b, v4b, v4c),
+                Connector.order(Arrays.asList(v6a, v6b, v4a, v4b, v4c), failed));
+        assertEquals("the families should alternate starting with the first.", Arrays.asList(v4a, v6a, v4b, v6b, v4c),
+                Connector.order(Arrays.asList(v4a, v4b, v4c, v6a, v6b), failed));
+    }
+
+    @Test
+    public void testPenaltyExpires() throws Exception {
+
+        failed.setPenalty(100);
+        failed.failed(InetAddress.getByName("192.0.2.1"));
+
+        assertTrue("the address should be penalised.", failed.isPenalised(InetAddress.getByName("192.0.2.1")));
+
+        Thread.sleep(150);
+
+        assertFalse("the penalty should expire.", failed.isPenalised(InetAddress.getByName("192.0.2.1")));
+    }
+
+
+    private static class Outcome implements Connector.Listener {
+
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        private volatile SocketChannel channel;
+        private volatile Throwable cause;
+
+        @Override
+        public void connected(SocketChannel channel) {
+
+            this.channel = channel;
+
+            done.countDown();
+        }
+
+        @Override
+        public void failed(Throwable cause) {
+
+            this.cause = cause;
+
+            done.countDown();
+        }
+    }
+}
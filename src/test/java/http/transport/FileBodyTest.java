@@ -0,0 +1,127 @@
+package http.transport;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+import static http.util.IO.readAll;
+import static org.junit.Assert.*;
+
+/**
+ * @author Karl Bennett
+ */
+public class FileBodyTest {
+
+    private static final String CONTENT = "0123456789abcdefghij";
+
+
+    private File file;
+
+
+    @Before
+    public void setUp() throws Exception {
+
+        file = File.createTempFile("body", ".txt");
+
+        FileOutputStream output = new FileOutputStream(file);
+        output.write(CONTENT.getBytes("UTF-8"));
+        output.close();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+
+        file.delete();
+    }
+
+
+    @Test
+    public void testReadFile() throws Exception {
+
+        FileBody body = new FileBody(file);
+
+        assertEquals("the whole file should remain.", CONTENT.length(), body.getRemaining());
+        assertEquals("the whole file should be read.", CONTENT, readAll(body));
+        assertEquals("nothing should remain.", 0, body.getRemaining());
+    }
+
+    @Test
+    public void testReadRegion() throws Exception {
+
+        FileChannel channel = new FileInputStream(file).getChannel();
+
+        FileBody body = new FileBody(channel, 5, 10);
+
+        assertEquals("the skipped bytes should be counted.", 2, body.skip(2));
+        assertEquals("only the region should be read.", "789abcde", readAll(body));
+        assertEquals("the channels position should not be changed.", 0, channel.position());
+    }
+
+    @Test
+    public void testReadFromChannelPosition() throws Exception {
+
+        FileChannel channel = new FileInputStream(file).getChannel();
+        channel.position(15);
+
+        assertEquals("the rest of the channel should be read.", "fghij", readAll(new FileBody(channel)));
+    }
+
+    @Test
+    public void testTransferTo() throws Exception {
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        WritableByteChannel target = Channels.newChannel(output);
+
+        FileBody body = new FileBody(new FileInputStream(file).getChannel(), 10, 10);
+
+        while (0 < body.getRemaining()) body.transferTo(target);
+
+        assertEquals("the region should be transferred.", "abcdefghij", output.toString("UTF-8"));
+    }
+
+    @Test(expected = IOException.class)
+    public void testTransferTruncatedFile() throws Exception {
+
+        FileBody body = new FileBody(new FileInputStream(file).getChannel(), 0, CONTENT.length());
+
+        RandomAccessFile truncate = new RandomAccessFile(file, "rw");
+        truncate.setLength(5);
+        truncate.close();
+
+        WritableByteChannel target = Channels.newChannel(new ByteArrayOutputStream());
+
+        while (0 < body.getRemaining()) body.transferTo(target);
+    }
+
+    @Test
+    public void testCloseClosesChannel() throws Exception {
+
+        FileChannel channel = new FileInputStream(file).getChannel();
+
+        new FileBody(channel).close();
+
+        assertFalse("the channel should be closed.", channel.isOpen());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativePosition() throws Exception {
+
+        new FileBody(new FileInputStream(file).getChannel(), -1, 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeLength() throws Exception {
+
+        new FileBody(new FileInputStream(file).getChannel(), 0, -1);
+    }
+}
@@ -0,0 +1,128 @@
+package http.transport;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Karl Bennett
+ */
+public class GzipBodyTest {
+
+    private static byte[] body(int size) {
+
+        byte[] body = new byte[size];
+
+        Random random = new Random(size);
+
+        for (int i = 0; i < size; i++) body[i] = (byte) ('a' + random.nextInt(8));
+
+        return body;
+    }
+
+    private static byte[] gunzip(byte[] compressed) throws IOException {
+
+        return IOUtils.toByteArray(new GZIPInputStream(new ByteArrayInputStream(compressed)));
+    }
+
+
+    @Test
+    public void testCompress() throws Exception {
+
+        byte[] body = body(100000);
+
+        byte[] compressed = IOUtils.toByteArray(new GzipBody(new ByteArrayInputStream(body)));
+
+        assertTrue("the body should be compressed.", body.length > compressed.length);
+        assertArrayEquals("the body should be decompressed by gzip.", body, gunzip(compressed));
+    }
+
+    @Test
+    public void testEmptyBody() throws Exception {
+
+        byte[] compressed = IOUtils.toByteArray(new GzipBody(new ByteArrayInputStream(new byte[0])));
+
+        assertEquals("an empty body should still be a valid gzip stream.", 0, gunzip(compressed).length);
+    }
+
+    @Test
+    public void testSingleByteReads() throws Exception {
+
+        byte[] body = body(1000);
+
+        InputStream input = new GzipBody(new ByteArrayInputStream(body), 9);
+
+        byte[] compressed = new byte[body.length * 2];
+        int length = 0;
+
+        for (int read; -1 != (read = input.read()); ) compressed[length++] = (byte) read;
+
+        input.close();
+
+        byte[] exact = new byte[length];
+        System.arraycopy(compressed, 0, exact, 0, length);
+
+        assertArrayEquals("the body should be compressed a byte at a time.", body, gunzip(exact));
+    }
+
+    @Test
+    public void testSmallReads() throws Exception {
+
+        byte[] body = body(50000);
+
+        InputStream input = new GzipBody(new ByteArrayInputStream(body));
+
+        byte[] compressed = IOUtils.toByteArray(new SmallReads(input));
+
+        assertArrayEquals("the body should be compressed into small buffers.", body, gunzip(compressed));
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadAfterClose() throws Exception {
+
+        InputStream input = new GzipBody(new ByteArrayInputStream(body(10)));
+
+        input.close();
+
+        input.read();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidLevel() throws Exception {
+
+        new GzipBody(new ByteArrayInputStream(new byte[0]), 10);
+    }
+
+
+    /**
+     * Reads at most three bytes at a time so the header and trailer are split across reads.
+     */
+    private static class SmallReads extends InputStream {
+
+        private final InputStream input;
+
+        private SmallReads(InputStream input) {
+
+            this.input = input;
+        }
+
+        @Override
+        public int read() throws IOException {
+
+            return input.read();
+        }
+
+        @Override
+        public int read(byte[] bytes, int off, int len) throws IOException {
+
+            return input.read(bytes, off, Math.min(3, len));
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package http.transport;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Karl Bennett
+ */
+public class HashedWheelTimerTest {
+
+    private static Runnable countDown(final CountDownLatch latch) {
+
+        return new Runnable() {
+
+            @Override
+            public void run() {
+
+                latch.countDown();
+            }
+        };
+    }
+
+    private static Runnable record(final List<Integer> order, final int id, final CountDownLatch latch) {
+
+        return new Runnable() {
+
+            @Override
+            public void run() {
+
+                order.add(id);
+
+                latch.countDown();
+            }
+        };
+    }
+
+
+    private HashedWheelTimer timer;
+
+
+    @Before
+    public void setUp() throws Exception {
+
+        timer = new HashedWheelTimer();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+
+        timer.close();
+    }
+
+
+    @Test
+    public void testTaskIsRunOnceTheDelayHasPassed() throws Exception {
+
+        CountDownLatch ran = new CountDownLatch(1);
+
+        long start = System.nanoTime();
+
+        HashedWheelTimer.Timeout timeout = timer.schedule(countDown(ran), 50);
+
+        assertTrue("the task should be run.", ran.await(5, TimeUnit.SECONDS));
+        assertTrue("the task should not be run before its delay.",
+                50 <= TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        assertTrue("the timeout should be expired.", timeout.isExpired());
+        assertFalse("an expired timeout can not be cancelled.", timeout.cancel());
+        assertEquals("nothing should be pending.", 0, timer.getPendingCount());
+    }
+
+    @Test
+    public void testCancelledTaskIsNotRun() throws Exception {
+
+        CountDownLatch ran = new CountDownLatch(1);
+
+        HashedWheelTimer.Timeout timeout = timer.schedule(countDown(ran), 50);
+
+        assertEquals("the task should be pending.", 1, timer.getPendingCount());
+        assertTrue("the timeout should be cancelled.", timeout.cancel());
+        assertFalse("a timeout can only be cancelled once.", timeout.cancel());
+        assertTrue("the timeout should be cancelled.", timeout.isCancelled());
+        assertEquals("nothing should be pending.", 0, timer.getPendingCount());
+        assertFalse("the task should not be run.", ran.await(150, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testTasksAreRunInOrderOfDeadline() throws Exception {
+
+        List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+
+        CountDownLatch ran = new CountDownLatch(3);
+
+        timer.schedule(record(order, 3, ran), 150);
+        timer.schedule(record(order, 1, ran), 20);
+        timer.schedule(record(order, 2, ran), 80);
+
+        assertTrue("every task should be run.", ran.await(5, TimeUnit.SECONDS));
+        assertEquals("the tasks should be run in order of their deadlines.", Arrays.asList(1, 2, 3), order);
+    }
+
+    @Test
+    public void testDelayLongerThanTheWheel() throws Exception {
+
+        timer.close();
+        timer = new HashedWheelTimer(1, 3);
+
+        CountDownLatch ran = new CountDownLatch(1);
+
+        long start = System.nanoTime();
+
+        timer.schedule(countDown(ran), 40);
+
+        assertTrue("the task should be run.", ran.await(5, TimeUnit.SECONDS));
+        assertTrue("the task should wait for every round of the wheel.",
+                40 <= TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    @Test
+    public void testTimerResumesAfterIdling() throws Exception {
+
+        CountDownLatch first = new CountDownLatch(1);
+
+        timer.schedule(countDown(first), 10);
+
+        assertTrue("the first task should be run.", first.await(5, TimeUnit.SECONDS));
+
+        // The timer stops ticking while there is nothing to run.
+        Thread.sleep(100);
+
+        CountDownLatch second = new CountDownLatch(1);
+
+        long start = System.nanoTime();
+
+        timer.schedule(countDown(second), 50);
+
+        assertTrue("the second task should be run.", second.await(5, TimeUnit.SECONDS));
+        assertTrue("the idle time should not count towards the delay.",
+                50 <= TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    @Test
+    public void testFailingTaskDoesNotStopTheTimer() throws Exception {
+
+        timer.schedule(new Runnable() {
+
+            @Override
+            public void run() {
+
+                throw new IllegalStateException("failed");
+            }
+        }, 10);
+
+        CountDownLatch ran = new CountDownLatch(1);
+
+        timer.schedule(countDown(ran), 50);
+
+        assertTrue("the later task should still be run.", ran.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testTaskIsRunOnTheEventLoop() throws Exception {
+
+        final EventLoop eventLoop = new EventLoop("timer-test");
+
+        try {
+
+            final CountDownLatch ran = new CountDownLatch(1);
+
+            timer.schedule(eventLoop, new Runnable() {
+
+                @Override
+                public void run() {
+
+                    if (eventLoop.inEventLoop()) ran.countDown();
+                }
+            }, 10);
+
+            assertTrue("the task should be run on the event loop thread.", ran.await(5, TimeUnit.SECONDS));
+
+        } finally {
+
+            eventLoop.close();
+        }
+    }
+
+    @Test(expected = TransportException.class)
+    public void testScheduleAfterClose() throws Exception {
+
+        timer.close();
+
+        timer.schedule(countDown(new CountDownLatch(1)), 10);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidTick() throws Exception {
+
+        new HashedWheelTimer(0, 8);
+    }
+}
@@ -0,0 +1,178 @@
+package http.transport;
+
+import http.header.Header;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * The examples are taken from appendix C of RFC 7541.
+ *
+ * @author Karl Bennett
+ */
+public class HpackTest {
+
+    private static byte[] hex(String hex) {
+
+        hex = hex.replace(" ", "");
+
+        byte[] bytes = new byte[hex.length() / 2];
+
+        for (int i = 0; i < bytes.length; i++) bytes[i] = (byte) Integer.parseInt(hex.substring(i * 2, i * 2 + 2), 16);
+
+        return bytes;
+    }
+
+    private static List<Header<String>> headers(String... namesAndValues) {
+
+        List<Header<String>> headers = new ArrayList<Header<String>>();
+
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+
+            headers.add(new Header<String>(namesAndValues[i], namesAndValues[i + 1]));
+        }
+
+        return headers;
+    }
+
+    private static final List<Header<String>> FIRST_REQUEST = headers(":method", "GET", ":scheme", "http", ":path", "/",
+            ":authority", "www.example.com");
+
+    private static final List<Header<String>> SECOND_REQUEST = headers(":method", "GET", ":scheme", "http", ":path",
+            "/", ":authority", "www.example.com", "cache-control", "no-cache");
+
+
+    @Test
+    public void testIntegerEncoding() throws Exception {
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        HpackEncoder.writeInteger(output, 0x00, 5, 10);
+        HpackEncoder.writeInteger(output, 0x00, 5, 1337);
+        HpackEncoder.writeInteger(output, 0x00, 8, 42);
+
+        assertArrayEquals("the integers should be encoded with their prefixes.", hex("0a 1f9a0a 2a"),
+                output.toByteArray());
+    }
+
+    @Test
+    public void testHuffmanEncoding() throws Exception {
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        Huffman.encode("www.example.com", output);
+
+        assertArrayEquals("the string should be Huffman encoded.", hex("f1e3 c2e5 f23a 6ba0 ab90 f4ff"),
+                output.toByteArray());
+        assertEquals("the encoded length should be correct.", 12, Huffman.encodedLength("www.example.com"));
+    }
+
+    @Test
+    public void testHuffmanRoundTrip() throws Exception {
+
+        StringBuilder every = new StringBuilder();
+
+        for (char c = 0; c < 256; c++) every.append(c);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        Huffman.encode(every.toString(), output);
+
+        byte[] encoded = output.toByteArray();
+
+        assertEquals("every byte should survive encoding.", every.toString(),
+                Huffman.decode(encoded, 0, encoded.length));
+    }
+
+    @Test(expected = TransportException.class)
+    public void testHuffmanBadPadding() throws Exception {
+
+        // The first byte of "www.example.com" followed by a padding byte that isn't all ones.
+        Huffman.decode(hex("f1 00"), 0, 2);
+    }
+
+    @Test
+    public void testEncodeRequests() throws Exception {
+
+        HpackEncoder encoder = new HpackEncoder();
+
+        assertArrayEquals("the first request should be encoded.", hex("8286 8441 8cf1 e3c2 e5f2 3a6b a0ab 90f4 ff"),
+                encoder.encode(FIRST_REQUEST));
+        assertArrayEquals("the second request should use the dynamic table.", hex("8286 84be 5886 a8eb 1064 9cbf"),
+                encoder.encode(SECOND_REQUEST));
+    }
+
+    @Test
+    public void testDecodeRequestsWithoutHuffman() throws Exception {
+
+        HpackDecoder decoder = new HpackDecoder();
+
+        assertEquals("the first request should be decoded.", FIRST_REQUEST,
+                decoder.decode(hex("8286 8441 0f77 7777 2e65 7861 6d70 6c65 2e63 6f6d")));
+        assertEquals("the second request should be decoded from the dynamic table.", SECOND_REQUEST,
+                decoder.decode(hex("8286 84be 5808 6e6f 2d63 6163 6865")));
+    }
+
+    @Test
+    public void testDecodeResponsesWithEviction() throws Exception {
+
+        HpackDecoder decoder = new HpackDecoder(256);
+
+        assertEquals("the first response should be decoded.", headers(":status", "302", "cache-control", "private",
+                "date", "Mon, 21 Oct 2013 20:13:21 GMT", "location", "https://www.example.com"),
+                decoder.decode(hex("4882 6402 5885 aec3 771a 4b61 96d0 7abe 9410 54d4 44a8 2005 9504 0b81 66e0 82a6 " +
+                        "2d1b ff6e 919d 29ad 1718 63c7 8f0b 97c8 e9ae 82ae 43d3")));
+
+        assertEquals("the second response should be decoded after an eviction.", headers(":status", "307",
+                "cache-control", "private", "date", "Mon, 21 Oct 2013 20:13:21 GMT", "location",
+                "https://www.example.com"), decoder.decode(hex("4883 640e ffc1 c0bf")));
+
+        assertEquals("the third response should be decoded after more evictions.", headers(":status", "200",
+                "cache-control", "private", "date", "Mon, 21 Oct 2013 20:13:22 GMT", "location",
+                "https://www.example.com", "content-encoding", "gzip", "set-cookie",
+                "foo=ASDJKHQKBZXOQWEOPIUAXQWEOIU; max-age=3600; version=1"),
+                decoder.decode(hex("88c1 6196 d07a be94 1054 d444 a820 0595 040b 8166 e084 a62d 1bff c05a 839b d9ab " +
+                        "77ad 94e7 821d d7f2 e6c7 b335 dfdf cd5b 3960 d5af 2708 7f36 72c1 ab27 0fb5 291f 9587 3160 " +
+                        "65c0 03ed 4ee5 b106 3d50 07")));
+    }
+
+    @Test
+    public void testTableSizeUpdate() throws Exception {
+
+        HpackEncoder encoder = new HpackEncoder();
+        HpackDecoder decoder = new HpackDecoder();
+
+        decoder.decode(encoder.encode(FIRST_REQUEST));
+        decoder.decode(encoder.encode(FIRST_REQUEST));
+
+        encoder.setMaxTableSize(0);
+
+        byte[] block = encoder.encode(FIRST_REQUEST);
+
+        assertEquals("the size update should come first.", 0x20, block[0]);
+        assertEquals("the headers should still decode.", FIRST_REQUEST, decoder.decode(block));
+    }
+
+    @Test
+    public void testSensitiveHeadersAreNeverIndexed() throws Exception {
+
+        HpackEncoder encoder = new HpackEncoder();
+
+        byte[] first = encoder.encode(headers("authorization", "secret"));
+        byte[] second = encoder.encode(headers("authorization", "secret"));
+
+        assertEquals("the header should be never indexed.", 0x10, first[0] & 0xF0);
+        assertTrue("the header should not be added to the table.", Arrays.equals(first, second));
+    }
+
+    @Test(expected = TransportException.class)
+    public void testIndexOutOfRange() throws Exception {
+
+        new HpackDecoder().decode(hex("be"));
+    }
+}
@@ -0,0 +1,326 @@
+package http.transport;
+
+import http.Client;
+import http.Request;
+import http.Response;
+import http.ResponseFuture;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static http.transport.Http2.SETTINGS_INITIAL_WINDOW_SIZE;
+import static http.transport.Http2TestServer.ReceivedRequest;
+import static http.transport.Http2TestServer.Reply;
+import static http.transport.Http2TestServer.Responder;
+import static http.transport.Http2TestServer.path;
+import static http.util.IO.readAll;
+import static org.junit.Assert.*;
+
+/**
+ * @author Karl Bennett
+ */
+public class Http2Test {
+
+    private static Responder delayed(final long millis) {
+
+        return new Responder() {
+
+            @Override
+            public Reply respond(ReceivedRequest request) throws Exception {
+
+                Thread.sleep(millis);
+
+                return path().respond(request);
+            }
+        };
+    }
+
+    private static void await(Http2TestServer server, int requests) throws InterruptedException {
+
+        for (int i = 0; i < 500 && requests > server.getRequests().size(); i++) Thread.sleep(10);
+    }
+
+
+    private NioRequestHandler handler;
+    private Client client;
+
+
+    @Before
+    public void setUp() throws Exception {
+
+        handler = new NioRequestHandler();
+        handler.setHttpVersion(HttpVersion.HTTP_2);
+
+        client = new Client(handler);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+
+        handler.close();
+    }
+
+
+    @Test
+    public void testGet() throws Exception {
+
+        Http2TestServer server = new Http2TestServer(path());
+
+        try {
+
+            Response<InputStream> response = client.get(server.url("/test"));
+
+            assertEquals("the status should be returned.", 200, response.getStatus());
+            assertEquals("the body should be returned.", "/test", readAll(response.getBody()));
+            assertNotNull("the header names should be capitalised.", response.getHeaders("Content-Type"));
+
+            ReceivedRequest request = server.getRequests().get(0);
+
+            assertEquals("the method should be sent.", "GET", request.getHeader(":method"));
+            assertEquals("the scheme should be sent.", "http", request.getHeader(":scheme"));
+            assertEquals("the authority should be sent.", server.url("").substring("http://".length()),
+                    request.getHeader(":authority"));
+
+        } finally {
+
+            server.close();
+        }
+    }
+
+    @Test
+    public void testPostIsFlowControlled() throws Exception {
+
+        Http2TestServer server = new Http2TestServer(new Responder() {
+
+            @Override
+            public Reply respond(ReceivedRequest request) throws Exception {
+
+                return new Reply(201, request.getBody());
+            }
+        }, Collections.singletonMap(SETTINGS_INITIAL_WINDOW_SIZE, 1024));
+
+        try {
+
+            StringBuilder body = new StringBuilder();
+
+            for (int i = 0; i < 10000; i++) body.append("0123456789");
+
+            Request<String> request = new Request<String>(server.url("/post"));
+            request.setBody(body.toString());
+
+            Response<InputStream> response = client.post(request);
+
+            assertEquals("the status should be returned.", 201, response.getStatus());
+            assertEquals("the body should be sent within the servers small window.", body.toString(),
+                    readAll(response.getBody()));
+
+        } finally {
+
+            server.close();
+        }
+    }
+
+    @Test
+    public void testRequestsAreMultiplexed() throws Exception {
+
+        Http2TestServer server = new Http2TestServer(delayed(50));
+
+        try {
+
+            List<ResponseFuture<Response<InputStream>>> futures = new ArrayList<ResponseFuture<Response<InputStream>>>();
+
+            for (int i = 0; i < 50; i++) futures.add(client.getAsync(server.url("/" + i)));
+
+            for (int i = 0; i < 50; i++) {
+
+                assertEquals("every response should be matched to its request.", "/" + i,
+                        readAll(futures.get(i).get(5, TimeUnit.SECONDS).getBody()));
+            }
+
+            assertEquals("every request should be sent on one connection.", 1, server.getConnectionCount());
+            assertTrue("the requests should be answered concurrently.", 1 < server.getMaxOpenStreams());
+
+        } finally {
+
+            server.close();
+        }
+    }
+
+    @Test
+    public void testMaxConcurrentStreams() throws Exception {
+
+        handler.setMaxConcurrentStreams(3);
+
+        Http2TestServer server = new Http2TestServer(delayed(20));
+
+        try {
+
+            List<ResponseFuture<Response<InputStream>>> futures = new ArrayList<ResponseFuture<Response<InputStream>>>();
+
+            for (int i = 0; i < 20; i++) futures.add(client.getAsync(server.url("/" + i)));
+
+            for (int i = 0; i < 20; i++) {
+
+                assertEquals("every request should be answered.", "/" + i,
+                        readAll(futures.get(i).get(5, TimeUnit.SECONDS).getBody()));
+            }
+
+            assertTrue("no more than the maximum streams should be open at once.", 3 >= server.getMaxOpenStreams());
+
+        } finally {
+
+            server.close();
+        }
+    }
+
+    @Test
+    public void testMostUrgentStreamIsStartedFirst() throws Exception {
+
+        handler.setMaxConcurrentStreams(1);
+
+        final CountDownLatch release = new CountDownLatch(1);
+
+        Http2TestServer server = new Http2TestServer(new Responder() {
+
+            @Override
+            public Reply respond(ReceivedRequest request) throws Exception {
+
+                if ("/slow".equals(request.getPath())) release.await(5, TimeUnit.SECONDS);
+
+                return path().respond(request);
+            }
+        });
+
+        try {
+
+            ResponseFuture<Response<InputStream>> slow = client.getAsync(server.url("/slow"));
+
+            await(server, 1);
+
+            Request low = new Request(server.url("/low"));
+            low.addHeader("Priority", "u=7");
+
+            Request high = new Request(server.url("/high"));
+            high.addHeader("Priority", "u=0");
+
+            ResponseFuture<Response<InputStream>> lowFuture = client.getAsync(low);
+            ResponseFuture<Response<InputStream>> highFuture = client.getAsync(high);
+
+            release.countDown();
+
+            readAll(slow.get(5, TimeUnit.SECONDS).getBody());
+            readAll(lowFuture.get(5, TimeUnit.SECONDS).getBody());
+            readAll(highFuture.get(5, TimeUnit.SECONDS).getBody());
+
+            List<ReceivedRequest> requests = server.getRequests();
+
+            assertEquals("the most urgent request should be started first.", "/high", requests.get(1).getPath());
+            assertEquals("the least urgent request should be started last.", "/low", requests.get(2).getPath());
+
+        } finally {
+
+            server.close();
+        }
+    }
+
+    @Test
+    public void testUnreadBodyIsFlowControlled() throws Exception {
+
+        final byte[] large = new byte[4 * 1024 * 1024];
+
+        Http2TestServer server = new Http2TestServer(new Responder() {
+
+            @Override
+            public Reply respond(ReceivedRequest request) throws Exception {
+
+                return new Reply(200, large);
+            }
+        });
+
+        try {
+
+            Response<InputStream> response = client.get(server.url("/large"));
+
+            Thread.sleep(500);
+
+            assertTrue("the server should stop sending once the body stops being read.",
+                    1024 * 1024 > server.getDataSent());
+
+            InputStream body = response.getBody();
+
+            long read = 0;
+            byte[] buffer = new byte[8192];
+
+            for (int length; -1 != (length = body.read(buffer)); ) read += length;
+
+            assertEquals("the whole body should be read once it is drained.", large.length, read);
+
+        } finally {
+
+            server.close();
+        }
+    }
+
+    @Test
+    public void testCancelResetsOnlyTheStream() throws Exception {
+
+        final CountDownLatch release = new CountDownLatch(1);
+
+        Http2TestServer server = new Http2TestServer(new Responder() {
+
+            @Override
+            public Reply respond(ReceivedRequest request) throws Exception {
+
+                if ("/slow".equals(request.getPath())) release.await(5, TimeUnit.SECONDS);
+
+                return path().respond(request);
+            }
+        });
+
+        try {
+
+            ResponseFuture<Response<InputStream>> slow = client.getAsync(server.url("/slow"));
+
+            await(server, 1);
+
+            assertTrue("the future should be cancelled.", slow.cancel(true));
+
+            for (int i = 0; i < 500 && server.getResets().isEmpty(); i++) Thread.sleep(10);
+
+            assertTrue("the stream should be reset.", server.getResets().contains(server.getRequests().get(0)
+                    .getStreamId()));
+
+            release.countDown();
+
+            assertEquals("the connection should still be usable.", "/after",
+                    readAll(client.get(server.url("/after")).getBody()));
+            assertEquals("the connection should be kept.", 1, server.getConnectionCount());
+
+        } finally {
+
+            server.close();
+        }
+    }
+
+    @Test
+    public void testHttp11IsTheDefault() throws Exception {
+
+        NioRequestHandler defaults = new NioRequestHandler();
+
+        try {
+
+            assertEquals("HTTP/1.1 should be the default.", HttpVersion.HTTP_1_1, defaults.getHttpVersion());
+
+        } finally {
+
+            defaults.close();
+        }
+    }
+}
@@ -0,0 +1,630 @@
+package http.transport;
+
+import http.header.Header;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLServerSocket;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static http.transport.Http2.*;
+
+/**
+ * A small blocking {@code HTTP/2} server that speaks cleartext {@code HTTP/2} with prior knowledge, or {@code HTTP/2}
+ * over {@code TLS} offering a single protocol through {@code ALPN} on JVMs that support it, see
+ * {@link #isAlpnSupported()}. Every connection has a thread that reads its frames and every request is answered on a
+ * thread of its own, so requests on the same connection really are answered concurrently. The server honours the
+ * clients flow control windows.
+ *
+ * @author Karl Bennett
+ */
+public class Http2TestServer implements Closeable {
+
+    /**
+     * A request received by the {@code Http2TestServer}.
+     */
+    public static class ReceivedRequest {
+
+        private final int streamId;
+        private final Map<String, String> headers;
+        private final byte[] body;
+
+        public ReceivedRequest(int streamId, Map<String, String> headers, byte[] body) {
+
+            this.streamId = streamId;
+            this.headers = headers;
+            this.body = body;
+        }
+
+        public int getStreamId() {
+
+            return streamId;
+        }
+
+        public String getHeader(String name) {
+
+            return headers.get(name);
+        }
+
+        public String getPath() {
+
+            return headers.get(":path");
+        }
+
+        public byte[] getBody() {
+
+            return body;
+        }
+    }
+
+    /**
+     * The response to a request.
+     */
+    public static class Reply {
+
+        private final int status;
+        private final Map<String, String> headers;
+        private final byte[] body;
+
+        public Reply(int status, byte[] body) {
+
+            this.status = status;
+            this.headers = new HashMap<String, String>();
+            this.body = body;
+        }
+
+        public Reply header(String name, String value) {
+
+            headers.put(name, value);
+
+            return this;
+        }
+    }
+
+    /**
+     * Implement this interface to produce the response for each request.
+     */
+    public static interface Responder {
+
+        Reply respond(ReceivedRequest request) throws Exception;
+    }
+
+    /**
+     * @return true if the JVM can agree to an application protocol through {@code ALPN}, an {@code https} server can
+     *         only speak {@code HTTP/2} when it can.
+     */
+    public static boolean isAlpnSupported() {
+
+        return null != TlsConfig.invoke(SSLParameters.class, new SSLParameters(), "getApplicationProtocols",
+                new Class<?>[0]);
+    }
+
+    /**
+     * A {@link Responder} that answers every request with its path.
+     */
+    public static Responder path() {
+
+        return new Responder() {
+
+            @Override
+            public Reply respond(ReceivedRequest request) throws Exception {
+
+                return new Reply(200, request.getPath().getBytes("UTF-8")).header("content-type", "text/plain");
+            }
+        };
+    }
+
+
+    private final ServerSocket serverSocket;
+    private final Responder responder;
+    private final Map<Integer, Integer> settings;
+    private final List<ReceivedRequest> requests;
+    private final Set<Integer> resets;
+    private final List<Socket> sockets;
+    private final AtomicInteger connections;
+    private final AtomicInteger open;
+    private final AtomicInteger maxOpen;
+    private final AtomicLong dataSent;
+
+    private volatile boolean closed;
+
+
+    public Http2TestServer(Responder responder) throws IOException {
+
+        this(responder, Collections.<Integer, Integer>emptyMap());
+    }
+
+    /**
+     * @param responder the responder for every request.
+     * @param settings  the settings the server sends when a connection is opened.
+     */
+    public Http2TestServer(Responder responder, Map<Integer, Integer> settings) throws IOException {
+
+        this(responder, settings, null, null);
+    }
+
+    /**
+     * @param responder           the responder for every request.
+     * @param sslContext          the context of an {@code https} server.
+     * @param applicationProtocol the only protocol the server agrees to through {@code ALPN}.
+     */
+    public Http2TestServer(Responder responder, SSLContext sslContext, String applicationProtocol)
+            throws IOException {
+
+        this(responder, Collections.<Integer, Integer>emptyMap(), sslContext, applicationProtocol);
+    }
+
+    private Http2TestServer(Responder responder, Map<Integer, Integer> settings, SSLContext sslContext,
+                            String applicationProtocol) throws IOException {
+
+        InetAddress address = InetAddress.getByName("127.0.0.1");
+
+        if (null == sslContext) {
+
+            this.serverSocket = new ServerSocket(0, 50, address);
+
+        } else {
+
+            SSLServerSocket secure = (SSLServerSocket) sslContext.getServerSocketFactory().createServerSocket(0, 50,
+                    address);
+
+            SSLParameters parameters = secure.getSSLParameters();
+            TlsConfig.invoke(SSLParameters.class, parameters, "setApplicationProtocols", new Class<?>[]{String[].class},
+                    (Object) new String[]{applicationProtocol});
+            secure.setSSLParameters(parameters);
+
+            this.serverSocket = secure;
+        }
+
+        this.responder = responder;
+        this.settings = settings;
+        this.requests = Collections.synchronizedList(new ArrayList<ReceivedRequest>());
+        this.resets = Collections.synchronizedSet(new HashSet<Integer>());
+        this.sockets = Collections.synchronizedList(new ArrayList<Socket>());
+        this.connections = new AtomicInteger();
+        this.open = new AtomicInteger();
+        this.maxOpen = new AtomicInteger();
+        this.dataSent = new AtomicLong();
+
+        Thread acceptor = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+
+                accept();
+            }
+        }, "test-h2-server-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+
+    public String url(String path) {
+
+        String scheme = serverSocket instanceof SSLServerSocket ? "https" : "http";
+
+        return scheme + "://127.0.0.1:" + serverSocket.getLocalPort() + path;
+    }
+
+    public List<ReceivedRequest> getRequests() {
+
+        synchronized (requests) {
+
+            return new ArrayList<ReceivedRequest>(requests);
+        }
+    }
+
+    /**
+     * @return the number of connections that have been accepted.
+     */
+    public int getConnectionCount() {
+
+        return connections.get();
+    }
+
+    /**
+     * @return the most requests that have been waiting for their responses to finish at the same time.
+     */
+    public int getMaxOpenStreams() {
+
+        return maxOpen.get();
+    }
+
+    /**
+     * @return the number of response body bytes that have been sent.
+     */
+    public long getDataSent() {
+
+        return dataSent.get();
+    }
+
+    /**
+     * @return the streams that the client has reset.
+     */
+    public Set<Integer> getResets() {
+
+        synchronized (resets) {
+
+            return new HashSet<Integer>(resets);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+
+        closed = true;
+
+        serverSocket.close();
+
+        synchronized (sockets) {
+
+            for (Socket socket : sockets) socket.close();
+        }
+    }
+
+
+    private void accept() {
+
+        while (!closed) {
+
+            try {
+
+                final Socket socket = serverSocket.accept();
+
+                connections.incrementAndGet();
+                sockets.add(socket);
+
+                Thread thread = new Thread(new Runnable() {
+
+                    @Override
+                    public void run() {
+
+                        new ServerConnection(socket).serve();
+                    }
+                }, "test-h2-server-connection");
+                thread.setDaemon(true);
+                thread.start();
+
+            } catch (IOException e) {
+
+                return;
+            }
+        }
+    }
+
+
+    /**
+     * The server side of a single connection.
+     */
+    private class ServerConnection {
+
+        private final Socket socket;
+        private final HpackEncoder encoder;
+        private final HpackDecoder decoder;
+        private final Map<Integer, Map<String, String>> headers;
+        private final Map<Integer, ByteArrayOutputStream> bodies;
+        private final Map<Integer, long[]> windows;
+
+        private DataInputStream input;
+        private OutputStream output;
+        private long connectionWindow;
+        private int initialWindow;
+
+        private ByteArrayOutputStream headerBlock;
+        private int headerStreamId;
+        private boolean headerEndStream;
+
+        private ServerConnection(Socket socket) {
+
+            this.socket = socket;
+            this.encoder = new HpackEncoder();
+            this.decoder = new HpackDecoder();
+            this.headers = new HashMap<Integer, Map<String, String>>();
+            this.bodies = new HashMap<Integer, ByteArrayOutputStream>();
+            this.windows = new HashMap<Integer, long[]>();
+            this.connectionWindow = DEFAULT_WINDOW_SIZE;
+            this.initialWindow = DEFAULT_WINDOW_SIZE;
+        }
+
+        private void serve() {
+
+            try {
+
+                input = new DataInputStream(socket.getInputStream());
+                output = new BufferedOutputStream(socket.getOutputStream());
+
+                byte[] preface = new byte[PREFACE.length];
+                input.readFully(preface);
+
+                if (!Arrays.equals(PREFACE, preface)) return;
+
+                ByteBuffer payload = ByteBuffer.allocate(6 * settings.size());
+
+                for (Map.Entry<Integer, Integer> setting : settings.entrySet()) {
+
+                    payload.putShort(setting.getKey().shortValue()).putInt(setting.getValue());
+                }
+
+                writeFrame(SETTINGS, 0, 0, payload.array());
+
+                while (true) readFrame();
+
+            } catch (IOException e) {
+
+                // The client went away.
+
+            } finally {
+
+                try {
+
+                    socket.close();
+
+                } catch (IOException e) {
+
+                    // Ignore.
+                }
+            }
+        }
+
+        private void readFrame() throws IOException {
+
+            int length = input.readUnsignedShort() << 8 | input.readUnsignedByte();
+            int type = input.readUnsignedByte();
+            int flags = input.readUnsignedByte();
+            int streamId = input.readInt() & Integer.MAX_VALUE;
+
+            byte[] bytes = new byte[length];
+            input.readFully(bytes);
+
+            ByteBuffer payload = ByteBuffer.wrap(bytes);
+
+            switch (type) {
+
+                case SETTINGS:
+                    if (0 == (flags & FLAG_ACK)) onSettings(payload);
+                    break;
+
+                case WINDOW_UPDATE:
+                    onWindowUpdate(streamId, payload.getInt());
+                    break;
+
+                case PING:
+                    if (0 == (flags & FLAG_ACK)) writeFrame(PING, FLAG_ACK, 0, bytes);
+                    break;
+
+                case HEADERS:
+                    if (0 != (flags & FLAG_PRIORITY)) payload.position(5);
+                    headerBlock = new ByteArrayOutputStream();
+                    headerStreamId = streamId;
+                    headerEndStream = 0 != (flags & FLAG_END_STREAM);
+                    onContinuation(flags, payload);
+                    break;
+
+                case CONTINUATION:
+                    onContinuation(flags, payload);
+                    break;
+
+                case DATA:
+                    onData(flags, streamId, bytes);
+                    break;
+
+                case RST_STREAM:
+                    resets.add(streamId);
+                    break;
+
+                case GOAWAY:
+                    throw new IOException("The client went away.");
+
+                default:
+                    break;
+            }
+        }
+
+        private void onSettings(ByteBuffer payload) throws IOException {
+
+            while (payload.hasRemaining()) {
+
+                int id = payload.getShort();
+                int value = payload.getInt();
+
+                if (SETTINGS_INITIAL_WINDOW_SIZE == id) {
+
+                    synchronized (this) {
+
+                        for (long[] window : windows.values()) window[0] += value - initialWindow;
+
+                        initialWindow = value;
+
+                        notifyAll();
+                    }
+                }
+            }
+
+            writeFrame(SETTINGS, FLAG_ACK, 0, new byte[0]);
+        }
+
+        private synchronized void onWindowUpdate(int streamId, int increment) {
+
+            if (0 == streamId) connectionWindow += increment;
+            else if (windows.containsKey(streamId)) windows.get(streamId)[0] += increment;
+
+            notifyAll();
+        }
+
+        private void onContinuation(int flags, ByteBuffer payload) throws IOException {
+
+            headerBlock.write(payload.array(), payload.position(), payload.remaining());
+
+            if (0 == (flags & FLAG_END_HEADERS)) return;
+
+            Map<String, String> fields = new HashMap<String, String>();
+
+            for (Header<String> header : decoder.decode(headerBlock.toByteArray())) {
+
+                fields.put(header.getName(), header.getValue());
+            }
+
+            headerBlock = null;
+
+            synchronized (this) {
+
+                windows.put(headerStreamId, new long[]{initialWindow});
+            }
+
+            headers.put(headerStreamId, fields);
+            bodies.put(headerStreamId, new ByteArrayOutputStream());
+
+            if (headerEndStream) dispatch(headerStreamId);
+        }
+
+        private void onData(int flags, int streamId, byte[] bytes) throws IOException {
+
+            if (0 < bytes.length) {
+
+                bodies.get(streamId).write(bytes);
+
+                writeWindowUpdate(0, bytes.length);
+                writeWindowUpdate(streamId, bytes.length);
+            }
+
+            if (0 != (flags & FLAG_END_STREAM)) dispatch(streamId);
+        }
+
+        private void dispatch(final int streamId) {
+
+            final ReceivedRequest request = new ReceivedRequest(streamId, headers.remove(streamId),
+                    bodies.remove(streamId).toByteArray());
+
+            requests.add(request);
+
+            int opened = open.incrementAndGet();
+
+            while (true) {
+
+                int max = maxOpen.get();
+
+                if (opened <= max || maxOpen.compareAndSet(max, opened)) break;
+            }
+
+            Thread thread = new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+
+                    try {
+
+                        respond(request, responder.respond(request));
+
+                    } catch (Exception e) {
+
+                        // The client went away.
+                        open.decrementAndGet();
+                    }
+                }
+            }, "test-h2-server-stream");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        private void respond(ReceivedRequest request, Reply reply) throws IOException, InterruptedException {
+
+            int streamId = request.getStreamId();
+
+            List<Header<String>> fields = new ArrayList<Header<String>>();
+            fields.add(new Header<String>(":status", String.valueOf(reply.status)));
+
+            for (Map.Entry<String, String> header : reply.headers.entrySet()) {
+
+                fields.add(new Header<String>(header.getKey(), header.getValue()));
+            }
+
+            boolean empty = 0 == reply.body.length;
+
+            // The encoder and the frames it produces have to stay in the same order.
+            synchronized (this) {
+
+                // The stream is finished as far as the client can tell once the frame that ends it has been written.
+                if (empty) open.decrementAndGet();
+
+                writeFrame(HEADERS, FLAG_END_HEADERS | (empty ? FLAG_END_STREAM : 0), streamId,
+                        encoder.encode(fields));
+            }
+
+            int offset = 0;
+
+            while (offset < reply.body.length) {
+
+                int length;
+
+                synchronized (this) {
+
+                    long[] window = windows.get(streamId);
+
+                    while (0 >= connectionWindow || 0 >= window[0]) {
+
+                        if (resets.contains(streamId)) {
+
+                            open.decrementAndGet();
+
+                            return;
+                        }
+
+                        wait(100);
+                    }
+
+                    length = (int) Math.min(Math.min(connectionWindow, window[0]),
+                            Math.min(DEFAULT_MAX_FRAME_SIZE, reply.body.length - offset));
+
+                    connectionWindow -= length;
+                    window[0] -= length;
+
+                    boolean last = offset + length == reply.body.length;
+
+                    if (last) open.decrementAndGet();
+
+                    writeFrame(DATA, last ? FLAG_END_STREAM : 0, streamId,
+                            Arrays.copyOfRange(reply.body, offset, offset + length));
+                }
+
+                offset += length;
+
+                dataSent.addAndGet(length);
+            }
+        }
+
+        private void writeWindowUpdate(int streamId, int increment) throws IOException {
+
+            writeFrame(WINDOW_UPDATE, 0, streamId, ByteBuffer.allocate(4).putInt(increment).array());
+        }
+
+        private synchronized void writeFrame(int type, int flags, int streamId, byte[] payload) throws IOException {
+
+            ByteBuffer header = ByteBuffer.allocate(FRAME_HEADER_LENGTH);
+
+            writeFrameHeader(header, payload.length, type, flags, streamId);
+
+            output.write(header.array());
+            output.write(payload);
+            output.flush();
+        }
+    }
+}
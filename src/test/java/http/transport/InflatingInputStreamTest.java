@@ -0,0 +1,193 @@
+package http.transport;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Karl Bennett
+ */
+public class InflatingInputStreamTest {
+
+    private static byte[] body(int size) {
+
+        byte[] body = new byte[size];
+
+        Random random = new Random(size);
+
+        // Repeat a small alphabet so the body actually compresses.
+        for (int i = 0; i < size; i++) body[i] = (byte) ('a' + random.nextInt(8));
+
+        return body;
+    }
+
+    private static byte[] gzip(byte[] body) throws IOException {
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(bytes);
+        gzip.write(body);
+        gzip.close();
+
+        return bytes.toByteArray();
+    }
+
+    private static byte[] deflate(byte[] body, boolean raw) throws IOException {
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, raw);
+        DeflaterOutputStream deflate = new DeflaterOutputStream(bytes, deflater);
+        deflate.write(body);
+        deflate.close();
+        deflater.end();
+
+        return bytes.toByteArray();
+    }
+
+    private static byte[] inflate(byte[] encoded, boolean gzip) throws IOException {
+
+        InputStream input = new InflatingInputStream(new ByteArrayInputStream(encoded), gzip);
+
+        try {
+
+            return IOUtils.toByteArray(input);
+
+        } finally {
+
+            input.close();
+        }
+    }
+
+
+    @Test
+    public void testGzip() throws Exception {
+
+        byte[] body = body(100000);
+
+        assertArrayEquals("the gzip body should be inflated.", body, inflate(gzip(body), true));
+    }
+
+    @Test
+    public void testGzipWithSeveralMembers() throws Exception {
+
+        byte[] first = body(1000);
+        byte[] second = body(2000);
+
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        encoded.write(gzip(first));
+        encoded.write(gzip(second));
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.write(first);
+        expected.write(second);
+
+        assertArrayEquals("every member should be inflated.", expected.toByteArray(),
+                inflate(encoded.toByteArray(), true));
+    }
+
+    @Test
+    public void testZlibDeflate() throws Exception {
+
+        byte[] body = body(50000);
+
+        assertArrayEquals("the zlib body should be inflated.", body, inflate(deflate(body, false), false));
+    }
+
+    @Test
+    public void testRawDeflate() throws Exception {
+
+        byte[] body = body(50000);
+
+        assertArrayEquals("the raw deflate body should be inflated.", body, inflate(deflate(body, true), false));
+    }
+
+    @Test
+    public void testEmptyBody() throws Exception {
+
+        assertEquals("an empty body should stay empty.", 0, inflate(new byte[0], true).length);
+    }
+
+    @Test
+    public void testSingleByteReads() throws Exception {
+
+        byte[] body = body(100);
+
+        InputStream input = new InflatingInputStream(new ByteArrayInputStream(gzip(body)), true);
+
+        for (byte expected : body) assertEquals("each byte should be read.", expected & 0xFF, input.read());
+
+        assertEquals("the end of the body should be reached.", -1, input.read());
+
+        input.close();
+    }
+
+    @Test(expected = IOException.class)
+    public void testCorruptChecksum() throws Exception {
+
+        byte[] encoded = gzip(body(1000));
+
+        // The checksum is the first four bytes of the eight byte trailer.
+        encoded[encoded.length - 8] ^= 0xFF;
+
+        inflate(encoded, true);
+    }
+
+    @Test(expected = IOException.class)
+    public void testTruncatedBody() throws Exception {
+
+        byte[] encoded = gzip(body(10000));
+
+        byte[] truncated = new byte[encoded.length / 2];
+        System.arraycopy(encoded, 0, truncated, 0, truncated.length);
+
+        inflate(truncated, true);
+    }
+
+    @Test(expected = IOException.class)
+    public void testNotGzip() throws Exception {
+
+        inflate("not compressed".getBytes("UTF-8"), true);
+    }
+
+    @Test
+    public void testInflaterIsReturnedToThePool() throws Exception {
+
+        byte[] encoded = gzip(body(1000));
+
+        inflate(encoded, true);
+
+        int pooled = InflatingInputStream.getPooledCount();
+
+        assertTrue("the inflater should be pooled once the body has been read.", 0 < pooled);
+
+        inflate(encoded, true);
+
+        assertEquals("the pooled inflater should be reused.", pooled, InflatingInputStream.getPooledCount());
+    }
+
+    @Test
+    public void testInflaterIsReturnedWhenClosedEarly() throws Exception {
+
+        InputStream input = new InflatingInputStream(new ByteArrayInputStream(gzip(body(100000))), true);
+
+        int pooled = InflatingInputStream.getPooledCount();
+
+        assertTrue("some of the body should be read.", 0 < input.read(new byte[10]));
+        assertTrue("the inflater should be taken from the pool.",
+                pooled - 1 == InflatingInputStream.getPooledCount() || 0 == pooled);
+
+        input.close();
+
+        assertEquals("the inflater should be returned when the body is closed.", Math.max(pooled, 1),
+                InflatingInputStream.getPooledCount());
+    }
+}
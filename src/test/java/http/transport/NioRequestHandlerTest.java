@@ -0,0 +1,503 @@
+package http.transport;
+
+import http.Client;
+import http.Request;
+import http.Response;
+import http.dns.AddressRecord;
+import http.dns.Resolver;
+import http.header.Header;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.UnknownHostException;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+
+import static http.util.IO.readAll;
+import static org.apache.commons.io.IOUtils.toInputStream;
+import static org.junit.Assert.*;
+
+/**
+ * @author Karl Bennett
+ */
+public class NioRequestHandlerTest {
+
+    private static final String RESPONSE_BODY = "test response body";
+
+
+    private static TestServer.Responder encoded(final String encoding, final byte[] body) {
+
+        return new TestServer.Responder() {
+
+            @Override
+            public boolean respond(TestServer.ReceivedRequest request, OutputStream output) throws IOException {
+
+                output.write(("HTTP/1.1 200 OK\r\nContent-Encoding: " + encoding + "\r\nContent-Length: " + body.length
+                        + "\r\n\r\n").getBytes("ISO-8859-1"));
+                output.write(body);
+                output.flush();
+
+                return true;
+            }
+        };
+    }
+
+    private static Resolver resolver(final String host, final String... addresses) {
+
+        return new Resolver() {
+
+            @Override
+            public List<AddressRecord> resolve(String name) throws UnknownHostException {
+
+                if (!host.equals(name)) throw new UnknownHostException(name);
+
+                List<AddressRecord> records = new ArrayList<AddressRecord>();
+
+                for (String address : addresses) records.add(new AddressRecord(InetAddress.getByName(address), 60000));
+
+                return records;
+            }
+        };
+    }
+
+    private static byte[] gzip(String body) throws IOException {
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(bytes);
+        gzip.write(body.getBytes("UTF-8"));
+        gzip.close();
+
+        return bytes.toByteArray();
+    }
+
+
+    private TestServer server;
+    private NioRequestHandler handler;
+    private Client client;
+
+
+    @Before
+    public void setUp() throws Exception {
+
+        server = new TestServer(TestServer.fixed(200, RESPONSE_BODY));
+        handler = new NioRequestHandler();
+        client = new Client(handler);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+
+        handler.close();
+        server.close();
+    }
+
+
+    @Test
+    public void testGet() throws Exception {
+
+        Response<InputStream> response = client.get(server.url("/path?name=value"));
+
+        assertEquals("the status should be returned.", 200, response.getStatus());
+        assertNotNull("the content type header should be returned.", response.getHeaders("Content-Type"));
+        assertEquals("the body should be returned.", RESPONSE_BODY, readAll(response.getBody()));
+
+        TestServer.ReceivedRequest request = server.getRequests().get(0);
+
+        assertEquals("the request line should be correct.", "GET /path?name=value HTTP/1.1", request.getRequestLine());
+        assertEquals("the host header should be sent.", "127.0.0.1:" + server.getPort(), request.getHeader("Host"));
+    }
+
+    @Test
+    public void testGetWithLazyHeaders() throws Exception {
+
+        handler.setLazyHeaders(true);
+
+        Response<InputStream> response = client.get(server.url("/"));
+
+        assertEquals("the status should be returned.", 200, response.getStatus());
+        assertEquals("the content type header should be decoded when asked for.",
+                Collections.singleton(new Header<Object>("Content-Type", "text/plain")),
+                response.getHeaders("content-type"));
+        assertEquals("every header should be returned.", 2, response.getHeaders().size());
+        assertEquals("the body should be returned.", RESPONSE_BODY, readAll(response.getBody()));
+    }
+
+    @Test
+    public void testPostWithStreamBody() throws Exception {
+
+        Request<InputStream> request = new Request<InputStream>(server.url("/post"));
+        request.setBody(toInputStream("test request body"));
+
+        Response<InputStream> response = client.post(request);
+
+        assertEquals("the body should be returned.", RESPONSE_BODY, readAll(response.getBody()));
+
+        TestServer.ReceivedRequest received = server.getRequests().get(0);
+
+        assertEquals("the body should be chunked.", "chunked", received.getHeader("Transfer-Encoding"));
+        assertEquals("the body should be sent.", "test request body", new String(received.getBody(), "UTF-8"));
+    }
+
+    @Test
+    public void testPostWithStringBody() throws Exception {
+
+        Request<String> request = new Request<String>(server.url("/post"));
+        request.setBody("test string body");
+
+        client.post(request).getBody().close();
+
+        assertEquals("the converted body should be sent.", "test string body",
+                new String(server.getRequests().get(0).getBody(), "UTF-8"));
+    }
+
+    @Test
+    public void testPostWithFileBody() throws Exception {
+
+        byte[] body = new byte[3 * BufferPool.BUFFER_SIZE + 7];
+
+        for (int i = 0; i < body.length; i++) body[i] = (byte) (i % 251);
+
+        File file = File.createTempFile("body", ".bin");
+
+        try {
+
+            FileOutputStream output = new FileOutputStream(file);
+            output.write(body);
+            output.close();
+
+            Request<File> request = new Request<File>(server.url("/post"));
+            request.setBody(file);
+
+            client.post(request).getBody().close();
+
+            TestServer.ReceivedRequest received = server.getRequests().get(0);
+
+            assertEquals("the length of the file should be sent.", String.valueOf(body.length),
+                    received.getHeader("Content-Length"));
+            assertNull("the body should not be chunked.", received.getHeader("Transfer-Encoding"));
+            assertTrue("the file should be sent.", Arrays.equals(body, received.getBody()));
+
+        } finally {
+
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testPostWithoutBody() throws Exception {
+
+        client.post(server.url("/post")).getBody().close();
+
+        assertEquals("an empty body length should be sent.", "0",
+                server.getRequests().get(0).getHeader("Content-Length"));
+    }
+
+    @Test
+    public void testHead() throws Exception {
+
+        Response<InputStream> response = client.head(server.url("/"));
+
+        assertEquals("the status should be returned.", 200, response.getStatus());
+        assertEquals("no body should be returned.", -1, response.getBody().read());
+    }
+
+    @Test
+    public void testLargeBodyIsStreamed() throws Exception {
+
+        final byte[] body = new byte[ResponseInputStream.HIGH_WATER_MARK * 4];
+
+        for (int i = 0; i < body.length; i++) body[i] = (byte) i;
+
+        TestServer large = new TestServer(new TestServer.Responder() {
+
+            @Override
+            public boolean respond(TestServer.ReceivedRequest request, OutputStream output) throws IOException {
+
+                output.write(("HTTP/1.1 200 OK\r\nContent-Length: " + body.length + "\r\n\r\n").getBytes("ISO-8859-1"));
+                output.write(body);
+                output.flush();
+
+                return false;
+            }
+        });
+
+        try {
+
+            InputStream input = client.get(large.url("/large")).getBody();
+
+            byte[] buffer = new byte[8192];
+            int total = 0;
+            int read;
+            while (-1 != (read = input.read(buffer))) {
+
+                for (int i = 0; i < read; i++) assertEquals("the body should be intact.", body[total + i], buffer[i]);
+
+                total += read;
+            }
+
+            assertEquals("the entire body should be read.", body.length, total);
+
+        } finally {
+
+            large.close();
+        }
+    }
+
+    @Test
+    public void testGzipBodyIsDecompressed() throws Exception {
+
+        TestServer gzipped = new TestServer(encoded("gzip", gzip(RESPONSE_BODY)));
+
+        try {
+
+            Response<InputStream> response = client.get(gzipped.url("/"));
+
+            assertEquals("the body should be decompressed.", RESPONSE_BODY, readAll(response.getBody()));
+            assertNull("the content encoding header should be removed.", response.getHeaders("Content-Encoding"));
+            assertNull("the content length header should be removed.", response.getHeaders("Content-Length"));
+            assertEquals("the supported encodings should be accepted.", "gzip, deflate",
+                    gzipped.getRequests().get(0).getHeader("Accept-Encoding"));
+
+        } finally {
+
+            gzipped.close();
+        }
+    }
+
+    @Test
+    public void testDecompressionCanBeDisabled() throws Exception {
+
+        byte[] body = gzip(RESPONSE_BODY);
+
+        TestServer gzipped = new TestServer(encoded("gzip", body));
+
+        handler.setDecompression(false);
+
+        try {
+
+            Response<InputStream> response = client.get(gzipped.url("/"));
+
+            assertArrayEquals("the body should be left compressed.", body, IOUtils.toByteArray(response.getBody()));
+            assertNotNull("the content encoding header should be kept.", response.getHeaders("Content-Encoding"));
+            assertNull("no encodings should be accepted.", gzipped.getRequests().get(0).getHeader("Accept-Encoding"));
+
+        } finally {
+
+            gzipped.close();
+        }
+    }
+
+    @Test
+    public void testBodyIsNotDecodedForOwnAcceptEncoding() throws Exception {
+
+        byte[] body = gzip(RESPONSE_BODY);
+
+        TestServer gzipped = new TestServer(encoded("gzip", body));
+
+        try {
+
+            Request<String> request = new Request<String>(gzipped.url("/"));
+            request.addHeader("Accept-Encoding", "gzip");
+
+            Response<InputStream> response = client.get(request);
+
+            assertArrayEquals("the body should be left compressed.", body, IOUtils.toByteArray(response.getBody()));
+            assertNotNull("the content encoding header should be kept.", response.getHeaders("Content-Encoding"));
+            assertNotNull("the content length header should be kept.", response.getHeaders("Content-Length"));
+            assertEquals("the requests own encodings should be accepted.", "gzip",
+                    gzipped.getRequests().get(0).getHeader("Accept-Encoding"));
+
+        } finally {
+
+            gzipped.close();
+        }
+    }
+
+    @Test
+    public void testUnknownEncodingIsNotDecoded() throws Exception {
+
+        TestServer encoded = new TestServer(encoded("br", RESPONSE_BODY.getBytes("UTF-8")));
+
+        try {
+
+            Response<InputStream> response = client.get(encoded.url("/"));
+
+            assertEquals("the body should be left as it was sent.", RESPONSE_BODY, readAll(response.getBody()));
+            assertNotNull("the content encoding header should be kept.", response.getHeaders("Content-Encoding"));
+
+        } finally {
+
+            encoded.close();
+        }
+    }
+
+    @Test
+    public void testContentDecoderCanBeAdded() throws Exception {
+
+        handler.addContentDecoder(new ContentDecoder() {
+
+            @Override
+            public String getEncoding() {
+
+                return "x-upper";
+            }
+
+            @Override
+            public InputStream decode(InputStream body) throws IOException {
+
+                return toInputStream(readAll(body).toUpperCase());
+            }
+        });
+
+        TestServer encoded = new TestServer(encoded("x-upper, gzip", gzip(RESPONSE_BODY)));
+
+        try {
+
+            Response<InputStream> response = client.get(encoded.url("/"));
+
+            assertEquals("the encodings should be decoded in reverse order.", RESPONSE_BODY.toUpperCase(),
+                    readAll(response.getBody()));
+            assertEquals("the added encoding should be accepted.", "gzip, deflate, x-upper",
+                    encoded.getRequests().get(0).getHeader("Accept-Encoding"));
+
+        } finally {
+
+            encoded.close();
+        }
+    }
+
+    @Test
+    public void testHostIsResolvedWithTheResolver() throws Exception {
+
+        handler.setResolver(resolver("service.test", "127.0.0.1"));
+
+        Response<InputStream> response = client.get("http://service.test:" + server.getPort() + "/resolved");
+
+        assertEquals("the body should be returned.", RESPONSE_BODY, readAll(response.getBody()));
+        assertEquals("the host name should be sent.", "service.test:" + server.getPort(),
+                server.getRequests().get(0).getHeader("Host"));
+    }
+
+    @Test
+    public void testUnresponsiveAddressIsRaced() throws Exception {
+
+        List<SocketChannel> backlog = new ArrayList<SocketChannel>();
+
+        ServerSocket unresponsive = ConnectorTest.unresponsive("127.0.0.2", server.getPort(), backlog);
+
+        try {
+
+            handler.setResolver(resolver("service.test", "127.0.0.2", "127.0.0.1"));
+            handler.setConnectAttemptDelay(100);
+
+            long start = System.currentTimeMillis();
+
+            Response<InputStream> response = client.get("http://service.test:" + server.getPort() + "/raced");
+
+            assertEquals("the body should be returned.", RESPONSE_BODY, readAll(response.getBody()));
+            assertTrue("the request should not wait for the unresponsive address.",
+                    2000 > System.currentTimeMillis() - start);
+
+        } finally {
+
+            for (SocketChannel channel : backlog) channel.close();
+
+            unresponsive.close();
+        }
+    }
+
+    @Test(expected = TransportException.class)
+    public void testUnknownHost() throws Exception {
+
+        handler.setResolver(resolver("service.test", "127.0.0.1"));
+
+        client.get("http://missing.test:" + server.getPort() + "/");
+    }
+
+    @Test
+    public void testManyConcurrentRequests() throws Exception {
+
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+
+        try {
+
+            List<Future<String>> futures = new ArrayList<Future<String>>();
+
+            for (int i = 0; i < 64; i++) {
+
+                futures.add(executor.submit(new Callable<String>() {
+
+                    @Override
+                    public String call() throws Exception {
+
+                        return readAll(client.get(server.url("/")).getBody());
+                    }
+                }));
+            }
+
+            for (Future<String> future : futures) {
+
+                assertEquals("every response should be correct.", RESPONSE_BODY, future.get());
+            }
+
+        } finally {
+
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(expected = TransportException.class)
+    public void testConnectionRefused() throws Exception {
+
+        client.get("http://127.0.0.1:" + TestServer.refusedPort() + "/");
+    }
+
+    @Test(expected = TransportException.class)
+    public void testUnsupportedScheme() throws Exception {
+
+        client.get("ftp://127.0.0.1/");
+    }
+
+    @Test(expected = TransportException.class)
+    public void testTruncatedResponse() throws Exception {
+
+        TestServer truncated = new TestServer(new TestServer.Responder() {
+
+            @Override
+            public boolean respond(TestServer.ReceivedRequest request, OutputStream output) throws IOException {
+
+                output.write("HTTP/1.1 200 OK\r\nContent-Le".getBytes("ISO-8859-1"));
+                output.flush();
+
+                return false;
+            }
+        });
+
+        try {
+
+            client.get(truncated.url("/"));
+
+        } finally {
+
+            truncated.close();
+        }
+    }
+}
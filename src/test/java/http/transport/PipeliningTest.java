@@ -0,0 +1,281 @@
+package http.transport;
+
+import http.Client;
+import http.Response;
+import http.ResponseFuture;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static http.util.IO.readAll;
+import static org.junit.Assert.*;
+
+/**
+ * @author Karl Bennett
+ */
+public class PipeliningTest {
+
+    /**
+     * A server that reads a batch of requests before it answers any of them on its first connection, so it can only
+     * ever answer a client that pipelines. It can also be told to close that connection after answering only part of
+     * the batch. Every other connection is answered one request at a time. Each response body is the request path.
+     */
+    private static class PipelineServer implements Closeable {
+
+        private final ServerSocket serverSocket;
+        private final AtomicInteger connections;
+        private final AtomicBoolean pipelinedLater;
+
+        private PipelineServer(final int batch, final int answered) throws IOException {
+
+            this.serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+            this.connections = new AtomicInteger();
+            this.pipelinedLater = new AtomicBoolean();
+
+            Thread acceptor = new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+
+                    try {
+
+                        while (true) {
+
+                            final Socket socket = serverSocket.accept();
+                            final boolean first = 1 == connections.incrementAndGet();
+
+                            Thread thread = new Thread(new Runnable() {
+
+                                @Override
+                                public void run() {
+
+                                    serve(socket, first ? batch : 1, first ? answered : 1,
+                                            first ? null : pipelinedLater);
+                                }
+                            });
+                            thread.setDaemon(true);
+                            thread.start();
+                        }
+
+                    } catch (IOException e) {
+
+                        // The server has been closed.
+                    }
+                }
+            });
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+
+        private String url(String path) {
+
+            return "http://127.0.0.1:" + serverSocket.getLocalPort() + path;
+        }
+
+        private int getConnectionCount() {
+
+            return connections.get();
+        }
+
+        /**
+         * @return true if a request arrived on a connection other than the first before the previous one was answered.
+         */
+        private boolean isPipelinedLater() {
+
+            return pipelinedLater.get();
+        }
+
+        @Override
+        public void close() throws IOException {
+
+            serverSocket.close();
+        }
+
+        private static void serve(Socket socket, int batch, int answered, AtomicBoolean pipelined) {
+
+            try {
+
+                InputStream input = socket.getInputStream();
+                OutputStream output = socket.getOutputStream();
+
+                // Answer the first request on its own so the client knows the connection is persistent.
+                if (!respond(output, readPath(input))) return;
+
+                while (true) {
+
+                    List<String> paths = new ArrayList<String>();
+
+                    for (int i = 0; i < batch; i++) paths.add(readPath(input));
+
+                    if (null != pipelined && 0 < input.available()) pipelined.set(true);
+
+                    for (int i = 0; i < answered; i++) if (!respond(output, paths.get(i))) return;
+
+                    if (answered < batch) return;
+
+                    batch = 1;
+                    answered = 1;
+                }
+
+            } catch (IOException e) {
+
+                // The client went away.
+
+            } finally {
+
+                try {
+
+                    socket.close();
+
+                } catch (IOException e) {
+
+                    // Ignore.
+                }
+            }
+        }
+
+        private static String readPath(InputStream input) throws IOException {
+
+            StringBuilder head = new StringBuilder();
+
+            int b;
+            while (-1 != (b = input.read())) {
+
+                head.append((char) b);
+
+                if (head.toString().endsWith("\r\n\r\n")) return head.toString().split(" ")[1];
+            }
+
+            return null;
+        }
+
+        private static boolean respond(OutputStream output, String path) throws IOException {
+
+            if (null == path) return false;
+
+            output.write(("HTTP/1.1 200 OK\r\nContent-Length: " + path.length() + "\r\n\r\n" + path)
+                    .getBytes("ISO-8859-1"));
+            output.flush();
+
+            return true;
+        }
+    }
+
+
+    private NioRequestHandler handler;
+    private Client client;
+
+
+    @Before
+    public void setUp() throws Exception {
+
+        handler = new NioRequestHandler();
+        handler.setPipelining(true);
+        handler.setMaxConnectionsPerRoute(1);
+
+        client = new Client(handler);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+
+        handler.close();
+    }
+
+
+    @Test
+    public void testRequestsArePipelined() throws Exception {
+
+        PipelineServer server = new PipelineServer(3, 3);
+
+        try {
+
+            assertEquals("the first response should be correct.", "/warm", readAll(client.get(server.url("/warm"))
+                    .getBody()));
+
+            List<ResponseFuture<Response<InputStream>>> futures = new ArrayList<ResponseFuture<Response<InputStream>>>();
+
+            for (int i = 0; i < 3; i++) futures.add(client.getAsync(server.url("/" + i)));
+
+            for (int i = 0; i < 3; i++) {
+
+                assertEquals("the responses should be matched to the requests in order.", "/" + i,
+                        readAll(futures.get(i).get(5, TimeUnit.SECONDS).getBody()));
+            }
+
+            assertEquals("every request should be sent on one connection.", 1, server.getConnectionCount());
+
+        } finally {
+
+            server.close();
+        }
+    }
+
+    @Test
+    public void testPipeliningIsDisabledByDefault() throws Exception {
+
+        NioRequestHandler defaults = new NioRequestHandler();
+
+        try {
+
+            assertFalse("pipelining should be disabled by default.", defaults.isPipelining());
+
+        } finally {
+
+            defaults.close();
+        }
+    }
+
+    @Test
+    public void testServerClosingMidPipelineFallsBack() throws Exception {
+
+        PipelineServer server = new PipelineServer(3, 1);
+
+        try {
+
+            readAll(client.get(server.url("/warm")).getBody());
+
+            List<ResponseFuture<Response<InputStream>>> futures = new ArrayList<ResponseFuture<Response<InputStream>>>();
+
+            for (int i = 0; i < 3; i++) futures.add(client.getAsync(server.url("/" + i)));
+
+            for (int i = 0; i < 3; i++) {
+
+                assertEquals("every request should be answered.", "/" + i,
+                        readAll(futures.get(i).get(5, TimeUnit.SECONDS).getBody()));
+            }
+
+            assertTrue("the unanswered requests should be sent on a new connection.",
+                    1 < server.getConnectionCount());
+
+            List<ResponseFuture<Response<InputStream>>> more = new ArrayList<ResponseFuture<Response<InputStream>>>();
+
+            for (int i = 0; i < 3; i++) more.add(client.getAsync(server.url("/more" + i)));
+
+            for (int i = 0; i < 3; i++) {
+
+                assertEquals("every later request should be answered.", "/more" + i,
+                        readAll(more.get(i).get(5, TimeUnit.SECONDS).getBody()));
+            }
+
+            assertFalse("requests should no longer be pipelined.", server.isPipelinedLater());
+
+        } finally {
+
+            server.close();
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package http.transport;
+
+import http.header.HeaderName;
+import http.header.RawHeaders;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Karl Bennett
+ */
+public class ResponseParserTest {
+
+    private static final String FIXED_RESPONSE = "HTTP/1.1 200 OK\r\nContent-Type: text/plain\r\n" +
+            "Content-Length: 11\r\n\r\nhello world";
+
+    private static final String CHUNKED_RESPONSE = "HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n" +
+            "5\r\nhello\r\n6;ext=1\r\n world\r\n0\r\nTrailer: value\r\n\r\n";
+
+    private static final String EOF_RESPONSE = "HTTP/1.0 200 OK\r\nContent-Type: text/plain\r\n\r\nhello world";
+
+    private static final String CONTINUE_RESPONSE = "HTTP/1.1 100 Continue\r\n\r\n" + FIXED_RESPONSE;
+
+
+    private int status;
+    private Map<String, String> headers;
+    private RawHeaders rawHeaders;
+    private ByteArrayOutputStream content;
+    private boolean headersComplete;
+    private boolean complete;
+
+    private ResponseParser.Listener listener;
+
+
+    @Before
+    public void setUp() throws Exception {
+
+        status = 0;
+        headers = new LinkedHashMap<String, String>();
+        rawHeaders = null;
+        content = new ByteArrayOutputStream();
+        headersComplete = false;
+        complete = false;
+
+        listener = new ResponseParser.Listener() {
+
+            @Override
+            public void onStatus(int status) {
+
+                ResponseParserTest.this.status = status;
+            }
+
+            @Override
+            public void onHeader(String name, String value) {
+
+                headers.put(name, value);
+            }
+
+            @Override
+            public void onHeaders(RawHeaders headers) {
+
+                rawHeaders = headers;
+            }
+
+            @Override
+            public void onHeadersComplete() {
+
+                headersComplete = true;
+            }
+
+            @Override
+            public void onContent(ByteBuffer buffer) {
+
+                while (buffer.hasRemaining()) content.write(buffer.get());
+            }
+
+            @Override
+            public void onComplete() {
+
+                complete = true;
+            }
+        };
+    }
+
+
+    @Test
+    public void testParseFixedLengthResponse() throws Exception {
+
+        ResponseParser parser = new ResponseParser(listener, false);
+
+        parser.parse(buffer(FIXED_RESPONSE));
+
+        assertEquals("the status should be parsed.", 200, status);
+        assertEquals("the content type header should be parsed.", "text/plain", headers.get("Content-Type"));
+        assertEquals("the content length header should be parsed.", "11", headers.get("Content-Length"));
+        assertTrue("the headers should be complete.", headersComplete);
+        assertEquals("the body should be parsed.", "hello world", content.toString("UTF-8"));
+        assertTrue("the response should be complete.", complete);
+        assertTrue("the parser should be complete.", parser.isComplete());
+        assertFalse("the connection should be reusable.", parser.isClose());
+    }
+
+    @Test
+    public void testParseLazyHeaders() throws Exception {
+
+        ResponseParser parser = new ResponseParser(listener, false, true);
+
+        for (byte b : (CONTINUE_RESPONSE).getBytes("ISO-8859-1")) parser.parse(ByteBuffer.wrap(new byte[]{b}));
+
+        assertTrue("no headers should be decoded.", headers.isEmpty());
+        assertNotNull("the undecoded headers should be passed on.", rawHeaders);
+        assertEquals("both headers of the final response should be kept.", 2, rawHeaders.size());
+        assertTrue("the well known name should be recorded.", rawHeaders.hasName(0, HeaderName.CONTENT_TYPE));
+        assertEquals("the value should be kept.", "text/plain", rawHeaders.getValue(0));
+        assertEquals("the framing headers should still be used.", "hello world", content.toString("UTF-8"));
+        assertTrue("the response should be complete.", complete);
+    }
+
+    @Test
+    public void testParseResponseOneByteAtATime() throws Exception {
+
+        ResponseParser parser = new ResponseParser(listener, false);
+
+        for (byte b : FIXED_RESPONSE.getBytes("ISO-8859-1")) parser.parse(ByteBuffer.wrap(new byte[]{b}));
+
+        assertEquals("the status should be parsed.", 200, status);
+        assertEquals("the body should be parsed.", "hello world", content.toString("UTF-8"));
+        assertTrue("the response should be complete.", complete);
+    }
+
+    @Test
+    public void testParseChunkedResponse() throws Exception {
+
+        ResponseParser parser = new ResponseParser(listener, false);
+
+        parser.parse(buffer(CHUNKED_RESPONSE));
+
+        assertEquals("the chunked body should be parsed.", "hello world", content.toString("UTF-8"));
+        assertTrue("the response should be complete.", complete);
+    }
+
+    @Test
+    public void testParseConnectionDelimitedResponse() throws Exception {
+
+        ResponseParser parser = new ResponseParser(listener, false);
+
+        parser.parse(buffer(EOF_RESPONSE));
+
+        assertFalse("the response should not be complete until the connection closes.", complete);
+
+        parser.close();
+
+        assertEquals("the body should be parsed.", "hello world", content.toString("UTF-8"));
+        assertTrue("the response should be complete.", complete);
+        assertTrue("the connection should not be reusable.", parser.isClose());
+    }
+
+    @Test
+    public void testParseSkipsInterimResponse() throws Exception {
+
+        ResponseParser parser = new ResponseParser(listener, false);
+
+        parser.parse(buffer(CONTINUE_RESPONSE));
+
+        assertEquals("the final status should be parsed.", 200, status);
+        assertEquals("the body should be parsed.", "hello world", content.toString("UTF-8"));
+    }
+
+    @Test
+    public void testParseHeadResponse() throws Exception {
+
+        ResponseParser parser = new ResponseParser(listener, true);
+
+        parser.parse(buffer("HTTP/1.1 200 OK\r\nContent-Length: 11\r\n\r\n"));
+
+        assertEquals("no body should be parsed.", 0, content.size());
+        assertTrue("the response should be complete.", complete);
+    }
+
+    @Test
+    public void testParseLeavesFollowingResponse() throws Exception {
+
+        ResponseParser parser = new ResponseParser(listener, false);
+
+        ByteBuffer buffer = buffer(FIXED_RESPONSE + FIXED_RESPONSE);
+
+        parser.parse(buffer);
+
+        assertTrue("the first response should be complete.", complete);
+        assertEquals("the second response should be left in the buffer.", FIXED_RESPONSE.length(),
+                buffer.remaining());
+    }
+
+    @Test
+    public void testParseChunkedResponseOneByteAtATime() throws Exception {
+
+        ResponseParser parser = new ResponseParser(listener, false);
+
+        for (byte b : CHUNKED_RESPONSE.getBytes("ISO-8859-1")) parser.parse(ByteBuffer.wrap(new byte[]{b}));
+
+        assertEquals("the chunked body should be parsed.", "hello world", content.toString("UTF-8"));
+        assertTrue("the response should be complete.", complete);
+    }
+
+    @Test
+    public void testParseHeaderValueContainingSeparator() throws Exception {
+
+        ResponseParser parser = new ResponseParser(listener, false);
+
+        parser.parse(buffer("HTTP/1.1 200 OK\r\nLocation:  http://example.com:8080/path \r\n" +
+                "Content-Length: 0\r\n\r\n"));
+
+        assertEquals("only the first colon should separate the name from the value.", "http://example.com:8080/path",
+                headers.get("Location"));
+    }
+
+    @Test
+    public void testParseBareLineFeeds() throws Exception {
+
+        ResponseParser parser = new ResponseParser(listener, false);
+
+        parser.parse(buffer("HTTP/1.1 200 OK\nTransfer-Encoding: chunked\n\nb\nhello world\n0\n\n"));
+
+        assertEquals("the body should be parsed.", "hello world", content.toString("UTF-8"));
+        assertTrue("the response should be complete.", complete);
+    }
+
+    @Test(expected = TransportException.class)
+    public void testParseLineTooLong() throws Exception {
+
+        ResponseParser parser = new ResponseParser(listener, false);
+
+        parser.parse(buffer("HTTP/1.1 200 OK\r\nX-Long: "));
+        parser.parse(ByteBuffer.allocate(ResponseParser.MAX_LINE_LENGTH));
+    }
+
+    @Test(expected = TransportException.class)
+    public void testParseMalformedStatusCode() throws Exception {
+
+        new ResponseParser(listener, false).parse(buffer("HTTP/1.1 2x0 OK\r\n\r\n"));
+    }
+
+    @Test(expected = TransportException.class)
+    public void testParseMalformedChunkSize() throws Exception {
+
+        new ResponseParser(listener, false).parse(buffer("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n" +
+                "5g\r\nhello\r\n0\r\n\r\n"));
+    }
+
+    @Test(expected = TransportException.class)
+    public void testParseChunkSizeTooLarge() throws Exception {
+
+        new ResponseParser(listener, false).parse(buffer("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n" +
+                "10000000000000000\r\n"));
+    }
+
+    @Test(expected = TransportException.class)
+    public void testParseMalformedStatusLine() throws Exception {
+
+        new ResponseParser(listener, false).parse(buffer("NOT HTTP\r\n\r\n"));
+    }
+
+    @Test(expected = TransportException.class)
+    public void testCloseBeforeComplete() throws Exception {
+
+        ResponseParser parser = new ResponseParser(listener, false);
+
+        parser.parse(buffer("HTTP/1.1 200 OK\r\nContent-Length: 11\r\n\r\nhello"));
+
+        parser.close();
+    }
+
+
+    private static ByteBuffer buffer(String string) throws Exception {
+
+        return ByteBuffer.wrap(string.getBytes("ISO-8859-1"));
+    }
+}
@@ -0,0 +1,422 @@
+package http.transport;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSocket;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A very small blocking {@code HTTP/1.1} server that can be used to test the client against a real socket. Each
+ * request that is received is recorded and answered with the response produced by the servers {@link Responder}.
+ * <p/>
+ * Given an {@link SSLContext} the server speaks {@code https} and records the id of the session of each connection.
+ *
+ * @author Karl Bennett
+ */
+public class TestServer implements Closeable {
+
+    /**
+     * A request received by the {@code TestServer}.
+     */
+    public static class ReceivedRequest {
+
+        private final String head;
+        private final byte[] body;
+
+        public ReceivedRequest(String head, byte[] body) {
+
+            this.head = head;
+            this.body = body;
+        }
+
+        public String getHead() {
+
+            return head;
+        }
+
+        public String getRequestLine() {
+
+            return head.substring(0, head.indexOf("\r\n"));
+        }
+
+        public String getHeader(String name) {
+
+            for (String line : head.split("\r\n")) {
+
+                int colon = line.indexOf(':');
+
+                if (0 < colon && line.substring(0, colon).equalsIgnoreCase(name)) {
+
+                    return line.substring(colon + 1).trim();
+                }
+            }
+
+            return null;
+        }
+
+        public byte[] getBody() {
+
+            return body;
+        }
+    }
+
+    /**
+     * Implement this interface to produce the response for each request.
+     */
+    public static interface Responder {
+
+        /**
+         * Write the entire response for the supplied request.
+         *
+         * @param request the request that was received.
+         * @param output  the stream to write the response to.
+         * @return true if the connection should be kept open for another request, otherwise false.
+         * @throws IOException if the response could not be written.
+         */
+        boolean respond(ReceivedRequest request, OutputStream output) throws IOException;
+    }
+
+    /**
+     * A {@link Responder} that always answers with the same status and body.
+     */
+    public static Responder fixed(final int status, final String body) {
+
+        return new Responder() {
+
+            @Override
+            public boolean respond(ReceivedRequest request, OutputStream output) throws IOException {
+
+                byte[] bytes = body.getBytes("UTF-8");
+
+                output.write(("HTTP/1.1 " + status + " OK\r\nContent-Type: text/plain\r\nContent-Length: " +
+                        bytes.length + "\r\n\r\n").getBytes("ISO-8859-1"));
+                output.write(bytes);
+                output.flush();
+
+                return !"close".equalsIgnoreCase(request.getHeader("Connection"));
+            }
+        };
+    }
+
+
+    /**
+     * Find a port on the loopback address that refuses connections. A port that has just been released can be taken
+     * again straight away by another server, so each port is checked by connecting to it before it is returned.
+     *
+     * @return a port that nothing is listening on.
+     * @throws IOException if no such port could be found.
+     */
+    public static int refusedPort() throws IOException {
+
+        InetAddress address = InetAddress.getByName("127.0.0.1");
+
+        for (int attempt = 0; attempt < 10; attempt++) {
+
+            ServerSocketChannel channel = ServerSocketChannel.open();
+            channel.socket().bind(new InetSocketAddress(address, 0));
+
+            int port = channel.socket().getLocalPort();
+
+            channel.close();
+
+            Socket socket = new Socket();
+
+            try {
+
+                socket.connect(new InetSocketAddress(address, port), 1000);
+
+            } catch (ConnectException e) {
+
+                return port;
+
+            } finally {
+
+                socket.close();
+            }
+        }
+
+        throw new IOException("Could not find a port that refuses connections.");
+    }
+
+
+    private final ServerSocket serverSocket;
+    private final Responder responder;
+    private final List<ReceivedRequest> requests;
+    private final List<Socket> sockets;
+    private final List<String> sessionIds;
+    private final AtomicInteger connections;
+    private final Thread acceptor;
+
+    private volatile boolean closed;
+
+
+    public TestServer(Responder responder) throws IOException {
+
+        this(responder, null);
+    }
+
+    /**
+     * @param responder  the responder for every request.
+     * @param sslContext the context of an {@code https} server, or null for an {@code http} server.
+     */
+    public TestServer(Responder responder, SSLContext sslContext) throws IOException {
+
+        InetAddress address = InetAddress.getByName("127.0.0.1");
+
+        this.serverSocket = null == sslContext ? new ServerSocket(0, 50, address) :
+                sslContext.getServerSocketFactory().createServerSocket(0, 50, address);
+        this.responder = responder;
+        this.requests = Collections.synchronizedList(new ArrayList<ReceivedRequest>());
+        this.sockets = Collections.synchronizedList(new ArrayList<Socket>());
+        this.sessionIds = Collections.synchronizedList(new ArrayList<String>());
+        this.connections = new AtomicInteger();
+
+        this.acceptor = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+
+                accept();
+            }
+        }, "test-server-acceptor");
+        this.acceptor.setDaemon(true);
+        this.acceptor.start();
+    }
+
+
+    public int getPort() {
+
+        return serverSocket.getLocalPort();
+    }
+
+    public String url(String path) {
+
+        String scheme = serverSocket instanceof SSLServerSocket ? "https" : "http";
+
+        return scheme + "://127.0.0.1:" + getPort() + path;
+    }
+
+    public List<ReceivedRequest> getRequests() {
+
+        synchronized (requests) {
+
+            return new ArrayList<ReceivedRequest>(requests);
+        }
+    }
+
+    /**
+     * @return the hex id of the TLS session of each connection in the order they completed their handshakes.
+     */
+    public List<String> getSessionIds() {
+
+        synchronized (sessionIds) {
+
+            return new ArrayList<String>(sessionIds);
+        }
+    }
+
+    /**
+     * @return the number of connections that have been accepted.
+     */
+    public int getConnectionCount() {
+
+        return connections.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+
+        closed = true;
+
+        serverSocket.close();
+
+        synchronized (sockets) {
+
+            for (Socket socket : sockets) socket.close();
+        }
+    }
+
+
+    private void accept() {
+
+        while (!closed) {
+
+            try {
+
+                final Socket socket = serverSocket.accept();
+
+                connections.incrementAndGet();
+                sockets.add(socket);
+
+                Thread thread = new Thread(new Runnable() {
+
+                    @Override
+                    public void run() {
+
+                        serve(socket);
+                    }
+                }, "test-server-connection");
+                thread.setDaemon(true);
+                thread.start();
+
+            } catch (IOException e) {
+
+                return;
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+
+        try {
+
+            if (socket instanceof SSLSocket) {
+
+                ((SSLSocket) socket).startHandshake();
+
+                sessionIds.add(hex(((SSLSocket) socket).getSession().getId()));
+            }
+
+            InputStream input = socket.getInputStream();
+            OutputStream output = socket.getOutputStream();
+
+            boolean keepAlive = true;
+
+            while (keepAlive) {
+
+                String head = readHead(input);
+
+                if (null == head) break;
+
+                ReceivedRequest request = new ReceivedRequest(head, readBody(head, input));
+
+                requests.add(request);
+
+                keepAlive = responder.respond(request, output);
+            }
+
+        } catch (IOException e) {
+
+            // The client went away, just drop the connection.
+
+        } finally {
+
+            try {
+
+                socket.close();
+
+            } catch (IOException e) {
+
+                // Ignore.
+            }
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+
+        StringBuilder hex = new StringBuilder();
+
+        for (byte b : bytes) hex.append(String.format("%02x", b));
+
+        return hex.toString();
+    }
+
+    private static String readHead(InputStream input) throws IOException {
+
+        ByteArrayOutputStream head = new ByteArrayOutputStream();
+
+        int b;
+        int matched = 0;
+        while (-1 != (b = input.read())) {
+
+            head.write(b);
+
+            matched = ('\r' == b && 0 == matched % 2) || ('\n' == b && 1 == matched % 2) ? matched + 1 : 0;
+
+            if (4 == matched) return head.toString("ISO-8859-1");
+        }
+
+        return null;
+    }
+
+    private static byte[] readBody(String head, InputStream input) throws IOException {
+
+        ReceivedRequest request = new ReceivedRequest(head, null);
+
+        String length = request.getHeader("Content-Length");
+        String encoding = request.getHeader("Transfer-Encoding");
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+        if (null != encoding && encoding.toLowerCase(Locale.ENGLISH).contains("chunked")) {
+
+            while (true) {
+
+                int size = Integer.parseInt(readLine(input).split(";")[0].trim(), 16);
+
+                if (0 == size) {
+
+                    // Skip the trailers.
+                    while (0 < readLine(input).length()) {
+                    }
+
+                    break;
+                }
+
+                copy(input, body, size);
+
+                readLine(input);
+            }
+
+        } else if (null != length) {
+
+            copy(input, body, Integer.parseInt(length));
+        }
+
+        return body.toByteArray();
+    }
+
+    private static String readLine(InputStream input) throws IOException {
+
+        StringBuilder line = new StringBuilder();
+
+        int b;
+        while (-1 != (b = input.read()) && '\n' != b) {
+
+            if ('\r' != b) line.append((char) b);
+        }
+
+        return line.toString();
+    }
+
+    private static void copy(InputStream input, OutputStream output, int length) throws IOException {
+
+        byte[] buffer = new byte[8192];
+
+        while (0 < length) {
+
+            int read = input.read(buffer, 0, Math.min(buffer.length, length));
+
+            if (-1 == read) throw new IOException("Unexpected end of stream.");
+
+            output.write(buffer, 0, read);
+
+            length -= read;
+        }
+    }
+}
@@ -0,0 +1,331 @@
+package http.transport;
+
+import http.Client;
+import http.Request;
+import http.Response;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.KeyStore;
+import java.util.List;
+
+import static http.util.IO.readAll;
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * @author Karl Bennett
+ */
+public class TlsTest {
+
+    private static final String RESPONSE_BODY = "secure response body";
+    private static final char[] PASSWORD = "password".toCharArray();
+
+
+    /**
+     * @return a context that holds the self signed certificate of the test servers as both its key and its only
+     *         trusted certificate.
+     */
+    static SSLContext context() throws Exception {
+
+        KeyStore keyStore = KeyStore.getInstance("JKS");
+
+        InputStream input = TlsTest.class.getResourceAsStream("/test-keystore.jks");
+
+        try {
+
+            keyStore.load(input, PASSWORD);
+
+        } finally {
+
+            input.close();
+        }
+
+        KeyManagerFactory keys = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keys.init(keyStore, PASSWORD);
+
+        TrustManagerFactory trust = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        trust.init(keyStore);
+
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(keys.getKeyManagers(), trust.getTrustManagers(), null);
+
+        return context;
+    }
+
+    private static TestServer.Responder closing() {
+
+        return new TestServer.Responder() {
+
+            @Override
+            public boolean respond(TestServer.ReceivedRequest request, OutputStream output) throws IOException {
+
+                output.write(("HTTP/1.1 200 OK\r\nConnection: close\r\nContent-Length: " + RESPONSE_BODY.length() +
+                        "\r\n\r\n" + RESPONSE_BODY).getBytes("ISO-8859-1"));
+                output.flush();
+
+                return false;
+            }
+        };
+    }
+
+
+    private SSLContext context;
+    private NioRequestHandler handler;
+    private Client client;
+
+
+    @Before
+    public void setUp() throws Exception {
+
+        context = context();
+
+        handler = new NioRequestHandler();
+        handler.setTlsConfig(new TlsConfig(context()));
+
+        client = new Client(handler);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+
+        handler.close();
+    }
+
+
+    @Test
+    public void testGet() throws Exception {
+
+        TestServer server = new TestServer(TestServer.fixed(200, RESPONSE_BODY), context);
+
+        try {
+
+            Response<InputStream> response = client.get(server.url("/secure"));
+
+            assertEquals("the status should be returned.", 200, response.getStatus());
+            assertEquals("the body should be decrypted.", RESPONSE_BODY, readAll(response.getBody()));
+            assertEquals("the request line should be sent.", "GET /secure HTTP/1.1",
+                    server.getRequests().get(0).getRequestLine());
+
+            client.get(server.url("/again")).getBody().close();
+
+            assertEquals("the connection should be reused.", 1, server.getConnectionCount());
+
+        } finally {
+
+            server.close();
+        }
+    }
+
+    @Test
+    public void testLargeBodyIsStreamed() throws Exception {
+
+        final byte[] body = new byte[ResponseInputStream.HIGH_WATER_MARK * 4];
+
+        for (int i = 0; i < body.length; i++) body[i] = (byte) i;
+
+        TestServer server = new TestServer(new TestServer.Responder() {
+
+            @Override
+            public boolean respond(TestServer.ReceivedRequest request, OutputStream output) throws IOException {
+
+                output.write(("HTTP/1.1 200 OK\r\nContent-Length: " + body.length + "\r\n\r\n").getBytes("ISO-8859-1"));
+                output.write(body);
+                output.flush();
+
+                return true;
+            }
+        }, context);
+
+        try {
+
+            InputStream input = client.get(server.url("/large")).getBody();
+
+            // Let the body fill up so that reading from the connection has to be suspended.
+            Thread.sleep(100);
+
+            byte[] buffer = new byte[8192];
+            int total = 0;
+
+            for (int read; -1 != (read = input.read(buffer)); total += read) {
+
+                for (int i = 0; i < read; i++) assertEquals("the body should be intact.", body[total + i], buffer[i]);
+            }
+
+            assertEquals("the entire body should be read.", body.length, total);
+
+        } finally {
+
+            server.close();
+        }
+    }
+
+    @Test
+    public void testPostWithFileBody() throws Exception {
+
+        byte[] body = new byte[3 * BufferPool.BUFFER_SIZE + 7];
+
+        for (int i = 0; i < body.length; i++) body[i] = (byte) (i % 127);
+
+        File file = File.createTempFile("tls", ".bin");
+
+        TestServer server = new TestServer(TestServer.fixed(200, RESPONSE_BODY), context);
+
+        try {
+
+            FileOutputStream output = new FileOutputStream(file);
+            output.write(body);
+            output.close();
+
+            Request<File> request = new Request<File>(server.url("/upload"));
+            request.setBody(file);
+
+            client.post(request).getBody().close();
+
+            TestServer.ReceivedRequest received = server.getRequests().get(0);
+
+            assertEquals("the length of the file should be sent.", String.valueOf(body.length),
+                    received.getHeader("Content-Length"));
+            assertArrayEquals("the file should be encrypted and sent.", body, received.getBody());
+
+        } finally {
+
+            server.close();
+
+            assertTrue("the file should be deleted.", file.delete());
+        }
+    }
+
+    @Test
+    public void testSessionIsResumed() throws Exception {
+
+        TlsConfig config = new TlsConfig(context());
+        config.setProtocols("TLSv1.2");
+
+        handler.setTlsConfig(config);
+
+        TestServer server = new TestServer(closing(), context);
+
+        try {
+
+            client.get(server.url("/first")).getBody().close();
+            client.get(server.url("/second")).getBody().close();
+
+            List<String> sessionIds = server.getSessionIds();
+
+            assertEquals("a connection should be opened for each request.", 2, sessionIds.size());
+            assertEquals("the second connection should resume the session of the first.", sessionIds.get(0),
+                    sessionIds.get(1));
+
+        } finally {
+
+            server.close();
+        }
+    }
+
+    @Test(expected = TransportException.class)
+    public void testUntrustedServer() throws Exception {
+
+        handler.setTlsConfig(new TlsConfig(SSLContext.getInstance("Default")));
+
+        TestServer server = new TestServer(TestServer.fixed(200, RESPONSE_BODY), context);
+
+        try {
+
+            client.get(server.url("/"));
+
+        } finally {
+
+            server.close();
+        }
+    }
+
+    @Test(expected = TransportException.class)
+    public void testHostnameVerifierRejectsServer() throws Exception {
+
+        TlsConfig config = new TlsConfig(context());
+        config.setHostnameVerifier(new HostnameVerifier() {
+
+            @Override
+            public boolean verify(String host, SSLSession session) {
+
+                return false;
+            }
+        });
+
+        handler.setTlsConfig(config);
+
+        TestServer server = new TestServer(TestServer.fixed(200, RESPONSE_BODY), context);
+
+        try {
+
+            client.get(server.url("/"));
+
+        } finally {
+
+            server.close();
+        }
+    }
+
+    @Test
+    public void testHttp2IsAgreedThroughAlpn() throws Exception {
+
+        assumeTrue(Http2TestServer.isAlpnSupported());
+
+        handler.setHttpVersion(HttpVersion.HTTP_2);
+
+        Http2TestServer server = new Http2TestServer(Http2TestServer.path(), context, TlsConfig.H2);
+
+        try {
+
+            Response<InputStream> response = client.get(server.url("/multiplexed"));
+
+            assertEquals("the status should be returned.", 200, response.getStatus());
+            assertEquals("the body should be returned.", "/multiplexed", readAll(response.getBody()));
+            assertEquals("the request should be sent as a stream.", 1, server.getRequests().size());
+
+        } finally {
+
+            server.close();
+        }
+    }
+
+    @Test
+    public void testHttp2FallsBackToHttp11() throws Exception {
+
+        handler.setHttpVersion(HttpVersion.HTTP_2);
+
+        TestServer server = new TestServer(TestServer.fixed(200, RESPONSE_BODY), context);
+
+        try {
+
+            Response<InputStream> response = client.get(server.url("/secure"));
+
+            assertEquals("the status should be returned.", 200, response.getStatus());
+            assertEquals("the body should be returned.", RESPONSE_BODY, readAll(response.getBody()));
+            assertEquals("the request should be sent over HTTP/1.1.", "GET /secure HTTP/1.1",
+                    server.getRequests().get(0).getRequestLine());
+
+            client.get(server.url("/again")).getBody().close();
+
+            assertEquals("the request should be sent over HTTP/1.1 again.", "GET /again HTTP/1.1",
+                    server.getRequests().get(1).getRequestLine());
+            assertEquals("the handed over connection should be reused.", 1, server.getConnectionCount());
+
+        } finally {
+
+            server.close();
+        }
+    }
+}
@@ -2,8 +2,11 @@ package http.util;
 
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.List;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
@@ -38,6 +41,23 @@ public class ParserTest {
         assertTrue("the numbers collection should contain 4.", numbers.contains(4));
     }
 
+    @Test
+    public void testParseEmptyParts() throws Exception {
+
+        final List<String> parts = new ArrayList<String>();
+
+        new Parser("1::::2::::", DELIMITER + DELIMITER) {
+
+            @Override
+            protected void next(String part) {
+
+                parts.add(part);
+            }
+        }.parse();
+
+        assertEquals("empty parts should only be dropped from the end.", Arrays.asList("1", "", "2"), parts);
+    }
+
     @Test
     public void testParseEmptyString() throws Exception {
 